@@ -0,0 +1,90 @@
+package org.broadinstitute.hellbender.engine;
+
+import htsjdk.tribble.bed.BEDCodec;
+import htsjdk.tribble.bed.BEDFeature;
+import htsjdk.tribble.index.IndexFactory;
+import org.broadinstitute.hellbender.utils.SimpleInterval;
+import org.broadinstitute.hellbender.utils.test.SyntheticBenchmarkData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time per {@link FeatureDataSource#query} of an indexed BED of synthetic features, both for queries that move
+ * along the contig as they do during a traversal, which are mostly answered from the cache, and for queries at random
+ * places, which mostly go to the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FeatureDataSourceBenchmark {
+
+    private static final String CONTIG = "1";
+    private static final int CONTIG_LENGTH = 10000000;
+    private static final int NUM_FEATURES = 100000;
+    private static final int NUM_QUERIES = 10000;
+
+    @Param({"100", "10000"})
+    public int queryLength;
+
+    private File directory;
+    private FeatureDataSource<BEDFeature> dataSource;
+    private SimpleInterval[] consecutiveQueries;
+    private SimpleInterval[] randomQueries;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = SyntheticBenchmarkData.createTempDirectory("FeatureDataSourceBenchmark");
+        final Random random = new Random(42);
+        final File bed = new File(directory, "synthetic.bed");
+        try (final PrintWriter writer = new PrintWriter(bed)) {
+            for (int i = 0; i < NUM_FEATURES; ++i) {
+                // BED starts are 0-based, and the features are evenly spaced, so they are in order
+                final int start = (int) ((long) i * (CONTIG_LENGTH - 1000) / NUM_FEATURES);
+                writer.println(CONTIG + "\t" + start + "\t" + (start + 1 + random.nextInt(500)) + "\tfeature" + i);
+            }
+        }
+        IndexFactory.createDynamicIndex(bed, new BEDCodec(), IndexFactory.IndexBalanceApproach.FOR_SEEK_TIME).writeBasedOnFeatureFile(bed);
+        dataSource = new FeatureDataSource<>(bed, new BEDCodec());
+
+        final int step = (CONTIG_LENGTH - queryLength) / NUM_QUERIES;
+        consecutiveQueries = new SimpleInterval[NUM_QUERIES];
+        randomQueries = new SimpleInterval[NUM_QUERIES];
+        for (int i = 0; i < NUM_QUERIES; ++i) {
+            final int start = 1 + i * step;
+            consecutiveQueries[i] = new SimpleInterval(CONTIG, start, start + queryLength - 1);
+            final int randomStart = 1 + random.nextInt(CONTIG_LENGTH - queryLength);
+            randomQueries[i] = new SimpleInterval(CONTIG, randomStart, randomStart + queryLength - 1);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.close();
+        SyntheticBenchmarkData.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_QUERIES)
+    public void queryConsecutive(final Blackhole blackhole) {
+        for (final SimpleInterval interval : consecutiveQueries) {
+            blackhole.consume(dataSource.query(interval));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_QUERIES)
+    public void queryRandom(final Blackhole blackhole) {
+        for (final SimpleInterval interval : randomQueries) {
+            blackhole.consume(dataSource.query(interval));
+        }
+    }
+}
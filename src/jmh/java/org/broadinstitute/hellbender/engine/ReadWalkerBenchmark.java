@@ -0,0 +1,59 @@
+package org.broadinstitute.hellbender.engine;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.hellbender.tools.CountReads;
+import org.broadinstitute.hellbender.utils.test.SyntheticBenchmarkData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost per read of a {@link ReadWalker} traversal: decoding, filtering and building the reference and feature
+ * contexts, measured by running {@link CountReads}, whose apply() does nothing else, over a synthetic BAM.
+ * Subtracting this from the time per read of another walker leaves the cost of its apply().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReadWalkerBenchmark {
+
+    private static final int NUM_PAIRS = 50000;
+    private static final int NUM_READS = 2 * NUM_PAIRS;
+
+    private File directory;
+    private File bam;
+    private File reference;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = SyntheticBenchmarkData.createTempDirectory("ReadWalkerBenchmark");
+        final Random random = new Random(42);
+        final SAMFileHeader header = SyntheticBenchmarkData.createHeader(2, 5000000);
+        final byte[][] bases = SyntheticBenchmarkData.createReferenceBases(header, random);
+        reference = SyntheticBenchmarkData.writeReference(header, bases, directory);
+        bam = SyntheticBenchmarkData.writeBam(header, SyntheticBenchmarkData.createReadPairs(header, bases, NUM_PAIRS, 101, random), directory);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticBenchmarkData.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_READS)
+    public Object traverseReads() {
+        return new CountReads().instanceMain(new String[]{"-I", bam.getPath(), "--QUIET", "true", "--VERBOSITY", "ERROR"});
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_READS)
+    public Object traverseReadsWithReference() {
+        return new CountReads().instanceMain(new String[]{"-I", bam.getPath(), "-R", reference.getPath(), "--QUIET", "true", "--VERBOSITY", "ERROR"});
+    }
+}
@@ -0,0 +1,100 @@
+package org.broadinstitute.hellbender.tools.picard.sam.markduplicates;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.SortingCollection;
+import org.broadinstitute.hellbender.utils.read.markduplicates.ReadEnds;
+import org.broadinstitute.hellbender.utils.read.markduplicates.ReadEndsForMarkDuplicates;
+import org.broadinstitute.hellbender.utils.read.markduplicates.ReadEndsForMarkDuplicatesCodec;
+import org.broadinstitute.hellbender.utils.test.SyntheticBenchmarkData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time per read end to sort the fragment and pair ends of {@link MarkDuplicates} with a SortingCollection, either
+ * all in memory or spilling to disk.  The ends are made from synthetic pairs in coordinate order, as
+ * MarkDuplicates.buildSortedReadEndLists makes them, with the pair ends added when the second read of each pair is seen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReadEndsSortingBenchmark {
+
+    private static final int NUM_PAIRS = 100000;
+    private static final int NUM_ENDS = 3 * NUM_PAIRS;
+
+    @Param({"1000000", "50000"})
+    public int maxRecordsInRam;
+
+    private File directory;
+    private List<ReadEndsForMarkDuplicates> ends;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = SyntheticBenchmarkData.createTempDirectory("ReadEndsSortingBenchmark");
+        final Random random = new Random(42);
+        final SAMFileHeader header = SyntheticBenchmarkData.createHeader(4, 10000000);
+        final List<SAMRecord> reads = SyntheticBenchmarkData.createReadPairs(header, SyntheticBenchmarkData.createReferenceBases(header, random), NUM_PAIRS, 101, random);
+
+        ends = new ArrayList<>(NUM_ENDS);
+        final Map<String, ReadEndsForMarkDuplicates> firstEnds = new HashMap<>();
+        for (int index = 0; index < reads.size(); ++index) {
+            final SAMRecord read = reads.get(index);
+            final ReadEndsForMarkDuplicates fragmentEnd = buildReadEnds(read, index);
+            ends.add(fragmentEnd);
+            final ReadEndsForMarkDuplicates pairEnds = firstEnds.remove(read.getReadName());
+            if (pairEnds == null) {
+                firstEnds.put(read.getReadName(), buildReadEnds(read, index));
+            } else {
+                pairEnds.read2ReferenceIndex = fragmentEnd.read1ReferenceIndex;
+                pairEnds.read2Coordinate = fragmentEnd.read1Coordinate;
+                pairEnds.read2IndexInFile = index;
+                pairEnds.orientation = ReadEnds.getOrientationByte(pairEnds.orientation == ReadEnds.R, read.getReadNegativeStrandFlag());
+                pairEnds.score += fragmentEnd.score;
+                ends.add(pairEnds);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticBenchmarkData.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_ENDS)
+    public void sortReadEnds(final Blackhole blackhole) {
+        final SortingCollection<ReadEndsForMarkDuplicates> sort = SortingCollection.newInstance(ReadEndsForMarkDuplicates.class,
+                new ReadEndsForMarkDuplicatesCodec(), new MarkDuplicates.ReadEndsMDComparator(), maxRecordsInRam, directory);
+        for (final ReadEndsForMarkDuplicates end : ends) {
+            sort.add(end);
+        }
+        sort.doneAdding();
+        try (final CloseableIterator<ReadEndsForMarkDuplicates> iterator = sort.iterator()) {
+            while (iterator.hasNext()) {
+                blackhole.consume(iterator.next());
+            }
+        }
+        sort.cleanup();
+    }
+
+    private static ReadEndsForMarkDuplicates buildReadEnds(final SAMRecord read, final long index) {
+        final ReadEndsForMarkDuplicates ends = new ReadEndsForMarkDuplicates();
+        ends.read1ReferenceIndex = read.getReferenceIndex();
+        ends.read1Coordinate = read.getReadNegativeStrandFlag() ? read.getUnclippedEnd() : read.getUnclippedStart();
+        ends.orientation = read.getReadNegativeStrandFlag() ? ReadEnds.R : ReadEnds.F;
+        ends.read1IndexInFile = index;
+        ends.score = (short) Math.min(read.getReadLength(), Short.MAX_VALUE);
+        ends.libraryId = 1;
+        return ends;
+    }
+}
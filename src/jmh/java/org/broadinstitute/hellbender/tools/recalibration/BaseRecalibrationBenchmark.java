@@ -0,0 +1,85 @@
+package org.broadinstitute.hellbender.tools.recalibration;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import org.broadinstitute.hellbender.tools.walkers.bqsr.BaseRecalibrator;
+import org.broadinstitute.hellbender.utils.test.SyntheticBenchmarkData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time to recalibrate a read with {@link BaseRecalibration#recalibrateRead}, using a table made by running
+ * {@link BaseRecalibrator} over the same synthetic reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BaseRecalibrationBenchmark {
+
+    private static final int NUM_PAIRS = 5000;
+    private static final int NUM_READS = 2 * NUM_PAIRS;
+
+    @Param({"false", "true"})
+    public boolean disableIndelQuals;
+
+    private File directory;
+    private List<SAMRecord> reads;
+    private byte[][] originalQuals;
+    private BaseRecalibration recalibration;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = SyntheticBenchmarkData.createTempDirectory("BaseRecalibrationBenchmark");
+        final Random random = new Random(42);
+        final SAMFileHeader header = SyntheticBenchmarkData.createHeader(1, 1000000);
+        final byte[][] bases = SyntheticBenchmarkData.createReferenceBases(header, random);
+        final File reference = SyntheticBenchmarkData.writeReference(header, bases, directory);
+        reads = SyntheticBenchmarkData.createReadPairs(header, bases, NUM_PAIRS, 101, random);
+        final File bam = SyntheticBenchmarkData.writeBam(header, reads, directory);
+        final File table = new File(directory, "recal.table");
+        new BaseRecalibrator().instanceMain(new String[]{
+                "-R", reference.getPath(),
+                "-I", bam.getPath(),
+                "--RECAL_TABLE_FILE", table.getPath(),
+                "--run_without_dbsnp_potentially_ruining_quality",
+                "--QUIET", "true",
+                "--VERBOSITY", "ERROR"
+        });
+
+        recalibration = new BaseRecalibration(table, 0, disableIndelQuals, 6, false, -1.0);
+        originalQuals = new byte[reads.size()][];
+        for (int i = 0; i < reads.size(); ++i) {
+            originalQuals[i] = reads.get(i).getBaseQualities().clone();
+        }
+    }
+
+    /** Puts back the qualities of the last invocation, so every invocation recalibrates the same ones. */
+    @Setup(Level.Invocation)
+    public void restoreQualities() {
+        for (int i = 0; i < reads.size(); ++i) {
+            reads.get(i).setBaseQualities(originalQuals[i].clone());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticBenchmarkData.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_READS)
+    public List<SAMRecord> recalibrateReads() {
+        for (final SAMRecord read : reads) {
+            recalibration.recalibrateRead(read);
+        }
+        return reads;
+    }
+}
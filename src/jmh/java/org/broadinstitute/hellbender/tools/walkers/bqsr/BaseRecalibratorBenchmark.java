@@ -0,0 +1,59 @@
+package org.broadinstitute.hellbender.tools.walkers.bqsr;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.hellbender.utils.test.SyntheticBenchmarkData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time per read of {@link BaseRecalibrator} over a synthetic BAM, which is dominated by
+ * {@link BaseRecalibrator#apply}: computing the covariates, BAQ for the reads with errors, and updating the tables.
+ * Compare with {@link org.broadinstitute.hellbender.engine.ReadWalkerBenchmark} for the traversal alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BaseRecalibratorBenchmark {
+
+    private static final int NUM_PAIRS = 10000;
+    private static final int NUM_READS = 2 * NUM_PAIRS;
+
+    private File directory;
+    private String[] args;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = SyntheticBenchmarkData.createTempDirectory("BaseRecalibratorBenchmark");
+        final Random random = new Random(42);
+        final SAMFileHeader header = SyntheticBenchmarkData.createHeader(1, 5000000);
+        final byte[][] bases = SyntheticBenchmarkData.createReferenceBases(header, random);
+        final File reference = SyntheticBenchmarkData.writeReference(header, bases, directory);
+        final File bam = SyntheticBenchmarkData.writeBam(header, SyntheticBenchmarkData.createReadPairs(header, bases, NUM_PAIRS, 101, random), directory);
+        args = new String[]{
+                "-R", reference.getPath(),
+                "-I", bam.getPath(),
+                "--RECAL_TABLE_FILE", new File(directory, "recal.table").getPath(),
+                "--run_without_dbsnp_potentially_ruining_quality",
+                "--QUIET", "true",
+                "--VERBOSITY", "ERROR"
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticBenchmarkData.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_READS)
+    public Object recalibrate() {
+        return new BaseRecalibrator().instanceMain(args);
+    }
+}
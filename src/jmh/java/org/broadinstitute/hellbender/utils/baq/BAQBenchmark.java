@@ -0,0 +1,82 @@
+package org.broadinstitute.hellbender.utils.baq;
+
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import org.broadinstitute.hellbender.utils.test.SyntheticBenchmarkData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time for {@link BAQ#hmm_glocal} to align a read to the reference around it, with the reference window padded
+ * by half the band width on each side, as {@link BAQ#calcBAQFromHMM(SAMRecord, org.broadinstitute.hellbender.engine.ReferenceDataSource)} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BAQBenchmark {
+
+    private static final int NUM_PAIRS = 500;
+    private static final int NUM_READS = 2 * NUM_PAIRS;
+
+    @Param({"101", "250"})
+    public int readLength;
+
+    private final BAQ baq = new BAQ();
+    private byte[][] refWindows;
+    private byte[][] readBases;
+    private byte[][] readQuals;
+    private int[] queryStarts;
+    private int[] queryLengths;
+    private int[] state;
+    private byte[] bq;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        final SAMFileHeader header = SyntheticBenchmarkData.createHeader(1, 1000000);
+        final byte[][] bases = SyntheticBenchmarkData.createReferenceBases(header, random);
+        final List<SAMRecord> reads = SyntheticBenchmarkData.createReadPairs(header, bases, NUM_PAIRS, readLength, random);
+
+        final int padding = baq.getBandWidth() / 2;
+        refWindows = new byte[NUM_READS][];
+        readBases = new byte[NUM_READS][];
+        readQuals = new byte[NUM_READS][];
+        queryStarts = new int[NUM_READS];
+        queryLengths = new int[NUM_READS];
+        for (int i = 0; i < NUM_READS; ++i) {
+            final SAMRecord read = reads.get(i);
+            // the soft clipped bases are left out of the alignment, as they are by default
+            final List<CigarElement> cigar = read.getCigar().getCigarElements();
+            final int leadingClip = cigar.get(0).getOperator() == CigarOperator.S ? cigar.get(0).getLength() : 0;
+            final CigarElement last = cigar.get(cigar.size() - 1);
+            final int trailingClip = cigar.size() > 1 && last.getOperator() == CigarOperator.S ? last.getLength() : 0;
+            final int start = Math.max(read.getAlignmentStart() - 1 - padding, 0);
+            final int end = Math.min(read.getAlignmentEnd() + padding, bases[0].length);
+            refWindows[i] = Arrays.copyOfRange(bases[0], start, end);
+            readBases[i] = read.getReadBases();
+            readQuals[i] = read.getBaseQualities();
+            queryStarts[i] = leadingClip;
+            queryLengths[i] = read.getReadLength() - leadingClip - trailingClip;
+        }
+        state = new int[readLength];
+        bq = new byte[readLength];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_READS)
+    public void hmmGlocal(final Blackhole blackhole) {
+        for (int i = 0; i < NUM_READS; ++i) {
+            blackhole.consume(baq.hmm_glocal(refWindows[i], readBases[i], queryStarts[i], queryLengths[i], readQuals[i], state, bq));
+        }
+    }
+}
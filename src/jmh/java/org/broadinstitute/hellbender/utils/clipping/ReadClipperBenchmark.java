@@ -0,0 +1,69 @@
+package org.broadinstitute.hellbender.utils.clipping;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import org.broadinstitute.hellbender.utils.test.SyntheticBenchmarkData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time per read of the {@link ReadClipper} operations used by the read walkers, over synthetic pairs of which
+ * some run into the adaptor and some are soft clipped.  Each operation returns a clipped copy, so the reads are not
+ * changed between invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReadClipperBenchmark {
+
+    private static final int NUM_PAIRS = 5000;
+    private static final int NUM_READS = 2 * NUM_PAIRS;
+
+    private List<SAMRecord> reads;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        final SAMFileHeader header = SyntheticBenchmarkData.createHeader(1, 1000000);
+        reads = SyntheticBenchmarkData.createReadPairs(header, SyntheticBenchmarkData.createReferenceBases(header, random), NUM_PAIRS, 101, random);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_READS)
+    public void hardClipAdaptorSequence(final Blackhole blackhole) {
+        for (final SAMRecord read : reads) {
+            blackhole.consume(ReadClipper.hardClipAdaptorSequence(read));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_READS)
+    public void hardClipSoftClippedBases(final Blackhole blackhole) {
+        for (final SAMRecord read : reads) {
+            blackhole.consume(ReadClipper.hardClipSoftClippedBases(read));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_READS)
+    public void hardClipByReferenceCoordinates(final Blackhole blackhole) {
+        for (final SAMRecord read : reads) {
+            blackhole.consume(ReadClipper.hardClipBothEndsByReferenceCoordinates(read, read.getAlignmentStart() + 9, read.getAlignmentEnd() - 9));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_READS)
+    public void clipLowQualEnds(final Blackhole blackhole) {
+        for (final SAMRecord read : reads) {
+            blackhole.consume(ReadClipper.clipLowQualEnds(read, (byte) 15, ClippingRepresentation.HARDCLIP_BASES));
+        }
+    }
+}
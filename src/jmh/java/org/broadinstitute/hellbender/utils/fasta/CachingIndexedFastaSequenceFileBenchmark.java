@@ -0,0 +1,81 @@
+package org.broadinstitute.hellbender.utils.fasta;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.hellbender.utils.test.SyntheticBenchmarkData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time per {@link CachingIndexedFastaSequenceFile#getSubsequenceAt} of a synthetic reference, for queries in
+ * coordinate order, as reads are traversed, which are mostly cache hits, and for queries at random places, which
+ * are mostly misses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CachingIndexedFastaSequenceFileBenchmark {
+
+    private static final int CONTIG_LENGTH = 10000000;
+    private static final int NUM_QUERIES = 100000;
+    // each miss reads a whole cache's worth of bases, so far fewer of these are needed for a stable time
+    private static final int NUM_RANDOM_QUERIES = 1000;
+
+    @Param({"101", "1000"})
+    public int queryLength;
+
+    private File directory;
+    private CachingIndexedFastaSequenceFile reference;
+    private String contig;
+    private int[] sortedStarts;
+    private int[] randomStarts;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = SyntheticBenchmarkData.createTempDirectory("CachingIndexedFastaSequenceFileBenchmark");
+        final Random random = new Random(42);
+        final SAMFileHeader header = SyntheticBenchmarkData.createHeader(1, CONTIG_LENGTH);
+        reference = new CachingIndexedFastaSequenceFile(SyntheticBenchmarkData.writeReference(header, SyntheticBenchmarkData.createReferenceBases(header, random), directory));
+        contig = header.getSequence(0).getSequenceName();
+
+        sortedStarts = new int[NUM_QUERIES];
+        for (int i = 0; i < NUM_QUERIES; ++i) {
+            sortedStarts[i] = 1 + random.nextInt(CONTIG_LENGTH - queryLength);
+        }
+        Arrays.sort(sortedStarts);
+        randomStarts = new int[NUM_RANDOM_QUERIES];
+        for (int i = 0; i < NUM_RANDOM_QUERIES; ++i) {
+            randomStarts[i] = 1 + random.nextInt(CONTIG_LENGTH - queryLength);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reference.close();
+        SyntheticBenchmarkData.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_QUERIES)
+    public void getSubsequenceInOrder(final Blackhole blackhole) {
+        for (final int start : sortedStarts) {
+            blackhole.consume(reference.getSubsequenceAt(contig, start, start + queryLength - 1));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_RANDOM_QUERIES)
+    public void getSubsequenceRandomly(final Blackhole blackhole) {
+        for (final int start : randomStarts) {
+            blackhole.consume(reference.getSubsequenceAt(contig, start, start + queryLength - 1));
+        }
+    }
+}
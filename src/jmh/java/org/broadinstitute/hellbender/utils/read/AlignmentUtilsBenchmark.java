@@ -0,0 +1,85 @@
+package org.broadinstitute.hellbender.utils.read;
+
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import org.broadinstitute.hellbender.utils.test.SyntheticBenchmarkData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time per read of the {@link AlignmentUtils} operations the read walkers apply to every read, over synthetic reads
+ * with a mix of plain alignments, soft clips, insertions and deletions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AlignmentUtilsBenchmark {
+
+    private static final int NUM_PAIRS = 5000;
+    private static final int NUM_READS = 2 * NUM_PAIRS;
+
+    private byte[] contigBases;
+    private List<SAMRecord> reads;
+    private final List<SAMRecord> indelReads = new ArrayList<>();
+    private final List<byte[]> indelReadRefBases = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        final SAMFileHeader header = SyntheticBenchmarkData.createHeader(1, 1000000);
+        final byte[][] bases = SyntheticBenchmarkData.createReferenceBases(header, random);
+        contigBases = bases[0];
+        reads = SyntheticBenchmarkData.createReadPairs(header, bases, NUM_PAIRS, 101, random);
+        for (final SAMRecord read : reads) {
+            if (AlignmentUtils.getNumAlignmentBlocks(read) == 2) {
+                // the reference bases spanning the read, as LeftAlignIndels gets them
+                indelReads.add(read);
+                indelReadRefBases.add(Arrays.copyOfRange(contigBases, read.getAlignmentStart() - 1, read.getAlignmentEnd()));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_READS)
+    public void getMismatchCount(final Blackhole blackhole) {
+        for (final SAMRecord read : reads) {
+            blackhole.consume(AlignmentUtils.getMismatchCount(read, contigBases, read.getAlignmentStart() - 1));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_READS)
+    public void readToAlignmentByteArray(final Blackhole blackhole) {
+        for (final SAMRecord read : reads) {
+            blackhole.consume(AlignmentUtils.readToAlignmentByteArray(read.getCigar(), read.getReadBases()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_READS)
+    public void consolidateCigar(final Blackhole blackhole) {
+        for (final SAMRecord read : reads) {
+            blackhole.consume(AlignmentUtils.consolidateCigar(read.getCigar()));
+        }
+    }
+
+    /** Timed per invocation rather than per read, over the reads with an indel, which are about a fifth of them. */
+    @Benchmark
+    public void leftAlignIndel(final Blackhole blackhole) {
+        for (int i = 0; i < indelReads.size(); ++i) {
+            final SAMRecord read = indelReads.get(i);
+            final Cigar cigar = CigarUtils.unclipCigar(read.getCigar());
+            blackhole.consume(AlignmentUtils.leftAlignIndel(cigar, indelReadRefBases.get(i), read.getReadBases(), 0, 0, true));
+        }
+    }
+}
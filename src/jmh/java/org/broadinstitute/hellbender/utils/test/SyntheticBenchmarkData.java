@@ -0,0 +1,233 @@
+package org.broadinstitute.hellbender.utils.test;
+
+import htsjdk.samtools.*;
+import htsjdk.samtools.util.IOUtil;
+import org.broadinstitute.hellbender.utils.read.ArtificialSAMUtils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic references and reads for the benchmarks, so that they do not depend on test data of a particular size.
+ * The reads are built with {@link ArtificialSAMUtils} from random places in a random reference, with a few
+ * mismatches, and mix plain alignments with soft clips, insertions and deletions.  Everything is derived from the
+ * given Random, so the same seed always gives the same data.
+ */
+public final class SyntheticBenchmarkData {
+
+    public static final String READ_GROUP_ID = "synthetic";
+
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+    private static final int FASTA_LINE_LENGTH = 60;
+    private static final double MISMATCH_RATE = 0.01;
+
+    private SyntheticBenchmarkData() {}
+
+    /**
+     * Creates a coordinate sorted header with contigs named "1", "2", ... and a single Illumina read group.
+     */
+    public static SAMFileHeader createHeader(final int numContigs, final int contigLength) {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(numContigs, 1, contigLength);
+        final SAMReadGroupRecord readGroup = new SAMReadGroupRecord(READ_GROUP_ID);
+        readGroup.setSample("sample");
+        readGroup.setLibrary("library");
+        readGroup.setPlatform("ILLUMINA");
+        header.addReadGroup(readGroup);
+        return header;
+    }
+
+    /**
+     * Creates random bases for each contig of the header, indexed by contig index.
+     */
+    public static byte[][] createReferenceBases(final SAMFileHeader header, final Random random) {
+        final List<SAMSequenceRecord> sequences = header.getSequenceDictionary().getSequences();
+        final byte[][] bases = new byte[sequences.size()][];
+        for (int i = 0; i < bases.length; ++i) {
+            bases[i] = randomBases(sequences.get(i).getSequenceLength(), random);
+        }
+        return bases;
+    }
+
+    /**
+     * Writes the reference bases to a fasta in the given directory, along with the .fai index and .dict
+     * sequence dictionary a reference needs to be used by the engine.
+     */
+    public static File writeReference(final SAMFileHeader header, final byte[][] bases, final File directory) throws IOException {
+        final File fasta = new File(directory, "synthetic.fasta");
+        final List<SAMSequenceRecord> sequences = header.getSequenceDictionary().getSequences();
+        try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(fasta));
+             final PrintWriter index = new PrintWriter(new File(fasta.getPath() + ".fai"))) {
+            long offset = 0;
+            for (int i = 0; i < sequences.size(); ++i) {
+                final byte[] name = (">" + sequences.get(i).getSequenceName() + "\n").getBytes();
+                out.write(name);
+                offset += name.length;
+                index.println(sequences.get(i).getSequenceName() + "\t" + bases[i].length + "\t" + offset + "\t" +
+                        FASTA_LINE_LENGTH + "\t" + (FASTA_LINE_LENGTH + 1));
+                for (int start = 0; start < bases[i].length; start += FASTA_LINE_LENGTH) {
+                    final int length = Math.min(FASTA_LINE_LENGTH, bases[i].length - start);
+                    out.write(bases[i], start, length);
+                    out.write('\n');
+                    offset += length + 1;
+                }
+            }
+        }
+
+        final SAMFileHeader dictionaryHeader = new SAMFileHeader();
+        dictionaryHeader.setSequenceDictionary(header.getSequenceDictionary());
+        try (final Writer dictionary = new FileWriter(new File(directory, "synthetic.dict"))) {
+            new SAMTextHeaderCodec().encode(dictionary, dictionaryHeader);
+        }
+        return fasta;
+    }
+
+    /**
+     * Creates pairs of reads from random fragments of the reference, in coordinate order.  The fragments are short
+     * enough that some of the reads run into the adaptor, and a few pairs are left on the same positions as the pair
+     * before them, so that there are some duplicates.
+     */
+    public static List<SAMRecord> createReadPairs(final SAMFileHeader header, final byte[][] reference, final int numPairs,
+                                                  final int readLength, final Random random) {
+        final List<SAMRecord> reads = new ArrayList<>(2 * numPairs);
+        int contig = 0;
+        int fragmentStart = 0;
+        int fragmentLength = 0;
+        for (int i = 0; i < numPairs; ++i) {
+            if (i == 0 || random.nextInt(20) != 0) {
+                contig = random.nextInt(reference.length);
+                fragmentLength = readLength / 2 + random.nextInt(4 * readLength);
+                fragmentStart = 1 + random.nextInt(reference[contig].length - fragmentLength - 2 * readLength);
+            }
+            final String name = "pair" + i;
+            final SAMRecord forward = createRead(header, reference, name, contig, fragmentStart, randomCigar(readLength, random), random);
+            final String reverseCigar = randomCigar(readLength, random);
+            final int reverseStart = Math.max(1, fragmentStart + fragmentLength - TextCigarCodec.decode(reverseCigar).getReferenceLength());
+            final SAMRecord reverse = createRead(header, reference, name, contig, reverseStart, reverseCigar, random);
+            setMates(forward, reverse, random.nextBoolean());
+            reads.add(forward);
+            reads.add(reverse);
+        }
+        Collections.sort(reads, new SAMRecordCoordinateComparator());
+        return reads;
+    }
+
+    /**
+     * Writes the reads to an indexed BAM in the given directory.
+     */
+    public static File writeBam(final SAMFileHeader header, final List<SAMRecord> reads, final File directory) {
+        final File bam = new File(directory, "synthetic.bam");
+        try (final SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, bam)) {
+            for (final SAMRecord read : reads) {
+                writer.addAlignment(read);
+            }
+        }
+        return bam;
+    }
+
+    /**
+     * Creates a temporary directory for the files of a benchmark, which {@link #deleteDirectory} removes again.
+     */
+    public static File createTempDirectory(final String prefix) throws IOException {
+        final File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create temporary directory " + directory);
+        }
+        return directory;
+    }
+
+    public static void deleteDirectory(final File directory) {
+        if (directory != null) IOUtil.deleteDirectoryTree(directory);
+    }
+
+    /** Creates a read aligned with the given cigar, taking its aligned bases from the reference. */
+    private static SAMRecord createRead(final SAMFileHeader header, final byte[][] reference, final String name, final int contig,
+                                        final int start, final String cigar, final Random random) {
+        final byte[] contigBases = reference[contig];
+        final ByteArrayOutputStream bases = new ByteArrayOutputStream();
+        int refOffset = start - 1;
+        for (final CigarElement element : TextCigarCodec.decode(cigar).getCigarElements()) {
+            switch (element.getOperator()) {
+                case M:
+                    for (int i = 0; i < element.getLength(); ++i, ++refOffset) {
+                        final byte base = contigBases[refOffset];
+                        bases.write(random.nextDouble() < MISMATCH_RATE ? BASES[(indexOf(base) + 1 + random.nextInt(3)) % 4] : base);
+                    }
+                    break;
+                case D:
+                    refOffset += element.getLength();
+                    break;
+                default:
+                    bases.write(randomBases(element.getLength(), random), 0, element.getLength());
+            }
+        }
+        final byte[] readBases = bases.toByteArray();
+        final byte[] quals = new byte[readBases.length];
+        for (int i = 0; i < quals.length; ++i) {
+            quals[i] = (byte) (10 + random.nextInt(31));
+        }
+
+        final SAMRecord read = ArtificialSAMUtils.createArtificialRead(header, name, contig, start, readBases, quals, cigar);
+        read.setAttribute(SAMTag.PG.name(), null);
+        read.setAttribute(SAMTag.RG.name(), READ_GROUP_ID);
+        read.setMappingQuality(60);
+        return read;
+    }
+
+    /** Returns a cigar for a read of the given length, mostly a plain match, but sometimes clipped or with an indel. */
+    private static String randomCigar(final int readLength, final Random random) {
+        final int middle = readLength / 2;
+        switch (random.nextInt(10)) {
+            case 0:
+                return "5S" + (readLength - 5) + "M";
+            case 1:
+                return middle + "M2I" + (readLength - middle - 2) + "M";
+            case 2:
+                return middle + "M3D" + (readLength - middle) + "M";
+            default:
+                return readLength + "M";
+        }
+    }
+
+    /**
+     * Makes the two reads mates of the fragment starting at the forward read and ending at the reverse one, with the
+     * forward read first of pair or second.  When the fragment is shorter than the reads, the reverse read starts first.
+     */
+    private static void setMates(final SAMRecord forward, final SAMRecord reverse, final boolean forwardIsFirst) {
+        forward.setReadPairedFlag(true);
+        reverse.setReadPairedFlag(true);
+        forward.setProperPairFlag(true);
+        reverse.setProperPairFlag(true);
+        forward.setFirstOfPairFlag(forwardIsFirst);
+        forward.setSecondOfPairFlag(!forwardIsFirst);
+        reverse.setFirstOfPairFlag(!forwardIsFirst);
+        reverse.setSecondOfPairFlag(forwardIsFirst);
+        reverse.setReadNegativeStrandFlag(true);
+        forward.setMateNegativeStrandFlag(true);
+
+        forward.setMateReferenceIndex(reverse.getReferenceIndex());
+        forward.setMateAlignmentStart(reverse.getAlignmentStart());
+        reverse.setMateReferenceIndex(forward.getReferenceIndex());
+        reverse.setMateAlignmentStart(forward.getAlignmentStart());
+        final int insertSize = reverse.getAlignmentEnd() - forward.getAlignmentStart() + 1;
+        forward.setInferredInsertSize(insertSize);
+        reverse.setInferredInsertSize(-insertSize);
+    }
+
+    private static byte[] randomBases(final int length, final Random random) {
+        final byte[] bases = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            bases[i] = BASES[random.nextInt(BASES.length)];
+        }
+        return bases;
+    }
+
+    private static int indexOf(final byte base) {
+        for (int i = 0; i < BASES.length; ++i) {
+            if (BASES[i] == base) return i;
+        }
+        return 0;
+    }
+}
@@ -21,6 +21,10 @@ import java.util.*;
  * Pass all reads you wish to collect data against to MultiLevelCollector via the acceptRecord method
  * Call finish and use addAllLevelsToFile to add all of the metrics at each accumulation level to the given file.
  *
+ * To process a file in parallel, give each part of the file (e.g. each genomic shard of an indexed BAM) its own
+ * MultiLevelCollector, set up with the same accumulation levels and read groups, then merge them all into one
+ * before calling finish on it.  This requires a PerUnitMetricCollector that implements merge.
+ *
  * Extend MultiLevelCollector and implement makeArg and makeChildCollector
  * You will most likely want to make a class that extends PerUnitMetricCollector.  This class should do the work of keeping
  * track of values for one specific "accumulation unit" (e.g. for one library, or for one read group depending on what levels
@@ -135,6 +139,21 @@ public abstract class MultiLevelCollector<METRIC_TYPE extends MetricBase, HISTOG
             collector.acceptRecord(args);
         }
 
+        /**
+         * Merge the collectors of another Distributor for the same accumulation level into the collectors of this one,
+         * taking over any collector this one doesn't have (which can only be an UNKNOWN collector)
+         */
+        public void merge(final Distributor other) {
+            for(final Map.Entry<String, PerUnitMetricCollector<METRIC_TYPE, HISTOGRAM_KEY, ARGTYPE>> entry : other.collectors.entrySet()) {
+                final PerUnitMetricCollector<METRIC_TYPE, HISTOGRAM_KEY, ARGTYPE> collector = collectors.get(entry.getKey());
+                if (collector == null) {
+                    collectors.put(entry.getKey(), entry.getValue());
+                } else {
+                    collector.merge(entry.getValue());
+                }
+            }
+        }
+
         /** Add all records to the MetricsFile passed in, this will happen in the order they were
          * found in the input ReadGroup records */
         public void addToFile(final MetricsFile<METRIC_TYPE, HISTOGRAM_KEY> file) {
@@ -179,6 +198,11 @@ public abstract class MultiLevelCollector<METRIC_TYPE extends MetricBase, HISTOG
             allReadCollector.finish();
         }
 
+        @Override
+        public void merge(final Distributor other) {
+            // the outer merge takes care of allReadCollector, which is all there is
+        }
+
         @Override
         public void addToFile(final MetricsFile<METRIC_TYPE, HISTOGRAM_KEY> file) {
             allReadCollector.addMetricsToFile(file);
@@ -287,6 +311,29 @@ public abstract class MultiLevelCollector<METRIC_TYPE extends MetricBase, HISTOG
         }
     }
 
+    /**
+     * Add everything accumulated by another MultiLevelCollector to this one, as if the records passed to the other
+     * collector had been passed to this one too.  The other collector must have been set up with the same
+     * accumulation levels and read groups, and finish must not have been called on either collector.  The other
+     * collector should not be used afterwards, as it may share PerUnitMetricCollectors with this one.
+     */
+    public void merge(final MultiLevelCollector<METRIC_TYPE, HISTOGRAM_KEY, ARGTYPE> other) {
+        if (outputOrderedDistributors.size() != other.outputOrderedDistributors.size()) {
+            throw new GATKException("Cannot merge collectors set up with different accumulation levels");
+        }
+        if (allReadCollector != null) {
+            allReadCollector.merge(other.allReadCollector);
+        }
+        for (int i = 0; i < outputOrderedDistributors.size(); ++i) {
+            final Distributor distributor = outputOrderedDistributors.get(i);
+            final Distributor otherDistributor = other.outputOrderedDistributors.get(i);
+            if (distributor.getClass() != otherDistributor.getClass()) {
+                throw new GATKException("Cannot merge collectors set up with different accumulation levels");
+            }
+            distributor.merge(otherDistributor);
+        }
+    }
+
     /**
      * Call finish on all PerUnitMetricCollectors
      */
@@ -11,6 +11,9 @@ import htsjdk.samtools.metrics.MetricsFile;
  *      2. Call collector.finish() - perform any final calculations necessary after ALL records have been accepted
  *      3. addMetricsToFile is then used to add any metric(s) or Histogram(s) to the given file
  *
+ *      The records may also be split among several collectors for the same unit (for example one per genomic shard
+ *      of a BAM file), which are then combined with merge before finish is called on the one left.
+ *
  *      BEAN    - The Metric type we are generating
  *      HKEY    - The Key used in any Histograms, use a Wildcard(?) type if there are no Histograms
  *      ARGTYPE - Collectors are often used in groups of accumulation levels, in order to avoid recalculating
@@ -28,6 +31,15 @@ public interface PerUnitMetricCollector<BEAN extends MetricBase, HKEY extends Co
     /** When all records have been collected, compute any final values needed to finish constructing metrics/Histogram */
     public void finish();
 
+    /**
+     * Adds everything accumulated by another collector for the same unit to this one, as if this collector had also
+     * been passed all the records passed to the other.  Both collectors must have been built with the same arguments,
+     * and finish must not have been called on either of them.  Merging is associative, so records may be split among
+     * any number of collectors and combined in any grouping.
+     * @param other A collector whose records are disjoint from those of this collector
+     */
+    public void merge(final PerUnitMetricCollector<BEAN, HKEY, ARGTYPE> other);
+
     /**
      * Any metrics collected will be added to the metric file provided.
      * @param file MetricsFile to which all metrics created by this collector should be added
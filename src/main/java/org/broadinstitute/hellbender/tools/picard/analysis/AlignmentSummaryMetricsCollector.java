@@ -71,6 +71,26 @@ public class AlignmentSummaryMetricsCollector extends SAMRecordAndReferenceMulti
         }
     }
 
+    /**
+     * Estimates the confidence intervals of the proportions among the given metrics, for when they were collected from
+     * a sample of the reads.  The mismatch rate is treated as a proportion of independent bases.
+     */
+    public static List<MetricEstimate> estimateMetrics(final Collection<AlignmentSummaryMetrics> metrics) {
+        final List<MetricEstimate> estimates = new ArrayList<MetricEstimate>();
+        for (final AlignmentSummaryMetrics m : metrics) {
+            final String category = m.CATEGORY.name();
+            estimates.add(MetricEstimate.ofProportion(m, category, "PCT_PF_READS", m.PF_READS, m.TOTAL_READS));
+            estimates.add(MetricEstimate.ofProportion(m, category, "PCT_ADAPTER", m.PCT_ADAPTER * m.PF_READS, m.PF_READS));
+            if (m.PF_READS_ALIGNED > 0) {
+                estimates.add(MetricEstimate.ofProportion(m, category, "PCT_PF_READS_ALIGNED", m.PF_READS_ALIGNED, m.PF_READS));
+                estimates.add(MetricEstimate.ofProportion(m, category, "PCT_READS_ALIGNED_IN_PAIRS", m.READS_ALIGNED_IN_PAIRS, m.PF_READS_ALIGNED));
+                estimates.add(MetricEstimate.ofProportion(m, category, "STRAND_BALANCE", m.STRAND_BALANCE * m.PF_READS_ALIGNED, m.PF_READS_ALIGNED));
+                estimates.add(MetricEstimate.ofProportion(m, category, "PF_MISMATCH_RATE", m.PF_MISMATCH_RATE * m.PF_ALIGNED_BASES, m.PF_ALIGNED_BASES));
+            }
+        }
+        return estimates;
+    }
+
     /** Converts the supplied adapter sequences to byte arrays in both fwd and rc. */
     private byte [][] prepareAdapterSequences() {
         final Set<String> kmers = new HashSet<String>();
@@ -170,6 +190,15 @@ public class AlignmentSummaryMetricsCollector extends SAMRecordAndReferenceMulti
             pairCollector.onComplete();
         }
 
+        @Override
+        public void merge(final PerUnitMetricCollector<AlignmentSummaryMetrics, Comparable<?>, SAMRecordAndReference> other) {
+            final GroupAlignmentSummaryMetricsPerUnitMetricCollector otherCollector = (GroupAlignmentSummaryMetricsPerUnitMetricCollector) other;
+            unpairedCollector.merge(otherCollector.unpairedCollector);
+            firstOfPairCollector.merge(otherCollector.firstOfPairCollector);
+            secondOfPairCollector.merge(otherCollector.secondOfPairCollector);
+            pairCollector.merge(otherCollector.pairCollector);
+        }
+
         @Override
         public void addMetricsToFile(final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> file) {
             if (firstOfPairCollector.getMetrics().TOTAL_READS > 0) {
@@ -228,6 +257,32 @@ public class AlignmentSummaryMetricsCollector extends SAMRecordAndReferenceMulti
                 collectQualityData(record, ref);
             }
 
+            /** Adds the counts of another collector for the same category, before onComplete is called on either. */
+            public void merge(final IndividualAlignmentSummaryMetricsCollector other) {
+                metrics.TOTAL_READS             += other.metrics.TOTAL_READS;
+                metrics.PF_READS                += other.metrics.PF_READS;
+                metrics.PF_NOISE_READS          += other.metrics.PF_NOISE_READS;
+                metrics.PF_READS_ALIGNED        += other.metrics.PF_READS_ALIGNED;
+                metrics.READS_ALIGNED_IN_PAIRS  += other.metrics.READS_ALIGNED_IN_PAIRS;
+                metrics.PF_HQ_ALIGNED_READS     += other.metrics.PF_HQ_ALIGNED_READS;
+                metrics.PF_ALIGNED_BASES        += other.metrics.PF_ALIGNED_BASES;
+                metrics.PF_HQ_ALIGNED_BASES     += other.metrics.PF_HQ_ALIGNED_BASES;
+                metrics.PF_HQ_ALIGNED_Q20_BASES += other.metrics.PF_HQ_ALIGNED_Q20_BASES;
+
+                numPositiveStrand          += other.numPositiveStrand;
+                chimeras                   += other.chimeras;
+                chimerasDenominator        += other.chimerasDenominator;
+                adapterReads               += other.adapterReads;
+                indels                     += other.indels;
+                nonBisulfiteAlignedBases   += other.nonBisulfiteAlignedBases;
+                hqNonBisulfiteAlignedBases += other.hqNonBisulfiteAlignedBases;
+
+                readLengthHistogram.addHistogram(other.readLengthHistogram);
+                mismatchHistogram.addHistogram(other.mismatchHistogram);
+                hqMismatchHistogram.addHistogram(other.hqMismatchHistogram);
+                badCycleHistogram.addHistogram(other.badCycleHistogram);
+            }
+
             public void onComplete() {
                 //summarize read data
                 if (metrics.TOTAL_READS > 0)
@@ -268,9 +323,15 @@ public class AlignmentSummaryMetricsCollector extends SAMRecordAndReferenceMulti
                     if (isNoiseRead(record)) metrics.PF_NOISE_READS++;
 
                     if (record.getReadUnmappedFlag()) {
-                        // If the read is unmapped see if it's adapter sequence
-                        final byte[] readBases = record.getReadBases();
-                        if (!(record instanceof BAMRecord)) StringUtil.toUpperCase(readBases);
+                        // If the read is unmapped see if it's adapter sequence. Upper-case a copy of the bases, since
+                        // the record may be shared with other programs running on their own threads.
+                        final byte[] readBases;
+                        if (record instanceof BAMRecord) {
+                            readBases = record.getReadBases();
+                        } else {
+                            readBases = record.getReadBases().clone();
+                            StringUtil.toUpperCase(readBases);
+                        }
 
                         if (isAdapterSequence(readBases)) {
                             this.adapterReads++;
@@ -70,6 +70,8 @@ public class CollectAlignmentSummaryMetrics extends SinglePassSamProgram {
 
     private AlignmentSummaryMetricsCollector collector;
 
+    private List<AlignmentSummaryMetrics> metrics;
+
     /** Silly method that is necessary to give unit test access to call doWork() */
     protected final Object testDoWork() { return doWork(); }
 
@@ -98,7 +100,13 @@ public class CollectAlignmentSummaryMetrics extends SinglePassSamProgram {
 
         final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> file = getMetricsFile();
         collector.addAllLevelsToFile(file);
+        metrics = file.getMetrics();
 
         file.write(OUTPUT);
     }
+
+    @Override
+    protected List<MetricEstimate> getSampledEstimates() {
+        return AlignmentSummaryMetricsCollector.estimateMetrics(metrics);
+    }
 }
@@ -13,6 +13,7 @@ import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.programgroups.QCProgramGroup;
 import org.broadinstitute.hellbender.utils.R.RScriptExecutor;
 import org.broadinstitute.hellbender.utils.io.Resource;
+import org.broadinstitute.hellbender.utils.runtime.RuntimeUtils;
 
 import java.io.File;
 import java.text.NumberFormat;
@@ -57,17 +58,25 @@ public class CollectGcBiasMetrics extends SinglePassSamProgram {
     @Argument(shortName = "BS", doc = "Whether the SAM or BAM file consists of bisulfite sequenced reads.  ")
     public boolean IS_BISULFITE_SEQUENCED = false;
 
+    @Argument(shortName = "NP", doc = "The number of threads used to compute the GC of the windows of the " +
+            "reference, which is only done once for each reference and WINDOW_SIZE as the result is saved next to " +
+            "the reference. " +
+            RuntimeUtils.NUM_PROCESSORS_DOC,
+            optional = true)
+    public int NUM_PROCESSORS = 1;
+
     // Used to keep track of the total clusters as this is kinda important for bias
     private int totalClusters = 0;
     private int totalAlignedReads = 0;
     // Histograms to track the number of windows at each GC, and the number of read starts
     // at windows of each GC. Need 101 to get from 0-100.
-    private static final int WINDOWS = 101;
+    private static final int WINDOWS = ReferenceGcProfile.GC_BINS;
     private final int[] windowsByGc = new int[WINDOWS];
     private final int[] readsByGc = new int[WINDOWS];
     private final long[] basesByGc = new long[WINDOWS];
     private final long[] errorsByGc = new long[WINDOWS];
-    private static int lastContig = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
+    private int lastContig = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
+    private ReferenceGcProfile gcProfile;
     private byte[] gc;
     private byte[] refBases;
     private String saveHeader;
@@ -77,6 +86,10 @@ public class CollectGcBiasMetrics extends SinglePassSamProgram {
         IOUtil.assertFileIsWritable(CHART_OUTPUT);
         if (SUMMARY_OUTPUT != null) IOUtil.assertFileIsWritable(SUMMARY_OUTPUT);
         saveHeader = header.getReadGroups().get(0).getLibrary();
+        if (REFERENCE_SEQUENCE != null) {
+            gcProfile = ReferenceGcProfile.load(REFERENCE_SEQUENCE, WINDOW_SIZE,
+                    RuntimeUtils.getNumProcessors(NUM_PROCESSORS));
+        }
     }
 
     ////////////////////////////////////////////////////////////////////////////
@@ -87,13 +100,16 @@ public class CollectGcBiasMetrics extends SinglePassSamProgram {
         //if read is unaligned then ref is passed in as null
         if (!rec.getReadPairedFlag() || rec.getFirstOfPairFlag()) ++this.totalClusters;
         if (ref!=null) {
-            //only do the recalculation of gc if current ref is different from last ref
+            //only load the gc and count its windows if current ref is different from last ref
             if (ref.getContigIndex() != lastContig) {
-                refBases = ref.getBases();
+                // upper case a copy, as other programs may be reading the same reference sequence on other threads
+                refBases = Arrays.copyOf(ref.getBases(), ref.length());
                 StringUtil.toUpperCase(refBases);
-                final int refLength = refBases.length;
-                final int lastWindowStart = refLength - WINDOW_SIZE;
-                gc = calculateAllGcs(refBases, windowsByGc, lastWindowStart);
+                gc = gcProfile.getGcs(ref.getName());
+                final int[] contigWindowsByGc = gcProfile.getWindowsByGc(ref.getName());
+                for (int i = 0; i < WINDOWS; ++i) {
+                    windowsByGc[i] += contigWindowsByGc[i];
+                }
                 lastContig = ref.getContigIndex();
             }
             if (!rec.getReadPairedFlag() || rec.getFirstOfPairFlag()) ++this.totalClusters;
@@ -208,53 +224,4 @@ public class CollectGcBiasMetrics extends SinglePassSamProgram {
         summary.AT_DROPOUT = atDropout;
         summary.GC_DROPOUT = gcDropout;
     }
-
-    /** Calculcate all the GC values for all windows. */
-    private byte[] calculateAllGcs(final byte[] refBases, final int[] windowsByGc, final int lastWindowStart) {
-        final int refLength = refBases.length;
-        final byte[] gc = new byte[refLength + 1];
-        final CalculateGcState state = new CalculateGcState();
-        for (int i = 1; i < lastWindowStart; ++i) {
-            final int windowEnd = i + WINDOW_SIZE;
-            final int windowGc = calculateGc(refBases, i, windowEnd, state);
-            gc[i] = (byte) windowGc;
-            if (windowGc != -1) windowsByGc[windowGc]++;
-        }
-        return gc;
-    }
-
-    /**
-     * Calculates GC as a number from 0 to 100 in the specified window. If the window includes
-     * more than five no-calls then -1 is returned.
-     */
-    private int calculateGc(final byte[] bases, final int startIndex, final int endIndex, final CalculateGcState state) {
-        if (state.init) {
-            state.init = false;
-            state.gcCount = 0;
-            state.nCount = 0;
-            for (int i = startIndex; i < endIndex; ++i) {
-                final byte base = bases[i];
-                if (base == 'G' || base == 'C') ++state.gcCount;
-                else if (base == 'N') ++state.nCount;
-            }
-        } else {
-            final byte newBase = bases[endIndex - 1];
-            if (newBase == 'G' || newBase == 'C') ++state.gcCount;
-            else if (newBase == 'N') ++state.nCount;
-
-            if (state.priorBase == 'G' || state.priorBase == 'C') --state.gcCount;
-            else if (state.priorBase == 'N') --state.nCount;
-        }
-        state.priorBase = bases[startIndex];
-        if (state.nCount > 4) return -1;
-        else return (state.gcCount * 100) / (endIndex - startIndex);
-    }
-
-    /** Keeps track of current GC calculation state. */
-    class CalculateGcState {
-        boolean init = true;
-        int nCount;
-        int gcCount;
-        byte priorBase;
-    }
 }
@@ -56,6 +56,8 @@ public class CollectInsertSizeMetrics extends SinglePassSamProgram {
     // Calculates InsertSizeMetrics for all METRIC_ACCUMULATION_LEVELs provided
     private InsertSizeMetricsCollector multiCollector;
 
+    private List<InsertSizeMetrics> metrics;
+
     /**
      * Put any custom command-line validation in an override of this method.
      * clp is initialized at this point and can be used to print usage and access argv.
@@ -96,6 +98,7 @@ public class CollectInsertSizeMetrics extends SinglePassSamProgram {
 
         final MetricsFile<InsertSizeMetrics, Integer> file = getMetricsFile();
         multiCollector.addAllLevelsToFile(file);
+        metrics = file.getMetrics();
 
         if(file.getNumHistograms() == 0) {
             //can happen if user sets MINIMUM_PCT = 0.5, etc.
@@ -114,4 +117,9 @@ public class CollectInsertSizeMetrics extends SinglePassSamProgram {
             executor.exec();
         }
     }
+
+    @Override
+    protected List<MetricEstimate> getSampledEstimates() {
+        return InsertSizeMetricsCollector.estimateMetrics(metrics);
+    }
 }
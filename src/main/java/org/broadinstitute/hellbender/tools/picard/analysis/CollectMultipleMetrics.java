@@ -88,6 +88,21 @@ public class CollectMultipleMetrics extends PicardCommandLineProgram {
     @Argument(doc = "Stop after processing N reads, mainly for debugging.")
     public int STOP_AFTER = 0;
 
+    @Argument(doc = "Run each metrics program on its own thread, so that the time taken is that of the slowest program " +
+            "rather than the sum over all of them.")
+    public boolean USE_THREADING = false;
+
+    @Argument(doc = "If greater than zero, compute the metrics from about this many reads sampled from random regions " +
+            "of the input, which must be an indexed BAM, rather than from all of it.  Confidence intervals for the main " +
+            "metrics are then written to each output file name followed by " + SinglePassSamProgram.SAMPLED_ESTIMATES_EXTENSION + ".")
+    public long SAMPLE_SIZE = 0;
+
+    @Argument(doc = "The number of random regions the reads are sampled from when SAMPLE_SIZE is set.")
+    public int SAMPLE_REGIONS = 1000;
+
+    @Argument(doc = "The random seed used to choose the regions sampled when SAMPLE_SIZE is set.")
+    public long SAMPLE_SEED = 1;
+
     @Argument(shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, doc = "Base name of output files.")
     public String OUTPUT;
 
@@ -104,6 +119,9 @@ public class CollectMultipleMetrics extends PicardCommandLineProgram {
     @Override
     protected String[] customCommandLineValidation() {
         programsToRun = new ArrayList<ProgramInterface>(PROGRAM);
+        if (SAMPLE_SIZE < 0 || SAMPLE_REGIONS < 1) {
+            return new String[]{"SAMPLE_SIZE must not be negative and SAMPLE_REGIONS must be positive."};
+        }
         return super.customCommandLineValidation();
     }
 
@@ -135,7 +153,8 @@ public class CollectMultipleMetrics extends PicardCommandLineProgram {
             programs.add(instance);
         }
 
-        SinglePassSamProgram.makeItSo(INPUT, REFERENCE_SEQUENCE, ASSUME_SORTED, STOP_AFTER, programs);
+        SinglePassSamProgram.makeItSo(INPUT, REFERENCE_SEQUENCE, ASSUME_SORTED, STOP_AFTER, programs, USE_THREADING,
+                SAMPLE_SIZE, SAMPLE_REGIONS, SAMPLE_SEED);
 
         return null;
     }
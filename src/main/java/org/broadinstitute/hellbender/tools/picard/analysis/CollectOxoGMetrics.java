@@ -1,7 +1,9 @@
 package org.broadinstitute.hellbender.tools.picard.analysis;
 
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMReadGroupRecord;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.filter.DuplicateReadFilter;
@@ -10,11 +12,12 @@ import htsjdk.samtools.filter.NotPrimaryAlignmentFilter;
 import htsjdk.samtools.filter.SamRecordFilter;
 import htsjdk.samtools.metrics.MetricBase;
 import htsjdk.samtools.metrics.MetricsFile;
-import htsjdk.samtools.reference.ReferenceSequenceFileWalker;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.Interval;
 import htsjdk.samtools.util.IntervalList;
-import htsjdk.samtools.util.ListMap;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.SamLocusIterator;
 import htsjdk.samtools.util.SequenceUtil;
@@ -24,10 +27,20 @@ import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.PicardCommandLineProgram;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.QCProgramGroup;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.BaseUtils;
+import org.broadinstitute.hellbender.utils.fasta.PrefetchingReferenceWalker;
+import org.broadinstitute.hellbender.utils.runtime.RuntimeUtils;
 import org.broadinstitute.hellbender.utils.variant.DbSnpBitSetUtil;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static htsjdk.samtools.util.CodeUtil.getOrElse;
 import static htsjdk.samtools.util.SequenceUtil.generateAllKmers;
@@ -82,12 +95,19 @@ public class CollectOxoGMetrics extends PicardCommandLineProgram {
     @Argument(doc = "The number of context bases to include on each side of the assayed G/C base.")
     public int CONTEXT_SIZE = 1;
 
-    @Argument(doc = "The optional set of sequence contexts to restrict analysis to. If not supplied all contexts are analyzed.")
+    @Argument(doc = "The optional set of sequence contexts to restrict analysis to. If not supplied all contexts are analyzed.",
+            optional = true)
     public Set<String> CONTEXTS = new HashSet<String>();
 
     @Argument(doc = "For debugging purposes: stop after visiting this many sites with at least 1X coverage.")
     public int STOP_AFTER = Integer.MAX_VALUE;
 
+    @Argument(shortName = "NP", doc = "The number of contigs accumulated in parallel, which requires an indexed " +
+            "input and an indexed reference, and is not done when STOP_AFTER is set. " +
+            RuntimeUtils.NUM_PROCESSORS_DOC,
+            optional = true)
+    public int NUM_PROCESSORS = 1;
+
     private final Log log = Log.getInstance(CollectOxoGMetrics.class);
     private static final String UNKNOWN_LIBRARY = "UnknownLibrary";
     private static final String UNKNOWN_SAMPLE = "UnknownSample";
@@ -161,6 +181,9 @@ public class CollectOxoGMetrics extends PicardCommandLineProgram {
         final int size = 1 + 2 * CONTEXT_SIZE;
         final List<String> messages = new ArrayList<String>();
 
+        if (size > BaseUtils.MAX_PACKED_BASES) {
+            messages.add("CONTEXT_SIZE cannot be more than " + (BaseUtils.MAX_PACKED_BASES - 1) / 2);
+        }
         for (final String ctx : CONTEXTS) {
             if (ctx.length() != size) {
                 messages.add("Context " + ctx + " is not " + size + " long as implied by CONTEXT_SIZE=" + CONTEXT_SIZE);
@@ -185,104 +208,173 @@ public class CollectOxoGMetrics extends PicardCommandLineProgram {
         if (INTERVALS != null) IOUtil.assertFileIsReadable(INTERVALS);
         IOUtil.assertFileIsReadable(REFERENCE_SEQUENCE);
 
-        final ReferenceSequenceFileWalker refWalker = new ReferenceSequenceFileWalker(REFERENCE_SEQUENCE);
-        final SamReader in = SamReaderFactory.makeDefault().open(INPUT);
+        final SAMFileHeader header;
+        final boolean inputIsIndexed;
+        try (final SamReader in = SamReaderFactory.makeDefault().open(INPUT)) {
+            header = in.getFileHeader();
+            inputIsIndexed = in.hasIndex();
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(INPUT, e);
+        }
 
         final Set<String> samples = new HashSet<String>();
         final Set<String> libraries = new HashSet<String>();
-        for (final SAMReadGroupRecord rec : in.getFileHeader().getReadGroups()) {
+        for (final SAMReadGroupRecord rec : header.getReadGroups()) {
             samples.add(getOrElse(rec.getSample(), UNKNOWN_SAMPLE));
             libraries.add(getOrElse(rec.getLibrary(), UNKNOWN_LIBRARY));
         }
 
-        // Setup the calculators
+        // Setup the contexts and libraries, which index the accumulated counts
         final Set<String> contexts = CONTEXTS.isEmpty() ? makeContextStrings(CONTEXT_SIZE) : CONTEXTS;
-        final ListMap<String, Calculator> calculators = new ListMap<String, Calculator>();
+        final Map<String, Integer> contextIndices = new HashMap<String, Integer>();
         for (final String context : contexts) {
-            for (final String library : libraries) {
-                calculators.add(context, new Calculator(library, context));
-            }
+            contextIndices.put(context, contextIndices.size());
         }
+        final List<String> libraryNames = new ArrayList<String>(libraries);
+        final ContextIndex contextIndex = new ContextIndex(contextIndices);
 
         // Load up dbSNP if available
         log.info("Loading dbSNP File: " + DB_SNP);
         final DbSnpBitSetUtil dbSnp;
-        if (DB_SNP != null) dbSnp = new DbSnpBitSetUtil(DB_SNP, in.getFileHeader().getSequenceDictionary());
+        if (DB_SNP != null) dbSnp = new DbSnpBitSetUtil(DB_SNP, header.getSequenceDictionary());
         else dbSnp = null;
 
-        // Make an iterator that will filter out funny looking things
-        final SamLocusIterator iterator;
-        if (INTERVALS != null) {
-            final IntervalList intervals = IntervalList.fromFile(INTERVALS);
-            iterator = new SamLocusIterator(in, intervals.uniqued(), false);
+        final IntervalList intervals = (INTERVALS == null) ? null : IntervalList.fromFile(INTERVALS).uniqued();
+
+        final Accumulator accumulator;
+        final int numThreads = RuntimeUtils.getNumProcessors(NUM_PROCESSORS);
+        if (numThreads > 1 && inputIsIndexed && STOP_AFTER == Integer.MAX_VALUE && referenceIsIndexed()) {
+            accumulator = accumulateByContig(header, intervals, contextIndex, libraryNames, dbSnp, numThreads);
         } else {
-            iterator = new SamLocusIterator(in);
+            accumulator = new Accumulator(contextIndex, libraryNames);
+            accumulateSequentially(accumulator, intervals, dbSnp);
         }
-        iterator.setEmitUncoveredLoci(false);
-        iterator.setMappingQualityScoreCutoff(MINIMUM_MAPPING_QUALITY);
 
-        final List<SamRecordFilter> filters = new ArrayList<SamRecordFilter>();
-        filters.add(new NotPrimaryAlignmentFilter());
-        filters.add(new DuplicateReadFilter());
-        if (MINIMUM_INSERT_SIZE > 0 || MAXIMUM_INSERT_SIZE > 0) {
-            filters.add(new InsertSizeFilter(MINIMUM_INSERT_SIZE, MAXIMUM_INSERT_SIZE));
+        // Report the contexts in the same order as they have always been, i.e. the order of the context names in a hash map
+        final MetricsFile<CpcgMetrics, Integer> file = getMetricsFile();
+        for (final Map.Entry<String, Integer> context : contextIndices.entrySet()) {
+            for (int library = 0; library < libraryNames.size(); ++library) {
+                final CpcgMetrics m = accumulator.finish(context.getKey(), context.getValue(), library);
+                m.SAMPLE_ALIAS = StringUtil.join(",", new ArrayList<String>(samples));
+                file.addMetric(m);
+            }
         }
-        iterator.setSamFilters(filters);
+
+        file.write(OUTPUT);
+        return null;
+    }
+
+    /**
+     * Accumulates the sites of interest in a single pass over the input, stopping after STOP_AFTER of them.
+     */
+    private void accumulateSequentially(final Accumulator accumulator, final IntervalList intervals, final DbSnpBitSetUtil dbSnp) {
+        final PrefetchingReferenceWalker refWalker = new PrefetchingReferenceWalker(REFERENCE_SEQUENCE);
+        final SamReader in = SamReaderFactory.makeDefault().open(INPUT);
+
+        // Make an iterator that will filter out funny looking things
+        final SamLocusIterator iterator = makeLocusIterator(in, intervals, false);
 
         log.info("Starting iteration.");
         long nextLogTime = 0;
         int sites = 0;
 
         for (final SamLocusIterator.LocusInfo info : iterator) {
-            // Skip dbSNP sites
-            final String chrom = info.getSequenceName();
-            final int pos = info.getPosition();
-            final int index = pos - 1;
-            if (dbSnp != null && dbSnp.isDbSnpSite(chrom, pos)) continue;
-
-            // Skip sites at the end of chromosomes 
-            final byte[] bases = refWalker.get(info.getSequenceIndex()).getBases();
-            if (pos < 3 || pos > bases.length - 3) continue;
-
-            // Skip non C-G bases
-            final byte base = StringUtil.toUpperCase(bases[index]);
-            if (base != 'C' && base != 'G') continue;
-
-            // Get the context string
-            final String context;
-            {
-                final String tmp = StringUtil.bytesToString(bases, index - CONTEXT_SIZE, 1 + (2 * CONTEXT_SIZE)).toUpperCase();
-                if (base == 'C') context = tmp;
-                else /* if G */  context = SequenceUtil.reverseComplement(tmp);
-            }
-
-            final List<Calculator> calculatorsForContext = calculators.get(context);
-            if (calculatorsForContext == null) continue; // happens if we get ambiguous bases in the reference
-            for (final Calculator calc : calculatorsForContext) calc.accept(info, base);
+            if (!accumulator.accept(info, refWalker.get(info.getSequenceIndex()).getBases(), dbSnp)) continue;
 
             // See if we need to stop
             if (++sites % 100 == 0) {
                 final long now = System.currentTimeMillis();
                 if (now > nextLogTime) {
-                    log.info("Visited " + sites + " sites of interest. Last site: " + chrom + ":" + pos);
+                    log.info("Visited " + sites + " sites of interest. Last site: " + info.getSequenceName() + ":" + info.getPosition());
                     nextLogTime = now + 60000;
                 }
             }
             if (sites >= STOP_AFTER) break;
         }
 
-        final MetricsFile<CpcgMetrics, Integer> file = getMetricsFile();
-        for (final List<Calculator> calcs : calculators.values()) {
-            for (final Calculator calc : calcs) {
-                final CpcgMetrics m = calc.finish();
-                m.SAMPLE_ALIAS = StringUtil.join(",", new ArrayList<String>(samples));
-                file.addMetric(m);
+        CloserUtil.close(in);
+        CloserUtil.close(refWalker);
+    }
+
+    /**
+     * Accumulates the sites of each contig of an indexed input on its own thread, and merges the counts.
+     */
+    private Accumulator accumulateByContig(final SAMFileHeader header, final IntervalList intervals, final ContextIndex contextIndex,
+                                           final List<String> libraryNames, final DbSnpBitSetUtil dbSnp, final int numThreads) {
+        final List<SAMSequenceRecord> contigs = header.getSequenceDictionary().getSequences();
+        log.info("Accumulating " + contigs.size() + " contigs on " + numThreads + " threads.");
+        final ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<Accumulator>> results = new ArrayList<Future<Accumulator>>(contigs.size());
+            for (final SAMSequenceRecord contig : contigs) {
+                final IntervalList contigIntervals = new IntervalList(header);
+                if (intervals == null) {
+                    contigIntervals.add(new Interval(contig.getSequenceName(), 1, contig.getSequenceLength()));
+                } else {
+                    for (final Interval interval : intervals) {
+                        if (interval.getContig().equals(contig.getSequenceName())) contigIntervals.add(interval);
+                    }
+                    if (contigIntervals.size() == 0) continue;
+                }
+                results.add(pool.submit(() -> accumulateContig(contig.getSequenceName(), contigIntervals, contextIndex, libraryNames, dbSnp)));
             }
+
+            final Accumulator accumulator = new Accumulator(contextIndex, libraryNames);
+            for (final Future<Accumulator> result : results) {
+                accumulator.merge(result.get());
+            }
+            return accumulator;
+        } catch (final InterruptedException e) {
+            throw new GATKException("Interrupted while accumulating contigs", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new GATKException("Error while accumulating contigs: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
+    }
 
-        file.write(OUTPUT);
-        CloserUtil.close(in);
-        return null;
+    private Accumulator accumulateContig(final String contig, final IntervalList contigIntervals, final ContextIndex contextIndex,
+                                         final List<String> libraryNames, final DbSnpBitSetUtil dbSnp) throws IOException {
+        final Accumulator accumulator = new Accumulator(contextIndex, libraryNames);
+        try (final SamReader in = SamReaderFactory.makeDefault().open(INPUT);
+             final ReferenceSequenceFile ref = ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE_SEQUENCE)) {
+            final byte[] bases = ref.getSequence(contig).getBases();
+            final SamLocusIterator iterator = makeLocusIterator(in, contigIntervals, true);
+            for (final SamLocusIterator.LocusInfo info : iterator) {
+                accumulator.accept(info, bases, dbSnp);
+            }
+            iterator.close();
+        }
+        return accumulator;
+    }
+
+    private SamLocusIterator makeLocusIterator(final SamReader in, final IntervalList intervals, final boolean useIndex) {
+        final SamLocusIterator iterator;
+        if (intervals != null) {
+            iterator = new SamLocusIterator(in, intervals, useIndex);
+        } else {
+            iterator = new SamLocusIterator(in);
+        }
+        iterator.setEmitUncoveredLoci(false);
+        iterator.setMappingQualityScoreCutoff(MINIMUM_MAPPING_QUALITY);
+
+        final List<SamRecordFilter> filters = new ArrayList<SamRecordFilter>();
+        filters.add(new NotPrimaryAlignmentFilter());
+        filters.add(new DuplicateReadFilter());
+        if (MINIMUM_INSERT_SIZE > 0 || MAXIMUM_INSERT_SIZE > 0) {
+            filters.add(new InsertSizeFilter(MINIMUM_INSERT_SIZE, MAXIMUM_INSERT_SIZE));
+        }
+        iterator.setSamFilters(filters);
+        return iterator;
+    }
+
+    private boolean referenceIsIndexed() {
+        try (final ReferenceSequenceFile ref = ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE_SEQUENCE)) {
+            return ref.isIndexed();
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(REFERENCE_SEQUENCE, e);
+        }
     }
 
     private Set<String> makeContextStrings(final int contextSize) {
@@ -298,73 +390,155 @@ public class CollectOxoGMetrics extends PicardCommandLineProgram {
         return contexts;
     }
 
-    /** A little class for counting alleles. */
-    private static class Counts {
-        int controlA;
-        int oxidatedA;
-        int controlC;
-        int oxidatedC;
+    /**
+     * Looks up the index of a context by its bases packed into an int, so that no strings are made for each site.
+     */
+    private static final class ContextIndex {
+        final int size;
+        private final int[] packedContexts;
+        private final int[] indices;
+
+        ContextIndex(final Map<String, Integer> contextIndices) {
+            this.size = contextIndices.size();
+            final Map<Integer, Integer> indicesByPackedContext = new TreeMap<Integer, Integer>();
+            for (final Map.Entry<String, Integer> entry : contextIndices.entrySet()) {
+                final byte[] context = StringUtil.stringToBytes(entry.getKey());
+                final int packed = BaseUtils.packBases(context, 0, context.length);
+                // contexts with ambiguous bases never match the reference
+                if (packed != -1) indicesByPackedContext.put(packed, entry.getValue());
+            }
+            this.packedContexts = new int[indicesByPackedContext.size()];
+            this.indices = new int[indicesByPackedContext.size()];
+            int i = 0;
+            for (final Map.Entry<Integer, Integer> entry : indicesByPackedContext.entrySet()) {
+                this.packedContexts[i] = entry.getKey();
+                this.indices[i++] = entry.getValue();
+            }
+        }
 
-        int total() { return controlC + oxidatedC + controlA + oxidatedA; }
+        /** The index of the context with the given packed bases, or -1 if it is not being analyzed. */
+        int indexOf(final int packedContext) {
+            final int i = Arrays.binarySearch(packedContexts, packedContext);
+            return i < 0 ? -1 : indices[i];
+        }
     }
 
+    // Categories of allele counts
+    private static final int CONTROL_A = 0;
+    private static final int OXIDATED_A = 1;
+    private static final int CONTROL_C = 2;
+    private static final int OXIDATED_C = 3;
+    private static final int CATEGORIES = 4;
+
     /**
-     * Class that calculated CpCG metrics for a specific library.
+     * Accumulates the CpCG allele counts of every context and library. The counts are kept in flat tables indexed by
+     * context and library, and broken down by reference base (C or G) and allele category.
      */
-    private class Calculator {
-        private final String library;
-        private final String context;
-
-        // Things to be accumulated
-        int sites = 0;
-        long refCcontrolA = 0;
-        long refCoxidatedA = 0;
-        long refCcontrolC = 0;
-        long refCoxidatedC = 0;
-        long refGcontrolA = 0;
-        long refGoxidatedA = 0;
-        long refGcontrolC = 0;
-        long refGoxidatedC = 0;
-
-        Calculator(final String library, final String context) {
-            this.library = library;
-            this.context = context;
+    private final class Accumulator {
+        private final ContextIndex contextIndex;
+        private final List<String> libraryNames;
+        private final Map<String, Integer> libraryIndices = new HashMap<String, Integer>();
+
+        // Things to be accumulated, by [context][library] and [context][library][reference base][category]
+        private final int[] sites;
+        private final long[] counts;
+
+        // The counts of the site being accepted, by [library][category]
+        private final int[] siteCounts;
+
+        Accumulator(final ContextIndex contextIndex, final List<String> libraryNames) {
+            this.contextIndex = contextIndex;
+            this.libraryNames = libraryNames;
+            for (final String library : libraryNames) {
+                libraryIndices.put(library, libraryIndices.size());
+            }
+            this.sites = new int[contextIndex.size * libraryNames.size()];
+            this.counts = new long[sites.length * 2 * CATEGORIES];
+            this.siteCounts = new int[libraryNames.size() * CATEGORIES];
         }
 
-        void accept(final SamLocusIterator.LocusInfo info, final byte refBase) {
-            final Counts counts = computeAlleleFraction(info, refBase);
-
-            if (counts.total() > 0) {
-                // Things calculated on all sites with coverage
-                this.sites++;
-                if (refBase == 'C') {
-                    this.refCcontrolA += counts.controlA;
-                    this.refCoxidatedA += counts.oxidatedA;
-                    this.refCcontrolC += counts.controlC;
-                    this.refCoxidatedC += counts.oxidatedC;
-                } else if (refBase == 'G') {
-                    this.refGcontrolA += counts.controlA;
-                    this.refGoxidatedA += counts.oxidatedA;
-                    this.refGcontrolC += counts.controlC;
-                    this.refGoxidatedC += counts.oxidatedC;
-                } else {
-                    throw new IllegalStateException("Reference bases other than G and C not supported.");
+        /**
+         * Counts the alleles of a site if it is one of interest.
+         *
+         * @param bases the bases of the contig of the site
+         * @return true if the site is of interest
+         */
+        boolean accept(final SamLocusIterator.LocusInfo info, final byte[] bases, final DbSnpBitSetUtil dbSnp) {
+            // Skip dbSNP sites
+            final int pos = info.getPosition();
+            final int index = pos - 1;
+            if (dbSnp != null && dbSnp.isDbSnpSite(info.getSequenceName(), pos)) return false;
+
+            // Skip sites at the end of chromosomes, including those too close to the end to have a full context
+            if (pos < 3 || pos > bases.length - 3) return false;
+            if (index < CONTEXT_SIZE || index + CONTEXT_SIZE >= bases.length) return false;
+
+            // Skip non C-G bases
+            final byte base = StringUtil.toUpperCase(bases[index]);
+            if (base != 'C' && base != 'G') return false;
+
+            // Get the context
+            final int contextLength = 1 + (2 * CONTEXT_SIZE);
+            final int packedContext = BaseUtils.packBases(bases, index - CONTEXT_SIZE, contextLength);
+            if (packedContext == -1) return false; // happens if we get ambiguous bases in the reference
+            final int context = contextIndex.indexOf((base == 'C') ? packedContext : BaseUtils.reverseComplementPackedBases(packedContext, contextLength));
+            if (context == -1) return false;
+
+            computeAlleleFractions(info, base);
+
+            final int refOffset = (base == 'C') ? 0 : CATEGORIES;
+            for (int library = 0; library < libraryNames.size(); ++library) {
+                final int siteOffset = library * CATEGORIES;
+                final int total = siteCounts[siteOffset + CONTROL_A] + siteCounts[siteOffset + OXIDATED_A] +
+                        siteCounts[siteOffset + CONTROL_C] + siteCounts[siteOffset + OXIDATED_C];
+                if (total > 0) {
+                    // Things calculated on all sites with coverage
+                    final int cell = context * libraryNames.size() + library;
+                    this.sites[cell]++;
+                    for (int category = 0; category < CATEGORIES; ++category) {
+                        this.counts[cell * 2 * CATEGORIES + refOffset + category] += siteCounts[siteOffset + category];
+                    }
                 }
             }
+            return true;
         }
 
-        CpcgMetrics finish() {
+        /**
+         * Adds the counts of another accumulator of the same contexts and libraries.
+         */
+        void merge(final Accumulator other) {
+            for (int i = 0; i < sites.length; ++i) {
+                this.sites[i] += other.sites[i];
+            }
+            for (int i = 0; i < counts.length; ++i) {
+                this.counts[i] += other.counts[i];
+            }
+        }
+
+        CpcgMetrics finish(final String contextName, final int context, final int library) {
+            final int cell = context * libraryNames.size() + library;
+            final int refC = cell * 2 * CATEGORIES;
+            final int refG = refC + CATEGORIES;
+            final long refCcontrolA = this.counts[refC + CONTROL_A];
+            final long refCoxidatedA = this.counts[refC + OXIDATED_A];
+            final long refCcontrolC = this.counts[refC + CONTROL_C];
+            final long refCoxidatedC = this.counts[refC + OXIDATED_C];
+            final long refGcontrolA = this.counts[refG + CONTROL_A];
+            final long refGoxidatedA = this.counts[refG + OXIDATED_A];
+            final long refGcontrolC = this.counts[refG + CONTROL_C];
+            final long refGoxidatedC = this.counts[refG + OXIDATED_C];
+
             final CpcgMetrics m = new CpcgMetrics();
-            m.LIBRARY = this.library;
-            m.CONTEXT = this.context;
-            m.TOTAL_SITES = this.sites;
-            m.TOTAL_BASES = this.refCcontrolC + this.refCoxidatedC + this.refCcontrolA + this.refCoxidatedA +
-                    this.refGcontrolC + this.refGoxidatedC + this.refGcontrolA + this.refGoxidatedA;
-            m.REF_OXO_BASES = this.refCoxidatedC + refGoxidatedC;
-            m.REF_NONOXO_BASES = this.refCcontrolC + this.refGcontrolC;
+            m.LIBRARY = this.libraryNames.get(library);
+            m.CONTEXT = contextName;
+            m.TOTAL_SITES = this.sites[cell];
+            m.TOTAL_BASES = refCcontrolC + refCoxidatedC + refCcontrolA + refCoxidatedA +
+                    refGcontrolC + refGoxidatedC + refGcontrolA + refGoxidatedA;
+            m.REF_OXO_BASES = refCoxidatedC + refGoxidatedC;
+            m.REF_NONOXO_BASES = refCcontrolC + refGcontrolC;
             m.REF_TOTAL_BASES = m.REF_OXO_BASES + m.REF_NONOXO_BASES;
-            m.ALT_NONOXO_BASES = this.refCcontrolA + this.refGcontrolA;
-            m.ALT_OXO_BASES = this.refCoxidatedA + this.refGoxidatedA;
+            m.ALT_NONOXO_BASES = refCcontrolA + refGcontrolA;
+            m.ALT_OXO_BASES = refCoxidatedA + refGoxidatedA;
 
             /**
              * Why do we calculate the oxo error rate using oxidatedA - controlA you ask?  We know that all the
@@ -377,10 +551,10 @@ public class CollectOxoGMetrics extends PicardCommandLineProgram {
             m.OXIDATION_Q = -10 * log10(m.OXIDATION_ERROR_RATE);
 
             /** Now look for things that have a reference base bias! */
-            m.C_REF_REF_BASES = this.refCcontrolC + this.refCoxidatedC;
-            m.G_REF_REF_BASES = this.refGcontrolC + this.refGoxidatedC;
-            m.C_REF_ALT_BASES = this.refCcontrolA + this.refCoxidatedA;
-            m.G_REF_ALT_BASES = this.refGcontrolA + this.refGoxidatedA;
+            m.C_REF_REF_BASES = refCcontrolC + refCoxidatedC;
+            m.G_REF_REF_BASES = refGcontrolC + refGoxidatedC;
+            m.C_REF_ALT_BASES = refCcontrolA + refCoxidatedA;
+            m.G_REF_ALT_BASES = refGcontrolA + refGoxidatedA;
 
             final double cRefErrorRate = m.C_REF_ALT_BASES / (double) (m.C_REF_ALT_BASES + m.C_REF_REF_BASES);
             final double gRefErrorRate = m.G_REF_ALT_BASES / (double) (m.G_REF_ALT_BASES + m.G_REF_REF_BASES);
@@ -394,10 +568,10 @@ public class CollectOxoGMetrics extends PicardCommandLineProgram {
         }
 
         /**
-         *
+         * Counts the alleles of every library at a site into siteCounts.
          */
-        private Counts computeAlleleFraction(final SamLocusIterator.LocusInfo info, final byte refBase) {
-            final Counts counts = new Counts();
+        private void computeAlleleFractions(final SamLocusIterator.LocusInfo info, final byte refBase) {
+            Arrays.fill(siteCounts, 0);
             final byte altBase = (refBase == 'C') ? (byte) 'A' : (byte) 'T';
 
             for (final SamLocusIterator.RecordAndOffset rec : info.getRecordAndPositions()) {
@@ -412,9 +586,11 @@ public class CollectOxoGMetrics extends PicardCommandLineProgram {
                     qual = rec.getBaseQuality();
                 }
 
-                // Skip if below qual, or if library isn't a match
+                // Skip if below qual, or if the library isn't one in the header
                 if (qual < MINIMUM_QUALITY_SCORE) continue;
-                if (!this.library.equals(getOrElse(samrec.getReadGroup().getLibrary(), UNKNOWN_LIBRARY))) continue;
+                final Integer library = libraryIndices.get(getOrElse(samrec.getReadGroup().getLibrary(), UNKNOWN_LIBRARY));
+                if (library == null) continue;
+                final int offset = library * CATEGORIES;
 
                 // Get the read base, and get it in "as read" orientation
                 final byte base = rec.getReadBase();
@@ -428,19 +604,17 @@ public class CollectOxoGMetrics extends PicardCommandLineProgram {
                 // But if the substitution is from other causes the distribution of A/T across R1/R2 will be
                 // random.
                 if (base == refBase) {
-                    if (baseAsRead == 'G' && read == 1) ++counts.oxidatedC;
-                    else if (baseAsRead == 'G' && read == 2) ++counts.controlC;
-                    else if (baseAsRead == 'C' && read == 1) ++counts.controlC;
-                    else if (baseAsRead == 'C' && read == 2) ++counts.oxidatedC;
+                    if (baseAsRead == 'G' && read == 1) ++siteCounts[offset + OXIDATED_C];
+                    else if (baseAsRead == 'G' && read == 2) ++siteCounts[offset + CONTROL_C];
+                    else if (baseAsRead == 'C' && read == 1) ++siteCounts[offset + CONTROL_C];
+                    else if (baseAsRead == 'C' && read == 2) ++siteCounts[offset + OXIDATED_C];
                 } else if (base == altBase) {
-                    if (baseAsRead == 'T' && read == 1) ++counts.oxidatedA;
-                    else if (baseAsRead == 'T' && read == 2) ++counts.controlA;
-                    else if (baseAsRead == 'A' && read == 1) ++counts.controlA;
-                    else if (baseAsRead == 'A' && read == 2) ++counts.oxidatedA;
+                    if (baseAsRead == 'T' && read == 1) ++siteCounts[offset + OXIDATED_A];
+                    else if (baseAsRead == 'T' && read == 2) ++siteCounts[offset + CONTROL_A];
+                    else if (baseAsRead == 'A' && read == 1) ++siteCounts[offset + CONTROL_A];
+                    else if (baseAsRead == 'A' && read == 2) ++siteCounts[offset + OXIDATED_A];
                 }
             }
-
-            return counts;
         }
     }
 }
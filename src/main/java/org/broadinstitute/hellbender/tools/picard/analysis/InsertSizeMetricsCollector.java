@@ -29,6 +29,11 @@ public class InsertSizeMetricsCollector extends MultiLevelCollector<InsertSizeMe
     //Also, when calculating mean and stdev, only bins <= HISTOGRAM_WIDTH will be included.
     private Integer HistogramWidth;
 
+    // The standard deviation of a normal distribution is ~1.4826 * MAD, and the standard error of the median of a
+    // sample from it is ~1.2533 times that of the mean.
+    private static final double MAD_TO_STANDARD_DEVIATION = 1.4826;
+    private static final double MEDIAN_EFFICIENCY_FACTOR = 1.2533;
+
     public InsertSizeMetricsCollector(final Set<MetricAccumulationLevel> accumulationLevels, final List<SAMReadGroupRecord> samRgRecords,
                                       final double minimumPct, final Integer HistogramWidth, final double deviations) {
         this.minimumPct = minimumPct;
@@ -53,6 +58,22 @@ public class InsertSizeMetricsCollector extends MultiLevelCollector<InsertSizeMe
         return new PerUnitInsertSizeMetricsCollector(sample, library, readGroup);
     }
 
+    /**
+     * Estimates the confidence intervals of the mean and median insert sizes among the given metrics, for when they
+     * were collected from a sample of the reads.  The standard error of the median is that of a normal distribution
+     * whose standard deviation is estimated from the median absolute deviation.
+     */
+    public static List<MetricEstimate> estimateMetrics(final Collection<InsertSizeMetrics> metrics) {
+        final List<MetricEstimate> estimates = new ArrayList<MetricEstimate>();
+        for (final InsertSizeMetrics m : metrics) {
+            final String category = m.PAIR_ORIENTATION.name();
+            estimates.add(MetricEstimate.ofMean(m, category, "MEAN_INSERT_SIZE", m.MEAN_INSERT_SIZE, m.STANDARD_DEVIATION, m.READ_PAIRS));
+            estimates.add(MetricEstimate.ofMean(m, category, "MEDIAN_INSERT_SIZE", m.MEDIAN_INSERT_SIZE,
+                    MEDIAN_EFFICIENCY_FACTOR * MAD_TO_STANDARD_DEVIATION * m.MEDIAN_ABSOLUTE_DEVIATION, m.READ_PAIRS));
+        }
+        return estimates;
+    }
+
     @Override
     public void acceptRecord(final SAMRecord record, final ReferenceSequence refSeq) {
         if (!record.getReadPairedFlag() ||
@@ -104,6 +125,14 @@ public class InsertSizeMetricsCollector extends MultiLevelCollector<InsertSizeMe
 
         public void finish() { }
 
+        @Override
+        public void merge(final PerUnitMetricCollector<InsertSizeMetrics, Integer, InsertSizeCollectorArgs> other) {
+            final PerUnitInsertSizeMetricsCollector otherCollector = (PerUnitInsertSizeMetricsCollector) other;
+            for (final Map.Entry<SamPairUtil.PairOrientation, Histogram<Integer>> entry : Histograms.entrySet()) {
+                entry.getValue().addHistogram(otherCollector.Histograms.get(entry.getKey()));
+            }
+        }
+
         public double getTotalInserts() {
             return totalInserts;
         }
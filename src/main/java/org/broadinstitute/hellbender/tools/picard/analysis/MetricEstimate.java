@@ -0,0 +1,91 @@
+package org.broadinstitute.hellbender.tools.picard.analysis;
+
+import org.broadinstitute.hellbender.metrics.MultiLevelMetrics;
+
+/**
+ * An estimate of one of the metrics of a SinglePassSamProgram, made from a sample of the reads rather than all of
+ * them (see SinglePassSamProgram.SAMPLE_SIZE), along with its standard error and a 95% confidence interval.
+ * Estimates are written to a file with the name of the metrics file followed by ".sampled_estimates".
+ * <p/>
+ * The reads are sampled in runs from random regions of the genome, and reads near each other are more alike than
+ * reads picked one at a time would be, so the intervals are somewhat narrower than they should be when only a few
+ * regions are sampled.
+ */
+public class MetricEstimate extends MultiLevelMetrics {
+
+    /** The z-score of a two sided 95% confidence interval. */
+    private static final double Z_95 = 1.959964;
+
+    /** The category of the metric, such as the CATEGORY of an alignment summary metric, if it has one. */
+    public String CATEGORY;
+
+    /** The name of the estimated metric, as it appears in the metrics file. */
+    public String METRIC;
+
+    /** The value of the metric computed from the sampled reads. */
+    public double ESTIMATE;
+
+    /** The standard error of ESTIMATE. */
+    public double STANDARD_ERROR;
+
+    /** The lower bound of the 95% confidence interval of the metric. */
+    public double LOWER_BOUND;
+
+    /** The upper bound of the 95% confidence interval of the metric. */
+    public double UPPER_BOUND;
+
+    /** The number of sampled observations (reads, pairs or bases) the estimate was made from. */
+    public long OBSERVATIONS;
+
+    /**
+     * Estimates a proportion, with a Wilson score interval, which unlike the normal approximation stays within [0, 1]
+     * for the very small or very large proportions common among read metrics.
+     *
+     * @param unit the metrics the proportion is one of, from which the sample, library and read group are copied
+     */
+    public static MetricEstimate ofProportion(final MultiLevelMetrics unit, final String category, final String metric,
+                                              final double successes, final long trials) {
+        final MetricEstimate estimate = create(unit, category, metric, trials);
+        if (trials > 0) {
+            final double p = successes / trials;
+            final double z2 = Z_95 * Z_95;
+            final double center = (p + z2 / (2 * trials)) / (1 + z2 / trials);
+            final double halfWidth = Z_95 * Math.sqrt(p * (1 - p) / trials + z2 / (4.0 * trials * trials)) / (1 + z2 / trials);
+            estimate.ESTIMATE = p;
+            estimate.STANDARD_ERROR = Math.sqrt(p * (1 - p) / trials);
+            estimate.LOWER_BOUND = Math.max(0, center - halfWidth);
+            estimate.UPPER_BOUND = Math.min(1, center + halfWidth);
+        }
+        return estimate;
+    }
+
+    /**
+     * Estimates a mean, with the normal approximation to its sampling distribution.
+     *
+     * @param unit the metrics the mean is one of, from which the sample, library and read group are copied
+     */
+    public static MetricEstimate ofMean(final MultiLevelMetrics unit, final String category, final String metric,
+                                        final double mean, final double standardDeviation, final long observations) {
+        final MetricEstimate estimate = create(unit, category, metric, observations);
+        if (observations > 0) {
+            estimate.ESTIMATE = mean;
+            estimate.STANDARD_ERROR = standardDeviation / Math.sqrt(observations);
+            estimate.LOWER_BOUND = mean - Z_95 * estimate.STANDARD_ERROR;
+            estimate.UPPER_BOUND = mean + Z_95 * estimate.STANDARD_ERROR;
+        }
+        return estimate;
+    }
+
+    private static MetricEstimate create(final MultiLevelMetrics unit, final String category, final String metric, final long observations) {
+        final MetricEstimate estimate = new MetricEstimate();
+        if (unit != null) {
+            estimate.SAMPLE = unit.SAMPLE;
+            estimate.LIBRARY = unit.LIBRARY;
+            estimate.READ_GROUP = unit.READ_GROUP;
+        }
+        estimate.CATEGORY = category;
+        estimate.METRIC = metric;
+        estimate.OBSERVATIONS = observations;
+        return estimate;
+    }
+}
@@ -115,4 +115,26 @@ public class QualityScoreDistribution extends SinglePassSamProgram {
             executor.exec();
         }
     }
+
+    /** Estimates the mean base quality and the fractions of bases of Q20 and Q30 or more. */
+    @Override
+    protected List<MetricEstimate> getSampledEstimates() {
+        long bases = 0, q20Bases = 0, q30Bases = 0;
+        double sum = 0, sumOfSquares = 0;
+        for (int q = 0; q < qCounts.length; ++q) {
+            bases += qCounts[q];
+            sum += (double) q * qCounts[q];
+            sumOfSquares += (double) q * q * qCounts[q];
+            if (q >= 20) q20Bases += qCounts[q];
+            if (q >= 30) q30Bases += qCounts[q];
+        }
+        if (bases == 0) return Collections.emptyList();
+
+        final double mean = sum / bases;
+        final double standardDeviation = Math.sqrt(Math.max(0, sumOfSquares / bases - mean * mean));
+        return Arrays.asList(
+                MetricEstimate.ofMean(null, null, "MEAN_QUALITY", mean, standardDeviation, bases),
+                MetricEstimate.ofProportion(null, null, "PCT_Q20_BASES", q20Bases, bases),
+                MetricEstimate.ofProportion(null, null, "PCT_Q30_BASES", q30Bases, bases));
+    }
 }
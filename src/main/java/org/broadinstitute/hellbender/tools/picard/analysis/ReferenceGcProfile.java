@@ -0,0 +1,365 @@
+package org.broadinstitute.hellbender.tools.picard.analysis;
+
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.StringUtil;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * The GC content of every window of a given size along each sequence of a reference, as used by
+ * {@link CollectGcBiasMetrics}.
+ * <p/>
+ * Computing the GC of every window takes a pass over the whole reference, so the profile is computed once per reference
+ * and window size and stored in a sidecar file next to the reference (or in the temporary directory if the reference
+ * directory is not writable), which is reused for as long as it is newer than the reference.  The sequences are
+ * profiled in parallel when the reference is indexed.
+ * <p/>
+ * The sidecar holds, for each sequence, the number of windows at each GC and the GC of every window, delta encoded and
+ * deflated.  Only the counts are kept in memory; the GCs of a sequence are read when they are asked for.  Sequences
+ * are looked up by name, so that a profile cannot be applied to the wrong sequence of a reference.
+ */
+public final class ReferenceGcProfile {
+
+    /** The number of GC bins, to get from 0-100. */
+    public static final int GC_BINS = 101;
+
+    private static final int MAGIC = 0x47435746; // "GCWF"
+    private static final int VERSION = 1;
+
+    private static final Log log = Log.getInstance(ReferenceGcProfile.class);
+
+    private final File file;
+    private final int windowSize;
+    private final Map<String, SequenceProfile> sequences;
+
+    private ReferenceGcProfile(final File file, final int windowSize, final Map<String, SequenceProfile> sequences) {
+        this.file = file;
+        this.windowSize = windowSize;
+        this.sequences = sequences;
+    }
+
+    /**
+     * Loads the profile of a reference from its sidecar file, first computing it if there is no up to date sidecar.
+     *
+     * @param reference  a FASTA file
+     * @param windowSize the size of the windows
+     * @param numThreads the number of sequences to profile at once if the profile must be computed
+     */
+    public static ReferenceGcProfile load(final File reference, final int windowSize, final int numThreads) {
+        final File sidecar = getSidecarFile(reference, windowSize);
+        if (sidecar.exists() && sidecar.lastModified() >= reference.lastModified()) {
+            return read(sidecar, windowSize);
+        }
+
+        final File output;
+        if (sidecar.getAbsoluteFile().getParentFile().canWrite()) {
+            output = sidecar;
+        } else {
+            try {
+                output = File.createTempFile(sidecar.getName() + ".", ".tmp");
+                output.deleteOnExit();
+            } catch (final IOException e) {
+                throw new UserException.CouldNotCreateOutputFile("GC profile of " + reference, e);
+            }
+            log.warn("Cannot write the GC profile next to " + reference + ", so it will be computed again next time");
+        }
+        write(reference, windowSize, numThreads, output);
+        return read(output, windowSize);
+    }
+
+    /** The sidecar file in which the profile of a reference is stored. */
+    public static File getSidecarFile(final File reference, final int windowSize) {
+        return new File(reference.getPath() + ".gc" + windowSize);
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /** The number of windows at each GC (from 0 to 100) in a sequence. */
+    public int[] getWindowsByGc(final String sequenceName) {
+        return getSequence(sequenceName).windowsByGc;
+    }
+
+    /**
+     * The GCs of the windows of a sequence: entry i is the GC (from 0 to 100) of the bases at 0-based offsets i to
+     * i + windowSize - 1, or -1 if more than four of them are no-calls.  There is one entry more than there are bases,
+     * and the entries for which there is no such window are 0.
+     */
+    public byte[] getGcs(final String sequenceName) {
+        final SequenceProfile sequence = getSequence(sequenceName);
+        final byte[] compressed = new byte[sequence.compressedLength];
+        try (final RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(sequence.offset);
+            in.readFully(compressed);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+
+        final byte[] gcs = new byte[sequence.length + 1];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int inflated = 0;
+            while (inflated < gcs.length && !inflater.finished()) {
+                inflated += inflater.inflate(gcs, inflated, gcs.length - inflated);
+            }
+            if (inflated != gcs.length) {
+                throw new UserException.MalformedFile(file, "truncated GC profile of sequence " + sequence.name);
+            }
+        } catch (final DataFormatException e) {
+            throw new UserException.MalformedFile(file, "corrupt GC profile of sequence " + sequence.name, e);
+        } finally {
+            inflater.end();
+        }
+
+        for (int i = 1; i < gcs.length; ++i) {
+            gcs[i] += gcs[i - 1];
+        }
+        return gcs;
+    }
+
+    private SequenceProfile getSequence(final String sequenceName) {
+        final SequenceProfile sequence = sequences.get(sequenceName);
+        if (sequence == null) {
+            throw new UserException.MalformedFile(file, "the GC profile has no sequence " + sequenceName);
+        }
+        return sequence;
+    }
+
+    /**
+     * Calculates the GC of all the windows of a sequence, and counts the windows at each GC.
+     *
+     * @param bases       the upper cased bases of the sequence
+     * @param windowSize  the size of the windows
+     * @param windowsByGc incremented for each window that has fewer than five no-calls
+     * @return the GCs of the windows, as described in {@link #getGcs}
+     */
+    public static byte[] calculateAllGcs(final byte[] bases, final int windowSize, final int[] windowsByGc) {
+        final int refLength = bases.length;
+        final int lastWindowStart = refLength - windowSize;
+        final byte[] gc = new byte[refLength + 1];
+        final CalculateGcState state = new CalculateGcState();
+        for (int i = 1; i < lastWindowStart; ++i) {
+            final int windowEnd = i + windowSize;
+            final int windowGc = calculateGc(bases, i, windowEnd, state);
+            gc[i] = (byte) windowGc;
+            if (windowGc != -1) windowsByGc[windowGc]++;
+        }
+        return gc;
+    }
+
+    /**
+     * Calculates GC as a number from 0 to 100 in the specified window. If the window includes
+     * more than five no-calls then -1 is returned.
+     */
+    private static int calculateGc(final byte[] bases, final int startIndex, final int endIndex, final CalculateGcState state) {
+        if (state.init) {
+            state.init = false;
+            state.gcCount = 0;
+            state.nCount = 0;
+            for (int i = startIndex; i < endIndex; ++i) {
+                final byte base = bases[i];
+                if (base == 'G' || base == 'C') ++state.gcCount;
+                else if (base == 'N') ++state.nCount;
+            }
+        } else {
+            final byte newBase = bases[endIndex - 1];
+            if (newBase == 'G' || newBase == 'C') ++state.gcCount;
+            else if (newBase == 'N') ++state.nCount;
+
+            if (state.priorBase == 'G' || state.priorBase == 'C') --state.gcCount;
+            else if (state.priorBase == 'N') --state.nCount;
+        }
+        state.priorBase = bases[startIndex];
+        if (state.nCount > 4) return -1;
+        else return (state.gcCount * 100) / (endIndex - startIndex);
+    }
+
+    /** Keeps track of current GC calculation state. */
+    private static final class CalculateGcState {
+        boolean init = true;
+        int nCount;
+        int gcCount;
+        byte priorBase;
+    }
+
+    /** Computes the profile of every sequence of a reference and writes it to a file. */
+    private static void write(final File reference, final int windowSize, final int numThreads, final File output) {
+        log.info("Computing the GC of windows of " + windowSize + " bases in " + reference);
+        // a temporary file of its own, so that concurrent runs computing the same profile do not write over each other
+        final File tmp;
+        try {
+            tmp = File.createTempFile(output.getName() + ".", ".tmp", output.getAbsoluteFile().getParentFile());
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(output, e);
+        }
+        final ReferenceSequenceFile ref = ReferenceSequenceFileFactory.getReferenceSequenceFile(reference);
+        final boolean parallel = numThreads > 1 && ref.isIndexed() && ref.getSequenceDictionary() != null;
+        final ExecutorService pool = parallel ? Executors.newFixedThreadPool(numThreads) : null;
+        final List<ReferenceSequenceFile> openReaders = Collections.synchronizedList(new ArrayList<>());
+        boolean succeeded = false;
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(windowSize);
+
+            if (pool == null) {
+                for (ReferenceSequence sequence = ref.nextSequence(); sequence != null; sequence = ref.nextSequence()) {
+                    profileSequence(sequence, windowSize).write(out);
+                }
+            } else {
+                // each thread reads its sequences through its own reader
+                final ThreadLocal<ReferenceSequenceFile> readers = ThreadLocal.withInitial(() -> {
+                    final ReferenceSequenceFile reader = ReferenceSequenceFileFactory.getReferenceSequenceFile(reference);
+                    openReaders.add(reader);
+                    return reader;
+                });
+                final List<Future<ComputedProfile>> profiles = new ArrayList<>();
+                for (final SAMSequenceRecord sequence : ref.getSequenceDictionary().getSequences()) {
+                    profiles.add(pool.submit(() -> profileSequence(readers.get().getSequence(sequence.getSequenceName()), windowSize)));
+                }
+                for (final Future<ComputedProfile> profile : profiles) {
+                    profile.get().write(out);
+                }
+            }
+            out.writeInt(-1);
+            succeeded = true;
+        } catch (final IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(tmp, e);
+        } catch (final InterruptedException e) {
+            throw new GATKException("Interrupted while computing the GC profile of " + reference, e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new GATKException("Error while computing the GC profile of " + reference + ": " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            if (pool != null) pool.shutdownNow();
+            CloserUtil.close(ref);
+            CloserUtil.close(new ArrayList<>(openReaders));
+            if (!succeeded) tmp.delete();
+        }
+
+        // move the profile into place at once so that concurrent runs never see part of one
+        try {
+            Files.move(tmp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            tmp.delete();
+            throw new UserException.CouldNotCreateOutputFile(output, e);
+        }
+    }
+
+    private static ComputedProfile profileSequence(final ReferenceSequence sequence, final int windowSize) throws IOException {
+        final byte[] bases = sequence.getBases();
+        StringUtil.toUpperCase(bases);
+
+        final int[] windowsByGc = new int[GC_BINS];
+        final byte[] gcs = calculateAllGcs(bases, windowSize, windowsByGc);
+        for (int i = gcs.length - 1; i > 0; --i) {
+            gcs[i] -= gcs[i - 1];
+        }
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (final DeflaterOutputStream out = new DeflaterOutputStream(compressed)) {
+            out.write(gcs);
+        }
+        return new ComputedProfile(sequence.getName(), bases.length, windowsByGc, compressed.toByteArray());
+    }
+
+    /** Reads the counts of a profile and the positions of the GCs of each sequence. */
+    private static ReferenceGcProfile read(final File file, final int windowSize) {
+        final Map<String, SequenceProfile> sequences = new LinkedHashMap<>();
+        try (final RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new UserException.MalformedFile(file, "not a GC profile");
+            }
+            if (in.readInt() != windowSize) {
+                throw new UserException.MalformedFile(file, "the GC profile is not for windows of " + windowSize + " bases");
+            }
+
+            for (int length = in.readInt(); length != -1; length = in.readInt()) {
+                final String name = in.readUTF();
+                final int[] windowsByGc = new int[GC_BINS];
+                for (int i = 0; i < GC_BINS; ++i) {
+                    windowsByGc[i] = in.readInt();
+                }
+                final int compressedLength = in.readInt();
+                if (sequences.put(name, new SequenceProfile(name, length, windowsByGc, in.getFilePointer(), compressedLength)) != null) {
+                    throw new UserException.MalformedFile(file, "the GC profile has sequence " + name + " more than once");
+                }
+                in.seek(in.getFilePointer() + compressedLength);
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(file, e);
+        }
+        return new ReferenceGcProfile(file, windowSize, sequences);
+    }
+
+    /** Where the GCs of a sequence are in the profile file. */
+    private static final class SequenceProfile {
+        final String name;
+        final int length;
+        final int[] windowsByGc;
+        final long offset;
+        final int compressedLength;
+
+        SequenceProfile(final String name, final int length, final int[] windowsByGc, final long offset, final int compressedLength) {
+            this.name = name;
+            this.length = length;
+            this.windowsByGc = windowsByGc;
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+        }
+    }
+
+    /** The profile of a sequence, waiting to be written. */
+    private static final class ComputedProfile {
+        final String name;
+        final int length;
+        final int[] windowsByGc;
+        final byte[] compressedGcs;
+
+        ComputedProfile(final String name, final int length, final int[] windowsByGc, final byte[] compressedGcs) {
+            this.name = name;
+            this.length = length;
+            this.windowsByGc = windowsByGc;
+            this.compressedGcs = compressedGcs;
+        }
+
+        void write(final DataOutputStream out) throws IOException {
+            out.writeInt(length);
+            out.writeUTF(name);
+            for (final int windows : windowsByGc) {
+                out.writeInt(windows);
+            }
+            out.writeInt(compressedGcs.length);
+            out.write(compressedGcs);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.broadinstitute.hellbender.tools.picard.analysis;
+
+import htsjdk.samtools.AbstractBAMFileIndex;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.BAMIndexMetaData;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import org.broadinstitute.hellbender.exceptions.UserException;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Iterates over a sample of the records of an indexed BAM without reading the rest of it.
+ * <p/>
+ * Random positions are drawn across the genome, weighted by the number of records the index says each contig holds,
+ * and from each position the records that start there or after it are read until the share of the sample taken from
+ * each position is reached or the next position is.  When there are too few records before the next position the
+ * rest of the share is taken from the next region.  Only the BGZF blocks that the index points to for those regions
+ * are read.  Positions drawn among the unplaced unmapped reads take their share from the start of those.
+ * <p/>
+ * The records are returned in coordinate order, with the unplaced unmapped reads last, as they would be by the reader.
+ */
+final class SampledReadIterator implements CloseableIterator<SAMRecord> {
+
+    private final SamReader reader;
+    private final SAMSequenceDictionary dictionary;
+    private final long readsPerRegion;
+    private final Iterator<Region> regions;
+
+    private Region region = null;
+    private SAMRecordIterator regionRecords = null;
+    private long readsInRegion = 0;
+    private long regionQuota = 0;
+    private SAMRecord next = null;
+
+    /**
+     * @param sampleSize the number of records to sample, which may be exceeded by less than the number per region
+     * @param numRegions the number of random positions to sample the records from
+     */
+    SampledReadIterator(final SamReader reader, final File input, final long sampleSize, final int numRegions, final long seed) {
+        if (numRegions < 1) throw new IllegalArgumentException("Cannot sample from " + numRegions + " regions");
+        if (!reader.hasIndex()) {
+            throw new UserException("Sampling reads requires an indexed BAM, but " + input.getAbsolutePath() + " has no index");
+        }
+        this.reader = reader;
+        this.dictionary = reader.getFileHeader().getSequenceDictionary();
+        this.readsPerRegion = (sampleSize + numRegions - 1) / numRegions;
+        this.regions = drawRegions(reader.indexing().getIndex(), numRegions, new Random(seed)).iterator();
+        advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public SAMRecord next() {
+        if (next == null) throw new NoSuchElementException();
+        final SAMRecord rec = next;
+        advance();
+        return rec;
+    }
+
+    @Override
+    public void close() {
+        CloserUtil.close(regionRecords);
+        regionRecords = null;
+        next = null;
+    }
+
+    /** Finds the next record to return, moving on to the next region when the current one is used up. */
+    private void advance() {
+        next = null;
+        while (next == null) {
+            if (regionRecords != null && readsInRegion < regionQuota && regionRecords.hasNext()) {
+                final SAMRecord rec = regionRecords.next();
+                if (region.contigIndex != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX && rec.getAlignmentStart() < region.start) {
+                    // overlaps the region, but is counted with the region it starts in
+                    continue;
+                }
+                readsInRegion++;
+                next = rec;
+            } else {
+                CloserUtil.close(regionRecords);
+                regionRecords = null;
+                if (!regions.hasNext()) return;
+
+                // whatever the last region fell short by is carried over to this one
+                region = regions.next();
+                regionQuota = regionQuota - readsInRegion + region.draws * readsPerRegion;
+                readsInRegion = 0;
+                if (region.contigIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+                    regionRecords = reader.queryUnmapped();
+                } else {
+                    regionRecords = reader.query(dictionary.getSequence(region.contigIndex).getSequenceName(), region.start, region.end, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the regions to sample, in the order their records appear in the BAM.  Each region runs from a random
+     * position to just before the next one drawn on the same contig.
+     */
+    private List<Region> drawRegions(final BAMIndex index, final int numRegions, final Random random) {
+        // the number of records on each contig, and last of all the unplaced unmapped ones
+        final long[] cumulativeCounts = new long[dictionary.size() + 1];
+        long total = 0;
+        for (int i = 0; i < dictionary.size(); ++i) {
+            final BAMIndexMetaData metaData = index.getMetaData(i);
+            if (metaData != null) total += metaData.getAlignedRecordCount() + metaData.getUnalignedRecordCount();
+            cumulativeCounts[i] = total;
+        }
+        if (index instanceof AbstractBAMFileIndex) {
+            final Long noCoordinateCount = ((AbstractBAMFileIndex) index).getNoCoordinateCount();
+            if (noCoordinateCount != null) total += noCoordinateCount;
+        }
+        cumulativeCounts[dictionary.size()] = total;
+        if (total == 0) return Collections.emptyList();
+
+        final TreeMap<Region, Region> drawn = new TreeMap<>();
+        for (int i = 0; i < numRegions; ++i) {
+            final long target = (long) (random.nextDouble() * total);
+            // find the first bin whose cumulative count exceeds the target
+            int bin = 0;
+            for (int high = cumulativeCounts.length - 1; bin < high; ) {
+                final int middle = (bin + high) >>> 1;
+                if (cumulativeCounts[middle] > target) high = middle;
+                else bin = middle + 1;
+            }
+
+            final Region region;
+            if (bin == dictionary.size()) {
+                region = new Region(SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX, 0);
+            } else {
+                region = new Region(bin, 1 + random.nextInt(dictionary.getSequence(bin).getSequenceLength()));
+            }
+            final Region existing = drawn.putIfAbsent(region, region);
+            if (existing != null) existing.draws++;
+        }
+
+        final List<Region> regions = new ArrayList<>(drawn.keySet());
+        for (int i = 0; i < regions.size(); ++i) {
+            final Region region = regions.get(i);
+            if (region.contigIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) continue;
+            final boolean nextOnSameContig = i + 1 < regions.size() && regions.get(i + 1).contigIndex == region.contigIndex;
+            region.end = nextOnSameContig ? regions.get(i + 1).start - 1 : dictionary.getSequence(region.contigIndex).getSequenceLength();
+        }
+        return regions;
+    }
+
+    /** A region to sample, which may have been drawn more than once. */
+    private static final class Region implements Comparable<Region> {
+        final int contigIndex;
+        final int start;
+        int end = 0;
+        int draws = 1;
+
+        Region(final int contigIndex, final int start) {
+            this.contigIndex = contigIndex;
+            this.start = start;
+        }
+
+        @Override
+        public int compareTo(final Region other) {
+            // unplaced unmapped reads sort last
+            final int contigComparison = Integer.compareUnsigned(contigIndex, other.contigIndex);
+            return contigComparison != 0 ? contigComparison : Integer.compare(start, other.start);
+        }
+    }
+}
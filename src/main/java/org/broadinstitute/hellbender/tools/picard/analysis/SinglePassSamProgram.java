@@ -5,8 +5,9 @@ import htsjdk.samtools.SAMFileHeader.SortOrder;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.reference.ReferenceSequence;
-import htsjdk.samtools.reference.ReferenceSequenceFileWalker;
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
@@ -15,10 +16,14 @@ import htsjdk.samtools.util.SequenceUtil;
 import org.broadinstitute.hellbender.cmdline.Argument;
 import org.broadinstitute.hellbender.cmdline.PicardCommandLineProgram;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.fasta.PrefetchingReferenceWalker;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Super class that is designed to provide some consistent structure between subclasses that
@@ -41,6 +46,29 @@ public abstract class SinglePassSamProgram extends PicardCommandLineProgram {
     @Argument(doc = "Stop after processing N reads, mainly for debugging.")
     public long STOP_AFTER = 0;
 
+    @Argument(doc = "Run the metrics collection on a background thread, so that it overlaps with reading the input.")
+    public boolean USE_THREADING = false;
+
+    @Argument(doc = "If greater than zero, compute the metrics from about this many reads sampled from random regions " +
+            "of the input, which must be an indexed BAM, rather than from all of it.  Confidence intervals for the main " +
+            "metrics are then written to the output file name followed by " + SAMPLED_ESTIMATES_EXTENSION + ".")
+    public long SAMPLE_SIZE = 0;
+
+    @Argument(doc = "The number of random regions the reads are sampled from when SAMPLE_SIZE is set.")
+    public int SAMPLE_REGIONS = 1000;
+
+    @Argument(doc = "The random seed used to choose the regions sampled when SAMPLE_SIZE is set.")
+    public long SAMPLE_SEED = 1;
+
+    /** Appended to the name of a program's output file to name the file the estimates of a sampled run are written to. */
+    public static final String SAMPLED_ESTIMATES_EXTENSION = ".sampled_estimates";
+
+    /** The number of records handed to the program threads at a time when USE_THREADING is true. */
+    private static final int PIPELINE_BATCH_SIZE = 1000;
+
+    /** The number of batches each program thread may fall behind the reading thread. */
+    private static final int PIPELINE_BATCHES = 16;
+
     private static final Log log = Log.getInstance(SinglePassSamProgram.class);
 
     /**
@@ -49,27 +77,73 @@ public abstract class SinglePassSamProgram extends PicardCommandLineProgram {
      */
     @Override
     protected final Object doWork() {
-        makeItSo(INPUT, REFERENCE_SEQUENCE, ASSUME_SORTED, STOP_AFTER, Arrays.asList(this));
+        makeItSo(INPUT, REFERENCE_SEQUENCE, ASSUME_SORTED, STOP_AFTER, Arrays.asList(this), USE_THREADING,
+                SAMPLE_SIZE, SAMPLE_REGIONS, SAMPLE_SEED);
         return null;
     }
 
+    @Override
+    protected String[] customCommandLineValidation() {
+        if (SAMPLE_SIZE < 0 || SAMPLE_REGIONS < 1) {
+            return new String[]{"SAMPLE_SIZE must not be negative and SAMPLE_REGIONS must be positive."};
+        }
+        return super.customCommandLineValidation();
+    }
+
     public static void makeItSo(final File input,
                                 final File referenceSequence,
                                 final boolean assumeSorted,
                                 final long stopAfter,
                                 final Collection<SinglePassSamProgram> programs) {
+        makeItSo(input, referenceSequence, assumeSorted, stopAfter, programs, false);
+    }
+
+    public static void makeItSo(final File input,
+                                final File referenceSequence,
+                                final boolean assumeSorted,
+                                final long stopAfter,
+                                final Collection<SinglePassSamProgram> programs,
+                                final boolean useThreading) {
+        makeItSo(input, referenceSequence, assumeSorted, stopAfter, programs, useThreading, 0, 1, 0);
+    }
+
+    /**
+     * Makes one pass over the input, handing every record to each of the programs.
+     *
+     * @param useThreading if true each program runs on its own thread, so that the time taken is that of the slowest
+     *                     program rather than the sum over all of them.  The programs must then only read the records
+     *                     and reference sequences they are given.
+     * @param sampleSize if greater than zero, only about this many reads are read, from sampleRegions random regions
+     *                   of the input, which must be an indexed BAM.  The programs' estimates of their metrics are then
+     *                   written next to their output, see {@link #getSampledEstimates()}.
+     */
+    public static void makeItSo(final File input,
+                                final File referenceSequence,
+                                final boolean assumeSorted,
+                                final long stopAfter,
+                                final Collection<SinglePassSamProgram> programs,
+                                final boolean useThreading,
+                                final long sampleSize,
+                                final int sampleRegions,
+                                final long sampleSeed) {
 
         // Setup the standard inputs
         IOUtil.assertFileIsReadable(input);
-        final SamReader in = SamReaderFactory.makeDefault().referenceSequence(referenceSequence).open(input);
+        final SamReaderFactory readerFactory = SamReaderFactory.makeDefault().referenceSequence(referenceSequence);
+        if (useThreading) {
+            // records are shared between the program threads, so don't leave any lazy decoding to them
+            readerFactory.enable(SamReaderFactory.Option.EAGERLY_DECODE);
+        }
+        final SamReader in = readerFactory.open(input);
 
-        // Optionally load up the reference sequence and double check sequence dictionaries
-        final ReferenceSequenceFileWalker walker;
+        // Optionally load up the reference sequence and double check sequence dictionaries.  The next contig is read
+        // ahead while the reads of the current one are processed, and every program shares the same sequences.
+        final PrefetchingReferenceWalker walker;
         if (referenceSequence == null) {
             walker = null;
         } else {
             IOUtil.assertFileIsReadable(referenceSequence);
-            walker = new ReferenceSequenceFileWalker(referenceSequence);
+            walker = new PrefetchingReferenceWalker(referenceSequence);
 
             if (!in.getFileHeader().getSequenceDictionary().isEmpty()) {
                 SequenceUtil.assertSequenceDictionariesEqual(in.getFileHeader().getSequenceDictionary(),
@@ -100,39 +174,190 @@ public abstract class SinglePassSamProgram extends PicardCommandLineProgram {
 
 
         final ProgressLogger progress = new ProgressLogger(log);
+        final ProgramPipeline pipeline = useThreading ? new ProgramPipeline(programs) : null;
+
+        final CloseableIterator<SAMRecord> records;
+        if (sampleSize > 0) {
+            records = new SampledReadIterator(in, input, sampleSize, sampleRegions, sampleSeed);
+        } else {
+            records = in.iterator();
+        }
+
+        try {
+            while (records.hasNext()) {
+                final SAMRecord rec = records.next();
+                final ReferenceSequence ref;
+                if (walker == null || rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+                    ref = null;
+                } else {
+                    ref = walker.get(rec.getReferenceIndex());
+                }
+
+                if (pipeline != null) {
+                    pipeline.add(rec, ref);
+                } else {
+                    for (final SinglePassSamProgram program : programs) {
+                        program.acceptRead(rec, ref);
+                    }
+                }
+
+                progress.record(rec);
+
+                // See if we need to terminate early?
+                if (stopAfter > 0 && progress.getCount() >= stopAfter) {
+                    break;
+                }
+
+                // And see if we're into the unmapped reads at the end
+                if (!anyUseNoRefReads && rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+                    break;
+                }
+            }
+
+            if (pipeline != null) {
+                pipeline.close();
+            }
+        } finally {
+            if (pipeline != null) {
+                // only does anything if the loop above failed before the pipeline was closed
+                pipeline.shutdown();
+            }
+            CloserUtil.close(records);
+            CloserUtil.close(in);
+            CloserUtil.close(walker);
+        }
 
-        for (final SAMRecord rec : in) {
-            final ReferenceSequence ref;
-            if (walker == null || rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
-                ref = null;
-            } else {
-                ref = walker.get(rec.getReferenceIndex());
+        if (sampleSize > 0) {
+            log.info("Sampled " + progress.getCount() + " reads from " + sampleRegions + " random regions of " + input.getAbsolutePath());
+        }
+
+        for (final SinglePassSamProgram program : programs) {
+            program.finish();
+            if (sampleSize > 0) {
+                final List<MetricEstimate> estimates = program.getSampledEstimates();
+                if (!estimates.isEmpty()) {
+                    final MetricsFile<MetricEstimate, Integer> file = program.getMetricsFile();
+                    for (final MetricEstimate estimate : estimates) {
+                        file.addMetric(estimate);
+                    }
+                    file.write(new File(program.OUTPUT.getPath() + SAMPLED_ESTIMATES_EXTENSION));
+                }
             }
+        }
+    }
+
+    /**
+     * Runs each program on its own thread.  Records and their reference sequences are handed to all the programs in
+     * batches, through a bounded queue per program, so that reading blocks whenever any program falls too far behind.
+     */
+    private static final class ProgramPipeline {
+        private final List<BlockingQueue<RecordBatch>> queues = new ArrayList<>();
+        private final List<Thread> threads = new ArrayList<>();
 
+        /** Put on every queue after the last batch, compared by identity. */
+        private final RecordBatch endOfInput = new RecordBatch();
+
+        private volatile Throwable error = null;
+        private RecordBatch batch = new RecordBatch();
+
+        ProgramPipeline(final Collection<SinglePassSamProgram> programs) {
             for (final SinglePassSamProgram program : programs) {
-                program.acceptRead(rec, ref);
+                final BlockingQueue<RecordBatch> queue = new ArrayBlockingQueue<>(PIPELINE_BATCHES);
+                final Thread thread = new Thread(() -> consume(program, queue), "SinglePassSamProgram-" + program.getClass().getSimpleName());
+                thread.setDaemon(true);
+                thread.start();
+                queues.add(queue);
+                threads.add(thread);
+            }
+        }
+
+        /** Queues a record for all the programs, rethrowing the error of any program that has failed. */
+        void add(final SAMRecord rec, final ReferenceSequence ref) {
+            batch.records.add(rec);
+            batch.refs.add(ref);
+            if (batch.records.size() >= PIPELINE_BATCH_SIZE) {
+                publish(batch);
+                batch = new RecordBatch();
+                if (error != null) {
+                    close();
+                }
             }
+        }
 
-            progress.record(rec);
+        /** Hands the last records to the programs and waits for them to be processed. */
+        void close() {
+            if (!batch.records.isEmpty()) {
+                publish(batch);
+                batch = new RecordBatch();
+            }
+            publish(endOfInput);
+            for (final Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (final InterruptedException e) {
+                    throw new GATKException("Interrupted while waiting for " + thread.getName(), e);
+                }
+            }
 
-            // See if we need to terminate early?
-            if (stopAfter > 0 && progress.getCount() >= stopAfter) {
-                break;
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw new GATKException("Error while collecting metrics: " + error.getMessage(), error);
             }
+        }
 
-            // And see if we're into the unmapped reads at the end
-            if (!anyUseNoRefReads && rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
-                break;
+        /** Stops the program threads without waiting for the records already queued to be processed. */
+        void shutdown() {
+            for (final Thread thread : threads) {
+                thread.interrupt();
+            }
+            for (final Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
             }
         }
 
-        CloserUtil.close(in);
+        private void publish(final RecordBatch recordBatch) {
+            try {
+                for (final BlockingQueue<RecordBatch> queue : queues) {
+                    queue.put(recordBatch);
+                }
+            } catch (final InterruptedException e) {
+                throw new GATKException("Interrupted while handing records to the metrics programs", e);
+            }
+        }
 
-        for (final SinglePassSamProgram program : programs) {
-            program.finish();
+        /** Body of a program thread.  After any program fails the remaining batches are drained without processing them. */
+        private void consume(final SinglePassSamProgram program, final BlockingQueue<RecordBatch> queue) {
+            try {
+                for (RecordBatch recordBatch = queue.take(); recordBatch != endOfInput; recordBatch = queue.take()) {
+                    if (error != null) continue;
+                    try {
+                        for (int i = 0; i < recordBatch.records.size(); ++i) {
+                            program.acceptRead(recordBatch.records.get(i), recordBatch.refs.get(i));
+                        }
+                    } catch (final Throwable t) {
+                        error = t;
+                    }
+                }
+            } catch (final InterruptedException e) {
+                error = e;
+            }
         }
     }
 
+    /** Records and the reference sequences they were aligned to. */
+    private static final class RecordBatch {
+        final List<SAMRecord> records = new ArrayList<>(PIPELINE_BATCH_SIZE);
+        final List<ReferenceSequence> refs = new ArrayList<>(PIPELINE_BATCH_SIZE);
+    }
+
     /** Can be overriden and set to false if the section of unmapped reads at the end of the file isn't needed. */
     protected boolean usesNoRefReads() { return true; }
 
@@ -149,4 +374,10 @@ public abstract class SinglePassSamProgram extends PicardCommandLineProgram {
     /** Should be implemented by subclasses to do one-time finalization work. */
     protected abstract void finish();
 
+    /**
+     * Can be overridden to report the standard errors and confidence intervals of the main metrics written by
+     * finish(), when they were computed from a sample of the reads.  Called after finish(), only for sampled runs.
+     */
+    protected List<MetricEstimate> getSampledEstimates() { return Collections.emptyList(); }
+
 }
@@ -7,6 +7,7 @@ import htsjdk.samtools.util.StringUtil;
 
 import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.tools.picard.analysis.artifacts.SequencingArtifactMetrics.*;
+import org.broadinstitute.hellbender.utils.BaseUtils;
 
 import java.util.*;
 
@@ -26,6 +27,12 @@ class ArtifactCounter {
     private final ContextAccumulator halfContextAccumulator;
     private final ContextAccumulator zeroContextAccumulator;
 
+    // the index in each accumulator of the contexts derived from a full context, by its packed bases
+    private final int[] fullContextIndices;
+    private final int[] leadingContextIndices;
+    private final int[] trailingContextIndices;
+    private final int[] zeroContextIndices;
+
     private final List<PreAdapterSummaryMetrics> preAdapterSummaryMetricsList;
     private final List<PreAdapterDetailMetrics> preAdapterDetailMetricsList;
     private final List<BaitBiasSummaryMetrics> baitBiasSummaryMetricsList;
@@ -68,6 +75,20 @@ class ArtifactCounter {
         this.halfContextAccumulator = new ContextAccumulator(halfContexts, expectedTandemReads);
         this.zeroContextAccumulator = new ContextAccumulator(zeroContexts, expectedTandemReads);
 
+        // look up the contexts by their packed bases, so that they don't have to be turned into strings to be counted
+        final int numFullContexts = 1 << (2 * (2 * contextSize + 1));
+        this.fullContextIndices = new int[numFullContexts];
+        this.leadingContextIndices = new int[numFullContexts];
+        this.trailingContextIndices = new int[numFullContexts];
+        this.zeroContextIndices = new int[numFullContexts];
+        for (final String context : this.fullContexts) {
+            final int packedContext = BaseUtils.packBases(StringUtil.stringToBytes(context), 0, context.length());
+            this.fullContextIndices[packedContext] = this.fullContextAccumulator.indexOf(context);
+            this.leadingContextIndices[packedContext] = this.halfContextAccumulator.indexOf(this.leadingContextMap.get(context));
+            this.trailingContextIndices[packedContext] = this.halfContextAccumulator.indexOf(this.trailingContextMap.get(context));
+            this.zeroContextIndices[packedContext] = this.zeroContextAccumulator.indexOf(this.zeroContextMap.get(context));
+        }
+
         // these will get populated in the final step
         preAdapterSummaryMetricsList = new ArrayList<PreAdapterSummaryMetrics>();
         preAdapterDetailMetricsList = new ArrayList<PreAdapterDetailMetrics>();
@@ -76,13 +97,30 @@ class ArtifactCounter {
     }
 
     /**
-     * Add a record to all the accumulators.
+     * Add a base call to all the accumulators.
+     *
+     * @param packedRefContext the reference context of the call, packed by {@link BaseUtils#packBases}
+     * @param calledBaseIndex the base index of the call
+     * @param orientation the orientation of the read, from {@link ContextAccumulator#orientationOf(SAMRecord)}
+     */
+    public void countRecord(final int packedRefContext, final int calledBaseIndex, final int orientation) {
+        this.fullContextAccumulator.countRecord(this.fullContextIndices[packedRefContext], calledBaseIndex, orientation);
+        this.halfContextAccumulator.countRecord(this.leadingContextIndices[packedRefContext], calledBaseIndex, orientation);
+        this.halfContextAccumulator.countRecord(this.trailingContextIndices[packedRefContext], calledBaseIndex, orientation);
+        this.zeroContextAccumulator.countRecord(this.zeroContextIndices[packedRefContext], calledBaseIndex, orientation);
+    }
+
+    /**
+     * Add the counts of another counter for the same library and context size, e.g. one that counted a different
+     * subset of the records.
      */
-    public void countRecord(final String refContext, final char calledBase, final SAMRecord rec) {
-        this.fullContextAccumulator.countRecord(refContext, calledBase, rec);
-        this.halfContextAccumulator.countRecord(this.leadingContextMap.get(refContext), calledBase, rec);
-        this.halfContextAccumulator.countRecord(this.trailingContextMap.get(refContext), calledBase, rec);
-        this.zeroContextAccumulator.countRecord(this.zeroContextMap.get(refContext), calledBase, rec);
+    public void merge(final ArtifactCounter other) {
+        if (!this.library.equals(other.library)) {
+            throw new GATKException("Cannot merge the counts of library " + other.library + " into those of " + this.library);
+        }
+        this.fullContextAccumulator.merge(other.fullContextAccumulator);
+        this.halfContextAccumulator.merge(other.halfContextAccumulator);
+        this.zeroContextAccumulator.merge(other.zeroContextAccumulator);
     }
 
     /**
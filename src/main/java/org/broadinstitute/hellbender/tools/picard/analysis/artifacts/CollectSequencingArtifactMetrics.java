@@ -21,14 +21,20 @@ import htsjdk.samtools.util.StringUtil;
 import org.broadinstitute.hellbender.cmdline.Argument;
 import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.programgroups.QCProgramGroup;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.tools.picard.analysis.SinglePassSamProgram;
+import org.broadinstitute.hellbender.utils.BaseUtils;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static htsjdk.samtools.util.CodeUtil.getOrElse;
 import org.broadinstitute.hellbender.tools.picard.analysis.artifacts.SequencingArtifactMetrics.*;
+import org.broadinstitute.hellbender.utils.runtime.RuntimeUtils;
 import org.broadinstitute.hellbender.utils.variant.DbSnpBitSetUtil;
 
 /**
@@ -91,21 +97,42 @@ public class CollectSequencingArtifactMetrics extends SinglePassSamProgram {
                   "However, the summary metrics output will still take all contexts into consideration.", optional = true)
     public Set<String> CONTEXTS_TO_PRINT = new HashSet<String>();
 
+    @Argument(shortName = "NP", doc = "The number of threads counting the bases of the reads. " +
+            RuntimeUtils.NUM_PROCESSORS_DOC,
+            optional = true)
+    public int NUM_PROCESSORS = 1;
+
     private static final String UNKNOWN_LIBRARY = "UnknownLibrary";
     private static final String UNKNOWN_SAMPLE = "UnknownSample";
 
+    /** The largest CONTEXT_SIZE whose contexts can be packed into an int. */
+    private static final int MAX_CONTEXT_SIZE = (BaseUtils.MAX_PACKED_BASES - 1) / 2;
+
+    /** The number of records handed to a counting thread at a time when NUM_PROCESSORS > 1. */
+    private static final int BATCH_SIZE = 1000;
+
     private File preAdapterSummaryOut;
     private File preAdapterDetailsOut;
     private File baitBiasSummaryOut;
     private File baitBiasDetailsOut;
 
-    private IntervalListReferenceSequenceMask intervalMask;
+    private IntervalList intervals;
     private DbSnpBitSetUtil dbSnpMask;
     private SamRecordFilter recordFilter;
 
     private final Set<String> samples = new HashSet<String>();
     private final Set<String> libraries = new HashSet<String>();
-    private final Map<String, ArtifactCounter> artifactCounters = new HashMap<String, ArtifactCounter>();
+    private String sampleAlias;
+
+    // the counts of each thread, which are merged into those of the first when all the records have been seen
+    private final List<CountingShard> shards = Collections.synchronizedList(new ArrayList<CountingShard>());
+
+    // only used when NUM_PROCESSORS > 1
+    private ThreadPoolExecutor executor;
+    private ThreadLocal<CountingShard> threadShard;
+    private List<SAMRecord> batch;
+    private List<ReferenceSequence> batchRefs;
+    private volatile Throwable error;
 
     @Override
     protected String[] customCommandLineValidation() {
@@ -113,6 +140,7 @@ public class CollectSequencingArtifactMetrics extends SinglePassSamProgram {
 
         final int contextFullLength = 2 * CONTEXT_SIZE + 1;
         if (CONTEXT_SIZE < 0) messages.add("CONTEXT_SIZE cannot be negative");
+        if (CONTEXT_SIZE > MAX_CONTEXT_SIZE) messages.add("CONTEXT_SIZE cannot be more than " + MAX_CONTEXT_SIZE);
         for (final String context : CONTEXTS_TO_PRINT) {
             if (context.length() != contextFullLength) {
                 messages.add("Context " + context + " is not the length implied by CONTEXT_SIZE: " + contextFullLength);
@@ -125,6 +153,9 @@ public class CollectSequencingArtifactMetrics extends SinglePassSamProgram {
             messages.add("MAXIMUM_INSERT_SIZE cannot be less than MINIMUM_INSERT_SIZE unless set to 0");
         }
 
+        final String[] superMessages = super.customCommandLineValidation();
+        if (superMessages != null) messages.addAll(Arrays.asList(superMessages));
+
         return messages.isEmpty() ? null : messages.toArray(new String[messages.size()]);
     }
 
@@ -147,7 +178,7 @@ public class CollectSequencingArtifactMetrics extends SinglePassSamProgram {
 
         if (INTERVALS != null) {
             IOUtil.assertFileIsReadable(INTERVALS);
-            intervalMask = new IntervalListReferenceSequenceMask(IntervalList.fromFile(INTERVALS).uniqued());
+            intervals = IntervalList.fromFile(INTERVALS).uniqued();
         }
 
         if (DB_SNP != null) {
@@ -169,9 +200,27 @@ public class CollectSequencingArtifactMetrics extends SinglePassSamProgram {
         recordFilter = new AggregateFilter(filters);
 
         // set up the artifact counters
-        final String sampleAlias = StringUtil.join(",", new ArrayList<String>(samples));
-        for (final String library : libraries) {
-            artifactCounters.put(library, new ArtifactCounter(sampleAlias, library, CONTEXT_SIZE, TANDEM_READS));
+        sampleAlias = StringUtil.join(",", new ArrayList<String>(samples));
+        shards.add(new CountingShard());
+
+        final int numThreads = RuntimeUtils.getNumProcessors(NUM_PROCESSORS);
+        if (numThreads > 1) {
+            // each thread counts into its own shard. the reading thread counts batches itself when the others fall behind.
+            executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(2 * numThreads),
+                    runnable -> {
+                        final Thread thread = new Thread(runnable, "CollectSequencingArtifactMetrics-counter");
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            threadShard = ThreadLocal.withInitial(() -> {
+                final CountingShard shard = new CountingShard();
+                shards.add(shard);
+                return shard;
+            });
+            batch = new ArrayList<SAMRecord>(BATCH_SIZE);
+            batchRefs = new ArrayList<ReferenceSequence>(BATCH_SIZE);
         }
     }
 
@@ -180,57 +229,38 @@ public class CollectSequencingArtifactMetrics extends SinglePassSamProgram {
         // see if the whole read should be skipped
         if (recordFilter.filterOut(rec)) return;
 
-        // check read group + library
-        final String library = (rec.getReadGroup() == null) ? UNKNOWN_LIBRARY : getOrElse(rec.getReadGroup().getLibrary(), UNKNOWN_LIBRARY);
-        if (!libraries.contains(library)) {
-            // should never happen if SAM is valid
-            throw new UserException("Record contains library that is missing from header: " + library);
-        }
-
-        // iterate over aligned positions
-        for (final AlignmentBlock block : rec.getAlignmentBlocks()) {
-            for (int offset = 0; offset < block.getLength(); offset++) {
-                // remember, these are 1-based!
-                final int readPos = block.getReadStart() + offset;
-                final int refPos = block.getReferenceStart() + offset;
-
-                /**
-                 * Skip regions outside of intervals.
-                 *
-                 * NB: IntervalListReferenceSequenceMask.get() has side-effects which assume
-                 * that successive ReferenceSequence's passed to this method will be in-order
-                 * (e.g. it will break if you call acceptRead() with chr1, then chr2, then chr1
-                 * again). So this only works if the underlying iteration is coordinate-sorted.
-                 */
-                if (intervalMask != null && !intervalMask.get(ref.getContigIndex(), refPos)) continue;
-
-                // skip dbSNP sites
-                if (dbSnpMask != null && dbSnpMask.isDbSnpSite(ref.getName(), refPos)) continue;
-
-                // skip the ends of the reference
-                final int contextStartIndex = refPos - CONTEXT_SIZE - 1;
-                final int contextFullLength = 2 * CONTEXT_SIZE + 1;
-                if (contextStartIndex < 0 || contextStartIndex + contextFullLength > ref.length()) continue;
-
-                // skip contexts with N bases
-                final String context = StringUtil.bytesToString(ref.getBases(), contextStartIndex, contextFullLength).toUpperCase();
-                if (context.contains("N")) continue;
-
-                // skip low BQ sites
-                if (failsBaseQualityCutoff(readPos, rec)) continue;
-
-                // skip N bases in read
-                final char readBase = Character.toUpperCase((char) rec.getReadBases()[readPos - 1]);
-                if (readBase == 'N') continue;
-
-                // count the base!
-                artifactCounters.get(library).countRecord(context, readBase, rec);
+        if (executor == null) {
+            shards.get(0).acceptRead(rec, ref);
+        } else {
+            batch.add(rec);
+            batchRefs.add(ref);
+            if (batch.size() >= BATCH_SIZE) {
+                submitBatch();
             }
         }
     }
 
     @Override
     protected void finish() {
+        if (executor != null) {
+            submitBatch();
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                throw new GATKException("Interrupted while counting artifacts", e);
+            }
+            rethrowError();
+        }
+
+        // combine the counts of all the threads
+        final Map<String, ArtifactCounter> artifactCounters = shards.get(0).artifactCounters;
+        for (final CountingShard shard : shards.subList(1, shards.size())) {
+            for (final Map.Entry<String, ArtifactCounter> entry : shard.artifactCounters.entrySet()) {
+                artifactCounters.get(entry.getKey()).merge(entry.getValue());
+            }
+        }
+
         final MetricsFile<PreAdapterSummaryMetrics, Integer> preAdapterSummaryMetricsFile = getMetricsFile();
         final MetricsFile<PreAdapterDetailMetrics, Integer> preAdapterDetailMetricsFile = getMetricsFile();
         final MetricsFile<BaitBiasSummaryMetrics, Integer> baitBiasSummaryMetricsFile = getMetricsFile();
@@ -266,6 +296,38 @@ public class CollectSequencingArtifactMetrics extends SinglePassSamProgram {
     @Override
     protected boolean usesNoRefReads() { return false; }
 
+    /**
+     * Hands the records batched so far to the counting threads.
+     */
+    private void submitBatch() {
+        rethrowError();
+        final List<SAMRecord> records = batch;
+        final List<ReferenceSequence> refs = batchRefs;
+        batch = new ArrayList<SAMRecord>(BATCH_SIZE);
+        batchRefs = new ArrayList<ReferenceSequence>(BATCH_SIZE);
+        executor.execute(() -> {
+            if (error != null) return;
+            try {
+                final CountingShard shard = threadShard.get();
+                for (int i = 0; i < records.size(); i++) {
+                    shard.acceptRead(records.get(i), refs.get(i));
+                }
+            } catch (final Throwable t) {
+                error = t;
+            }
+        });
+    }
+
+    private void rethrowError() {
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new GATKException("Error while counting artifacts: " + error.getMessage(), error);
+        }
+    }
+
     /**
      * Check if this read base fails the base quality cutoff.
      */
@@ -278,4 +340,73 @@ public class CollectSequencingArtifactMetrics extends SinglePassSamProgram {
         }
         return (qual < MINIMUM_QUALITY_SCORE);
     }
+
+    /**
+     * The artifact counts of the records handed to one thread. A thread sees its records in coordinate order, as
+     * the interval mask requires, since the batches are handed out in order.
+     */
+    private final class CountingShard {
+        private final Map<String, ArtifactCounter> artifactCounters = new HashMap<String, ArtifactCounter>();
+        private final IntervalListReferenceSequenceMask intervalMask;
+
+        CountingShard() {
+            for (final String library : libraries) {
+                artifactCounters.put(library, new ArtifactCounter(sampleAlias, library, CONTEXT_SIZE, TANDEM_READS));
+            }
+            intervalMask = (intervals == null) ? null : new IntervalListReferenceSequenceMask(intervals);
+        }
+
+        void acceptRead(final SAMRecord rec, final ReferenceSequence ref) {
+            // check read group + library
+            final String library = (rec.getReadGroup() == null) ? UNKNOWN_LIBRARY : getOrElse(rec.getReadGroup().getLibrary(), UNKNOWN_LIBRARY);
+            if (!libraries.contains(library)) {
+                // should never happen if SAM is valid
+                throw new UserException("Record contains library that is missing from header: " + library);
+            }
+            final ArtifactCounter counter = artifactCounters.get(library);
+            final int orientation = ContextAccumulator.orientationOf(rec);
+            final byte[] readBases = rec.getReadBases();
+            final int contextFullLength = 2 * CONTEXT_SIZE + 1;
+
+            // iterate over aligned positions
+            for (final AlignmentBlock block : rec.getAlignmentBlocks()) {
+                for (int offset = 0; offset < block.getLength(); offset++) {
+                    // remember, these are 1-based!
+                    final int readPos = block.getReadStart() + offset;
+                    final int refPos = block.getReferenceStart() + offset;
+
+                    /**
+                     * Skip regions outside of intervals.
+                     *
+                     * NB: IntervalListReferenceSequenceMask.get() has side-effects which assume
+                     * that successive ReferenceSequence's passed to this method will be in-order
+                     * (e.g. it will break if you call acceptRead() with chr1, then chr2, then chr1
+                     * again). So this only works if the underlying iteration is coordinate-sorted.
+                     */
+                    if (intervalMask != null && !intervalMask.get(ref.getContigIndex(), refPos)) continue;
+
+                    // skip dbSNP sites
+                    if (dbSnpMask != null && dbSnpMask.isDbSnpSite(ref.getName(), refPos)) continue;
+
+                    // skip the ends of the reference
+                    final int contextStartIndex = refPos - CONTEXT_SIZE - 1;
+                    if (contextStartIndex < 0 || contextStartIndex + contextFullLength > ref.length()) continue;
+
+                    // skip contexts with N (or other ambiguous) bases
+                    final int packedContext = BaseUtils.packBases(ref.getBases(), contextStartIndex, contextFullLength);
+                    if (packedContext == -1) continue;
+
+                    // skip low BQ sites
+                    if (failsBaseQualityCutoff(readPos, rec)) continue;
+
+                    // skip N bases in read
+                    final int readBaseIndex = BaseUtils.simpleBaseToBaseIndex(readBases[readPos - 1]);
+                    if (readBaseIndex == -1) continue;
+
+                    // count the base!
+                    counter.countRecord(packedContext, readBaseIndex, orientation);
+                }
+            }
+        }
+    }
 }
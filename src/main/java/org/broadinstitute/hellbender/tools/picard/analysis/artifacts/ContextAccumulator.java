@@ -6,37 +6,93 @@ import htsjdk.samtools.util.SequenceUtil;
 
 import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.tools.picard.analysis.artifacts.SequencingArtifactMetrics.*;
+import org.broadinstitute.hellbender.utils.BaseUtils;
 
 import java.util.*;
 
 /**
- * Keeps track of the AlignmentAccumulators for each artifact / context of interest.
+ * Keeps track of the alignment counts for each artifact / context of interest.
+ *
+ * Contexts are identified by their index in the collection given to the constructor, and called bases by their
+ * {@link BaseUtils#simpleBaseToBaseIndex base index}. The counts are kept in a flat table, broken down by
+ * context, called base and read orientation (read1/read2 and positive/negative strand).
  */
 class ContextAccumulator {
 
+    // read orientations, as returned by orientationOf()
+    static final int R1_POS = 0;
+    static final int R1_NEG = 1;
+    static final int R2_POS = 2;
+    static final int R2_NEG = 3;
+    private static final int ORIENTATIONS = 4;
+
     // are the PE reads expected to face the same direction?
     private final boolean expectedTandemReads;
-    private final Map<Transition, Map<String, AlignmentAccumulator>> artifactMap;
 
-    public ContextAccumulator(final Set<String> contexts, final boolean expectedTandemReads) {
+    private final Map<String, Integer> contextIndices;
+    // the contexts with each central base, in the order their metrics are reported
+    private final Map<Character, Set<String>> contextsByRefBase;
+    // counts by [context index][called base index][orientation]
+    private final long[] counts;
+
+    public ContextAccumulator(final Collection<String> contexts, final boolean expectedTandemReads) {
         this.expectedTandemReads = expectedTandemReads;
-        this.artifactMap = new HashMap<Transition, Map<String, AlignmentAccumulator>>();
-        for (final Transition transition : Transition.values()) {
-            this.artifactMap.put(transition, new HashMap<String, AlignmentAccumulator>());
-        }
+        this.contextIndices = new HashMap<String, Integer>();
+        this.contextsByRefBase = new HashMap<Character, Set<String>>();
         for (final String context : contexts) {
+            this.contextIndices.put(context, this.contextIndices.size());
             final char refBase = getCentralBase(context);
-            for (final byte calledBase : SequenceUtil.VALID_BASES_UPPER) {
-                final Transition transition = Transition.transitionOf(refBase, (char)calledBase);
-                this.artifactMap.get(transition).put(context, new AlignmentAccumulator());
+            if (!this.contextsByRefBase.containsKey(refBase)) {
+                this.contextsByRefBase.put(refBase, new HashSet<String>());
             }
+            this.contextsByRefBase.get(refBase).add(context);
         }
+        this.counts = new long[contexts.size() * BaseUtils.BASES.length * ORIENTATIONS];
+    }
+
+    /**
+     * Returns the index of a context, for {@link #countRecord}.
+     */
+    public int indexOf(final String context) {
+        final Integer index = this.contextIndices.get(context);
+        if (index == null) throw new GATKException("Unknown context: " + context);
+        return index;
+    }
+
+    /**
+     * Counts a base call of a read.
+     *
+     * @param contextIndex the {@link #indexOf index} of the reference context of the call
+     * @param calledBaseIndex the base index of the call
+     * @param orientation the orientation of the read, from {@link #orientationOf}
+     */
+    public void countRecord(final int contextIndex, final int calledBaseIndex, final int orientation) {
+        this.counts[(contextIndex * BaseUtils.BASES.length + calledBaseIndex) * ORIENTATIONS + orientation]++;
     }
 
-    public void countRecord(final String refContext, final char calledBase, final SAMRecord rec) {
-        final char refBase = getCentralBase(refContext);
-        final Transition transition = Transition.transitionOf(refBase, calledBase);
-        this.artifactMap.get(transition).get(refContext).countRecord(rec);
+    /**
+     * Adds the counts of another accumulator of the same contexts.
+     */
+    public void merge(final ContextAccumulator other) {
+        if (!this.contextIndices.equals(other.contextIndices)) {
+            throw new GATKException("Cannot merge accumulators of different contexts");
+        }
+        for (int i = 0; i < this.counts.length; i++) {
+            this.counts[i] += other.counts[i];
+        }
+    }
+
+    /**
+     * Breaks down alignments by read1/read2 and positive/negative strand.
+     */
+    public static int orientationOf(final SAMRecord rec) {
+        final boolean isNegativeStrand = rec.getReadNegativeStrandFlag();
+        final boolean isReadTwo = rec.getReadPairedFlag() && rec.getSecondOfPairFlag();
+        if (isReadTwo) {
+            return isNegativeStrand ? R2_NEG : R2_POS;
+        } else {
+            return isNegativeStrand ? R1_NEG : R1_POS;
+        }
     }
 
     /**
@@ -46,7 +102,7 @@ class ContextAccumulator {
         final ListMap<Transition, DetailPair> detailMetricsMap = new ListMap<Transition, DetailPair>();
         for (final Transition altTransition : Transition.altValues()) {
             final Transition refTransition = altTransition.matchingRef();
-            for (final String context : this.artifactMap.get(altTransition).keySet()) {
+            for (final String context : this.contextsByRefBase.get(altTransition.ref())) {
                 // each combination of artifact + context represents a single metric row
                 final PreAdapterDetailMetrics preAdapterDetailMetrics = new PreAdapterDetailMetrics();
                 final BaitBiasDetailMetrics baitBiasDetailMetrics = new BaitBiasDetailMetrics();
@@ -64,32 +120,33 @@ class ContextAccumulator {
                 baitBiasDetailMetrics.REF_BASE = altTransition.ref();
                 baitBiasDetailMetrics.ALT_BASE = altTransition.call();
 
-                // retrieve all the necessary alignment counters.
-                final AlignmentAccumulator fwdRefAlignments = this.artifactMap.get(refTransition).get(context);
-                final AlignmentAccumulator fwdAltAlignments = this.artifactMap.get(altTransition).get(context);
-                final AlignmentAccumulator revRefAlignments = this.artifactMap.get(refTransition.complement()).get(SequenceUtil.reverseComplement(context));
-                final AlignmentAccumulator revAltAlignments = this.artifactMap.get(altTransition.complement()).get(SequenceUtil.reverseComplement(context));
+                // retrieve all the necessary alignment counts.
+                final String revContext = SequenceUtil.reverseComplement(context);
+                final long[] fwdRefAlignments = getAlignmentCounts(context, refTransition);
+                final long[] fwdAltAlignments = getAlignmentCounts(context, altTransition);
+                final long[] revRefAlignments = getAlignmentCounts(revContext, refTransition.complement());
+                final long[] revAltAlignments = getAlignmentCounts(revContext, altTransition.complement());
 
                 // categorize observations of pre-adapter artifacts
                 if (expectedTandemReads) {
                     // if both ends are sequenced on the same strand, then read1/read2 should exhibit the same bias
-                    preAdapterDetailMetrics.PRO_REF_BASES = fwdRefAlignments.R1_POS + fwdRefAlignments.R2_POS + revRefAlignments.R1_NEG + revRefAlignments.R2_NEG;
-                    preAdapterDetailMetrics.PRO_ALT_BASES = fwdAltAlignments.R1_POS + fwdAltAlignments.R2_POS + revAltAlignments.R1_NEG + revAltAlignments.R2_NEG;
-                    preAdapterDetailMetrics.CON_REF_BASES = fwdRefAlignments.R1_NEG + fwdRefAlignments.R2_NEG + revRefAlignments.R1_POS + revRefAlignments.R2_POS;
-                    preAdapterDetailMetrics.CON_ALT_BASES = fwdAltAlignments.R1_NEG + fwdAltAlignments.R2_NEG + revAltAlignments.R1_POS + revAltAlignments.R2_POS;
+                    preAdapterDetailMetrics.PRO_REF_BASES = fwdRefAlignments[R1_POS] + fwdRefAlignments[R2_POS] + revRefAlignments[R1_NEG] + revRefAlignments[R2_NEG];
+                    preAdapterDetailMetrics.PRO_ALT_BASES = fwdAltAlignments[R1_POS] + fwdAltAlignments[R2_POS] + revAltAlignments[R1_NEG] + revAltAlignments[R2_NEG];
+                    preAdapterDetailMetrics.CON_REF_BASES = fwdRefAlignments[R1_NEG] + fwdRefAlignments[R2_NEG] + revRefAlignments[R1_POS] + revRefAlignments[R2_POS];
+                    preAdapterDetailMetrics.CON_ALT_BASES = fwdAltAlignments[R1_NEG] + fwdAltAlignments[R2_NEG] + revAltAlignments[R1_POS] + revAltAlignments[R2_POS];
                 } else {
                     // if ends are sequenced on opposite strands, then read1/read2 should exhibit opposite biases
-                    preAdapterDetailMetrics.PRO_REF_BASES = fwdRefAlignments.R1_POS + fwdRefAlignments.R2_NEG + revRefAlignments.R1_NEG + revRefAlignments.R2_POS;
-                    preAdapterDetailMetrics.PRO_ALT_BASES = fwdAltAlignments.R1_POS + fwdAltAlignments.R2_NEG + revAltAlignments.R1_NEG + revAltAlignments.R2_POS;
-                    preAdapterDetailMetrics.CON_REF_BASES = fwdRefAlignments.R1_NEG + fwdRefAlignments.R2_POS + revRefAlignments.R1_POS + revRefAlignments.R2_NEG;
-                    preAdapterDetailMetrics.CON_ALT_BASES = fwdAltAlignments.R1_NEG + fwdAltAlignments.R2_POS + revAltAlignments.R1_POS + revAltAlignments.R2_NEG;
+                    preAdapterDetailMetrics.PRO_REF_BASES = fwdRefAlignments[R1_POS] + fwdRefAlignments[R2_NEG] + revRefAlignments[R1_NEG] + revRefAlignments[R2_POS];
+                    preAdapterDetailMetrics.PRO_ALT_BASES = fwdAltAlignments[R1_POS] + fwdAltAlignments[R2_NEG] + revAltAlignments[R1_NEG] + revAltAlignments[R2_POS];
+                    preAdapterDetailMetrics.CON_REF_BASES = fwdRefAlignments[R1_NEG] + fwdRefAlignments[R2_POS] + revRefAlignments[R1_POS] + revRefAlignments[R2_NEG];
+                    preAdapterDetailMetrics.CON_ALT_BASES = fwdAltAlignments[R1_NEG] + fwdAltAlignments[R2_POS] + revAltAlignments[R1_POS] + revAltAlignments[R2_NEG];
                 }
 
                 // categorize observations of bait bias artifacts
-                baitBiasDetailMetrics.FWD_CXT_REF_BASES = fwdRefAlignments.R1_POS + fwdRefAlignments.R1_NEG + fwdRefAlignments.R2_POS + fwdRefAlignments.R2_NEG;
-                baitBiasDetailMetrics.FWD_CXT_ALT_BASES = fwdAltAlignments.R1_POS + fwdAltAlignments.R1_NEG + fwdAltAlignments.R2_POS + fwdAltAlignments.R2_NEG;
-                baitBiasDetailMetrics.REV_CXT_REF_BASES = revRefAlignments.R1_POS + revRefAlignments.R1_NEG + revRefAlignments.R2_POS + revRefAlignments.R2_NEG;
-                baitBiasDetailMetrics.REV_CXT_ALT_BASES = revAltAlignments.R1_POS + revAltAlignments.R1_NEG + revAltAlignments.R2_POS + revAltAlignments.R2_NEG;
+                baitBiasDetailMetrics.FWD_CXT_REF_BASES = fwdRefAlignments[R1_POS] + fwdRefAlignments[R1_NEG] + fwdRefAlignments[R2_POS] + fwdRefAlignments[R2_NEG];
+                baitBiasDetailMetrics.FWD_CXT_ALT_BASES = fwdAltAlignments[R1_POS] + fwdAltAlignments[R1_NEG] + fwdAltAlignments[R2_POS] + fwdAltAlignments[R2_NEG];
+                baitBiasDetailMetrics.REV_CXT_REF_BASES = revRefAlignments[R1_POS] + revRefAlignments[R1_NEG] + revRefAlignments[R2_POS] + revRefAlignments[R2_NEG];
+                baitBiasDetailMetrics.REV_CXT_ALT_BASES = revAltAlignments[R1_POS] + revAltAlignments[R1_NEG] + revAltAlignments[R2_POS] + revAltAlignments[R2_NEG];
 
                 // calculate error rates + Q-scores
                 preAdapterDetailMetrics.calculateDerivedStatistics();
@@ -102,30 +159,20 @@ class ContextAccumulator {
         return detailMetricsMap;
     }
 
-    private char getCentralBase(final String context) {
-        if (context.length() % 2 == 0) throw new GATKException("Contexts cannot have an even number of bases: " + context);
-        else return context.charAt(context.length() / 2);
-    }
-
     /**
-     * Little class for breaking down alignments by read1/read2 and positive/negative strand.
+     * The counts of each read orientation for a context and transition.
      */
-    private static class AlignmentAccumulator {
-        private long R1_POS = 0;
-        private long R1_NEG = 0;
-        private long R2_POS = 0;
-        private long R2_NEG = 0;
-
-        private void countRecord(final SAMRecord rec) {
-            final boolean isNegativeStrand = rec.getReadNegativeStrandFlag();
-            final boolean isReadTwo = rec.getReadPairedFlag() && rec.getSecondOfPairFlag();
-            if (isReadTwo) {
-                if (isNegativeStrand) this.R2_NEG++;
-                else this.R2_POS++;
-            } else {
-                if (isNegativeStrand) this.R1_NEG++;
-                else this.R1_POS++;
-            }
+    private long[] getAlignmentCounts(final String context, final Transition transition) {
+        if (getCentralBase(context) != transition.ref()) {
+            throw new GATKException("Transition " + transition + " does not apply to context " + context);
         }
+        final int calledBaseIndex = BaseUtils.simpleBaseToBaseIndex((byte) transition.call());
+        final int offset = (indexOf(context) * BaseUtils.BASES.length + calledBaseIndex) * ORIENTATIONS;
+        return Arrays.copyOfRange(this.counts, offset, offset + ORIENTATIONS);
+    }
+
+    private char getCentralBase(final String context) {
+        if (context.length() % 2 == 0) throw new GATKException("Contexts cannot have an even number of bases: " + context);
+        else return context.charAt(context.length() / 2);
     }
 }
@@ -6,7 +6,6 @@ import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.reference.ReferenceSequence;
-import htsjdk.samtools.reference.ReferenceSequenceFileWalker;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.CollectionUtil;
 import htsjdk.samtools.util.IOUtil;
@@ -20,6 +19,7 @@ import org.broadinstitute.hellbender.cmdline.programgroups.QCProgramGroup;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.metrics.MetricAccumulationLevel;
 import org.broadinstitute.hellbender.utils.R.RScriptExecutor;
+import org.broadinstitute.hellbender.utils.fasta.PrefetchingReferenceWalker;
 import org.broadinstitute.hellbender.utils.io.Resource;
 
 import java.io.File;
@@ -89,7 +89,7 @@ public class CollectRrbsMetrics extends PicardCommandLineProgram {
             throw new UserException("The input file " + INPUT.getAbsolutePath() + " does not appear to be coordinate sorted");
         }
 
-        final ReferenceSequenceFileWalker refWalker = new ReferenceSequenceFileWalker(REFERENCE_SEQUENCE);
+        final PrefetchingReferenceWalker refWalker = new PrefetchingReferenceWalker(REFERENCE_SEQUENCE);
         final ProgressLogger progressLogger = new ProgressLogger(log);
 
         final RrbsMetricsCollector metricsCollector = new RrbsMetricsCollector(METRIC_ACCUMULATION_LEVEL, samReader.getFileHeader().getReadGroups(),
@@ -103,6 +103,7 @@ public class CollectRrbsMetrics extends PicardCommandLineProgram {
             }
         }
         metricsCollector.finish();
+        CloserUtil.close(refWalker);
         final MetricsFile<RrbsMetrics, Comparable<?>> rrbsMetrics = getMetricsFile();
         metricsCollector.addAllLevelsToFile(rrbsMetrics);
 
@@ -1,7 +1,9 @@
 package org.broadinstitute.hellbender.tools.picard.analysis.directed;
 
-import htsjdk.samtools.AlignmentBlock;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.filter.SamRecordFilter;
@@ -9,7 +11,9 @@ import htsjdk.samtools.filter.SecondaryAlignmentFilter;
 import htsjdk.samtools.metrics.MetricBase;
 import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.reference.ReferenceSequence;
-import htsjdk.samtools.reference.ReferenceSequenceFileWalker;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.Histogram;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
@@ -20,10 +24,19 @@ import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.PicardCommandLineProgram;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.QCProgramGroup;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.MathUtils;
+import org.broadinstitute.hellbender.utils.fasta.PrefetchingReferenceWalker;
+import org.broadinstitute.hellbender.utils.runtime.RuntimeUtils;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Computes a number of metrics that are useful for evaluating coverage and performance of whole genome sequencing experiments.
@@ -59,6 +72,17 @@ public class CollectWgsMetrics extends PicardCommandLineProgram {
     @Argument(doc = "Determines whether to include the base quality histogram in the metrics file.")
     public boolean INCLUDE_BQ_HISTOGRAM = false;
 
+    @Argument(doc = "If true, coverage is accumulated directly from the alignment blocks of the reads instead of from a " +
+            "pileup of every position of the genome, which is much faster and gives the same results except that bases " +
+            "of supplementary alignments are never counted as overlapping their mates.  Ignored when STOP_AFTER is used.")
+    public boolean USE_FAST_ALGORITHM = false;
+
+    @Argument(shortName = "NP", doc = "The number of contigs accumulated in parallel by the fast algorithm, which " +
+            "requires an indexed input and an indexed reference. " +
+            RuntimeUtils.NUM_PROCESSORS_DOC,
+            optional = true)
+    public int NUM_PROCESSORS = 1;
+
     private final Log log = Log.getInstance(CollectWgsMetrics.class);
 
     /** Metrics for evaluating the performance of whole genome sequencing experiments. */
@@ -123,68 +147,88 @@ public class CollectWgsMetrics extends PicardCommandLineProgram {
         IOUtil.assertFileIsWritable(OUTPUT);
         IOUtil.assertFileIsReadable(REFERENCE_SEQUENCE);
 
+        if (USE_FAST_ALGORITHM && STOP_AFTER <= 0) {
+            final FastWgsMetricsCollector collector = collectWithFastAlgorithm();
+            writeMetrics(collector.histogramArray, collector.baseQHistogramArray,
+                    collector.dupeFilter.getFilteredBases(), collector.mapqFilter.getFilteredBases(), collector.pairFilter.getFilteredBases(),
+                    collector.basesExcludedByBaseq, collector.basesExcludedByOverlap, collector.basesExcludedByCapping);
+            return null;
+        }
+
         // Setup all the inputs
         final ProgressLogger progress = new ProgressLogger(log, 10000000, "Processed", "loci");
-        final ReferenceSequenceFileWalker refWalker = new ReferenceSequenceFileWalker(REFERENCE_SEQUENCE);
-        final SamReader in = SamReaderFactory.makeDefault().referenceSequence(REFERENCE_SEQUENCE).open(INPUT);
-
-        final SamLocusIterator iterator = new SamLocusIterator(in);
-        final List<SamRecordFilter> filters = new ArrayList<SamRecordFilter>();
-        final CountingFilter dupeFilter = new CountingDuplicateFilter();
-        final CountingFilter mapqFilter = new CountingMapQFilter(MINIMUM_MAPPING_QUALITY);
-        final CountingPairedFilter pairFilter = new CountingPairedFilter();
-        filters.add(mapqFilter);
-        filters.add(dupeFilter);
-        filters.add(pairFilter);
-        filters.add(new SecondaryAlignmentFilter()); // Not a counting filter because we never want to count reads twice
-        iterator.setSamFilters(filters);
-        iterator.setEmitUncoveredLoci(true);
-        iterator.setMappingQualityScoreCutoff(0); // Handled separately because we want to count bases
-        iterator.setQualityScoreCutoff(0);        // Handled separately because we want to count bases
-        iterator.setIncludeNonPfReads(false);
-
-        final int max = COVERAGE_CAP;
-        final long[] HistogramArray = new long[max + 1];
-        final long[] baseQHistogramArray = new long[Byte.MAX_VALUE];
-        final boolean usingStopAfter = STOP_AFTER > 0;
-        final long stopAfter = STOP_AFTER - 1;
-        long counter = 0;
-
-        long basesExcludedByBaseq = 0;
-        long basesExcludedByOverlap = 0;
-        long basesExcludedByCapping = 0;
-
-        // Loop through all the loci
-        while (iterator.hasNext()) {
-            final SamLocusIterator.LocusInfo info = iterator.next();
-
-            // Check that the reference is not N
-            final ReferenceSequence ref = refWalker.get(info.getSequenceIndex());
-            final byte base = ref.getBases()[info.getPosition() - 1];
-            if (base == 'N') continue;
-
-            // Figure out the coverage while not counting overlapping reads twice, and excluding various things
-            final HashSet<String> readNames = new HashSet<String>(info.getRecordAndPositions().size());
-            int pileupSize = 0;
-            for (final SamLocusIterator.RecordAndOffset recs : info.getRecordAndPositions()) {
-
-                if (recs.getBaseQuality() < MINIMUM_BASE_QUALITY)                   { ++basesExcludedByBaseq;   continue; }
-                if (!readNames.add(recs.getRecord().getReadName()))                 { ++basesExcludedByOverlap; continue; }
-                pileupSize++;
-                if (pileupSize <= max) {
-                    baseQHistogramArray[recs.getRecord().getBaseQualities()[recs.getOffset()]]++;
+        final PrefetchingReferenceWalker refWalker = new PrefetchingReferenceWalker(REFERENCE_SEQUENCE);
+        try {
+            final SamReader in = SamReaderFactory.makeDefault().validationStringency(VALIDATION_STRINGENCY).referenceSequence(REFERENCE_SEQUENCE).open(INPUT);
+
+            final SamLocusIterator iterator = new SamLocusIterator(in);
+            final List<SamRecordFilter> filters = new ArrayList<SamRecordFilter>();
+            final CountingFilter dupeFilter = new CountingDuplicateFilter();
+            final CountingFilter mapqFilter = new CountingMapQFilter(MINIMUM_MAPPING_QUALITY);
+            final CountingPairedFilter pairFilter = new CountingPairedFilter();
+            filters.add(mapqFilter);
+            filters.add(dupeFilter);
+            filters.add(pairFilter);
+            filters.add(new SecondaryAlignmentFilter()); // Not a counting filter because we never want to count reads twice
+            iterator.setSamFilters(filters);
+            iterator.setEmitUncoveredLoci(true);
+            iterator.setMappingQualityScoreCutoff(0); // Handled separately because we want to count bases
+            iterator.setQualityScoreCutoff(0);        // Handled separately because we want to count bases
+            iterator.setIncludeNonPfReads(false);
+
+            final int max = COVERAGE_CAP;
+            final long[] HistogramArray = new long[max + 1];
+            final long[] baseQHistogramArray = new long[Byte.MAX_VALUE];
+            final boolean usingStopAfter = STOP_AFTER > 0;
+            final long stopAfter = STOP_AFTER - 1;
+            long counter = 0;
+
+            long basesExcludedByBaseq = 0;
+            long basesExcludedByOverlap = 0;
+            long basesExcludedByCapping = 0;
+
+            // Loop through all the loci
+            while (iterator.hasNext()) {
+                final SamLocusIterator.LocusInfo info = iterator.next();
+
+                // Check that the reference is not N
+                final ReferenceSequence ref = refWalker.get(info.getSequenceIndex());
+                final byte base = ref.getBases()[info.getPosition() - 1];
+                if (base == 'N') continue;
+
+                // Figure out the coverage while not counting overlapping reads twice, and excluding various things
+                final HashSet<String> readNames = new HashSet<String>(info.getRecordAndPositions().size());
+                int pileupSize = 0;
+                for (final SamLocusIterator.RecordAndOffset recs : info.getRecordAndPositions()) {
+
+                    if (recs.getBaseQuality() < MINIMUM_BASE_QUALITY)                   { ++basesExcludedByBaseq;   continue; }
+                    if (!readNames.add(recs.getRecord().getReadName()))                 { ++basesExcludedByOverlap; continue; }
+                    pileupSize++;
+                    if (pileupSize <= max) {
+                        baseQHistogramArray[recs.getRecord().getBaseQualities()[recs.getOffset()]]++;
+                    }
                 }
-            }
 
-            final int depth = Math.min(readNames.size(), max);
-            if (depth < readNames.size()) basesExcludedByCapping += readNames.size() - max;
-            HistogramArray[depth]++;
+                final int depth = Math.min(readNames.size(), max);
+                if (depth < readNames.size()) basesExcludedByCapping += readNames.size() - max;
+                HistogramArray[depth]++;
 
-            // Record progress and perhaps stop
-            progress.record(info.getSequenceName(), info.getPosition());
-            if (usingStopAfter && ++counter > stopAfter) break;
+                // Record progress and perhaps stop
+                progress.record(info.getSequenceName(), info.getPosition());
+                if (usingStopAfter && ++counter > stopAfter) break;
+            }
+
+            writeMetrics(HistogramArray, baseQHistogramArray, dupeFilter.getFilteredBases(), mapqFilter.getFilteredBases(), pairFilter.getFilteredBases(),
+                    basesExcludedByBaseq, basesExcludedByOverlap, basesExcludedByCapping);
+            return null;
+        } finally {
+            CloserUtil.close(refWalker);
         }
+    }
 
+    private void writeMetrics(final long[] HistogramArray, final long[] baseQHistogramArray,
+                              final long basesExcludedByDupes, final long basesExcludedByMapq, final long basesExcludedByPairing,
+                              final long basesExcludedByBaseq, final long basesExcludedByOverlap, final long basesExcludedByCapping) {
         // Construct and write the outputs
         final Histogram<Integer> histo = new Histogram<Integer>("coverage", "count");
         for (int i = 0; i < HistogramArray.length; ++i) {
@@ -204,9 +248,6 @@ public class CollectWgsMetrics extends PicardCommandLineProgram {
         metrics.MEDIAN_COVERAGE = histo.getMedian();
         metrics.MAD_COVERAGE = histo.getMedianAbsoluteDeviation();
 
-        final long basesExcludedByDupes = dupeFilter.getFilteredBases();
-        final long basesExcludedByMapq = mapqFilter.getFilteredBases();
-        final long basesExcludedByPairing = pairFilter.getFilteredBases();
         final double total = histo.getSum();
         final double totalWithExcludes = total + basesExcludedByDupes + basesExcludedByMapq + basesExcludedByPairing + basesExcludedByBaseq + basesExcludedByOverlap + basesExcludedByCapping;
         metrics.PCT_EXC_DUPE = basesExcludedByDupes / totalWithExcludes;
@@ -238,68 +279,98 @@ public class CollectWgsMetrics extends PicardCommandLineProgram {
             out.addHistogram(baseQHisto);
         }
         out.write(OUTPUT);
-
-        return null;
-    }
-
-    protected WgsMetrics generateWgsMetrics() {
-        return new WgsMetrics();
     }
-}
-
-/**
- * A SamRecordFilter that counts the number of aligned bases in the reads which it filters out. Abstract and designed
- * to be subclassed to implement the desired filter.
- */
-abstract class CountingFilter implements SamRecordFilter {
-    private long filteredRecords = 0;
-    private long filteredBases = 0;
 
-    /** Gets the number of records that have been filtered out thus far. */
-    public long getFilteredRecords() { return this.filteredRecords; }
+    /**
+     * Accumulates the coverage of every contig with a {@link FastWgsMetricsCollector}, one contig per thread when both
+     * the input and the reference are indexed, or else in a single pass over the input.
+     */
+    private FastWgsMetricsCollector collectWithFastAlgorithm() {
+        final SamReaderFactory readerFactory = SamReaderFactory.makeDefault().validationStringency(VALIDATION_STRINGENCY).referenceSequence(REFERENCE_SEQUENCE);
+        final int numThreads = RuntimeUtils.getNumProcessors(NUM_PROCESSORS);
+        final boolean parallel;
+        final SAMSequenceDictionary dictionary;
+        try (final SamReader in = readerFactory.open(INPUT);
+             final ReferenceSequenceFile ref = ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE_SEQUENCE)) {
+            dictionary = in.getFileHeader().getSequenceDictionary();
+            parallel = numThreads > 1 && in.hasIndex() && ref.isIndexed();
+            if (!parallel) {
+                return collectSequentially(in, dictionary);
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(INPUT, e);
+        }
 
-    /** Gets the number of bases that have been filtered out thus far. */
-    public long getFilteredBases() { return this.filteredBases; }
+        log.info("Accumulating coverage of " + dictionary.size() + " contigs on " + numThreads + " threads");
+        final ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<FastWgsMetricsCollector>> results = new ArrayList<>(dictionary.size());
+            for (final SAMSequenceRecord contig : dictionary.getSequences()) {
+                results.add(pool.submit(() -> collectContig(readerFactory, contig)));
+            }
 
-    @Override
-    public final boolean filterOut(final SAMRecord record) {
-        final boolean filteredOut = reallyFilterOut(record);
-        if (filteredOut) {
-            ++filteredRecords;
-            for (final AlignmentBlock block : record.getAlignmentBlocks()) {
-                this.filteredBases += block.getLength();
+            final FastWgsMetricsCollector collector = newFastCollector();
+            for (final Future<FastWgsMetricsCollector> result : results) {
+                collector.merge(result.get());
             }
+            return collector;
+        } catch (final InterruptedException e) {
+            throw new GATKException("Interrupted while accumulating coverage", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new GATKException("Error while accumulating coverage: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
-        return filteredOut;
     }
 
-    abstract public boolean reallyFilterOut(final SAMRecord record);
-
-    @Override
-    public boolean filterOut(final SAMRecord first, final SAMRecord second) {
-        throw new UnsupportedOperationException();
+    private FastWgsMetricsCollector collectSequentially(final SamReader in, final SAMSequenceDictionary dictionary) {
+        final ProgressLogger progress = new ProgressLogger(log, 10000000, "Processed", "reads");
+        final PrefetchingReferenceWalker refWalker = new PrefetchingReferenceWalker(REFERENCE_SEQUENCE);
+        try {
+            final FastWgsMetricsCollector collector = newFastCollector();
+            int nextContig = 0;
+            for (final SAMRecord record : in) {
+                // Unplaced reads come last, and have no aligned bases to count
+                if (record.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) break;
+                while (collector.getContigIndex() != record.getReferenceIndex()) {
+                    if (collector.getContigIndex() != -1) collector.finishContig();
+                    collector.startContig(nextContig, refWalker.get(nextContig).getBases());
+                    ++nextContig;
+                }
+                collector.acceptRecord(record);
+                progress.record(record);
+            }
+            if (collector.getContigIndex() != -1) collector.finishContig();
+            for (; nextContig < dictionary.size(); ++nextContig) {
+                collector.startContig(nextContig, refWalker.get(nextContig).getBases());
+                collector.finishContig();
+            }
+            return collector;
+        } finally {
+            CloserUtil.close(refWalker);
+        }
     }
-}
 
-/** Counting filter that discards reads that have been marked as duplicates. */
-class CountingDuplicateFilter extends CountingFilter {
-    @Override
-    public boolean reallyFilterOut(final SAMRecord record) { return record.getDuplicateReadFlag(); }
-}
-
-/** Counting filter that discards reads below a configurable mapping quality threshold. */
-class CountingMapQFilter extends CountingFilter {
-    private final int minMapq;
-
-    CountingMapQFilter(final int minMapq) { this.minMapq = minMapq; }
+    private FastWgsMetricsCollector collectContig(final SamReaderFactory readerFactory, final SAMSequenceRecord contig) throws IOException {
+        final FastWgsMetricsCollector collector = newFastCollector();
+        try (final SamReader in = readerFactory.open(INPUT);
+             final ReferenceSequenceFile ref = ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE_SEQUENCE);
+             final SAMRecordIterator records = in.queryOverlapping(contig.getSequenceName(), 0, 0)) {
+            collector.startContig(contig.getSequenceIndex(), ref.getSequence(contig.getSequenceName()).getBases());
+            while (records.hasNext()) {
+                collector.acceptRecord(records.next());
+            }
+            collector.finishContig();
+        }
+        return collector;
+    }
 
-    @Override
-    public boolean reallyFilterOut(final SAMRecord record) { return record.getMappingQuality() < minMapq; }
-}
+    private FastWgsMetricsCollector newFastCollector() {
+        return new FastWgsMetricsCollector(MINIMUM_MAPPING_QUALITY, MINIMUM_BASE_QUALITY, COVERAGE_CAP);
+    }
 
-/** Counting filter that discards reads that are unpaired in sequencing and paired reads who's mates are not mapped. */
-class CountingPairedFilter extends CountingFilter {
-    @Override
-    public boolean reallyFilterOut(final SAMRecord record) { return !record.getReadPairedFlag() || record.getMateUnmappedFlag(); }
+    protected WgsMetrics generateWgsMetrics() {
+        return new WgsMetrics();
+    }
 }
-
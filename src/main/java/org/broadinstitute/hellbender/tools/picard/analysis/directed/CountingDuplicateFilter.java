@@ -0,0 +1,9 @@
+package org.broadinstitute.hellbender.tools.picard.analysis.directed;
+
+import htsjdk.samtools.SAMRecord;
+
+/** Counting filter that discards reads that have been marked as duplicates. */
+class CountingDuplicateFilter extends CountingFilter {
+    @Override
+    public boolean reallyFilterOut(final SAMRecord record) { return record.getDuplicateReadFlag(); }
+}
@@ -0,0 +1,45 @@
+package org.broadinstitute.hellbender.tools.picard.analysis.directed;
+
+import htsjdk.samtools.AlignmentBlock;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.filter.SamRecordFilter;
+
+/**
+ * A SamRecordFilter that counts the number of aligned bases in the reads which it filters out. Abstract and designed
+ * to be subclassed to implement the desired filter.
+ */
+abstract class CountingFilter implements SamRecordFilter {
+    private long filteredRecords = 0;
+    private long filteredBases = 0;
+
+    /** Gets the number of records that have been filtered out thus far. */
+    public long getFilteredRecords() { return this.filteredRecords; }
+
+    /** Gets the number of bases that have been filtered out thus far. */
+    public long getFilteredBases() { return this.filteredBases; }
+
+    /** Adds the counts of another filter, to combine filters that were applied to different reads. */
+    public void addFilteredCounts(final CountingFilter other) {
+        this.filteredRecords += other.filteredRecords;
+        this.filteredBases += other.filteredBases;
+    }
+
+    @Override
+    public final boolean filterOut(final SAMRecord record) {
+        final boolean filteredOut = reallyFilterOut(record);
+        if (filteredOut) {
+            ++filteredRecords;
+            for (final AlignmentBlock block : record.getAlignmentBlocks()) {
+                this.filteredBases += block.getLength();
+            }
+        }
+        return filteredOut;
+    }
+
+    abstract public boolean reallyFilterOut(final SAMRecord record);
+
+    @Override
+    public boolean filterOut(final SAMRecord first, final SAMRecord second) {
+        throw new UnsupportedOperationException();
+    }
+}
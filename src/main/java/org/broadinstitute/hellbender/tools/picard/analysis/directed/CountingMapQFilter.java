@@ -0,0 +1,13 @@
+package org.broadinstitute.hellbender.tools.picard.analysis.directed;
+
+import htsjdk.samtools.SAMRecord;
+
+/** Counting filter that discards reads below a configurable mapping quality threshold. */
+class CountingMapQFilter extends CountingFilter {
+    private final int minMapq;
+
+    CountingMapQFilter(final int minMapq) { this.minMapq = minMapq; }
+
+    @Override
+    public boolean reallyFilterOut(final SAMRecord record) { return record.getMappingQuality() < minMapq; }
+}
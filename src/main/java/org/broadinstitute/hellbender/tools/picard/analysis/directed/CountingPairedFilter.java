@@ -0,0 +1,9 @@
+package org.broadinstitute.hellbender.tools.picard.analysis.directed;
+
+import htsjdk.samtools.SAMRecord;
+
+/** Counting filter that discards reads that are unpaired in sequencing and paired reads who's mates are not mapped. */
+class CountingPairedFilter extends CountingFilter {
+    @Override
+    public boolean reallyFilterOut(final SAMRecord record) { return !record.getReadPairedFlag() || record.getMateUnmappedFlag(); }
+}
@@ -0,0 +1,239 @@
+package org.broadinstitute.hellbender.tools.picard.analysis.directed;
+
+import htsjdk.samtools.AlignmentBlock;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.filter.SamRecordFilter;
+import htsjdk.samtools.filter.SecondaryAlignmentFilter;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates the coverage and base quality histograms of {@link CollectWgsMetrics} straight from the alignment blocks
+ * of coordinate sorted records, without building a pileup for every position of the genome.
+ * <p/>
+ * The depth of the positions that reads may still cover is kept in a ring buffer that grows as needed.  Positions are
+ * added to the coverage histogram once the records have moved past them, and the positions of a contig that no read
+ * covers are counted with a depth of zero when the contig is finished.  Bases are counted in the same order, and
+ * excluded for the same reasons, as by the {@link htsjdk.samtools.util.SamLocusIterator} based implementation: a base
+ * whose mate already contributed to a position is an overlap, and the base quality histogram only includes the bases
+ * that do not exceed the coverage cap.
+ * <p/>
+ * Overlapping mates are found from the mate fields of the records rather than by comparing read names at every
+ * position: a record whose mate starts within its alignment remembers the positions it contributed to until the mate
+ * comes along.  Supplementary records take no part in this, so their bases are never counted as overlaps.
+ * <p/>
+ * Instances are not thread safe, but the contigs of an indexed file can be accumulated by separate instances that are
+ * then {@link #merge merged}.
+ */
+final class FastWgsMetricsCollector {
+
+    private static final int INITIAL_WINDOW_SIZE = 1 << 12;
+
+    private final int minimumBaseQuality;
+    private final int coverageCap;
+
+    final long[] histogramArray;
+    final long[] baseQHistogramArray = new long[Byte.MAX_VALUE];
+    long basesExcludedByBaseq = 0;
+    long basesExcludedByOverlap = 0;
+    long basesExcludedByCapping = 0;
+
+    final CountingFilter dupeFilter = new CountingDuplicateFilter();
+    final CountingFilter mapqFilter;
+    final CountingFilter pairFilter = new CountingPairedFilter();
+    private final List<SamRecordFilter> filters;
+
+    // The contig being accumulated
+    private int contigIndex = -1;
+    private byte[] refBases;
+
+    // Depths of the positions in [windowStart, windowEnd), at position & (depths.length - 1)
+    private int[] depths = new int[INITIAL_WINDOW_SIZE];
+    private int windowStart;
+    private int windowEnd;
+
+    // Records waiting for a mate that may overlap them, by read name and in the order they were added
+    private final Map<String, MateCoverage> pendingMates = new HashMap<>();
+    private final ArrayDeque<MateCoverage> pendingMatesByStart = new ArrayDeque<>();
+
+    FastWgsMetricsCollector(final int minimumMappingQuality, final int minimumBaseQuality, final int coverageCap) {
+        this.minimumBaseQuality = minimumBaseQuality;
+        this.coverageCap = coverageCap;
+        this.histogramArray = new long[coverageCap + 1];
+        this.mapqFilter = new CountingMapQFilter(minimumMappingQuality);
+        this.filters = Arrays.asList(mapqFilter, dupeFilter, pairFilter, new SecondaryAlignmentFilter());
+    }
+
+    /** Starts accumulating the contig with the given index, which must come after the previous one. */
+    void startContig(final int contigIndex, final byte[] refBases) {
+        if (this.contigIndex != -1) {
+            throw new IllegalStateException("Contig " + this.contigIndex + " has not been finished");
+        }
+        this.contigIndex = contigIndex;
+        this.refBases = refBases;
+        this.windowStart = 1;
+        this.windowEnd = 1;
+    }
+
+    /** Counts the remaining positions of the current contig. */
+    void finishContig() {
+        finalizePositionsBefore(refBases.length + 1);
+        pendingMates.clear();
+        pendingMatesByStart.clear();
+        contigIndex = -1;
+        refBases = null;
+    }
+
+    /** The index of the contig being accumulated, or -1 between contigs. */
+    int getContigIndex() {
+        return contigIndex;
+    }
+
+    /**
+     * Applies the filters to a record, and adds its bases to the coverage if it passes them.  Records that pass the
+     * filters must be on the current contig and must not start before any record added before them.
+     */
+    void acceptRecord(final SAMRecord record) {
+        for (final SamRecordFilter filter : filters) {
+            if (filter.filterOut(record)) return;
+        }
+        if (record.getReadUnmappedFlag() || record.getReadFailsVendorQualityCheckFlag()) return;
+        if (record.getReferenceIndex() != contigIndex) {
+            throw new IllegalStateException("Record " + record.getReadName() + " is not on contig " + contigIndex);
+        }
+
+        final int start = record.getAlignmentStart();
+        final int end = Math.min(record.getAlignmentEnd(), refBases.length);
+        finalizePositionsBefore(Math.min(start, refBases.length + 1));
+        releasePendingMatesEndingBefore(start);
+        ensureWindowCovers(start, end);
+
+        final MateCoverage mate = record.getSupplementaryAlignmentFlag() ? null : pendingMates.remove(record.getReadName());
+        final MateCoverage coverage = (mate == null && mayOverlapMate(record)) ? new MateCoverage(record.getReadName(), start, end) : null;
+
+        final byte[] quals = record.getBaseQualities();
+        final int mask = depths.length - 1;
+        for (final AlignmentBlock block : record.getAlignmentBlocks()) {
+            final int blockStart = block.getReferenceStart();
+            final int blockEnd = Math.min(blockStart + block.getLength() - 1, refBases.length);
+            int readIndex = block.getReadStart() - 1;
+            for (int pos = blockStart; pos <= blockEnd; ++pos, ++readIndex) {
+                if (refBases[pos - 1] == 'N') continue;
+
+                final byte qual = quals[readIndex];
+                if (qual < minimumBaseQuality)             { ++basesExcludedByBaseq;   continue; }
+                if (mate != null && mate.covers(pos))     { ++basesExcludedByOverlap; continue; }
+
+                if (++depths[pos & mask] <= coverageCap) {
+                    baseQHistogramArray[qual]++;
+                }
+                if (coverage != null) coverage.add(pos);
+            }
+        }
+
+        if (coverage != null) {
+            pendingMates.put(coverage.readName, coverage);
+            pendingMatesByStart.add(coverage);
+        }
+    }
+
+    /** Adds the counts of another collector, which must have finished all of its contigs. */
+    void merge(final FastWgsMetricsCollector other) {
+        for (int i = 0; i < histogramArray.length; ++i) {
+            histogramArray[i] += other.histogramArray[i];
+        }
+        for (int i = 0; i < baseQHistogramArray.length; ++i) {
+            baseQHistogramArray[i] += other.baseQHistogramArray[i];
+        }
+        basesExcludedByBaseq += other.basesExcludedByBaseq;
+        basesExcludedByOverlap += other.basesExcludedByOverlap;
+        basesExcludedByCapping += other.basesExcludedByCapping;
+        dupeFilter.addFilteredCounts(other.dupeFilter);
+        mapqFilter.addFilteredCounts(other.mapqFilter);
+        pairFilter.addFilteredCounts(other.pairFilter);
+    }
+
+    /** True if the mate of a record that passed the filters starts within it, and so has not been seen yet. */
+    private static boolean mayOverlapMate(final SAMRecord record) {
+        return !record.getSupplementaryAlignmentFlag() &&
+                record.getMateReferenceIndex().equals(record.getReferenceIndex()) &&
+                record.getMateAlignmentStart() >= record.getAlignmentStart() &&
+                record.getMateAlignmentStart() <= record.getAlignmentEnd();
+    }
+
+    /** Adds the depth of the positions before the given one to the histogram. */
+    private void finalizePositionsBefore(final int position) {
+        final int mask = depths.length - 1;
+        for (int pos = windowStart; pos < position; ++pos) {
+            if (pos < windowEnd) {
+                final int index = pos & mask;
+                countPosition(pos, depths[index]);
+                depths[index] = 0;
+            } else {
+                countPosition(pos, 0);
+            }
+        }
+        windowStart = Math.max(windowStart, position);
+        windowEnd = Math.max(windowEnd, windowStart);
+    }
+
+    private void countPosition(final int position, final int depth) {
+        if (refBases[position - 1] == 'N') return;
+        if (depth > coverageCap) {
+            basesExcludedByCapping += depth - coverageCap;
+            histogramArray[coverageCap]++;
+        } else {
+            histogramArray[depth]++;
+        }
+    }
+
+    /** Grows the ring buffer, keeping the depths it holds, until it can hold every position up to end. */
+    private void ensureWindowCovers(final int start, final int end) {
+        if (end - windowStart >= depths.length) {
+            int size = depths.length;
+            while (end - windowStart >= size) size <<= 1;
+            final int[] grown = new int[size];
+            for (int pos = windowStart; pos < windowEnd; ++pos) {
+                grown[pos & (size - 1)] = depths[pos & (depths.length - 1)];
+            }
+            depths = grown;
+        }
+        windowEnd = Math.max(windowEnd, end + 1);
+    }
+
+    /** Forgets the records that end before a position, since no record that is still to come can overlap them. */
+    private void releasePendingMatesEndingBefore(final int position) {
+        while (!pendingMatesByStart.isEmpty() && pendingMatesByStart.peekFirst().end < position) {
+            final MateCoverage coverage = pendingMatesByStart.removeFirst();
+            pendingMates.remove(coverage.readName, coverage);
+        }
+    }
+
+    /** The positions to which a record waiting for its mate contributed coverage. */
+    private static final class MateCoverage {
+        final String readName;
+        final int start;
+        final int end;
+        private final BitSet positions;
+
+        MateCoverage(final String readName, final int start, final int end) {
+            this.readName = readName;
+            this.start = start;
+            this.end = end;
+            this.positions = new BitSet(end - start + 1);
+        }
+
+        void add(final int position) {
+            positions.set(position - start);
+        }
+
+        boolean covers(final int position) {
+            return position <= end && positions.get(position - start);
+        }
+    }
+}
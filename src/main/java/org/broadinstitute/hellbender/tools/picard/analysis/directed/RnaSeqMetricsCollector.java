@@ -19,6 +19,7 @@ import org.broadinstitute.hellbender.metrics.SAMRecordMultiLevelCollector;
 import org.broadinstitute.hellbender.utils.MathUtils;
 import org.broadinstitute.hellbender.utils.gene.Gene;
 import org.broadinstitute.hellbender.utils.gene.LocusFunction;
+import org.broadinstitute.hellbender.utils.gene.LocusFunctionIndex;
 
 import java.io.File;
 import java.util.*;
@@ -34,6 +35,8 @@ public class RnaSeqMetricsCollector extends SAMRecordMultiLevelCollector<RnaSeqM
     final private Set<Integer> ignoredSequenceIndices;
 
     private final OverlapDetector<Gene> geneOverlapDetector;
+    // the function of each locus, flattened over all the transcripts of geneOverlapDetector
+    private final LocusFunctionIndex locusFunctionIndex;
     private final OverlapDetector<Interval> ribosomalSequenceOverlapDetector;
     private final boolean collectCoverageStatistics;
     
@@ -44,6 +47,7 @@ public class RnaSeqMetricsCollector extends SAMRecordMultiLevelCollector<RnaSeqM
         this.ribosomalInitialValue  = ribosomalBasesInitialValue;
         this.ignoredSequenceIndices = ignoredSequenceIndices;
         this.geneOverlapDetector    = geneOverlapDetector;
+        this.locusFunctionIndex     = new LocusFunctionIndex(geneOverlapDetector.getAll());
         this.ribosomalSequenceOverlapDetector = ribosomalSequenceOverlapDetector;
         this.minimumLength          = minimumLength;
         this.strandSpecificity      = strandSpecificity;
@@ -93,6 +97,9 @@ public class RnaSeqMetricsCollector extends SAMRecordMultiLevelCollector<RnaSeqM
         
         private final Map<Gene.Transcript, int[]> coverageByTranscript = new HashMap<Gene.Transcript, int[]>();
 
+        // the number of bases of a read with each LocusFunction, by ordinal
+        private final long[] functionCounts = new long[LocusFunction.values().length];
+
         public PerUnitRnaSeqMetricsCollector(final String sample,
                                              final String library,
                                              final String readGroup,
@@ -151,58 +158,46 @@ public class RnaSeqMetricsCollector extends SAMRecordMultiLevelCollector<RnaSeqM
                 }
             }
 
-            final Collection<Gene> overlappingGenes                  = geneOverlapDetector.getOverlaps(readInterval);
-            final List<AlignmentBlock> alignmentBlocks               = rec.getAlignmentBlocks();
-            boolean overlapsExon = false;
+            // The overlapping genes are only needed for coverage and strand specificity
+            final Collection<Gene> overlappingGenes;
+            if (collectCoverageStatistics || strandSpecificity != StrandSpecificity.NONE) {
+                overlappingGenes = geneOverlapDetector.getOverlaps(readInterval);
+            } else {
+                overlappingGenes = Collections.emptyList();
+            }
+            final List<AlignmentBlock> alignmentBlocks = rec.getAlignmentBlocks();
 
+            // Tally the function of each base in the alignment blocks.  By default, if a base does not overlap
+            // with a gene, it is intergenic.
+            Arrays.fill(functionCounts, 0);
             for (final AlignmentBlock alignmentBlock : alignmentBlocks) {
-                // Get functional class for each position in the alignment block.
-                final LocusFunction[] locusFunctions = new LocusFunction[alignmentBlock.getLength()];
-
-                // By default, if base does not overlap with rRNA or gene, it is intergenic.
-                Arrays.fill(locusFunctions, 0, locusFunctions.length, LocusFunction.INTERGENIC);
-
+                locusFunctionIndex.addFunctionCounts(rec.getReferenceName(), alignmentBlock.getReferenceStart(),
+                        CoordMath.getEnd(alignmentBlock.getReferenceStart(), alignmentBlock.getLength()), functionCounts);
+            }
+            metrics.INTERGENIC_BASES += functionCounts[LocusFunction.INTERGENIC.ordinal()];
+            metrics.INTRONIC_BASES   += functionCounts[LocusFunction.INTRONIC.ordinal()];
+            metrics.UTR_BASES        += functionCounts[LocusFunction.UTR.ordinal()];
+            metrics.CODING_BASES     += functionCounts[LocusFunction.CODING.ordinal()];
+            metrics.PF_ALIGNED_BASES += functionCounts[LocusFunction.INTERGENIC.ordinal()] + functionCounts[LocusFunction.INTRONIC.ordinal()] +
+                    functionCounts[LocusFunction.UTR.ordinal()] + functionCounts[LocusFunction.CODING.ordinal()];
+            final boolean overlapsExon = functionCounts[LocusFunction.UTR.ordinal()] + functionCounts[LocusFunction.CODING.ordinal()] > 0;
+
+            // if you want to gather coverage statistics, this variable should be true.
+            // added for cases with many units [samples/read groups] which overwhelm memory.
+            if (collectCoverageStatistics) {
                 for (final Gene gene : overlappingGenes) {
                     for (final Gene.Transcript transcript : gene) {
-                        transcript.assignLocusFunctionForRange(alignmentBlock.getReferenceStart(), locusFunctions);
-                        // if you want to gather coverage statistics, this variable should be true.
-                        // added for cases with many units [samples/read groups] which overwhelm memory.                
                         // Add coverage to our coverage counter for this transcript
-                        if (collectCoverageStatistics) {
-                            int[] coverage = this.coverageByTranscript.get(transcript);
-                            if (coverage == null) {
-                                coverage = new int[transcript.length()];
-                                this.coverageByTranscript.put(transcript, coverage);
-                            }
+                        int[] coverage = this.coverageByTranscript.get(transcript);
+                        if (coverage == null) {
+                            coverage = new int[transcript.length()];
+                            this.coverageByTranscript.put(transcript, coverage);
+                        }
+                        for (final AlignmentBlock alignmentBlock : alignmentBlocks) {
                             transcript.addCoverageCounts(alignmentBlock.getReferenceStart(),
                                     CoordMath.getEnd(alignmentBlock.getReferenceStart(), alignmentBlock.getLength()),
                                     coverage);
                         }
-
-                    }
-                }
-
-                // Tally the function of each base in the alignment block.
-                for (final LocusFunction locusFunction : locusFunctions) {
-                    ++metrics.PF_ALIGNED_BASES;
-                    switch (locusFunction) {
-                        case INTERGENIC:
-                            ++metrics.INTERGENIC_BASES;
-                            break;
-                        case INTRONIC:
-                            ++metrics.INTRONIC_BASES;
-                            break;
-                        case UTR:
-                            ++metrics.UTR_BASES;
-                            overlapsExon = true;
-                            break;
-                        case CODING:
-                            ++metrics.CODING_BASES;
-                            overlapsExon = true;
-                            break;
-                        case RIBOSOMAL:
-                            ++metrics.RIBOSOMAL_BASES;
-                            break;
                     }
                 }
             }
@@ -248,6 +243,34 @@ public class RnaSeqMetricsCollector extends SAMRecordMultiLevelCollector<RnaSeqM
             }
         }
 
+        @Override
+        public void merge(final PerUnitMetricCollector<RnaSeqMetrics, Integer, SAMRecord> other) {
+            final PerUnitRnaSeqMetricsCollector otherCollector = (PerUnitRnaSeqMetricsCollector) other;
+            final RnaSeqMetrics otherMetrics = otherCollector.metrics;
+            metrics.PF_BASES += otherMetrics.PF_BASES;
+            metrics.PF_ALIGNED_BASES += otherMetrics.PF_ALIGNED_BASES;
+            if (metrics.RIBOSOMAL_BASES != null && otherMetrics.RIBOSOMAL_BASES != null) {
+                metrics.RIBOSOMAL_BASES += otherMetrics.RIBOSOMAL_BASES;
+            }
+            metrics.CODING_BASES += otherMetrics.CODING_BASES;
+            metrics.UTR_BASES += otherMetrics.UTR_BASES;
+            metrics.INTRONIC_BASES += otherMetrics.INTRONIC_BASES;
+            metrics.INTERGENIC_BASES += otherMetrics.INTERGENIC_BASES;
+            metrics.IGNORED_READS += otherMetrics.IGNORED_READS;
+            metrics.CORRECT_STRAND_READS += otherMetrics.CORRECT_STRAND_READS;
+            metrics.INCORRECT_STRAND_READS += otherMetrics.INCORRECT_STRAND_READS;
+
+            for (final Map.Entry<Gene.Transcript, int[]> entry : otherCollector.coverageByTranscript.entrySet()) {
+                final int[] coverage = this.coverageByTranscript.get(entry.getKey());
+                if (coverage == null) {
+                    this.coverageByTranscript.put(entry.getKey(), entry.getValue().clone());
+                } else {
+                    final int[] otherCoverage = entry.getValue();
+                    for (int i = 0; i < coverage.length; i++) coverage[i] += otherCoverage[i];
+                }
+            }
+        }
+
         @Override
         public void addMetricsToFile(final MetricsFile<RnaSeqMetrics, Integer> file) {
             // Compute metrics based on coverage of top 1000 genes
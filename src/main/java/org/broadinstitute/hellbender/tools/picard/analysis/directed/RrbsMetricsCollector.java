@@ -149,6 +149,19 @@ public class RrbsMetricsCollector extends SAMRecordAndReferenceMultiLevelCollect
 			coverageMedian = (int)cpgTotal.getMedianBinSize();
 		}
 
+		@Override
+		public void merge(final PerUnitMetricCollector<RrbsMetrics, Comparable<?>, SAMRecordAndReference> other) {
+			final PerUnitRrbsMetricsCollector otherCollector = (PerUnitRrbsMetricsCollector) other;
+			nCytoConverted += otherCollector.nCytoConverted;
+			nCytoTotal += otherCollector.nCytoTotal;
+			cpgTotal.addHistogram(otherCollector.cpgTotal);
+			cpgConverted.addHistogram(otherCollector.cpgConverted);
+			mappedRecordCount += otherCollector.mappedRecordCount;
+			smallReadCount += otherCollector.smallReadCount;
+			mismatchCount += otherCollector.mismatchCount;
+			noCpgCount += otherCollector.noCpgCount;
+		}
+
 		@Override
 		public void addMetricsToFile(final MetricsFile<RrbsMetrics, Comparable<?>> metricsFile) {
 			// Create both the summary and detail metrics & add them to the RrbsMetrics container class for
@@ -14,7 +14,6 @@ import htsjdk.samtools.util.FormatUtil;
 import htsjdk.samtools.util.Interval;
 import htsjdk.samtools.util.IntervalList;
 import htsjdk.samtools.util.Log;
-import htsjdk.samtools.util.OverlapDetector;
 import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.samtools.util.SequenceUtil;
 import htsjdk.samtools.util.StringUtil;
@@ -61,11 +60,11 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
     //The interval list of the the regions we intend to cover
     private final IntervalList allTargets;
 
-    // Overlap detector for finding overlaps between reads and the experimental targets
-    private final OverlapDetector<Interval> targetDetector;
+    // Index for finding the bases of reads that fall within the experimental targets
+    private final IntervalIndex targetIndex;
 
-    // Overlap detector for finding overlaps between the reads and the baits (and the near bait space)
-    private final OverlapDetector<Interval> probeDetector;
+    // Index for finding the bases of reads that fall within the baits (and whether they are near any bait)
+    private final IntervalIndex probeIndex;
 
     private Map<Interval,Double> intervalToGc = null;
 
@@ -77,13 +76,6 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
 
     private final long genomeSize;
 
-    //A map of coverage by target in which coverage is reset every read, this is done
-    //so that we can calculate overlap for a read once and the resulting coverage is
-    //than added to the cumulative coverage of every collector that collects
-    //information on that read
-    private Map<Interval, Coverage> coverageByTargetForRead;
-    private Coverage [] cov;
-
     //Converts a targetMetric into a more specific metric of METRIC_TYPE
     public abstract METRIC_TYPE convertMetric(final TargetMetrics targetMetrics);
 
@@ -162,25 +154,13 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
         this.allTargets = targetIntervals;
 
         final List<Interval> uniqueBaits = this.allProbes.uniqued().getIntervals();
-        this.probeDetector = new OverlapDetector<Interval>(-NEAR_PROBE_DISTANCE, 0);
-        this.probeDetector.addAll(uniqueBaits, uniqueBaits);
+        this.probeIndex = new IntervalIndex(uniqueBaits);
         this.probeTerritory = Interval.countBases(uniqueBaits);
 
         final List<Interval> uniqueTargets = this.allTargets.uniqued().getIntervals();
-        targetDetector = new OverlapDetector<Interval>(0,0);
-        this.targetDetector.addAll(uniqueTargets, uniqueTargets);
+        this.targetIndex = new IntervalIndex(uniqueTargets);
         this.targetTerritory = Interval.countBases(uniqueTargets);
 
-        // Populate the coverage by target map
-        int i = 0;
-        cov = new Coverage[uniqueTargets.size()];
-        this.coverageByTargetForRead = new LinkedHashMap<Interval, Coverage>(uniqueTargets.size() * 2, 0.5f);
-        for (final Interval target : uniqueTargets) {
-            final Coverage coverage = new Coverage(target, 0);
-            this.coverageByTargetForRead.put(target, coverage);
-            cov[i++] = coverage;
-        }
-
         long genomeSizeAccumulator = 0;
         for (final SAMSequenceRecord seq : this.allProbes.getHeader().getSequenceDictionary().getSequences()) {
             genomeSizeAccumulator += seq.getSequenceLength();
@@ -201,7 +181,7 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
 
     @Override
     protected PerUnitMetricCollector<METRIC_TYPE, Integer, SAMRecord> makeChildCollector(final String sample, final String library, final String readGroup) {
-        final PerUnitTargetMetricCollector collector =  new PerUnitTargetMetricCollector(probeSetName, coverageByTargetForRead.keySet(),
+        final PerUnitTargetMetricCollector collector =  new PerUnitTargetMetricCollector(probeSetName,
                                                                                          sample, library, readGroup, probeTerritory, targetTerritory, genomeSize,
                                                                                          intervalToGc);
         if (this.probeSetName != null) {
@@ -229,8 +209,9 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
         private final Map<Interval,Double> intervalToGc;
         private File perTargetOutput;
 
-        // A Map to accumulate per-bait-region (i.e. merge of overlapping targets) coverage. */
-        private final Map<Interval, Coverage> coverageByTarget;
+        // The changes in depth along the concatenated targets (i.e. merges of overlapping targets), so that the
+        // coverage of a target base is the sum of the changes up to and including its own index in the targetIndex.
+        private final int[] depthChanges;
 
         private final TargetMetrics metrics = new TargetMetrics();
 
@@ -238,7 +219,7 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
          * Constructor that parses the squashed reference to genome reference file and stores the
          * information in a map for later use.
          */
-        public PerUnitTargetMetricCollector(final String probeSetName, final Set<Interval> coverageTargets,
+        public PerUnitTargetMetricCollector(final String probeSetName,
                                             final String sample, final String library, final String readGroup,
                                             final long probeTerritory, final long targetTerritory, final long genomeSize,
                                             final Map<Interval, Double> intervalToGc) {
@@ -251,10 +232,7 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
             metrics.TARGET_TERRITORY = targetTerritory;
             metrics.GENOME_SIZE      = genomeSize;
 
-            this.coverageByTarget = new LinkedHashMap<Interval, Coverage>(coverageTargets.size() * 2, 0.5f);
-            for (Interval target : coverageTargets) {
-                this.coverageByTarget.put(target, new Coverage(target,0));
-            }
+            this.depthChanges = new int[targetIndex.getTerritory() + 1];
 
             this.intervalToGc = intervalToGc;
         }
@@ -281,26 +259,16 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
                 return;
             }
 
-            // Prefetch the list of target and bait overlaps here as they're needed multiple times.
-            final Collection<Interval> targets;
-            final Collection<Interval> probes;
-
-            if (!rec.getReadUnmappedFlag()) {
-                final Interval read = new Interval(rec.getReferenceName(), rec.getAlignmentStart(), rec.getAlignmentEnd());
-                targets = targetDetector.getOverlaps(read);
-                probes   = probeDetector.getOverlaps(read);
-            }
-            else {
-                targets = null;
-                probes = null;
-            }
+            // Determine whether the read is near a bait here as it's needed multiple times.
+            final boolean nearProbe = !rec.getReadUnmappedFlag() &&
+                    probeIndex.overlaps(rec.getReferenceName(), rec.getAlignmentStart() - NEAR_PROBE_DISTANCE, rec.getAlignmentEnd() + NEAR_PROBE_DISTANCE);
 
             ++this.metrics.PF_READS;
             this.metrics.PF_BASES += rec.getReadLength();
 
             // And now calculate the values we need for HS_LIBRARY_SIZE
             if (rec.getReadPairedFlag() && rec.getFirstOfPairFlag() && !rec.getReadUnmappedFlag() && !rec.getMateUnmappedFlag()) {
-                if (probes != null && !probes.isEmpty()) {
+                if (nearProbe) {
                     ++this.metrics.PF_SELECTED_PAIRS;
                     if (!rec.getDuplicateReadFlag()) ++this.metrics.PF_SELECTED_UNIQUE_PAIRS;
                 }
@@ -326,20 +294,19 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
 
             final boolean mappedInPair = rec.getReadPairedFlag() && !rec.getMateUnmappedFlag();
 
-            // Find the target overlaps
-            if (targets != null && !targets.isEmpty()) {
-                for (final Interval target : targets) {
-                    final Coverage coverage = this.coverageByTarget.get(target);
-
-                    for (final AlignmentBlock block : rec.getAlignmentBlocks()) {
-                        final int end = CoordMath.getEnd(block.getReferenceStart(), block.getLength());
-                        for (int pos=block.getReferenceStart(); pos<=end; ++ pos) {
-                            if (pos >= target.getStart() && pos <= target.getEnd()) {
-                                ++this.metrics.ON_TARGET_BASES;
-                                if (mappedInPair) ++this.metrics.ON_TARGET_FROM_PAIR_BASES;
-                                coverage.addBase(pos - target.getStart());
-                            }
-                        }
+            // Find the target overlaps, adding a range of depth for each piece of a block within a target
+            final IntervalIndex.ContigIntervals targets = targetIndex.getContig(rec.getReferenceName());
+            if (targets != null) {
+                for (final AlignmentBlock block : rec.getAlignmentBlocks()) {
+                    final int blockStart = block.getReferenceStart();
+                    final int blockEnd = CoordMath.getEnd(blockStart, block.getLength());
+                    for (int i = targets.firstEndingAtOrAfter(blockStart); i < targets.size() && targets.getStart(i) <= blockEnd; ++i) {
+                        final int start = Math.max(blockStart, targets.getStart(i));
+                        final int end = Math.min(blockEnd, targets.getEnd(i));
+                        this.metrics.ON_TARGET_BASES += end - start + 1;
+                        if (mappedInPair) this.metrics.ON_TARGET_FROM_PAIR_BASES += end - start + 1;
+                        ++this.depthChanges[targets.getOffset(i, start)];
+                        --this.depthChanges[targets.getOffset(i, end) + 1];
                     }
                 }
             }
@@ -347,17 +314,12 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
             // Now do the bait overlaps
             int mappedBases = 0;
             for (final AlignmentBlock block : rec.getAlignmentBlocks()) mappedBases += block.getLength();
-            int onBaitBases = 0;
 
-            if (probes != null && !probes.isEmpty()) {
-                for (final Interval bait : probes) {
-                    for (final AlignmentBlock block : rec.getAlignmentBlocks()) {
-                        final int end = CoordMath.getEnd(block.getReferenceStart(), block.getLength());
-
-                        for (int pos=block.getReferenceStart(); pos<=end; ++pos) {
-                            if (pos >= bait.getStart() && pos <= bait.getEnd()) ++onBaitBases;
-                        }
-                    }
+            if (nearProbe) {
+                final IntervalIndex.ContigIntervals baits = probeIndex.getContig(rec.getReferenceName());
+                int onBaitBases = 0;
+                for (final AlignmentBlock block : rec.getAlignmentBlocks()) {
+                    onBaitBases += baits.countBasesWithin(block.getReferenceStart(), CoordMath.getEnd(block.getReferenceStart(), block.getLength()));
                 }
 
                 this.metrics.ON_PROBE_BASES   += onBaitBases;
@@ -369,6 +331,29 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
 
         }
 
+        @Override
+        public void merge(final PerUnitMetricCollector<METRIC_TYPE, Integer, SAMRecord> other) {
+            final PerUnitTargetMetricCollector otherCollector = (PerUnitTargetMetricCollector) other;
+            final TargetMetrics otherMetrics = otherCollector.metrics;
+            metrics.TOTAL_READS               += otherMetrics.TOTAL_READS;
+            metrics.PF_READS                  += otherMetrics.PF_READS;
+            metrics.PF_BASES                  += otherMetrics.PF_BASES;
+            metrics.PF_UNIQUE_READS           += otherMetrics.PF_UNIQUE_READS;
+            metrics.PF_SELECTED_PAIRS         += otherMetrics.PF_SELECTED_PAIRS;
+            metrics.PF_SELECTED_UNIQUE_PAIRS  += otherMetrics.PF_SELECTED_UNIQUE_PAIRS;
+            metrics.PF_UQ_READS_ALIGNED       += otherMetrics.PF_UQ_READS_ALIGNED;
+            metrics.PF_UQ_BASES_ALIGNED       += otherMetrics.PF_UQ_BASES_ALIGNED;
+            metrics.ON_PROBE_BASES            += otherMetrics.ON_PROBE_BASES;
+            metrics.NEAR_PROBE_BASES          += otherMetrics.NEAR_PROBE_BASES;
+            metrics.OFF_PROBE_BASES           += otherMetrics.OFF_PROBE_BASES;
+            metrics.ON_TARGET_BASES           += otherMetrics.ON_TARGET_BASES;
+            metrics.ON_TARGET_FROM_PAIR_BASES += otherMetrics.ON_TARGET_FROM_PAIR_BASES;
+
+            for (int i = 0; i < depthChanges.length; ++i) {
+                depthChanges[i] += otherCollector.depthChanges[i];
+            }
+        }
+
         @Override
         public void finish() {
             metrics.PCT_PF_READS         = metrics.PF_READS / (double) metrics.TOTAL_READS;
@@ -383,30 +368,46 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
             metrics.MEAN_PROBE_COVERAGE   = metrics.ON_PROBE_BASES / (double) metrics.PROBE_TERRITORY;
             metrics.FOLD_ENRICHMENT       = (metrics.ON_PROBE_BASES/ denominator) / ((double) metrics.PROBE_TERRITORY / metrics.GENOME_SIZE);
 
-            calculateTargetCoverageMetrics();
-            calculateGcMetrics();
+            final short[] targetDepths = getTargetDepths();
+            calculateTargetCoverageMetrics(targetDepths);
+            calculateGcMetrics(targetDepths);
+        }
+
+        /**
+         * Gets the coverage of every base of the concatenated targets, capped at Short.MAX_VALUE to prevent overflow
+         * while avoiding doubling the memory requirement.
+         */
+        private short[] getTargetDepths() {
+            final short[] targetDepths = new short[targetIndex.getTerritory()];
+            int depth = 0;
+            for (int i = 0; i < targetDepths.length; ++i) {
+                depth += depthChanges[i];
+                targetDepths[i] = (short) Math.min(depth, Short.MAX_VALUE);
+            }
+            return targetDepths;
         }
 
         /** Calculates how much additional sequencing is needed to raise 80% of bases to the mean for the lane. */
-        private void calculateTargetCoverageMetrics() {
+        private void calculateTargetCoverageMetrics(final short[] targetDepths) {
             final short[] depths = new short[(int) this.metrics.TARGET_TERRITORY];  // may not use entire array
             int zeroCoverageTargets = 0;
             int depthIndex = 0;
             double totalCoverage = 0;
             int basesConsidered = 0;
 
-            for (final Coverage c : this.coverageByTarget.values()) {
-                if (!c.hasCoverage()) {
+            for (int i = 0; i < targetIndex.size(); ++i) {
+                final int start = targetIndex.getOffset(i);
+                final int end = start + targetIndex.getInterval(i).length();
+                if (!hasCoverage(targetDepths, start, end)) {
                     ++zeroCoverageTargets;
                     continue;
                 }
 
-                final short[] targetDepths = c.getDepths();
-                basesConsidered += targetDepths.length;
+                basesConsidered += end - start;
 
-                for (final short depth : targetDepths) {
-                    depths[depthIndex++] = depth;
-                    totalCoverage += depth;
+                for (int j = start; j < end; ++j) {
+                    depths[depthIndex++] = targetDepths[j];
+                    totalCoverage += targetDepths[j];
                 }
             }
 
@@ -431,18 +432,17 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
 	        int targetBases50x = 0;
 	        int targetBases100x = 0;
 
-            for (final Coverage c : this.coverageByTarget.values()) {
-                for (final short depth : c.getDepths()) {
-                    ++totalTargetBases;
-
-                    if (depth >= 2) {
-                        ++targetBases2x;
-                        if (depth >=10) {
-                            ++targetBases10x;
-                            if (depth >= 20) {
-                                ++targetBases20x;
-                                if (depth >=30) {
-                                    ++targetBases30x;
+            for (final short depth : targetDepths) {
+                ++totalTargetBases;
+
+                if (depth >= 2) {
+                    ++targetBases2x;
+                    if (depth >=10) {
+                        ++targetBases10x;
+                        if (depth >= 20) {
+                            ++targetBases20x;
+                            if (depth >=30) {
+                                ++targetBases30x;
 	                                if (depth >=40) {
 		                                ++targetBases40x;
 		                                if (depth >=50) {
@@ -452,7 +452,6 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
 			                                }
 		                                }
 	                                }
-                                }
                             }
                         }
                     }
@@ -468,7 +467,16 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
 	        this.metrics.PCT_TARGET_BASES_100X = (double) targetBases100x / (double) totalTargetBases;
         }
 
-        private void calculateGcMetrics() {
+        /** Returns true if any base in the range has coverage of > 1 */
+        private boolean hasCoverage(final short[] targetDepths, final int start, final int end) {
+            for (int i = start; i < end; ++i) {
+                if (targetDepths[i] > 1) return true;
+            }
+
+            return false;
+        }
+
+        private void calculateGcMetrics(final short[] targetDepths) {
             if (this.intervalToGc != null) {
                 log.info("Calculating GC metrics");
 
@@ -490,18 +498,20 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
                 final long[] targetBasesByGc  = new long[bins];
                 final long[] alignedBasesByGc = new long[bins];
 
-                for (final Map.Entry<Interval,Coverage> entry : this.coverageByTarget.entrySet()) {
-                    final Interval interval = entry.getKey();
-                    final Coverage cov = entry.getValue();
+                for (int i = 0; i < targetIndex.size(); ++i) {
+                    final Interval interval = targetIndex.getInterval(i);
+                    final int start = targetIndex.getOffset(i);
+                    int total = 0;
+                    for (int j = start; j < start + interval.length(); ++j) total += targetDepths[j];
 
                     final double gcDouble = this.intervalToGc.get(interval);
                     final int gc = (int) Math.round(gcDouble * 100);
 
                     targetBasesByGc[gc]  += interval.length();
-                    alignedBasesByGc[gc] += cov.getTotal();
+                    alignedBasesByGc[gc] += total;
 
                     if (out != null) {
-                        final double coverage = cov.getTotal() / (double) interval.length();
+                        final double coverage = total / (double) interval.length();
 
                         out.println(interval.getContig() + "\t" +
                                     interval.getStart() + "\t" +
@@ -549,51 +559,107 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultiLevelMetri
     }
 
     /**
-     * A simple class that is used to store the coverage information about an interval.
-     *
-     * @author Tim Fennell
+     * An index of disjoint intervals, such as the unique targets or baits, kept as sorted arrays of coordinates per contig
+     * so that the intervals overlapping a read can be found by binary search.  Each interval is also given an offset in
+     * the concatenation of all of the intervals, in the order in which they were provided, to address per-base values.
      */
-    public static class Coverage {
-        private final Interval interval;
-        private final short[] depths;
-
-        /** Constructs a new coverage object for the provided mapping with the desired padding either side. */
-        public Coverage(final Interval i, final int padding) {
-            this.interval = i;
-            this.depths = new short[interval.length() + 2*padding];
-        }
+    static final class IntervalIndex {
+        private final List<Interval> intervals;
+        private final int[] offsets;
+        private final int territory;
+        private final Map<String, ContigIntervals> contigs = new HashMap<>();
+
+        /** @param intervals disjoint intervals, sorted by start within each contig, as returned by IntervalList.uniqued() */
+        IntervalIndex(final List<Interval> intervals) {
+            this.intervals = new ArrayList<>(intervals);
+            this.offsets = new int[intervals.size()];
+
+            final Map<String, List<Integer>> indexesByContig = new LinkedHashMap<>();
+            int offset = 0;
+            for (int i = 0; i < intervals.size(); ++i) {
+                offsets[i] = offset;
+                offset += intervals.get(i).length();
+                indexesByContig.computeIfAbsent(intervals.get(i).getContig(), contig -> new ArrayList<>()).add(i);
+            }
+            this.territory = offset;
 
-        /** Adds a single point of depth at the desired offset into the coverage array. */
-        public void addBase(final int offset) {
-            if (offset >= 0 && offset < this.depths.length) {
-                // Prevent overflow if depth is too great, while avoiding doubling memory requirement.
-                if (this.depths[offset] < Short.MAX_VALUE) {
-                    this.depths[offset] += 1;
-                }
+            for (final Map.Entry<String, List<Integer>> entry : indexesByContig.entrySet()) {
+                contigs.put(entry.getKey(), new ContigIntervals(entry.getValue()));
             }
         }
 
-        /** Returns true if any base in the range has coverage of > 1 */
-        public boolean hasCoverage() {
-            for (final short s : depths) {
-                if (s > 1) return true;
-            }
+        /** The number of intervals. */
+        int size() { return intervals.size(); }
 
-            return false;
-        }
+        Interval getInterval(final int index) { return intervals.get(index); }
 
-        /** Gets the coverage depths as an array of shorts. */
-        public short[] getDepths() { return this.depths; }
+        /** The offset of the first base of an interval in the concatenation of all intervals. */
+        int getOffset(final int index) { return offsets[index]; }
 
-        public int getTotal() {
-            int total = 0;
-            for (int i=0; i<depths.length; ++i) total += depths[i];
-            return total;
+        /** The total number of bases in the intervals. */
+        int getTerritory() { return territory; }
+
+        /** The intervals on a contig, or null if there are none. */
+        ContigIntervals getContig(final String contig) { return contigs.get(contig); }
+
+        /** True if any interval overlaps the given closed range of a contig. */
+        boolean overlaps(final String contig, final int start, final int end) {
+            final ContigIntervals intervals = contigs.get(contig);
+            if (intervals == null) return false;
+            final int i = intervals.firstEndingAtOrAfter(start);
+            return i < intervals.size() && intervals.getStart(i) <= end;
         }
 
-        @Override
-        public String toString() {
-            return "TargetedMetricCollector(interval=" + interval + ", depths = [" + StringUtil.intValuesToString(this.depths) + "])";
+        /** The intervals of one contig. */
+        final class ContigIntervals {
+            private final int[] starts;
+            private final int[] ends;
+            private final int[] indexes;
+
+            private ContigIntervals(final List<Integer> indexes) {
+                this.starts = new int[indexes.size()];
+                this.ends = new int[indexes.size()];
+                this.indexes = new int[indexes.size()];
+                for (int i = 0; i < indexes.size(); ++i) {
+                    final Interval interval = intervals.get(indexes.get(i));
+                    if (i > 0 && interval.getStart() <= ends[i - 1]) {
+                        throw new IllegalArgumentException("Intervals must be sorted and must not overlap: " + interval);
+                    }
+                    this.starts[i] = interval.getStart();
+                    this.ends[i] = interval.getEnd();
+                    this.indexes[i] = indexes.get(i);
+                }
+            }
+
+            int size() { return starts.length; }
+
+            int getStart(final int i) { return starts[i]; }
+
+            int getEnd(final int i) { return ends[i]; }
+
+            /** The offset of a position within the i-th interval of this contig in the concatenation of all intervals. */
+            int getOffset(final int i, final int position) { return offsets[indexes[i]] + position - starts[i]; }
+
+            /** The index of the first interval that ends at or after the position, or size() if there is none. */
+            int firstEndingAtOrAfter(final int position) {
+                int low = 0;
+                int high = ends.length;
+                while (low < high) {
+                    final int mid = (low + high) >>> 1;
+                    if (ends[mid] < position) low = mid + 1;
+                    else high = mid;
+                }
+                return low;
+            }
+
+            /** The number of bases of the closed range [start, end] that are within the intervals. */
+            int countBasesWithin(final int start, final int end) {
+                int bases = 0;
+                for (int i = firstEndingAtOrAfter(start); i < starts.length && starts[i] <= end; ++i) {
+                    bases += Math.min(end, ends[i]) - Math.max(start, starts[i]) + 1;
+                }
+                return bases;
+            }
         }
     }
 }
@@ -0,0 +1,318 @@
+package org.broadinstitute.hellbender.tools.picard.illumina;
+
+import htsjdk.samtools.util.Log;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static htsjdk.samtools.util.SequenceUtil.basesEqual;
+import static htsjdk.samtools.util.SequenceUtil.isNoCall;
+import static java.lang.Math.min;
+
+/**
+ * Finds the expected barcode with the fewest mismatches to the barcode bases of a read, and how many mismatches the
+ * best and second best barcodes have, for ExtractIlluminaBarcodes.
+ * <p/>
+ * A mismatch is a called base that differs from the barcode, or that has a quality below the minimum base quality
+ * whether it differs or not.  No-calls are never mismatches.  When several barcodes have the fewest mismatches the
+ * first of them, in the order they were given, is the best.
+ * <p/>
+ * Barcodes of A, C, G and T totalling at most 32 bases are packed two bits to a base, so that the mismatches of a read
+ * to a barcode are a XOR and a bit count.  On top of that, every sequence within maxMismatches of some barcode is looked
+ * up in a hash index built up front, holding the best barcode and the two fewest mismatches for that sequence.  A read
+ * with no no-calls or low quality bases that matches any barcode closely enough to be assigned to it is therefore a
+ * single lookup.  The remaining reads, which mostly match no barcode, are compared with every barcode.
+ */
+final class BarcodeMatcher {
+    private static final Log LOG = Log.getInstance(BarcodeMatcher.class);
+
+    /** The most sequences the index will hold, which bounds both its memory and the time to build it. */
+    static final int MAX_INDEXED_SEQUENCES = 1 << 20;
+
+    private static final int MAX_PACKED_BASES = 32;
+    private static final long LOW_BITS = 0x5555555555555555L;
+
+    /** The best barcode for a read, and the mismatches of the best and second best barcodes. */
+    static final class Match {
+        /** The index of the best barcode, or -1 if there are no barcodes. */
+        int barcode;
+        int mismatches;
+        int mismatchesToSecondBest;
+    }
+
+    private final byte[][][] barcodes;
+    private final int minimumBaseQuality;
+    private final int[] segmentLengths;
+
+    /** The barcodes packed two bits to a base, or null if they cannot be packed. */
+    private final long[] packedBarcodes;
+    private final long allBases;
+
+    /** The best barcode and mismatches of every sequence within maxMismatches of a barcode, or null if there are too many. */
+    private final PackedSequenceIndex index;
+
+    /**
+     * @param barcodes           the bases of each segment of each expected barcode, all with segments of the same lengths
+     * @param minimumBaseQuality bases of lower quality are mismatches, when qualities are given
+     */
+    BarcodeMatcher(final List<byte[][]> barcodes, final int maxMismatches, final int minimumBaseQuality) {
+        this.barcodes = barcodes.toArray(new byte[barcodes.size()][][]);
+        this.minimumBaseQuality = minimumBaseQuality;
+        if (this.barcodes.length == 0) {
+            this.segmentLengths = null;
+            this.packedBarcodes = null;
+            this.allBases = 0;
+            this.index = null;
+            return;
+        }
+
+        this.segmentLengths = new int[this.barcodes[0].length];
+        int totalLength = 0;
+        for (int i = 0; i < segmentLengths.length; ++i) {
+            segmentLengths[i] = this.barcodes[0][i].length;
+            totalLength += segmentLengths[i];
+        }
+        this.packedBarcodes = totalLength <= MAX_PACKED_BASES ? packBarcodes(this.barcodes, segmentLengths) : null;
+        this.allBases = totalLength == MAX_PACKED_BASES ? LOW_BITS : LOW_BITS & ((1L << (2 * totalLength)) - 1);
+
+        if (packedBarcodes != null && countNeighbours(packedBarcodes.length, totalLength, maxMismatches) <= MAX_INDEXED_SEQUENCES) {
+            this.index = buildIndex(totalLength, maxMismatches);
+        } else {
+            LOG.info("Not indexing the sequences within " + maxMismatches + " mismatches of the barcodes, as there are too many");
+            this.index = null;
+        }
+    }
+
+    /**
+     * Finds the best barcode for the barcode bases of a read.
+     *
+     * @param readSubsequences the bases of the read at each barcode segment
+     * @param qualities        the qualities of those bases, or null if they are not to be used
+     * @param initialMismatches the mismatches reported for the best and second best barcodes when there are none
+     */
+    void findBestBarcode(final byte[][] readSubsequences, final byte[][] qualities, final int initialMismatches, final Match match) {
+        match.barcode = -1;
+        match.mismatches = initialMismatches;
+        match.mismatchesToSecondBest = initialMismatches;
+        if (packedBarcodes != null && hasBarcodeSegmentLengths(readSubsequences)) {
+            // pack the read, leaving out no-calls, and low quality bases, which are a mismatch whatever the barcode
+            long packed = 0;
+            long compared = 0;
+            int lowQualityBases = 0;
+            int position = 0;
+            boolean packable = true;
+            for (int j = 0; j < readSubsequences.length && packable; j++) {
+                for (int i = 0; i < readSubsequences[j].length; ++i, ++position) {
+                    final byte base = readSubsequences[j][i];
+                    if (isNoCall(base)) continue;
+                    if (qualities != null && qualities[j][i] < minimumBaseQuality) {
+                        ++lowQualityBases;
+                        continue;
+                    }
+                    final int code = encode(base);
+                    if (code < 0) {
+                        packable = false;
+                        break;
+                    }
+                    packed |= (long) code << (2 * position);
+                    compared |= 1L << (2 * position);
+                }
+            }
+            if (packable) {
+                if (compared == allBases && index != null && index.get(packed, match)) {
+                    return;
+                }
+                findBestPackedBarcode(packed, compared, lowQualityBases, match);
+                return;
+            }
+        }
+        findBestBarcodeByBases(readSubsequences, qualities, match);
+    }
+
+    /**
+     * Compares the packed read with every packed barcode, counting a mismatch for each of its bases that the
+     * barcodes differ at among those it compares, plus one for each of the low quality bases.
+     */
+    private void findBestPackedBarcode(final long packed, final long compared, final int lowQualityBases, final Match match) {
+        for (int b = 0; b < packedBarcodes.length; ++b) {
+            final long difference = packed ^ packedBarcodes[b];
+            final int numMismatches = Long.bitCount((difference | (difference >>> 1)) & compared) + lowQualityBases;
+            update(match, b, numMismatches);
+        }
+    }
+
+    /** Compares the read with every barcode base by base, as is needed when they cannot be packed. */
+    private void findBestBarcodeByBases(final byte[][] readSubsequences, final byte[][] qualities, final Match match) {
+        for (int b = 0; b < barcodes.length; ++b) {
+            update(match, b, countMismatches(barcodes[b], readSubsequences, qualities));
+        }
+    }
+
+    /** Keeps the fewest mismatches and the second fewest, and the first barcode with the fewest. */
+    private static void update(final Match match, final int barcode, final int numMismatches) {
+        if (numMismatches < match.mismatches) {
+            if (match.barcode != -1) {
+                match.mismatchesToSecondBest = match.mismatches;
+            }
+            match.mismatches = numMismatches;
+            match.barcode = barcode;
+        } else if (numMismatches < match.mismatchesToSecondBest) {
+            match.mismatchesToSecondBest = numMismatches;
+        }
+    }
+
+    /**
+     * Compare barcode sequence to bases from read
+     *
+     * @return how many bases did not match
+     */
+    private int countMismatches(final byte[][] barcodeBytes, final byte[][] readSubsequence, final byte[][] qualities) {
+        int numMismatches = 0;
+        // Read sequence and barcode length may not be equal, so we just use the shorter of the two
+        for (int j = 0; j < barcodeBytes.length; j++) {
+            final int basesToCheck = min(barcodeBytes[j].length, readSubsequence[j].length);
+            for (int i = 0; i < basesToCheck; ++i) {
+                if (!isNoCall(readSubsequence[j][i])) {
+                    if (!basesEqual(barcodeBytes[j][i], readSubsequence[j][i])) ++numMismatches;
+                    else if (qualities != null && qualities[j][i] < minimumBaseQuality) ++numMismatches;
+                }
+            }
+        }
+        return numMismatches;
+    }
+
+    private boolean hasBarcodeSegmentLengths(final byte[][] readSubsequences) {
+        if (readSubsequences.length != segmentLengths.length) return false;
+        for (int j = 0; j < segmentLengths.length; j++) {
+            if (readSubsequences[j].length != segmentLengths[j]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Builds the index of every sequence within maxMismatches of a barcode, by changing up to maxMismatches bases of
+     * each barcode in every way, and comparing each new sequence with all the barcodes.
+     */
+    private PackedSequenceIndex buildIndex(final int length, final int maxMismatches) {
+        final PackedSequenceIndex index = new PackedSequenceIndex((int) countNeighbours(packedBarcodes.length, length, maxMismatches));
+        final Match match = new Match();
+        for (final long barcode : packedBarcodes) {
+            addNeighbours(index, barcode, 0, length, maxMismatches, match);
+        }
+        LOG.info("Indexed " + index.size() + " sequences within " + maxMismatches + " mismatches of the barcodes");
+        return index;
+    }
+
+    private void addNeighbours(final PackedSequenceIndex index, final long sequence, final int fromPosition, final int length,
+                               final int mismatchesLeft, final Match match) {
+        if (!index.contains(sequence)) {
+            match.barcode = -1;
+            match.mismatches = length + 1;
+            match.mismatchesToSecondBest = length + 1;
+            findBestPackedBarcode(sequence, allBases, 0, match);
+            index.put(sequence, match);
+        }
+        if (mismatchesLeft == 0) return;
+        for (int position = fromPosition; position < length; ++position) {
+            final int shift = 2 * position;
+            for (long change = 1; change < 4; ++change) {
+                addNeighbours(index, sequence ^ (change << shift), position + 1, length, mismatchesLeft - 1, match);
+            }
+        }
+    }
+
+    /** The number of sequences within maxMismatches of the barcodes, counting those near more than one barcode more than once. */
+    private static double countNeighbours(final int numBarcodes, final int length, final int maxMismatches) {
+        double perBarcode = 0;
+        double choices = 1;
+        for (int mismatches = 0; mismatches <= min(maxMismatches, length); ++mismatches) {
+            perBarcode += choices;
+            choices = choices * (length - mismatches) / (mismatches + 1) * 3;
+        }
+        return min(numBarcodes * perBarcode, Math.pow(4, length));
+    }
+
+    private static long[] packBarcodes(final byte[][][] barcodes, final int[] segmentLengths) {
+        final long[] packed = new long[barcodes.length];
+        for (int b = 0; b < barcodes.length; ++b) {
+            int position = 0;
+            for (int j = 0; j < segmentLengths.length; j++) {
+                if (barcodes[b][j].length != segmentLengths[j]) return null;
+                for (final byte base : barcodes[b][j]) {
+                    final int code = encode(base);
+                    if (code < 0) return null;
+                    packed[b] |= (long) code << (2 * position++);
+                }
+            }
+        }
+        return packed;
+    }
+
+    /** Returns the two bit code of a base, ignoring case, or -1 if it is not A, C, G or T. */
+    private static int encode(final byte base) {
+        switch (base) {
+            case 'A': case 'a': return 0;
+            case 'C': case 'c': return 1;
+            case 'G': case 'g': return 2;
+            case 'T': case 't': return 3;
+            default: return -1;
+        }
+    }
+
+    /**
+     * An open addressing hash table from packed sequences to their best barcode and the mismatches of the best and
+     * second best barcodes, packed into an int.
+     */
+    private static final class PackedSequenceIndex {
+        private static final int EMPTY = -1;
+        private static final int MISMATCH_BITS = 6;
+        private static final int MISMATCH_MASK = (1 << MISMATCH_BITS) - 1;
+
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+        private int size = 0;
+
+        PackedSequenceIndex(final int expectedSize) {
+            final int capacity = Integer.highestOneBit(Math.max(expectedSize, 1) * 2 - 1) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(values, EMPTY);
+            mask = capacity - 1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean contains(final long key) {
+            return values[slot(key)] != EMPTY;
+        }
+
+        void put(final long key, final Match match) {
+            final int slot = slot(key);
+            if (values[slot] == EMPTY) ++size;
+            keys[slot] = key;
+            values[slot] = (match.barcode << (2 * MISMATCH_BITS)) | (match.mismatches << MISMATCH_BITS) | match.mismatchesToSecondBest;
+        }
+
+        /** Fills in the match for the key and returns true, or returns false if the key is not in the index. */
+        boolean get(final long key, final Match match) {
+            final int value = values[slot(key)];
+            if (value == EMPTY) return false;
+            match.barcode = value >>> (2 * MISMATCH_BITS);
+            match.mismatches = (value >>> MISMATCH_BITS) & MISMATCH_MASK;
+            match.mismatchesToSecondBest = value & MISMATCH_MASK;
+            return true;
+        }
+
+        /** Returns the slot holding the key, or the empty slot where it belongs. */
+        private int slot(final long key) {
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (values[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
@@ -18,17 +18,23 @@ import org.broadinstitute.hellbender.tools.picard.illumina.parser.IlluminaFileUt
 import org.broadinstitute.hellbender.tools.picard.illumina.parser.OutputMapping;
 import org.broadinstitute.hellbender.tools.picard.illumina.parser.ParameterizedFileUtil;
 import org.broadinstitute.hellbender.tools.picard.illumina.parser.ReadStructure;
+import org.broadinstitute.hellbender.utils.runtime.RuntimeUtils;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Program to check a lane of an Illumina output directory.  This program checks that files exist, are non-zero in length, for every tile/cycle and
  * specified data type.  If NO data type is specified then the default data types used by IlluminaBasecallsToSam are used.
+ * The per tile/per cycle files of each tile are checked on a thread pool, and with CHECK_HEADERS their headers are read
+ * as well to check the number of clusters in each.
  */
 @CommandLineProgramProperties(
         usage = "Check that the files to provide the data specified by DATA_TYPES are available, exist, and are reasonably sized for every tile/cycle.  " +
                 "Reasonably sized means non-zero sized for files that exist per tile and equal size for binary files that exist per cycle/per tile. " +
+                "With CHECK_HEADERS the headers of the per cycle/per tile files are also read, to check that they hold the same number of clusters. " +
                 "CheckIlluminaDirectory DOES NOT check that the individual records in a file are well-formed.",
         usageShort = "Asserts the validity of the data in the specified Illumina basecalling data",
         programGroup = IlluminaProgramGroup.class
@@ -66,6 +72,16 @@ public class CheckIlluminaDirectory extends PicardCommandLineProgram {
             optional = true)
     public Boolean LINK_LOCS = false;
 
+    @Argument(doc = "A flag to also read the header of every per tile/per cycle file (i.e. BCL), and check that the files of a tile " +
+            "all hold the same number of clusters and that each uncompressed file is the length its header implies.  Only the " +
+            "headers are read, not the records.", shortName = "CH", optional = true)
+    public Boolean CHECK_HEADERS = false;
+
+    @Argument(shortName = "NP", doc = "Check the files of this many tiles in parallel. " +
+            RuntimeUtils.NUM_PROCESSORS_DOC,
+            optional = true)
+    public int NUM_PROCESSORS = 1;
+
     /**
      * @return a status code indicating the number of errors detected
      */
@@ -84,32 +100,37 @@ public class CheckIlluminaDirectory extends PicardCommandLineProgram {
                 .getAbsolutePath() + ")\n");
         log.info("Expected cycles: " + StringUtil.intValuesToString(expectedCycles));
 
-        for (final Integer lane : LANES) {
-            IlluminaFileUtil fileUtil = new IlluminaFileUtil(BASECALLS_DIR, lane);
-            final List<Integer> expectedTiles = fileUtil.getExpectedTiles();
-            if (!TILE_NUMBERS.isEmpty()) {
-                expectedTiles.retainAll(TILE_NUMBERS);
-            }
+        final ExecutorService pool = Executors.newFixedThreadPool(RuntimeUtils.getNumProcessors(NUM_PROCESSORS));
+        try {
+            for (final Integer lane : LANES) {
+                IlluminaFileUtil fileUtil = new IlluminaFileUtil(BASECALLS_DIR, lane);
+                final List<Integer> expectedTiles = fileUtil.getExpectedTiles();
+                if (!TILE_NUMBERS.isEmpty()) {
+                    expectedTiles.retainAll(TILE_NUMBERS);
+                }
 
-            if (LINK_LOCS) {
-                createLocFileSymlinks(fileUtil, lane);
-                //we need to create a new file util because it stores a cache to the files it found on
-                //construction and this doesn't inclue the recently created symlinks
-                fileUtil = new IlluminaFileUtil(BASECALLS_DIR, lane);
-            }
+                if (LINK_LOCS) {
+                    createLocFileSymlinks(fileUtil, lane);
+                    //we need to create a new file util because it stores a cache to the files it found on
+                    //construction and this doesn't inclue the recently created symlinks
+                    fileUtil = new IlluminaFileUtil(BASECALLS_DIR, lane);
+                }
 
-            log.info("Checking lane " + lane);
-            log.info("Expected tiles: " + StringUtil.join(", ", expectedTiles));
+                log.info("Checking lane " + lane);
+                log.info("Expected tiles: " + StringUtil.join(", ", expectedTiles));
 
-            final int numFailures = verifyLane(fileUtil, expectedTiles, expectedCycles, DATA_TYPES, FAKE_FILES);
+                final int numFailures = verifyLane(fileUtil, expectedTiles, expectedCycles, DATA_TYPES, FAKE_FILES, pool, CHECK_HEADERS);
 
-            if (numFailures > 0) {
-                log.info("Lane " + lane + " FAILED " + " Total Errors: " + numFailures);
-                failingLanes.add(lane);
-                totalFailures += numFailures;
-            } else {
-                log.info("Lane " + lane + " SUCCEEDED ");
+                if (numFailures > 0) {
+                    log.info("Lane " + lane + " FAILED " + " Total Errors: " + numFailures);
+                    failingLanes.add(lane);
+                    totalFailures += numFailures;
+                } else {
+                    log.info("Lane " + lane + " SUCCEEDED ");
+                }
             }
+        } finally {
+            pool.shutdownNow();
         }
 
         int status = 0;
@@ -161,11 +182,14 @@ public class CheckIlluminaDirectory extends PicardCommandLineProgram {
      * @param expectedTiles The tiles we expect to be available/well-formed
      * @param cycles        The cycles we expect to be available/well-formed
      * @param dataTypes     The data types we expect to be available/well-formed
+     * @param pool          The pool to check the files of each tile on
+     * @param checkHeaders  Whether to also read the headers of the per tile/per cycle files
      * @return The number of errors found/logged for this directory/lane
      */
     private static final int verifyLane(final IlluminaFileUtil fileUtil, final List<Integer> expectedTiles,
                                         final int[] cycles,
-                                        final Set<IlluminaDataType> dataTypes, final boolean fakeFiles) {
+                                        final Set<IlluminaDataType> dataTypes, final boolean fakeFiles,
+                                        final ExecutorService pool, final boolean checkHeaders) {
         if (expectedTiles.isEmpty()) {
             throw new UserException("0 input tiles were specified!  Check to make sure this lane is in the InterOp file!");
         }
@@ -199,7 +223,7 @@ public class CheckIlluminaDirectory extends PicardCommandLineProgram {
 
         for (final IlluminaFileUtil.SupportedIlluminaFormat format : formatToDataTypes.keySet()) {
             final ParameterizedFileUtil util = fileUtil.getUtil(format);
-            final List<String> failures = util.verify(expectedTiles, cycles);
+            final List<String> failures = util.verify(expectedTiles, cycles, pool, checkHeaders);
             //if we have failures and we want to fake files then fake them now.
             if (!failures.isEmpty() && fakeFiles) {
                 //fake files
@@ -19,7 +19,7 @@ import java.util.*;
 import static htsjdk.samtools.ReservedTagConstants.XN;
 import static htsjdk.samtools.SAMTag.BC;
 import static htsjdk.samtools.SAMTag.RG;
-import static org.broadinstitute.hellbender.utils.illumina.IlluminaUtil.barcodeSeqsToString;
+import static org.broadinstitute.hellbender.utils.illumina.IlluminaUtil.BARCODE_DELIMITER;
 
 /**
  * Takes ClusterData provided by an IlluminaDataProvider into one or two SAMRecords,
@@ -41,6 +41,7 @@ public class ClusterDataToSamConverter implements
     private final AdapterMarker adapterMarker;
     private final int outputRecordsPerCluster;
     private final ReadNameEncoder readNameEncoder;
+    private final int unmatchedBarcodeLength;
 
     /**
      * Constructor
@@ -73,6 +74,8 @@ public class ClusterDataToSamConverter implements
         this.barcodeIndices = readStructure.barcodes.getIndices();
 
         this.outputRecordsPerCluster = readStructure.templates.length();
+
+        this.unmatchedBarcodeLength = readStructure.barcodes.getTotalCycles() + barcodeIndices.length;
     }
 
     /**
@@ -111,6 +114,22 @@ public class ClusterDataToSamConverter implements
         return sam;
     }
 
+    /**
+     * Returns the barcode that was read, each segment separated by the delimiter and with no-calls written as N.
+     */
+    private String readUnmatchedBarcode(final ClusterData cluster) {
+        final StringBuilder barcode = new StringBuilder(unmatchedBarcodeLength);
+        for (int i = 0; i < barcodeIndices.length; i++) {
+            if (i > 0) {
+                barcode.append(BARCODE_DELIMITER);
+            }
+            for (final byte base : cluster.getRead(barcodeIndices[i]).getBases()) {
+                barcode.append(base == '.' ? 'N' : (char) base);
+            }
+        }
+        return barcode.toString();
+    }
+
     /**
      * Creates the SAMRecord for each read in the cluster
      */
@@ -122,11 +141,7 @@ public class ClusterDataToSamConverter implements
         // Get and transform the unmatched barcode, if any, to store with the reads
         String unmatchedBarcode = null;
         if (isBarcoded && cluster.getMatchedBarcode() == null) {
-            final byte barcode[][] = new byte[barcodeIndices.length][];
-            for (int i = 0; i < barcodeIndices.length; i++) {
-                barcode[i] = cluster.getRead(barcodeIndices[i]).getBases();
-            }
-            unmatchedBarcode = barcodeSeqsToString(barcode).replace('.', 'N'); //TODO: This has a separator, where as in other places we do not use a separator
+            unmatchedBarcode = readUnmatchedBarcode(cluster); //TODO: This has a separator, where as in other places we do not use a separator
         }
 
         final SAMRecord firstOfPair = createSamRecord(
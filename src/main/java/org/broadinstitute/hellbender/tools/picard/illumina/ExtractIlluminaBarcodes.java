@@ -35,13 +35,11 @@ import static htsjdk.samtools.util.IOUtil.assertDirectoryIsWritable;
 import static htsjdk.samtools.util.IOUtil.assertFileIsWritable;
 import static htsjdk.samtools.util.IOUtil.openFileForBufferedWriting;
 import static htsjdk.samtools.util.Log.getInstance;
-import static htsjdk.samtools.util.SequenceUtil.basesEqual;
 import static htsjdk.samtools.util.SequenceUtil.isNoCall;
 import static htsjdk.samtools.util.StringUtil.bytesToString;
 import static htsjdk.samtools.util.StringUtil.join;
 import static htsjdk.samtools.util.StringUtil.repeatCharNTimes;
 import static htsjdk.samtools.util.StringUtil.stringToBytes;
-import static java.lang.Math.min;
 import static java.lang.Runtime.getRuntime;
 import static java.lang.String.format;
 import static java.lang.String.valueOf;
@@ -188,6 +186,12 @@ public class ExtractIlluminaBarcodes extends PicardCommandLineProgram {
         LOG.info("Processing with " + numProcessors + " PerTileBarcodeExtractor(s).");
         final ExecutorService pool = newFixedThreadPool(numProcessors);
 
+        final List<byte[][]> barcodes = new ArrayList<byte[][]>(barcodeToMetrics.size());
+        for (final BarcodeMetric metric : barcodeToMetrics.values()) {
+            barcodes.add(metric.barcodeBytes);
+        }
+        final BarcodeMatcher matcher = new BarcodeMatcher(barcodes, MAX_MISMATCHES, MINIMUM_BASE_QUALITY);
+
         // TODO: This is terribly inefficient; we're opening a huge number of files via the extractor constructor and we never close them.
         final List<PerTileBarcodeExtractor> extractors = new ArrayList<PerTileBarcodeExtractor>(factory.getAvailableTiles().size());
         for (final int tile : factory.getAvailableTiles()) {
@@ -197,6 +201,7 @@ public class ExtractIlluminaBarcodes extends PicardCommandLineProgram {
                     barcodeToMetrics,
                     noMatchMetric,
                     factory,
+                    matcher,
                     MINIMUM_BASE_QUALITY,
                     MAX_NO_CALLS,
                     MAX_MISMATCHES,
@@ -527,12 +532,16 @@ public class ExtractIlluminaBarcodes extends PicardCommandLineProgram {
         private final int tile;
         private final File barcodeFile;
         private final Map<String, BarcodeMetric> metrics;
+        /** The metrics in the order of the barcodes given to the matcher. */
+        private final BarcodeMetric[] metricsByBarcode;
         private final BarcodeMetric noMatch;
+        private final BarcodeMatcher matcher;
+        private final BarcodeMatcher.Match bestBarcode = new BarcodeMatcher.Match();
         private Exception exception = null;
         private final boolean usingQualityScores;
         private final IlluminaDataProvider provider;
         private final ReadStructure outputReadStructure;
-        private final int maxNoCalls, maxMismatches, minMismatchDelta, minimumBaseQuality;
+        private final int maxNoCalls, maxMismatches, minMismatchDelta;
 
         /**
          * Utility class to hang onto data about the best match for a given barcode
@@ -551,6 +560,7 @@ public class ExtractIlluminaBarcodes extends PicardCommandLineProgram {
          * @param barcodeFile      The file to write the barcodes to
          * @param noMatchMetric    A "template" metric that is cloned and the clone is stored internally for accumulating data
          * @param barcodeToMetrics A "template" metric map whose metrics are cloned, and the clones are stored internally for accumulating data
+         * @param matcher          Finds the best barcode for each read, from the barcodes of barcodeToMetrics in the same order
          */
         public PerTileBarcodeExtractor(
                 final int tile,
@@ -558,6 +568,7 @@ public class ExtractIlluminaBarcodes extends PicardCommandLineProgram {
                 final Map<String, BarcodeMetric> barcodeToMetrics,
                 final BarcodeMetric noMatchMetric,
                 final IlluminaDataProviderFactory factory,
+                final BarcodeMatcher matcher,
                 final int minimumBaseQuality,
                 final int maxNoCalls,
                 final int maxMismatches,
@@ -569,11 +580,12 @@ public class ExtractIlluminaBarcodes extends PicardCommandLineProgram {
             this.maxNoCalls = maxNoCalls;
             this.maxMismatches = maxMismatches;
             this.minMismatchDelta = minMismatchDelta;
-            this.minimumBaseQuality = minimumBaseQuality;
+            this.matcher = matcher;
             this.metrics = new LinkedHashMap<String, BarcodeMetric>(barcodeToMetrics.size());
             for (final String key : barcodeToMetrics.keySet()) {
                 this.metrics.put(key, copy(barcodeToMetrics.get(key)));
             }
+            this.metricsByBarcode = this.metrics.values().toArray(new BarcodeMetric[this.metrics.size()]);
             this.noMatch = copy(noMatchMetric);
             this.provider = factory.makeDataProvider(asList(tile));
             this.outputReadStructure = factory.getOutputReadStructure();
@@ -618,7 +630,7 @@ public class ExtractIlluminaBarcodes extends PicardCommandLineProgram {
                         if (usingQualityScores) qualityScores[i] = cluster.getRead(barcodeIndices[i]).getQualities();
                     }
                     final boolean passingFilter = cluster.isPf();
-                    final BarcodeMatch match = findBestBarcodeAndUpdateMetrics(barcodeSubsequences, qualityScores, passingFilter, metrics, noMatch);
+                    final BarcodeMatch match = findBestBarcodeAndUpdateMetrics(barcodeSubsequences, qualityScores, passingFilter, noMatch);
 
                     final String yOrN = (match.matched ? "Y" : "N");
 
@@ -648,9 +660,7 @@ public class ExtractIlluminaBarcodes extends PicardCommandLineProgram {
         private BarcodeMatch findBestBarcodeAndUpdateMetrics(final byte[][] readSubsequences,
                                                              final byte[][] qualityScores,
                                                              final boolean passingFilter,
-                                                             final Map<String, BarcodeMetric> metrics,
                                                              final BarcodeMetric noMatchBarcodeMetric) {
-            BarcodeMetric bestBarcodeMetric = null;
             int totalBarcodeReadBases = 0;
             int numNoCalls = 0; // NoCalls are calculated for all the barcodes combined
 
@@ -661,21 +671,10 @@ public class ExtractIlluminaBarcodes extends PicardCommandLineProgram {
 
             // PIC-506 When forcing all reads to match a single barcode, allow a read to match even if every
             // base is a mismatch.
-            int numMismatchesInBestBarcode = totalBarcodeReadBases + 1;
-            int numMismatchesInSecondBestBarcode = totalBarcodeReadBases + 1;
-
-            for (final BarcodeMetric barcodeMetric : metrics.values()) {
-                final int numMismatches = countMismatches(barcodeMetric.barcodeBytes, readSubsequences, qualityScores);
-                if (numMismatches < numMismatchesInBestBarcode) {
-                    if (bestBarcodeMetric != null) {
-                        numMismatchesInSecondBestBarcode = numMismatchesInBestBarcode;
-                    }
-                    numMismatchesInBestBarcode = numMismatches;
-                    bestBarcodeMetric = barcodeMetric;
-                } else if (numMismatches < numMismatchesInSecondBestBarcode) {
-                    numMismatchesInSecondBestBarcode = numMismatches;
-                }
-            }
+            matcher.findBestBarcode(readSubsequences, qualityScores, totalBarcodeReadBases + 1, bestBarcode);
+            final BarcodeMetric bestBarcodeMetric = bestBarcode.barcode == -1 ? null : metricsByBarcode[bestBarcode.barcode];
+            final int numMismatchesInBestBarcode = bestBarcode.mismatches;
+            final int numMismatchesInSecondBestBarcode = bestBarcode.mismatchesToSecondBest;
 
             final boolean matched = bestBarcodeMetric != null &&
                     numNoCalls <= maxNoCalls &&
@@ -723,25 +722,5 @@ public class ExtractIlluminaBarcodes extends PicardCommandLineProgram {
 
             return match;
         }
-
-        /**
-         * Compare barcode sequence to bases from read
-         *
-         * @return how many bases did not match
-         */
-        private int countMismatches(final byte[][] barcodeBytes, final byte[][] readSubsequence, final byte[][] qualities) {
-            int numMismatches = 0;
-            // Read sequence and barcode length may not be equal, so we just use the shorter of the two
-            for (int j = 0; j < barcodeBytes.length; j++) {
-                final int basesToCheck = min(barcodeBytes[j].length, readSubsequence[j].length);
-                for (int i = 0; i < basesToCheck; ++i) {
-                    if (!isNoCall(readSubsequence[j][i])) {
-                        if (!basesEqual(barcodeBytes[j][i], readSubsequence[j][i])) ++numMismatches;
-                        else if (qualities != null && qualities[j][i] < minimumBaseQuality) ++numMismatches;
-                    }
-                }
-            }
-            return numMismatches;
-        }
     }
 }
@@ -15,10 +15,18 @@ import org.broadinstitute.hellbender.tools.picard.illumina.parser.readers.BclQua
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static htsjdk.samtools.util.Log.getInstance;
 import static htsjdk.samtools.util.SortingCollection.newInstance;
@@ -38,7 +46,8 @@ import static org.broadinstitute.hellbender.tools.picard.illumina.parser.Illumin
 /**
  * Manages the conversion of Illumina basecalls into some output format.  Creates multiple threads to manage reading,
  * sorting and writing efficiently.  Output is written in queryname output.  Optionally demultiplexes indexed reads
- * into separate outputs by barcode.
+ * into separate outputs by barcode.  The barcodes' outputs are written, and so compressed, on a bounded pool of
+ * threads.
  *
  * @param <CLUSTER_OUTPUT_RECORD> The class to which a ClusterData is converted in preparation for writing.
  */
@@ -61,6 +70,9 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> {
 
     private static final Log log = getInstance(IlluminaBasecallsConverter.class);
 
+    /** The name of the threads writing the barcodes' outputs, followed by the thread's number. */
+    static final String WRITER_THREAD_NAME = "IlluminaBasecallsWriterThread";
+
     public static final IlluminaDataType[] DATA_TYPES_NO_BARCODE =
             {BaseCalls, QualityScores, Position, PF};
     private static final IlluminaDataType[] DATA_TYPES_WITH_BARCODE = copyOf(DATA_TYPES_NO_BARCODE, DATA_TYPES_NO_BARCODE.length + 1);
@@ -95,7 +107,8 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> {
     private final Comparator<CLUSTER_OUTPUT_RECORD> outputRecordComparator;
 
     private final BclQualityEvaluationStrategy bclQualityEvaluationStrategy;
-    private final Map<String, ? extends ConvertedClusterDataWriter<CLUSTER_OUTPUT_RECORD>> barcodeRecordWriterMap;
+    private final Map<String, ConvertedClusterDataWriter<CLUSTER_OUTPUT_RECORD>> barcodeRecordWriterMap;
+    private final ExecutorService writerPool;
     private final int maxReadsInRamPerTile;
     private final boolean demultiplex;
     private final List<File> tmpDirs;
@@ -188,7 +201,6 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> {
                                       final BclQualityEvaluationStrategy bclQualityEvaluationStrategy,
                                       final boolean applyEamssFiltering, final boolean includeNonPfReads
     ) {
-        this.barcodeRecordWriterMap = barcodeRecordWriterMap;
         this.demultiplex = demultiplex;
         this.maxReadsInRamPerTile = maxReadsInRamPerTile;
         this.tmpDirs = tmpDirs;
@@ -227,6 +239,14 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> {
         } else {
             this.numThreads = numProcessors;
         }
+
+        // The barcodes' outputs are written by a pool of at most numThreads threads, however many barcodes there are
+        this.writerPool = newWriterPool(max(1, min(this.numThreads, barcodeRecordWriterMap.size())));
+        this.barcodeRecordWriterMap = new LinkedHashMap<String, ConvertedClusterDataWriter<CLUSTER_OUTPUT_RECORD>>();
+        for (final Map.Entry<String, ? extends ConvertedClusterDataWriter<CLUSTER_OUTPUT_RECORD>> entry : barcodeRecordWriterMap.entrySet()) {
+            this.barcodeRecordWriterMap.put(entry.getKey(), new AsyncClusterDataWriter<CLUSTER_OUTPUT_RECORD>(entry.getValue(), writerPool));
+        }
+
         this.tiles = new ArrayList<Integer>(factory.getAvailableTiles());
         // Since the first non-fixed part of the read name is the tile number, without preceding zeroes,
         // and the output is sorted by read name, process the tiles in this order.
@@ -301,12 +321,20 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> {
             } catch (final Throwable ex) {
                 log.warn(ex, "Ignoring exception stopping background GC thread.");
             }
-            // Close the writers
-            for (final Map.Entry<String, ? extends ConvertedClusterDataWriter<CLUSTER_OUTPUT_RECORD>> entry : barcodeRecordWriterMap.entrySet()) {
+            // Close the writers, all of them even if one fails, and then stop the writer threads
+            RuntimeException closeFailure = null;
+            for (final Map.Entry<String, ConvertedClusterDataWriter<CLUSTER_OUTPUT_RECORD>> entry : barcodeRecordWriterMap.entrySet()) {
                 final ConvertedClusterDataWriter<CLUSTER_OUTPUT_RECORD> writer = entry.getValue();
                 log.debug(format("Closing file for barcode %s.", entry.getKey()));
-                writer.close();
+                try {
+                    writer.close();
+                } catch (final RuntimeException e) {
+                    if (closeFailure == null) closeFailure = e;
+                }
             }
+            writerPool.shutdownNow();
+            // A failure to write is the cause of any failure of the worker threads, so report it instead
+            if (closeFailure != null) throw closeFailure;
         }
     }
 
@@ -371,8 +399,8 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> {
      * are synchronized.
      */
     private class TileProcessingRecord {
-        final private Map<String, SortingCollection<CLUSTER_OUTPUT_RECORD>> barcodeToRecordCollection =
-                new HashMap<String, SortingCollection<CLUSTER_OUTPUT_RECORD>>();
+        final private Map<String, TileBarcodeRecords<CLUSTER_OUTPUT_RECORD>> barcodeToRecordCollection =
+                new HashMap<String, TileBarcodeRecords<CLUSTER_OUTPUT_RECORD>>();
         final private Map<String, TileBarcodeProcessingState> barcodeToProcessingState = new HashMap<String, TileBarcodeProcessingState>();
         private TileProcessingState state = TileProcessingState.NOT_DONE_READING;
         private long recordCount = 0;
@@ -392,34 +420,16 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> {
         }
 
         /**
-         * Adds the provided record to this tile.
+         * Adds all of the records read from this tile, by barcode.  The reader collects them without locking, as only
+         * it has them until they are handed over here.
          */
-        public synchronized void addRecord(final String barcode, final CLUSTER_OUTPUT_RECORD record) {
-            this.recordCount += 1;
-
-            // Grab the existing collection, or initialize it if it doesn't yet exist
-            SortingCollection<CLUSTER_OUTPUT_RECORD> recordCollection = this.barcodeToRecordCollection.get(barcode);
-            if (recordCollection == null) {
-                if (!barcodeRecordWriterMap.containsKey(barcode))
-                    throw new UserException(format("Read records with barcode %s, but this barcode was not expected. " +
-                            "(Is it referenced in the parameters file?)", barcode));
-                recordCollection = this.newSortingCollection();
-                this.barcodeToRecordCollection.put(barcode, recordCollection);
-                this.barcodeToProcessingState.put(barcode, null);
+        public synchronized void addRecords(final Map<String, TileBarcodeRecords<CLUSTER_OUTPUT_RECORD>> barcodeToRecords,
+                                            final long recordCount) {
+            this.recordCount += recordCount;
+            for (final Map.Entry<String, TileBarcodeRecords<CLUSTER_OUTPUT_RECORD>> entry : barcodeToRecords.entrySet()) {
+                this.barcodeToRecordCollection.put(entry.getKey(), entry.getValue());
+                this.barcodeToProcessingState.put(entry.getKey(), null);
             }
-            recordCollection.add(record);
-        }
-
-        private synchronized SortingCollection<CLUSTER_OUTPUT_RECORD> newSortingCollection() {
-            final int maxRecordsInRam =
-                    maxReadsInRamPerTile /
-                            barcodeRecordWriterMap.size();
-            return newInstance(
-                    outputRecordClass,
-                    codecPrototype.clone(),
-                    outputRecordComparator,
-                    maxRecordsInRam,
-                    tmpDirs);
         }
 
         /**
@@ -439,7 +449,7 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> {
         /**
          * Returns the mapping of barcodes to records associated with them.
          */
-        public synchronized Map<String, SortingCollection<CLUSTER_OUTPUT_RECORD>> getBarcodeRecords() {
+        public synchronized Map<String, TileBarcodeRecords<CLUSTER_OUTPUT_RECORD>> getBarcodeRecords() {
             return barcodeToRecordCollection;
         }
 
@@ -512,22 +522,182 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> {
             final IlluminaDataProvider dataProvider = factory.makeDataProvider(asList(this.tile.getNumber()));
             log.debug(format("Reading data from tile %s ...", tile.getNumber()));
 
+            final TileRecords<CLUSTER_OUTPUT_RECORD> tileRecords = new TileRecords<CLUSTER_OUTPUT_RECORD>(
+                    outputRecordComparator, maxReadsInRamPerTile, maxRecordsInRamPerSpilledBarcode(),
+                    IlluminaBasecallsConverter.this::newSortingCollection);
+            long recordCount = 0;
             while (dataProvider.hasNext()) {
                 final ClusterData cluster = dataProvider.next();
                 readProgressLogger.record(null, 0);
                 // If this cluster is passing, or we do NOT want to ONLY emit passing reads, then add it to the next
                 if (cluster.isPf() || includeNonPfReads) {
                     final String barcode = (demultiplex ? cluster.getMatchedBarcode() : null);
-                    this.processingRecord.addRecord(barcode, converter.convertClusterToOutputRecord(cluster));
+                    if (!tileRecords.hasBarcode(barcode) && !barcodeRecordWriterMap.containsKey(barcode)) {
+                        throw new UserException(format("Read records with barcode %s, but this barcode was not expected. " +
+                                "(Is it referenced in the parameters file?)", barcode));
+                    }
+                    tileRecords.add(barcode, converter.convertClusterToOutputRecord(cluster));
+                    ++recordCount;
                 }
             }
 
+            this.processingRecord.addRecords(tileRecords.getBarcodeRecords(), recordCount);
             this.handler.completeTile(this.tile);
             dataProvider.close();
         }
     }
 
 
+    private int maxRecordsInRamPerSpilledBarcode() {
+        return max(1, maxReadsInRamPerTile / barcodeRecordWriterMap.size());
+    }
+
+    private SortingCollection<CLUSTER_OUTPUT_RECORD> newSortingCollection() {
+        return newInstance(
+                outputRecordClass,
+                codecPrototype.clone(),
+                outputRecordComparator,
+                maxRecordsInRamPerSpilledBarcode(),
+                tmpDirs);
+    }
+
+    /**
+     * The records read from one tile, by barcode.  The records of all barcodes share the tile's memory; when they no
+     * longer fit, the barcodes with the most records in memory are spilled to disk, and each barcode spilled takes its
+     * share out of the tile's memory.
+     * <p>
+     * Only the tile's reader adds records, so no locking is needed.
+     */
+    static class TileRecords<OUTPUT_RECORD> {
+        private final Map<String, TileBarcodeRecords<OUTPUT_RECORD>> barcodeToRecords = new HashMap<String, TileBarcodeRecords<OUTPUT_RECORD>>();
+        private final Comparator<OUTPUT_RECORD> comparator;
+        private final int maxRecordsInRamPerSpilledBarcode;
+        private final Supplier<SortingCollection<OUTPUT_RECORD>> sortingCollectionFactory;
+        private int maxRecordsInRam;
+        private int recordsInRam = 0;
+
+        /**
+         * @param comparator                       The order in which each barcode's records are to be iterated.
+         * @param maxRecordsInRam                  The number of records of all barcodes to keep in memory.
+         * @param maxRecordsInRamPerSpilledBarcode The memory, in records, taken out of the tile's by each barcode spilled.
+         * @param sortingCollectionFactory         Makes the SortingCollection to which a barcode's records are spilled.
+         */
+        TileRecords(final Comparator<OUTPUT_RECORD> comparator, final int maxRecordsInRam, final int maxRecordsInRamPerSpilledBarcode,
+                    final Supplier<SortingCollection<OUTPUT_RECORD>> sortingCollectionFactory) {
+            this.comparator = comparator;
+            this.maxRecordsInRam = maxRecordsInRam;
+            this.maxRecordsInRamPerSpilledBarcode = maxRecordsInRamPerSpilledBarcode;
+            this.sortingCollectionFactory = sortingCollectionFactory;
+        }
+
+        public boolean hasBarcode(final String barcode) {
+            return barcodeToRecords.containsKey(barcode);
+        }
+
+        public void add(final String barcode, final OUTPUT_RECORD record) {
+            // Grab the existing collection, or initialize it if it doesn't yet exist
+            TileBarcodeRecords<OUTPUT_RECORD> recordCollection = barcodeToRecords.get(barcode);
+            if (recordCollection == null) {
+                recordCollection = new TileBarcodeRecords<OUTPUT_RECORD>(comparator, sortingCollectionFactory);
+                barcodeToRecords.put(barcode, recordCollection);
+            }
+            // When the tile's records no longer fit in memory, spill the barcodes with the most to disk
+            while (recordsInRam >= maxRecordsInRam && recordsInRam > 0) {
+                TileBarcodeRecords<OUTPUT_RECORD> largest = null;
+                for (final TileBarcodeRecords<OUTPUT_RECORD> records : barcodeToRecords.values()) {
+                    if (!records.isSpilled() && (largest == null || records.sizeInRam() > largest.sizeInRam())) {
+                        largest = records;
+                    }
+                }
+                recordsInRam -= largest.sizeInRam();
+                largest.spill();
+                maxRecordsInRam -= maxRecordsInRamPerSpilledBarcode;
+            }
+            if (!recordCollection.isSpilled()) ++recordsInRam;
+            recordCollection.add(record);
+        }
+
+        /** Returns the number of records held in memory rather than in SortingCollections. */
+        public int sizeInRam() {
+            return recordsInRam;
+        }
+
+        public Map<String, TileBarcodeRecords<OUTPUT_RECORD>> getBarcodeRecords() {
+            return barcodeToRecords;
+        }
+    }
+
+    /**
+     * The records of one barcode read from one tile, to be iterated in the comparator's order once the tile is
+     * read.  The records are kept in memory, and only sorted if they did not arrive in order, unless the tile's
+     * reader spills them to a SortingCollection because the tile's records no longer fit in memory.
+     * <p>
+     * Only the tile's reader adds records, and only the barcode's writing task iterates them once it has been told
+     * that adding is done, so no locking is needed.
+     */
+    static class TileBarcodeRecords<OUTPUT_RECORD> {
+        private final Comparator<OUTPUT_RECORD> comparator;
+        private final Supplier<SortingCollection<OUTPUT_RECORD>> sortingCollectionFactory;
+        private List<OUTPUT_RECORD> records = new ArrayList<OUTPUT_RECORD>();
+        private boolean inOrder = true;
+        private SortingCollection<OUTPUT_RECORD> spilledRecords = null;
+
+        TileBarcodeRecords(final Comparator<OUTPUT_RECORD> comparator,
+                           final Supplier<SortingCollection<OUTPUT_RECORD>> sortingCollectionFactory) {
+            this.comparator = comparator;
+            this.sortingCollectionFactory = sortingCollectionFactory;
+        }
+
+        public void add(final OUTPUT_RECORD record) {
+            if (spilledRecords != null) {
+                spilledRecords.add(record);
+            } else {
+                if (inOrder && !records.isEmpty() && comparator.compare(records.get(records.size() - 1), record) > 0) {
+                    inOrder = false;
+                }
+                records.add(record);
+            }
+        }
+
+        public boolean isSpilled() {
+            return spilledRecords != null;
+        }
+
+        /** Returns the number of records held in memory rather than in a SortingCollection. */
+        public int sizeInRam() {
+            return spilledRecords != null ? 0 : records.size();
+        }
+
+        /** Moves the records into a SortingCollection, as will be all records added later. */
+        public void spill() {
+            spilledRecords = sortingCollectionFactory.get();
+            for (final OUTPUT_RECORD record : records) {
+                spilledRecords.add(record);
+            }
+            records = null;
+        }
+
+        public void doneAdding() {
+            if (spilledRecords != null) {
+                spilledRecords.doneAdding();
+            } else if (!inOrder) {
+                sort(records, comparator);
+            }
+        }
+
+        public Iterator<OUTPUT_RECORD> iterator() {
+            return spilledRecords != null ? spilledRecords.iterator() : records.iterator();
+        }
+
+        /** Releases the records, once they have been written. */
+        public void cleanup() {
+            if (spilledRecords != null) {
+                spilledRecords.cleanup();
+            }
+            records = null;
+        }
+    }
+
     /**
      * Aggregates data collected from tiles and writes them to file. Accepts records from TileReaders and maps
      * them to the appropriate BAM writers.
@@ -757,7 +927,7 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> {
                 @Override
                 public void run() {
                     try {
-                        final SortingCollection<CLUSTER_OUTPUT_RECORD> records = tileRecord.getBarcodeRecords().get(barcode);
+                        final TileBarcodeRecords<CLUSTER_OUTPUT_RECORD> records = tileRecord.getBarcodeRecords().get(barcode);
                         final ConvertedClusterDataWriter<CLUSTER_OUTPUT_RECORD> writer = barcodeRecordWriterMap.get(barcode);
 
                         log.debug(format("Writing records from tile %s with barcode %s ...", tile.getNumber(), barcode));
@@ -793,6 +963,7 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> {
                             writeProgressLogger.record(null, 0);
                         }
 
+                        records.cleanup();
                         tileRecord.setBarcodeState(barcode, TileBarcodeProcessingState.WRITTEN);
                         findAndEnqueueWorkOrSignalCompletion();
 
@@ -874,4 +1045,150 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> {
 
         void close();
     }
+
+    /**
+     * Makes the pool of daemon threads that write the barcodes' outputs.
+     */
+    static ExecutorService newWriterPool(final int numWriterThreads) {
+        return Executors.newFixedThreadPool(numWriterThreads, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, WRITER_THREAD_NAME + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Hands the records of one barcode to the pool of writer threads, so that formatting and compressing each
+     * barcode's output goes on in parallel with the other barcodes' and with the sorting of the next tiles.  Records
+     * are handed over in batches through a bounded queue, and written in the order they are handed over by at most one
+     * pool thread at a time.  Any failure to write them is thrown from a later write or from close, and the underlying
+     * writer is closed all the same.
+     */
+    static class AsyncClusterDataWriter<OUTPUT_RECORD> implements ConvertedClusterDataWriter<OUTPUT_RECORD> {
+        private static final int BATCH_SIZE = 1000;
+        private static final int QUEUED_BATCHES = 4;
+
+        private final ConvertedClusterDataWriter<OUTPUT_RECORD> writer;
+        private final Executor writerPool;
+        private final BlockingQueue<List<OUTPUT_RECORD>> queue = new ArrayBlockingQueue<List<OUTPUT_RECORD>>(QUEUED_BATCHES);
+        /** True while a task writing this barcode's batches is queued or running on the pool. */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        /** Released once the underlying writer has been closed, whether or not writing or closing it failed. */
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        /** Put on the queue after the last batch, compared by identity. */
+        private final List<OUTPUT_RECORD> endOfRecords = new ArrayList<OUTPUT_RECORD>();
+
+        private volatile Throwable error = null;
+        private boolean endOfRecordsPublished = false;
+        private List<OUTPUT_RECORD> batch = new ArrayList<OUTPUT_RECORD>(BATCH_SIZE);
+
+        AsyncClusterDataWriter(final ConvertedClusterDataWriter<OUTPUT_RECORD> writer, final Executor writerPool) {
+            this.writer = writer;
+            this.writerPool = writerPool;
+        }
+
+        @Override
+        public void write(final OUTPUT_RECORD rec) {
+            batch.add(rec);
+            if (batch.size() >= BATCH_SIZE) {
+                checkError();
+                publish(batch);
+                batch = new ArrayList<OUTPUT_RECORD>(BATCH_SIZE);
+            }
+        }
+
+        /**
+         * Hands over the last records, unless writing has already failed, and waits for them and the close of the
+         * underlying writer.
+         */
+        @Override
+        public void close() {
+            if (!endOfRecordsPublished) {
+                if (error == null && !batch.isEmpty()) {
+                    publish(batch);
+                }
+                batch = new ArrayList<OUTPUT_RECORD>(BATCH_SIZE);
+                publish(endOfRecords);
+                endOfRecordsPublished = true;
+            }
+            try {
+                closed.await();
+            } catch (final InterruptedException e) {
+                throw new GATKException("Interrupted while waiting for the records to be written", e);
+            }
+            checkError();
+        }
+
+        private void publish(final List<OUTPUT_RECORD> records) {
+            try {
+                queue.put(records);
+            } catch (final InterruptedException e) {
+                throw new GATKException("Interrupted while handing records to the writer threads", e);
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                writerPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain();
+                    }
+                });
+            }
+        }
+
+        private void checkError() {
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw new GATKException("Error while writing records: " + error.getMessage(), error);
+            }
+        }
+
+        /**
+         * Writes a few of the queued batches on a pool thread, then makes way for the other barcodes.  After a failure
+         * the remaining batches are drained without writing them.
+         */
+        private void drain() {
+            try {
+                for (int i = 0; i < QUEUED_BATCHES; ++i) {
+                    final List<OUTPUT_RECORD> records = queue.poll();
+                    if (records == null) {
+                        break;
+                    } else if (records == endOfRecords) {
+                        // close the writer even after a failure, so that its files are not left open, but report the first failure
+                        try {
+                            writer.close();
+                        } catch (final Throwable t) {
+                            if (error == null) error = t;
+                        }
+                        closed.countDown();
+                        return;
+                    } else if (error == null) {
+                        try {
+                            for (final OUTPUT_RECORD rec : records) {
+                                writer.write(rec);
+                            }
+                        } catch (final Throwable t) {
+                            error = t;
+                        }
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            // Records may have been handed over after the last poll, while this task was still marked as scheduled
+            if (!queue.isEmpty()) schedule();
+        }
+    }
 }
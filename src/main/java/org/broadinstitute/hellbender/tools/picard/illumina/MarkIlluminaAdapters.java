@@ -23,14 +23,20 @@ import org.broadinstitute.hellbender.cmdline.CommandLineProgramProperties;
 import org.broadinstitute.hellbender.cmdline.PicardCommandLineProgram;
 import org.broadinstitute.hellbender.cmdline.StandardArgumentDefinitions;
 import org.broadinstitute.hellbender.cmdline.programgroups.IlluminaProgramGroup;
+import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.illumina.AdapterMarker;
 import org.broadinstitute.hellbender.utils.illumina.AdapterPair;
 import org.broadinstitute.hellbender.utils.illumina.ClippingUtil;
 import org.broadinstitute.hellbender.utils.illumina.IlluminaUtil.IlluminaAdapterPair;
+import org.broadinstitute.hellbender.utils.runtime.RuntimeUtils;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static htsjdk.samtools.ReservedTagConstants.XT;
 import static htsjdk.samtools.SAMFileHeader.SortOrder;
@@ -121,6 +127,16 @@ public class MarkIlluminaAdapters extends PicardCommandLineProgram {
             "were tied with the adapters being kept).")
     public int NUM_ADAPTERS_TO_KEEP = DEFAULT_NUM_ADAPTERS_TO_KEEP;
 
+    @Argument(shortName = "NP", doc = "Mark adapters on this many threads, each marking a batch of reads at a time. " +
+            "The reads are written in the order they were read, but which of them are marked before the list of " +
+            "adapters is pruned (see PRUNE_ADAPTER_LIST_AFTER_THIS_MANY_ADAPTERS_SEEN) may differ from run to run. " +
+            RuntimeUtils.NUM_PROCESSORS_DOC,
+            optional = true)
+    public int NUM_PROCESSORS = 1;
+
+    /** The number of reads, or pairs of reads, marked by a thread at a time. */
+    private static final int BATCH_SIZE = 1000;
+
     private static final Log log = getInstance(MarkIlluminaAdapters.class);
 
     @Override
@@ -139,10 +155,11 @@ public class MarkIlluminaAdapters extends PicardCommandLineProgram {
 
         final SamReader in = makeDefault().referenceSequence(REFERENCE_SEQUENCE).open(INPUT);
         final SortOrder order = in.getFileHeader().getSortOrder();
+        final int numProcessors = RuntimeUtils.getNumProcessors(NUM_PROCESSORS);
         SAMFileWriter out = null;
         if (OUTPUT != null) {
             assertFileIsWritable(OUTPUT);
-            out = new SAMFileWriterFactory().makeSAMOrBAMWriter(in.getFileHeader(), true, OUTPUT);
+            out = new SAMFileWriterFactory().setUseAsyncIo(numProcessors > 1).makeSAMOrBAMWriter(in.getFileHeader(), true, OUTPUT);
         }
 
         final Histogram<Integer> histo = new Histogram<Integer>("clipped_bases", "read_count");
@@ -170,55 +187,65 @@ public class MarkIlluminaAdapters extends PicardCommandLineProgram {
                 setNumAdaptersToKeep(NUM_ADAPTERS_TO_KEEP).
                 setThresholdForSelectingAdaptersToKeep(PRUNE_ADAPTER_LIST_AFTER_THIS_MANY_ADAPTERS_SEEN);
 
-        while (iterator.hasNext()) {
-            final SAMRecord rec = iterator.next();
-            final SAMRecord rec2 = rec.getReadPairedFlag() && iterator.hasNext() ? iterator.next() : null;
-            rec.setAttribute(XT, null);
-
-            // Do the clipping one way for PE and another for SE reads
-            if (rec.getReadPairedFlag()) {
-                // Assert that the input file is in query name order only if we see some PE reads
-                if (order != queryname) {
-                    throw new UserException("Input BAM file must be sorted by queryname");
+        final ExecutorService markers = numProcessors > 1 ? Executors.newFixedThreadPool(numProcessors) : null;
+        final Deque<Future<List<ReadsToMark>>> markedBatches = new ArrayDeque<>();
+        List<ReadsToMark> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (iterator.hasNext()) {
+                final SAMRecord rec = iterator.next();
+                final SAMRecord rec2 = rec.getReadPairedFlag() && iterator.hasNext() ? iterator.next() : null;
+                rec.setAttribute(XT, null);
+
+                // Do the clipping one way for PE and another for SE reads
+                if (rec.getReadPairedFlag()) {
+                    // Assert that the input file is in query name order only if we see some PE reads
+                    if (order != queryname) {
+                        throw new UserException("Input BAM file must be sorted by queryname");
+                    }
+
+                    if (rec2 == null) throw new UserException("Missing mate pair for paired read: " + rec.getReadName());
+                    rec2.setAttribute(XT, null);
+
+                    // Assert that we did in fact just get two mate pairs
+                    if (!rec.getReadName().equals(rec2.getReadName())) {
+                        throw new UserException("Adjacent reads expected to be mate-pairs have different names: " +
+                                rec.getReadName() + ", " + rec2.getReadName());
+                    }
+
+                    // establish which of pair is first and which second
+                    if (!(rec.getFirstOfPairFlag() && rec2.getSecondOfPairFlag()) && !(rec.getSecondOfPairFlag() && rec2.getFirstOfPairFlag())) {
+                        throw new UserException("Two reads with same name but not correctly marked as 1st/2nd of pair: " + rec.getReadName());
+                    }
                 }
 
-                if (rec2 == null) throw new UserException("Missing mate pair for paired read: " + rec.getReadName());
-                rec2.setAttribute(XT, null);
-
-                // Assert that we did in fact just get two mate pairs
-                if (!rec.getReadName().equals(rec2.getReadName())) {
-                    throw new UserException("Adjacent reads expected to be mate-pairs have different names: " +
-                            rec.getReadName() + ", " + rec2.getReadName());
+                final ReadsToMark reads = new ReadsToMark(rec, rec2);
+                if (markers == null) {
+                    reads.mark(adapterMarker);
+                    write(reads, out, progress, histo);
+                    continue;
                 }
 
-                // establish which of pair is first and which second
-                final SAMRecord first, second;
-
-                if (rec.getFirstOfPairFlag() && rec2.getSecondOfPairFlag()) {
-                    first = rec;
-                    second = rec2;
-                } else if (rec.getSecondOfPairFlag() && rec2.getFirstOfPairFlag()) {
-                    first = rec2;
-                    second = rec;
-                } else {
-                    throw new UserException("Two reads with same name but not correctly marked as 1st/2nd of pair: " + rec.getReadName());
+                // Mark the adapters in batches of reads on the threads, writing them in the order they were read
+                batch.add(reads);
+                if (batch.size() == BATCH_SIZE) {
+                    markedBatches.add(submit(markers, batch, adapterMarker));
+                    batch = new ArrayList<>(BATCH_SIZE);
+                    // keep every thread busy, without letting the marked reads pile up ahead of the writer
+                    if (markedBatches.size() > 2 * numProcessors) {
+                        write(markedBatches.removeFirst(), out, progress, histo);
+                    }
                 }
-
-                adapterMarker.adapterTrimIlluminaPairedReads(first, second);
-            } else {
-                adapterMarker.adapterTrimIlluminaSingleRead(rec);
             }
-
-            // Then output the records, update progress and metrics
-            for (final SAMRecord r : new SAMRecord[]{rec, rec2}) {
-                if (r != null) {
-                    progress.record(r);
-                    if (out != null) out.addAlignment(r);
-
-                    final Integer clip = rec.getIntegerAttribute(XT);
-                    if (clip != null) histo.increment(rec.getReadLength() - clip + 1);
+            if (markers != null) {
+                if (!batch.isEmpty()) {
+                    markedBatches.add(submit(markers, batch, adapterMarker));
+                }
+                while (!markedBatches.isEmpty()) {
+                    write(markedBatches.removeFirst(), out, progress, histo);
                 }
             }
+        } finally {
+            if (markers != null) markers.shutdownNow();
         }
 
         if (out != null) out.close();
@@ -232,6 +259,69 @@ public class MarkIlluminaAdapters extends PicardCommandLineProgram {
         return 0;
     }
 
+    private static Future<List<ReadsToMark>> submit(final ExecutorService markers, final List<ReadsToMark> batch, final AdapterMarker adapterMarker) {
+        return markers.submit(() -> {
+            for (final ReadsToMark reads : batch) {
+                reads.mark(adapterMarker);
+            }
+            return batch;
+        });
+    }
+
+    /** Waits for a batch to be marked and writes it, failing as the marking did if it failed. */
+    private static void write(final Future<List<ReadsToMark>> markedBatch, final SAMFileWriter out, final ProgressLogger progress,
+                              final Histogram<Integer> histo) {
+        final List<ReadsToMark> batch;
+        try {
+            batch = markedBatch.get();
+        } catch (final InterruptedException e) {
+            throw new GATKException("Interrupted while waiting for adapters to be marked", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Error marking adapters: " + e.getCause().getMessage(), e.getCause());
+        }
+        for (final ReadsToMark reads : batch) {
+            write(reads, out, progress, histo);
+        }
+    }
+
+    /** Outputs the records, updating progress and metrics. */
+    private static void write(final ReadsToMark reads, final SAMFileWriter out, final ProgressLogger progress, final Histogram<Integer> histo) {
+        for (final SAMRecord r : new SAMRecord[]{reads.rec, reads.rec2}) {
+            if (r != null) {
+                progress.record(r);
+                if (out != null) out.addAlignment(r);
+
+                final Integer clip = reads.rec.getIntegerAttribute(XT);
+                if (clip != null) histo.increment(reads.rec.getReadLength() - clip + 1);
+            }
+        }
+    }
+
+    /**
+     * A single-end read, or the two reads of a pair, in the order they were read.
+     */
+    private static final class ReadsToMark {
+        final SAMRecord rec, rec2;
+
+        private ReadsToMark(final SAMRecord rec, final SAMRecord rec2) {
+            this.rec = rec;
+            this.rec2 = rec2;
+        }
+
+        void mark(final AdapterMarker adapterMarker) {
+            if (!rec.getReadPairedFlag()) {
+                adapterMarker.adapterTrimIlluminaSingleRead(rec);
+            } else if (rec.getFirstOfPairFlag()) {
+                adapterMarker.adapterTrimIlluminaPairedReads(rec, rec2);
+            } else {
+                adapterMarker.adapterTrimIlluminaPairedReads(rec2, rec);
+            }
+        }
+    }
+
     private class CustomAdapterPair implements AdapterPair {
 
         final String fivePrime, threePrime, fivePrimeReadOrder;
@@ -220,7 +220,7 @@ public class CollectHiSeqXPfFailMetrics extends PicardCommandLineProgram {
         private final PFFailSummaryMetric summaryMetric;
         final Collection<PFFailDetailedMetric> detailedMetrics;
         private Exception exception = null;
-        private final IlluminaDataProvider provider;
+        private final IlluminaDataProviderFactory factory;
         final private double pWriteDetailed;
         final private Random random = new Random();
 
@@ -230,7 +230,7 @@ public class CollectHiSeqXPfFailMetrics extends PicardCommandLineProgram {
          * @param tile            The number of the tile being processed.
          * @param summaryMetric   A summaryMetric for collecting the tile data in.
          * @param detailedMetrics A set of metrics for collecting the classification data in.
-         * @param factory         A dataprovider for IlluminaData
+         * @param factory         The factory of the dataprovider for IlluminaData, which is made when the tile is processed
          */
         public PerTilePFMetricsExtractor(
                 final int tile,
@@ -243,7 +243,7 @@ public class CollectHiSeqXPfFailMetrics extends PicardCommandLineProgram {
             this.summaryMetric = summaryMetric;
             this.detailedMetrics = detailedMetrics;
             this.pWriteDetailed = pWriteDetailed;
-            this.provider = factory.makeDataProvider(asList(tile));
+            this.factory = factory;
         }
 
         public Exception getException() {
@@ -254,6 +254,7 @@ public class CollectHiSeqXPfFailMetrics extends PicardCommandLineProgram {
          * run method which extracts accumulates metrics for a tile
          */
         public void run() {
+            IlluminaDataProvider provider = null;
             try {
                 LOG.info("Extracting PF metrics for tile " + tile);
 
@@ -262,6 +263,7 @@ public class CollectHiSeqXPfFailMetrics extends PicardCommandLineProgram {
                  *   is non-overlapping sets of files so make the data providers in the individual threads for Extractors
                  *   so they are not all waiting for each others file operations
                  */
+                provider = factory.makeDataProvider(asList(tile));
                 while (provider.hasNext()) {
                     // Extract the PF status and infer reason if FAIL from the cluster and update the summaryMetric for the tile
                     final ClusterData cluster = provider.next();
@@ -296,7 +298,9 @@ public class CollectHiSeqXPfFailMetrics extends PicardCommandLineProgram {
                 LOG.error(e, "Error processing tile ", this.tile);
                 this.exception = e;
             } finally {
-                provider.close();
+                if (provider != null) {
+                    provider.close();
+                }
             }
         }
     }
@@ -8,19 +8,47 @@ package org.broadinstitute.hellbender.tools.picard.illumina.parser;
  */
 public class IlluminaReadNameEncoder implements ReadNameEncoder {
     final String runBarcode;
+
+    // The tiles of a run are converted on several threads, each a tile at a time, so each thread keeps the name
+    // prefix of the tile it is on, and a buffer to build the names in.
+    private final ThreadLocal<TileNameBuilder> nameBuilders = ThreadLocal.withInitial(TileNameBuilder::new);
+
     public IlluminaReadNameEncoder(final String runBarcode) {
         this.runBarcode = runBarcode;
     }
     
     @Override
     public String generateReadName(final ClusterData cluster, final Integer pairNumber) {
-        return runBarcode + ":" + cluster.getLane() + ":" + cluster.getTile() + ":" + cluster.getX() + ":" + cluster.getY() + generatePairNumberSuffix(pairNumber);
+        final TileNameBuilder nameBuilder = nameBuilders.get();
+        final StringBuilder name = nameBuilder.startName(cluster.getLane(), cluster.getTile());
+        name.append(cluster.getX()).append(':').append(cluster.getY());
+        if (pairNumber != null) {
+            name.append('/').append(pairNumber.intValue());
+        }
+        return name.toString();
     }
-    
-    private static String generatePairNumberSuffix(final Integer pairNumber) {
-        if (pairNumber == null)
-            return ""; 
-        else
-            return "/" + pairNumber;
+
+    /**
+     * Builds the names of the clusters of one tile after another, starting each from the tile's "runBarcode:lane:tile:"
+     * prefix, which is only built again when the tile changes.
+     */
+    private final class TileNameBuilder {
+        private final StringBuilder name = new StringBuilder();
+        private int lane = -1;
+        private int tile = -1;
+        private int prefixLength = 0;
+
+        StringBuilder startName(final int lane, final int tile) {
+            if (lane != this.lane || tile != this.tile || prefixLength == 0) {
+                name.setLength(0);
+                name.append(runBarcode).append(':').append(lane).append(':').append(tile).append(':');
+                prefixLength = name.length();
+                this.lane = lane;
+                this.tile = tile;
+            } else {
+                name.setLength(prefixLength);
+            }
+            return name;
+        }
     }
 }
@@ -6,6 +6,7 @@ import org.broadinstitute.hellbender.tools.picard.illumina.parser.fakers.FileFak
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -94,6 +95,22 @@ public abstract class ParameterizedFileUtil {
      */
     public abstract List<String> verify(List<Integer> expectedTiles, int[] expectedCycles);
 
+    /**
+     * As {@link #verify(List, int[])}, but checking the files of each tile as a task of pool and, if checkHeaders, also
+     * reading the headers of the files to check the number of clusters they hold.  Formats with a file per tile or per
+     * lane, whose files are all found when this util is made, check them as {@link #verify(List, int[])} does.
+     *
+     * @param expectedTiles  An ordered list of tile numbers
+     * @param expectedCycles An ordered list of cycle numbers that may contain gaps
+     * @param pool           The pool to check the files of each tile on
+     * @param checkHeaders   Whether to read the header of each file as well as its length
+     * @return A list of error messages for this format
+     */
+    public List<String> verify(final List<Integer> expectedTiles, final int[] expectedCycles, final ExecutorService pool,
+                               final boolean checkHeaders) {
+        return verify(expectedTiles, expectedCycles);
+    }
+
     /**
      * Given the expected tiles/expected cycles for this file type create a set of fake files such that the
      * verification criteria are met.
@@ -4,10 +4,14 @@ import htsjdk.samtools.util.IOUtil;
 
 import org.broadinstitute.hellbender.tools.picard.illumina.parser.fakers.FileFaker;
 import org.broadinstitute.hellbender.tools.picard.illumina.parser.readers.BclReader;
+import org.broadinstitute.hellbender.tools.picard.illumina.parser.readers.IlluminaReaderException;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 
 public class PerTilePerCycleFileUtil extends ParameterizedFileUtil {
@@ -129,48 +133,124 @@ public class PerTilePerCycleFileUtil extends ParameterizedFileUtil {
 
     @Override
     public List<String> verify(final List<Integer> expectedTiles, final int[] expectedCycles) {
+        return verify(expectedTiles, expectedCycles, null, false);
+    }
+
+    /**
+     * Checks that every expected cycle has a file for every expected tile, and that the files of a tile are all the same
+     * length (unless they are gzipped).  If checkHeaders, also checks that the headers of the files of a tile all give
+     * the same number of clusters, and that the length of each uncompressed file is what its header gives.
+     *
+     * @param pool The pool to check the files of each tile on, or null to check them on this thread
+     */
+    @Override
+    public List<String> verify(final List<Integer> expectedTiles, final int[] expectedCycles, final ExecutorService pool,
+                               final boolean checkHeaders) {
         final List<String> failures = new LinkedList<String>();
-        final Map<Integer, Long> tileToFileLengthMap = new HashMap<Integer, Long>();
 
         if (!base.exists()) {
             failures.add("Base directory(" + base.getAbsolutePath() + ") does not exist!");
         } else {
             final CycleIlluminaFileMap cfm = getFiles(expectedTiles, expectedCycles);
             for (final int currentCycle : expectedCycles) {
-                final IlluminaFileMap fileMap = cfm.get(currentCycle);
-                if (fileMap != null) {
-                    for (final int tile : expectedTiles) {
-                        final File cycleFile = fileMap.get(tile);
-                        if (cycleFile != null) {
-                            if (tileToFileLengthMap.get(tile) == null) {
-                                tileToFileLengthMap.put(tile, cycleFile.length());
-                            } else if (!extension.equals(".bcl.gz") && tileToFileLengthMap.get(tile) != cycleFile.length()) {
-
-                                // TODO: The gzip bcl files might not be the same length despite having the same content,
-                                // for now we're punting on this but this should be looked into at some point
-                                failures.add("File type " + extension
-                                        + " has cycles files of different length.  Current cycle ("
-                                        + currentCycle + ") " +
-                                        "Length of first non-empty file (" + tileToFileLengthMap.get(tile)
-                                        + ") length of current cycle (" + cycleFile.length() + ")"
-                                        + " File(" + cycleFile.getAbsolutePath() + ")");
-                            }
-                        } else {
-                            failures.add("File type " + extension + " is missing a file for cycle " + currentCycle + " and tile " + tile);
-                        }
-                    }
-                } else {
+                if (cfm.get(currentCycle) == null) {
                     failures.add("Missing file for cycle " + currentCycle + " in directory " + base.getAbsolutePath()
                             + " for file type " + extension);
                 }
             }
 
+            if (pool == null) {
+                for (final int tile : expectedTiles) {
+                    failures.addAll(verifyTile(cfm, tile, expectedCycles, checkHeaders));
+                }
+            } else {
+                final List<Future<List<String>>> tileFailures = new ArrayList<Future<List<String>>>(expectedTiles.size());
+                for (final int tile : expectedTiles) {
+                    tileFailures.add(pool.submit(() -> verifyTile(cfm, tile, expectedCycles, checkHeaders)));
+                }
+                for (final Future<List<String>> tileFailure : tileFailures) {
+                    failures.addAll(getTileFailures(tileFailure));
+                }
+            }
         }
 
+        return failures;
+    }
+
+    private List<String> verifyTile(final CycleIlluminaFileMap cfm, final int tile, final int[] expectedCycles,
+                                    final boolean checkHeaders) {
+        final List<String> failures = new LinkedList<String>();
+        long firstFileLength = -1;
+        long firstNumClusters = -1;
+
+        for (final int currentCycle : expectedCycles) {
+            final IlluminaFileMap fileMap = cfm.get(currentCycle);
+            if (fileMap == null) {
+                continue;
+            }
+
+            final File cycleFile = fileMap.get(tile);
+            if (cycleFile == null) {
+                failures.add("File type " + extension + " is missing a file for cycle " + currentCycle + " and tile " + tile);
+                continue;
+            }
+
+            final long fileLength = cycleFile.length();
+            if (firstFileLength == -1) {
+                firstFileLength = fileLength;
+            } else if (!extension.equals(".bcl.gz") && firstFileLength != fileLength) {
+
+                // TODO: The gzip bcl files might not be the same length despite having the same content,
+                // for now we're punting on this but this should be looked into at some point
+                failures.add("File type " + extension
+                        + " has cycles files of different length.  Current cycle ("
+                        + currentCycle + ") " +
+                        "Length of first non-empty file (" + firstFileLength
+                        + ") length of current cycle (" + fileLength + ")"
+                        + " File(" + cycleFile.getAbsolutePath() + ")");
+                continue;
+            }
+
+            if (checkHeaders) {
+                final long numClusters;
+                try {
+                    numClusters = BclReader.getNumberOfClusters(cycleFile);
+                } catch (final IlluminaReaderException e) {
+                    failures.add("File type " + extension + " has an unreadable header in File(" + cycleFile.getAbsolutePath()
+                            + "): " + e.getMessage());
+                    continue;
+                }
+
+                if (firstNumClusters == -1) {
+                    firstNumClusters = numClusters;
+                }
+                if (firstNumClusters != numClusters) {
+                    failures.add("File type " + extension + " has cycle files with different numbers of clusters.  " +
+                            "Clusters in first file (" + firstNumClusters + ") clusters in current cycle (" + currentCycle
+                            + ") (" + numClusters + ") File(" + cycleFile.getAbsolutePath() + ")");
+                } else if (!BclReader.isGzipped(cycleFile) && fileLength != BclReader.HEADER_SIZE + numClusters) {
+                    failures.add("File type " + extension + " has a header giving " + numClusters + " clusters but a length of "
+                            + fileLength + " File(" + cycleFile.getAbsolutePath() + ")");
+                }
+            }
+        }
 
         return failures;
     }
 
+    private static List<String> getTileFailures(final Future<List<String>> tileFailures) {
+        try {
+            return tileFailures.get();
+        } catch (final InterruptedException e) {
+            throw new IlluminaParserException("Interrupted while waiting for files to be checked", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IlluminaParserException("Error checking files: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
     @Override
     public List<String> fakeFiles(final List<Integer> expectedTiles, final int[] expectedCycles,
                                   final IlluminaFileUtil.SupportedIlluminaFormat format) {
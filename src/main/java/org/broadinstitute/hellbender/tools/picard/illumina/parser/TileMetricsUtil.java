@@ -56,10 +56,9 @@ public class TileMetricsUtil {
                 (tileMetricsOutFile));
 
         // Collect the tiles by lane & tile, and then collect the metrics by lane
-        final Map<String, Collection<IlluminaTileMetrics>> locationToMetricsMap = partitionTileMetricsByLocation(tileMetrics);
+        final Map<Long, Collection<IlluminaTileMetrics>> locationToMetricsMap = partitionTileMetricsByLocation(tileMetrics);
         final Collection<Tile> tiles = new LinkedList<Tile>();
-        for (final Map.Entry<String, Collection<IlluminaTileMetrics>> entry : locationToMetricsMap.entrySet()) {
-            final Collection<IlluminaTileMetrics> tileRecords = entry.getValue();
+        for (final Collection<IlluminaTileMetrics> tileRecords : locationToMetricsMap.values()) {
 
             // Get a mapping from metric code number to the corresponding IlluminaTileMetrics
             final Map<Integer, Collection<IlluminaTileMetrics>> codeMetricsMap = partitionTileMetricsByCode(tileRecords);
@@ -67,7 +66,7 @@ public class TileMetricsUtil {
             final Set<Integer> observedCodes = codeMetricsMap.keySet();
             if (!(observedCodes.contains(DENSITY_ID.getMetricsCode()) && observedCodes.contains(CLUSTER_ID.getMetricsCode())))
                 throw new IlluminaParserException(format("Expected to find cluster and density record codes (%s and %s) in records read for tile location %s (lane:tile), but found only %s.",
-                        CLUSTER_ID.getMetricsCode(), DENSITY_ID.getMetricsCode(), entry.getKey(), observedCodes));
+                        CLUSTER_ID.getMetricsCode(), DENSITY_ID.getMetricsCode(), renderMetricLocationKey(tileRecords.iterator().next()), observedCodes));
 
             final IlluminaTileMetrics densityRecord = getSoleElement(codeMetricsMap.get(DENSITY_ID.getMetricsCode()));
             final IlluminaTileMetrics clusterRecord = getSoleElement(codeMetricsMap.get(CLUSTER_ID.getMetricsCode()));
@@ -136,12 +135,13 @@ public class TileMetricsUtil {
         });
     }
 
-    // Wrapper around CollectionUtil.Partitioner, purely to de-bulk the actual methods
-    private static Map<String, Collection<IlluminaTileMetrics>> partitionTileMetricsByLocation(final Collection<IlluminaTileMetrics> tileMetrics) {
-        return partition(tileMetrics, new CollectionUtil.Partitioner<IlluminaTileMetrics, String>() {
+    // Wrapper around CollectionUtil.Partitioner, purely to de-bulk the actual methods.  The location is packed into a
+    // long rather than rendered as a string, there being several records for every tile of the run.
+    private static Map<Long, Collection<IlluminaTileMetrics>> partitionTileMetricsByLocation(final Collection<IlluminaTileMetrics> tileMetrics) {
+        return partition(tileMetrics, new CollectionUtil.Partitioner<IlluminaTileMetrics, Long>() {
             @Override
-            public String getPartition(final IlluminaTileMetrics metric) {
-                return renderMetricLocationKey(metric);
+            public Long getPartition(final IlluminaTileMetrics metric) {
+                return ((long) metric.getLaneNumber() << 32) | (metric.getTileNumber() & 0xFFFFFFFFL);
             }
         });
     }
@@ -47,11 +47,29 @@ import java.util.zip.GZIPInputStream;
  * 34          T
  * <p/>
  * So the output base/quality will be a (T/34)
+ * <p/>
+ * Rather than reading a byte per cycle from each cycle's stream for every cluster, the reader reads the next
+ * CLUSTERS_PER_BATCH bytes of every cycle at once, and assembles each cluster's BclData from those with table lookups.
  */
 public class BclReader implements CloseableIterator<BclData> {
     private static final byte BASE_MASK = 0x0003;
-    private static final int HEADER_SIZE = 4;
+    public static final int HEADER_SIZE = 4;
     private static final byte[] BASE_LOOKUP = new byte[]{'A', 'C', 'G', 'T'};
+    private static final int CLUSTERS_PER_BATCH = 4096;
+
+    /** The base and the revised quality of every value of a BCL byte. */
+    private static final byte[] BASE_TABLE = new byte[256];
+    private static final byte[] QUALITY_TABLE = new byte[256];
+
+    static {
+        //NO CALL, don't confuse with an A call
+        BASE_TABLE[0] = (byte) '.';
+        QUALITY_TABLE[0] = (byte) 2;
+        for (int readByte = 1; readByte < 256; ++readByte) {
+            BASE_TABLE[readByte] = BASE_LOOKUP[readByte & BASE_MASK];
+            QUALITY_TABLE[readByte] = (byte) Math.max(readByte >>> 2, 1);
+        }
+    }
 
     private final InputStream[] streams;
     private final int[] outputLengths;
@@ -60,6 +78,11 @@ public class BclReader implements CloseableIterator<BclData> {
     private final BclQualityEvaluationStrategy bclQualityEvaluationStrategy;
     private BclData queue = null;
 
+    /** The next bytes of each cycle, of which the first batchSize are read and the first batchPosition used. */
+    private byte[][] cycleBatches = null;
+    private int batchSize = 0;
+    private int batchPosition = 0;
+
     public BclReader(final List<File> bclsForOneTile, final int[] outputLengths,
                      final BclQualityEvaluationStrategy bclQualityEvaluationStrategy, final boolean seekable) {
         try {
@@ -190,8 +213,9 @@ public class BclReader implements CloseableIterator<BclData> {
             // Open up a buffered stream to read from the file and optionally wrap it in a gzip stream
             // if necessary
             if (isBgzf) {
-                // Only BlockCompressedInputStreams can seek, and only if they are fed a SeekableStream.
-                return new BlockCompressedInputStream(IOUtil.maybeBufferedSeekableStream(file));
+                // Only BlockCompressedInputStreams can seek, and only if they are fed a SeekableStream.  The readers of
+                // every tile of a multi-tile BCL share one mapping of it rather than each opening the file.
+                return new BlockCompressedInputStream(MappedFileStore.openSeekableStream(file));
             } else if (isGzip) {
                 if (seekable) {
                     throw new IllegalArgumentException(
@@ -257,40 +281,74 @@ public class BclReader implements CloseableIterator<BclData> {
     }
 
     void advance() {
+        if (batchPosition == batchSize && !readBatch()) {
+            queue = null;
+            return;
+        }
         int totalCycleCount = 0;
         final BclData data = new BclData(outputLengths);
         for (int read = 0; read < outputLengths.length; read++) {
+            final byte[] bases = data.bases[read];
+            final byte[] qualities = data.qualities[read];
             for (int cycle = 0; cycle < outputLengths[read]; ++cycle) {
-                try {
-                    final int readByte = this.streams[totalCycleCount].read();
-                    if (readByte == -1) {
-                        queue = null;
-                        return;
-                    }
-
-                    if (readByte == 0) {
-                        //NO CALL, don't confuse with an A call
-                        data.bases[read][cycle] = (byte) '.';
-                        data.qualities[read][cycle] = (byte) 2;
-                    } else {
-                        data.bases[read][cycle] = BASE_LOOKUP[readByte & BASE_MASK];
-                        data.qualities[read][cycle] = bclQualityEvaluationStrategy.reviseAndConditionallyLogQuality((byte) (readByte >>> 2));
-                    }
-                    totalCycleCount++;
-                } catch (final IOException ioe) {
-                    throw new RuntimeIOException(ioe);
+                final int readByte = cycleBatches[totalCycleCount][batchPosition] & 0xFF;
+                bases[cycle] = BASE_TABLE[readByte];
+                qualities[cycle] = QUALITY_TABLE[readByte];
+                if (readByte != 0 && (readByte >>> 2) < BclQualityEvaluationStrategy.ILLUMINA_ALLEGED_MINIMUM_QUALITY) {
+                    bclQualityEvaluationStrategy.reviseAndConditionallyLogQuality((byte) (readByte >>> 2));
                 }
-
+                totalCycleCount++;
             }
         }
+        batchPosition++;
         this.queue = data;
     }
 
+    /**
+     * Reads the next bytes of every cycle, as many as there are of the cycle with the fewest left up to
+     * CLUSTERS_PER_BATCH.
+     *
+     * @return false if some cycle has no bytes left
+     */
+    private boolean readBatch() {
+        if (cycleBatches == null) {
+            cycleBatches = new byte[streams.length][CLUSTERS_PER_BATCH];
+        }
+        int clusters = CLUSTERS_PER_BATCH;
+        for (int i = 0; i < streams.length; ++i) {
+            try {
+                clusters = Math.min(clusters, readFully(streams[i], cycleBatches[i], clusters));
+            } catch (final IOException ioe) {
+                throw new RuntimeIOException(ioe);
+            }
+        }
+        batchSize = clusters;
+        batchPosition = 0;
+        return clusters > 0;
+    }
+
+    /** Reads up to length bytes, stopping early only at the end of the stream, and returns how many were read. */
+    private static int readFully(final InputStream stream, final byte[] buffer, final int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            final int read = stream.read(buffer, total, length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
     public static BclReader makeSeekable(final List<File> files, final BclQualityEvaluationStrategy bclQualityEvaluationStrategy, final int[] outputLengths) {
         return new BclReader(files, outputLengths, bclQualityEvaluationStrategy, true);
     }
 
     public int seek(final List<File> files, final TileIndex tileIndex, final int currentTile) {
+        // the clusters read ahead of the new position are no longer next
+        queue = null;
+        batchSize = 0;
+        batchPosition = 0;
         int count = 0;
         int numClustersInTile = 0;
         for (final InputStream inputStream : streams) {
@@ -2,29 +2,24 @@ package org.broadinstitute.hellbender.tools.picard.illumina.parser.readers;
 
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
-import htsjdk.samtools.util.RuntimeIOException;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.channels.FileChannel;
 import java.util.*;
 
-import static htsjdk.samtools.util.CloserUtil.close;
 import static htsjdk.samtools.util.IOUtil.assertFileIsReadable;
 import static java.nio.ByteBuffer.allocate;
 import static java.nio.ByteBuffer.wrap;
 import static java.nio.ByteOrder.LITTLE_ENDIAN;
 import static java.nio.channels.FileChannel.MapMode;
-import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
 
 /**
  * MMapBackedIteratorFactory a file reader that takes a header size and a binary file, maps the file to
  * a read-only byte buffer and provides methods to retrieve the header as it's own bytebuffer and create
  * iterators of different data types over the values of file (starting after the end of the header).
- * Values provided by the MMappedBinaryFileReader are read as if they are little endian.
+ * Values provided by the MMappedBinaryFileReader are read as if they are little endian.  The mapping of each file is
+ * shared through {@link MappedFileStore} by all the iterators over it.
  * <p>
  * Note (read to end):
  * This class IS thread-safe and immutable though the iterator and ByteBuffers it produces are NOT.
@@ -89,20 +84,7 @@ public class MMapBackedIteratorFactory {
     }
 
     private static ByteBuffer getBuffer(final File binaryFile) {
-        final ByteBuffer buf;
-        try {
-            final FileInputStream is = new FileInputStream(binaryFile);
-            final FileChannel channel = is.getChannel();
-            final long fileSize = channel.size();
-            buf = channel.map(READ_ONLY, 0, fileSize);
-            buf.order(LITTLE_ENDIAN);
-            close(channel);
-            close(is);
-        } catch (IOException e) {
-            throw new RuntimeIOException("IOException opening cluster binary file " + binaryFile, e);
-        }
-
-        return buf;
+        return MappedFileStore.getBuffer(binaryFile);
     }
 
     private static byte[] getHeader(final ByteBuffer buf, final int headerSize) {
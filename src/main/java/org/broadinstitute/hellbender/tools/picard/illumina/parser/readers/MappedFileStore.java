@@ -0,0 +1,201 @@
+package org.broadinstitute.hellbender.tools.picard.illumina.parser.readers;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import static htsjdk.samtools.util.CloserUtil.close;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+/**
+ * Maps files read-only into memory and hands out views of the mappings, so that the readers of the tiles of a
+ * multi-tile file (the BCLs, filter, locs and bci files of a HiSeq X or 4000 lane), which are made for each tile and
+ * run on different threads, share one mapping of each file instead of each opening and mapping it again.  A reader
+ * moves to its tile by setting the position of its view.
+ * <p/>
+ * A mapping is kept while any view of it is in use, after which it may be released by the garbage collector like any
+ * other mapping.  A file that has changed since it was mapped is mapped again.
+ * <p/>
+ * This class is thread-safe, though the views and streams it hands out are NOT, each being for one reader.
+ */
+public final class MappedFileStore {
+    private static final Map<File, Mapping> MAPPINGS = new HashMap<File, Mapping>();
+    /** The mappings released by the garbage collector, whose entries are yet to be removed from MAPPINGS. */
+    private static final ReferenceQueue<ByteBuffer> RELEASED = new ReferenceQueue<ByteBuffer>();
+
+    private MappedFileStore() {
+    }
+
+    /**
+     * Returns a little endian view of the whole of the file, positioned at its start.
+     */
+    public static ByteBuffer getBuffer(final File file) {
+        return getMapping(file).duplicate().order(LITTLE_ENDIAN);
+    }
+
+    /**
+     * Returns a stream over the mapping of the file, or over the file itself if it is too long to be mapped as one
+     * buffer.  Closing the stream does not release the mapping, which other readers may be using.
+     */
+    public static SeekableStream openSeekableStream(final File file) {
+        if (file.length() > Integer.MAX_VALUE) {
+            return IOUtil.maybeBufferedSeekableStream(file);
+        }
+        return new ByteBufferSeekableStream(getBuffer(file), file.getAbsolutePath());
+    }
+
+    private static synchronized ByteBuffer getMapping(final File file) {
+        removeReleasedMappings();
+        final File key = file.getAbsoluteFile();
+        final Mapping mapping = MAPPINGS.get(key);
+        if (mapping != null && mapping.isOf(key)) {
+            final ByteBuffer buffer = mapping.get();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        final ByteBuffer buffer = map(key);
+        MAPPINGS.put(key, new Mapping(buffer, key));
+        return buffer;
+    }
+
+    /**
+     * Removes the entries of the mappings that have been released, unless a file has been mapped again since.
+     */
+    private static void removeReleasedMappings() {
+        for (Reference<? extends ByteBuffer> released = RELEASED.poll(); released != null; released = RELEASED.poll()) {
+            final Mapping mapping = (Mapping) released;
+            if (MAPPINGS.get(mapping.file) == mapping) {
+                MAPPINGS.remove(mapping.file);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of files with an entry in the store, whether or not their mapping has been released.
+     */
+    static synchronized int size() {
+        removeReleasedMappings();
+        return MAPPINGS.size();
+    }
+
+    private static ByteBuffer map(final File file) {
+        try {
+            final FileInputStream is = new FileInputStream(file);
+            final FileChannel channel = is.getChannel();
+            final ByteBuffer buf = channel.map(READ_ONLY, 0, channel.size());
+            close(channel);
+            close(is);
+            return buf;
+        } catch (final IOException e) {
+            throw new RuntimeIOException("IOException opening cluster binary file " + file, e);
+        }
+    }
+
+    /**
+     * A mapping, its file, and the length and modification time of the file when it was mapped.
+     */
+    private static final class Mapping extends WeakReference<ByteBuffer> {
+        private final File file;
+        private final long length;
+        private final long lastModified;
+
+        Mapping(final ByteBuffer buffer, final File file) {
+            super(buffer, RELEASED);
+            this.file = file;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        boolean isOf(final File file) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * A SeekableStream over a view of a mapping.
+     */
+    private static final class ByteBufferSeekableStream extends SeekableStream {
+        private final ByteBuffer buffer;
+        private final String source;
+
+        ByteBufferSeekableStream(final ByteBuffer buffer, final String source) {
+            this.buffer = buffer;
+            this.source = source;
+        }
+
+        @Override
+        public long length() {
+            return buffer.limit();
+        }
+
+        @Override
+        public long position() {
+            return buffer.position();
+        }
+
+        @Override
+        public void seek(final long position) throws IOException {
+            if (position < 0 || position > buffer.limit()) {
+                throw new IOException("Cannot seek to " + position + " in " + source + " of length " + buffer.limit());
+            }
+            buffer.position((int) position);
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean eof() {
+            return !buffer.hasRemaining();
+        }
+
+        @Override
+        public String getSource() {
+            return source;
+        }
+    }
+}
@@ -8,10 +8,19 @@ import org.broadinstitute.hellbender.cmdline.*;
 import org.broadinstitute.hellbender.cmdline.programgroups.ReadProgramGroup;
 import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.iterators.PrefetchingIterator;
+import org.broadinstitute.hellbender.utils.runtime.RuntimeUtils;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 /**
  * Converts a fastq file to an unaligned BAM/SAM format.
@@ -94,6 +103,19 @@ public class FastqToSam extends PicardCommandLineProgram {
     @Argument(doc="Allow (and ignore) empty lines")
     public Boolean ALLOW_AND_IGNORE_EMPTY_LINES = false;
 
+    @Argument(shortName = "NP", doc = "The number of threads used to convert the reads.  If more than 1, each fastq " +
+            "is parsed on its own thread, the reads are converted in batches on this many threads, keeping their " +
+            "order, and the output is compressed on its own thread. " +
+            RuntimeUtils.NUM_PROCESSORS_DOC,
+            optional = true)
+    public int NUM_PROCESSORS = 1;
+
+    /** The number of reads (or pairs of reads) converted by a thread at a time. */
+    private static final int CONVERSION_BATCH_SIZE = 1000;
+
+    /** The number of batches of parsed reads each parsing thread may get ahead of the conversion. */
+    private static final int PREFETCH_BATCHES = 10;
+
     private static final SolexaQualityConverter solexaQualityConverter = SolexaQualityConverter.getSingleton();
 
     /**
@@ -142,7 +164,8 @@ public class FastqToSam extends PicardCommandLineProgram {
         QUALITY_FORMAT = FastqToSam.determineQualityFormat(reader, reader2, QUALITY_FORMAT);
 
         final SAMFileHeader header = createSamFileHeader();
-        final SAMFileWriter writer = new SAMFileWriterFactory().makeSAMOrBAMWriter(header, false, OUTPUT);
+        final SAMFileWriter writer = new SAMFileWriterFactory().setUseAsyncIo(RuntimeUtils.getNumProcessors(NUM_PROCESSORS) > 1)
+                .makeSAMOrBAMWriter(header, false, OUTPUT);
 
         reader = fileToFastqReader(FASTQ);
         if (FASTQ2 != null) {
@@ -173,7 +196,13 @@ public class FastqToSam extends PicardCommandLineProgram {
      *
      */
     public void makeItSo(final FastqReader reader1, final FastqReader reader2, final SAMFileWriter writer) {
-        final int readCount = (reader2 == null) ?  doUnpaired(reader1, writer) : doPaired(reader1, reader2, writer);
+        final int numProcessors = RuntimeUtils.getNumProcessors(NUM_PROCESSORS);
+        final int readCount;
+        if (numProcessors > 1) {
+            readCount = doInParallel(reader1, reader2, writer, numProcessors);
+        } else {
+            readCount = (reader2 == null) ?  doUnpaired(reader1, writer) : doPaired(reader1, reader2, writer);
+        }
         LOG.info("Processed " + readCount + " fastq reads");
     }
 
@@ -205,15 +234,11 @@ public class FastqToSam extends PicardCommandLineProgram {
             final String frec2Name = getReadName(frec2.getReadHeader(), true);
             final String baseName = getBaseName(frec1Name, frec2Name, freader1, freader2);
 
-            final SAMRecord srec1 = createSamRecord(writer.getFileHeader(), baseName, frec1, true) ;
-            srec1.setFirstOfPairFlag(true);
-            srec1.setSecondOfPairFlag(false);
+            final SAMRecord srec1 = createFirstOfPairSamRecord(writer.getFileHeader(), baseName, frec1);
             writer.addAlignment(srec1);
             progress.record(srec1);
 
-            final SAMRecord srec2 = createSamRecord(writer.getFileHeader(), baseName, frec2, true) ;
-            srec2.setFirstOfPairFlag(false);
-            srec2.setSecondOfPairFlag(true);
+            final SAMRecord srec2 = createSecondOfPairSamRecord(writer.getFileHeader(), baseName, frec2);
             writer.addAlignment(srec2);
             progress.record(srec2);
         }
@@ -227,6 +252,134 @@ public class FastqToSam extends PicardCommandLineProgram {
         return readCount;
     }
 
+    /**
+     * Converts single or paired fastq input like {@link #doUnpaired} and {@link #doPaired}, but parses each fastq on
+     * its own thread and converts the reads in batches on numThreads threads, writing them in the order they were read.
+     */
+    protected int doInParallel(final FastqReader freader1, final FastqReader freader2, final SAMFileWriter writer, final int numThreads) {
+        final SAMFileHeader header = writer.getFileHeader();
+        final PrefetchingIterator<FastqRecord> records1 = prefetch(freader1);
+        final PrefetchingIterator<FastqRecord> records2 = (freader2 == null) ? null : prefetch(freader2);
+        final ExecutorService converters = Executors.newFixedThreadPool(numThreads);
+        final Deque<Future<List<SAMRecord>>> convertedBatches = new ArrayDeque<>();
+        final ProgressLogger progress = new ProgressLogger(LOG);
+        int readCount = 0;
+        try {
+            while (true) {
+                final List<FastqRecord> batch1 = nextBatch(records1);
+                final List<FastqRecord> batch2 = (records2 == null) ? null : nextBatch(records2);
+                if (batch2 != null && batch2.size() != batch1.size()) {
+                    throw new UserException("Input paired fastq files must be the same length");
+                }
+                if (batch1.isEmpty()) {
+                    break;
+                }
+
+                final int firstRecord = readCount + 1;
+                convertedBatches.add(converters.submit(() -> convertBatch(header, batch1, batch2, firstRecord, freader1, freader2)));
+                readCount += batch1.size();
+
+                // keep every thread busy, without letting the converted reads pile up ahead of the writer
+                if (convertedBatches.size() > 2 * numThreads) {
+                    writeBatch(convertedBatches.removeFirst(), writer, progress);
+                }
+            }
+            while (!convertedBatches.isEmpty()) {
+                writeBatch(convertedBatches.removeFirst(), writer, progress);
+            }
+        } finally {
+            converters.shutdownNow();
+            records1.close();
+            if (records2 != null) {
+                records2.close();
+            }
+        }
+
+        writer.close();
+        return readCount;
+    }
+
+    /** Parses the records of the reader ahead on a thread of its own, leaving the reader open. */
+    private PrefetchingIterator<FastqRecord> prefetch(final FastqReader freader) {
+        final CloseableIterator<FastqRecord> records = new CloseableIterator<FastqRecord>() {
+            @Override
+            public boolean hasNext() {
+                return freader.hasNext();
+            }
+
+            @Override
+            public FastqRecord next() {
+                return freader.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                // the caller of makeItSo closes the reader
+            }
+        };
+        final String threadName = "FastqToSam-" + (freader.getFile() == null ? "fastq" : freader.getFile().getName());
+        return new PrefetchingIterator<>(records, CONVERSION_BATCH_SIZE, PREFETCH_BATCHES, threadName);
+    }
+
+    /** Returns the next batch of records, which is empty at the end of the input. */
+    private static List<FastqRecord> nextBatch(final PrefetchingIterator<FastqRecord> records) {
+        final List<FastqRecord> batch = new ArrayList<>(CONVERSION_BATCH_SIZE);
+        while (batch.size() < CONVERSION_BATCH_SIZE && records.hasNext()) {
+            batch.add(records.next());
+        }
+        return batch;
+    }
+
+    /**
+     * Converts a batch of reads, or of pairs of reads if batch2 is not null.
+     *
+     * @param firstRecord the number of the first record of the batch in the fastq(s), from 1, for error messages
+     */
+    private List<SAMRecord> convertBatch(final SAMFileHeader header, final List<FastqRecord> batch1, final List<FastqRecord> batch2,
+                                         final int firstRecord, final FastqReader freader1, final FastqReader freader2) {
+        final List<SAMRecord> converted = new ArrayList<>(batch2 == null ? batch1.size() : 2 * batch1.size());
+        for (int i = 0; i < batch1.size(); i++) {
+            final FastqRecord frec1 = batch1.get(i);
+            if (batch2 == null) {
+                final SAMRecord srec = createSamRecord(header, getReadName(frec1.getReadHeader(), false), frec1, false);
+                srec.setReadPairedFlag(false);
+                converted.add(srec);
+            } else {
+                final FastqRecord frec2 = batch2.get(i);
+                final int record = firstRecord + i;
+                final String baseName = getBaseName(getReadName(frec1.getReadHeader(), true), getReadName(frec2.getReadHeader(), true),
+                        () -> recordLocation(freader1, record), () -> recordLocation(freader2, record));
+                converted.add(createFirstOfPairSamRecord(header, baseName, frec1));
+                converted.add(createSecondOfPairSamRecord(header, baseName, frec2));
+            }
+        }
+        return converted;
+    }
+
+    /** Waits for a batch to be converted and writes it, failing as the conversion did if it failed. */
+    private static void writeBatch(final Future<List<SAMRecord>> convertedBatch, final SAMFileWriter writer, final ProgressLogger progress) {
+        final List<SAMRecord> batch;
+        try {
+            batch = convertedBatch.get();
+        } catch (final InterruptedException e) {
+            throw new GATKException("Interrupted while waiting for reads to be converted", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new GATKException("Error converting reads: " + e.getCause().getMessage(), e.getCause());
+        }
+        for (final SAMRecord srec : batch) {
+            writer.addAlignment(srec);
+            progress.record(srec);
+        }
+    }
+
     private FastqReader fileToFastqReader(final File file) {
         return new FastqReader(file, ALLOW_AND_IGNORE_EMPTY_LINES);
     }
@@ -255,6 +408,20 @@ public class FastqToSam extends PicardCommandLineProgram {
         return srec ;
     }
 
+    private SAMRecord createFirstOfPairSamRecord(final SAMFileHeader header, final String baseName, final FastqRecord frec) {
+        final SAMRecord srec = createSamRecord(header, baseName, frec, true);
+        srec.setFirstOfPairFlag(true);
+        srec.setSecondOfPairFlag(false);
+        return srec;
+    }
+
+    private SAMRecord createSecondOfPairSamRecord(final SAMFileHeader header, final String baseName, final FastqRecord frec) {
+        final SAMRecord srec = createSamRecord(header, baseName, frec, true);
+        srec.setFirstOfPairFlag(false);
+        srec.setSecondOfPairFlag(true);
+        return srec;
+    }
+
     /** Creates a simple header with the values provided on the command line. */
     public SAMFileHeader createSamFileHeader() {
         final SAMReadGroupRecord rgroup = new SAMReadGroupRecord(this.READ_GROUP_NAME);
@@ -304,6 +471,11 @@ public class FastqToSam extends PicardCommandLineProgram {
      * </ul>
      */
     String getBaseName(final String readName1, final String readName2, final FastqReader freader1, final FastqReader freader2) {
+        return getBaseName(readName1, readName2, () -> lineLocation(freader1), () -> lineLocation(freader2));
+    }
+
+    /** As {@link #getBaseName(String, String, FastqReader, FastqReader)}, describing where the reads are with the given locations. */
+    private String getBaseName(final String readName1, final String readName2, final Supplier<String> freader1, final Supplier<String> freader2) {
         String [] toks = getReadNameTokens(readName1, 1, freader1);
         final String baseName1 = toks[0] ;
         final String num1 = toks[1] ;
@@ -330,7 +502,7 @@ public class FastqToSam extends PicardCommandLineProgram {
     }
 
     /** Breaks up read name into baseName and number separated by the last / */
-    private String [] getReadNameTokens(final String readName, final int pairNum, final FastqReader freader) {
+    private String [] getReadNameTokens(final String readName, final int pairNum, final Supplier<String> freader) {
         if(readName.equals("")) throw new UserException(error(freader,"Pair read name "+pairNum+" cannot be empty: "+readName));
 
         final int idx = readName.lastIndexOf("/");
@@ -354,9 +526,18 @@ public class FastqToSam extends PicardCommandLineProgram {
         return result ;
     }
 
-    /** Little utility to give error messages corresponding to line numbers in the input files. */
-    private String error(final FastqReader freader, final String str) {
-        return str +" at line "+freader.getLineNumber() +" in file "+freader.getFile().getAbsolutePath();
+    /** Little utility to give error messages corresponding to line (or record) numbers in the input files. */
+    private String error(final Supplier<String> location, final String str) {
+        return str +" at "+location.get();
+    }
+
+    private static String lineLocation(final FastqReader freader) {
+        return "line "+freader.getLineNumber() +" in file "+freader.getFile().getAbsolutePath();
+    }
+
+    // the reader is ahead of the reads being converted in parallel, so these are located by their record number instead
+    private static String recordLocation(final FastqReader freader, final int record) {
+        return "record "+record +" in file "+freader.getFile().getAbsolutePath();
     }
 
     // Read names cannot contain blanks
@@ -1,14 +1,37 @@
 package org.broadinstitute.hellbender.tools.picard.sam;
 
 import htsjdk.samtools.*;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.Md5CalculatingOutputStream;
+import htsjdk.samtools.util.RuntimeIOException;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.broadinstitute.hellbender.cmdline.*;
 import org.broadinstitute.hellbender.cmdline.programgroups.ReadProgramGroup;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.iterators.PrefetchingIterator;
+import org.broadinstitute.hellbender.utils.read.BAMIndexMerger;
+import org.broadinstitute.hellbender.utils.runtime.RuntimeUtils;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.function.LongUnaryOperator;
 
 /**
  * Program to perform a rapid "gather" operation on BAM files after a scatter operations where
@@ -21,8 +44,9 @@ import java.util.List;
         usage = "Concatenates one or more BAM files together as efficiently as possible. Assumes that the " +
                 "list of BAM files provided as INPUT are in the order that they should be concatenated and simply concatenates the bodies " +
                 "of the BAM files while retaining the header from the first file.  Operates via copying of the gzip blocks directly for speed " +
-                "but also supports generation of an MD5 on the output and indexing of the output BAM file. Only support BAM files, does not " +
-                "support SAM files.",
+                "but also supports generation of an MD5 on the output and indexing of the output BAM file. When every input BAM has an " +
+                "up to date index, the output index is made by merging the input indexes rather than by reading the output. " +
+                "SAM inputs are gathered record by record instead.",
         usageShort = "Concatenates one or more BAM files together as efficiently as possible",
         programGroup = ReadProgramGroup.class
 )
@@ -35,6 +59,19 @@ public class GatherBamFiles extends PicardCommandLineProgram {
     @Argument(shortName = StandardArgumentDefinitions.OUTPUT_SHORT_NAME, doc = "The output BAM file to write.")
     public File OUTPUT;
 
+    @Argument(shortName = "NP", doc = "The number of threads used to decode the inputs when they cannot be block " +
+            "copied, in which case this many inputs are read ahead at once and the output is compressed on its own " +
+            "thread. " +
+            RuntimeUtils.NUM_PROCESSORS_DOC,
+            optional = true)
+    public int NUM_PROCESSORS = 1;
+
+    /** The number of records handed from a decoding thread to the writer at a time. */
+    private static final int PREFETCH_BATCH_SIZE = 1000;
+
+    /** The number of batches each decoding thread may get ahead of the writer. */
+    private static final int PREFETCH_BATCHES = 10;
+
     private static final Log log = Log.getInstance(GatherBamFiles.class);
 
     @Override
@@ -44,9 +81,15 @@ public class GatherBamFiles extends PicardCommandLineProgram {
         IOUtil.assertFileIsWritable(OUTPUT);
 
         if (determineBlockCopyingStatus(inputs)) {
-            BamFileIoUtils.gatherWithBlockCopying(inputs, OUTPUT, CREATE_INDEX, CREATE_MD5_FILE);
+            final List<File> indexes = CREATE_INDEX ? findIndexes(inputs) : null;
+            if (indexes != null) {
+                gatherWithIndexMerging(inputs, indexes, OUTPUT, CREATE_MD5_FILE);
+            } else {
+                BamFileIoUtils.gatherWithBlockCopying(inputs, OUTPUT, CREATE_INDEX, CREATE_MD5_FILE);
+            }
         } else {
-            gatherNormally(inputs, OUTPUT, CREATE_INDEX, CREATE_MD5_FILE, REFERENCE_SEQUENCE);
+            gatherNormally(inputs, OUTPUT, CREATE_INDEX, CREATE_MD5_FILE, REFERENCE_SEQUENCE,
+                    RuntimeUtils.getNumProcessors(NUM_PROCESSORS));
         }
 
         return null;
@@ -62,24 +105,181 @@ public class GatherBamFiles extends PicardCommandLineProgram {
         return useBlockCopying;
     }
 
+    /**
+     * Returns the indexes of the inputs, or null if any input has no index or an index older than the BAM itself,
+     * in which case the output has to be indexed by reading it.
+     */
+    private static List<File> findIndexes(final List<File> inputs) {
+        final List<File> indexes = new ArrayList<>(inputs.size());
+        for (final File f : inputs) {
+            final File index = SamFiles.findIndex(f);
+            if (index == null || index.lastModified() < f.lastModified()) {
+                log.info("No up to date index for " + f.getAbsolutePath() + ", the output will be indexed by reading it.");
+                return null;
+            }
+            indexes.add(index);
+        }
+        return indexes;
+    }
+
+    /**
+     * Concatenates the inputs by copying their gzip blocks, like {@link BamFileIoUtils#gatherWithBlockCopying}, while
+     * keeping track of where the blocks of every input end up so that the input indexes can be merged into the output
+     * index without reading any records.
+     */
+    private static void gatherWithIndexMerging(final List<File> inputs, final List<File> indexes, final File output, final boolean createMd5) {
+        final SAMFileHeader header = SamReaderFactory.makeDefault().getFileHeader(inputs.get(0));
+        final BAMIndexMerger indexMerger = new BAMIndexMerger(header.getSequenceDictionary().size());
+
+        try {
+            OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(output), Defaults.BUFFER_SIZE);
+            if (createMd5) fileOut = new Md5CalculatingOutputStream(fileOut, new File(output.getAbsolutePath() + ".md5"));
+            final CountingOutputStream out = new CountingOutputStream(fileOut);
+
+            boolean isFirstFile = true;
+            for (int i = 0; i < inputs.size(); ++i) {
+                log.info(String.format("Block copying %s ...", inputs.get(i).getAbsolutePath()));
+                final LongUnaryOperator offsetTranslator = blockCopyBamFile(inputs.get(i), out, !isFirstFile);
+                indexMerger.mergeIndex(indexes.get(i), offsetTranslator);
+                isFirstFile = false;
+            }
+
+            out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+            out.close();
+        } catch (final IOException ioe) {
+            throw new RuntimeIOException(ioe);
+        }
+
+        indexMerger.writeIndex(new File(output.getParentFile(), IOUtil.basename(output) + BAMIndex.BAMIndexSuffix));
+    }
+
+    /**
+     * Copies the gzip blocks of a BAM file, without its terminator block, to the output.  When the header is skipped the
+     * records sharing a block with the end of the header are compressed into new blocks of their own.
+     *
+     * @return a function mapping the virtual file offsets of the input to the corresponding offsets in the output
+     */
+    private static LongUnaryOperator blockCopyBamFile(final File input, final CountingOutputStream out, final boolean skipHeader) throws IOException {
+        final BlockCompressedInputStream.FileTermination termination = BlockCompressedInputStream.checkTermination(input);
+        if (termination == BlockCompressedInputStream.FileTermination.DEFECTIVE) {
+            throw new UserException.MalformedFile(input, "does not have a valid GZIP block at the end of the file.");
+        }
+        final long terminatorLength = termination == BlockCompressedInputStream.FileTermination.HAS_TERMINATOR_BLOCK ?
+                BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length : 0;
+
+        final LongUnaryOperator offsetTranslator;
+        final long copyFrom;
+        if (skipHeader) {
+            final long firstRecord = SAMUtils.findVirtualOffsetOfFirstRecordInBam(input);
+            final long headerBlock = BlockCompressedFilePointerUtil.getBlockAddress(firstRecord);
+            final int firstRecordInBlock = BlockCompressedFilePointerUtil.getBlockOffset(firstRecord);
+            copyFrom = headerBlock + readBlockLength(input, headerBlock);
+
+            // recompress the records in the last block of the header, one new block per full block of data
+            final byte[] records;
+            try (final BlockCompressedInputStream blockIn = new BlockCompressedInputStream(input)) {
+                blockIn.seek(firstRecord);
+                records = new byte[blockIn.available()];
+                IOUtils.readFully(blockIn, records);
+            }
+            final int blockSize = BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE;
+            final long[] newBlocks = new long[(records.length + blockSize - 1) / blockSize];
+            final BlockCompressedOutputStream blockOut = new BlockCompressedOutputStream(out, null);
+            for (int i = 0; i < newBlocks.length; ++i) {
+                newBlocks[i] = out.getByteCount();
+                blockOut.write(records, i * blockSize, Math.min(blockSize, records.length - i * blockSize));
+                blockOut.flush();
+            }
+            // don't close blockOut, as that would close the output
+
+            final long copiedBlocksStart = out.getByteCount();
+            offsetTranslator = offset -> {
+                final long block = BlockCompressedFilePointerUtil.getBlockAddress(offset);
+                if (block >= copyFrom) {
+                    return makeFilePointer(copiedBlocksStart + block - copyFrom, BlockCompressedFilePointerUtil.getBlockOffset(offset));
+                }
+                final int recordOffset = BlockCompressedFilePointerUtil.getBlockOffset(offset) - firstRecordInBlock;
+                if (block != headerBlock || recordOffset < 0) {
+                    throw new UserException.MalformedFile(input, "the index refers to the header at " + BlockCompressedFilePointerUtil.asString(offset));
+                }
+                if (recordOffset >= records.length) {
+                    return makeFilePointer(copiedBlocksStart, 0);
+                }
+                return makeFilePointer(newBlocks[recordOffset / blockSize], recordOffset % blockSize);
+            };
+        } else {
+            copyFrom = 0;
+            final long copiedBlocksStart = out.getByteCount();
+            offsetTranslator = offset -> offset + (copiedBlocksStart << 16);
+        }
+
+        try (final InputStream in = new FileInputStream(input)) {
+            long toSkip = copyFrom;
+            while (toSkip > 0) {
+                toSkip -= in.skip(toSkip);
+            }
+            IOUtil.transferByStream(in, out, Math.max(0, input.length() - terminatorLength - copyFrom));
+        }
+        return offsetTranslator;
+    }
+
+    /** Reads the total length of the gzip block starting at the given position from its BGZF header. */
+    private static int readBlockLength(final File input, final long blockAddress) throws IOException {
+        try (final RandomAccessFile in = new RandomAccessFile(input, "r")) {
+            in.seek(blockAddress + BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET);
+            final int low = in.read();
+            final int high = in.read();
+            if (high < 0) {
+                throw new UserException.MalformedFile(input, "truncated gzip block at " + blockAddress);
+            }
+            return ((high << 8) | low) + 1;
+        }
+    }
+
+    private static long makeFilePointer(final long blockAddress, final int blockOffset) {
+        return (blockAddress << 16) | blockOffset;
+    }
+
     /**
      * Simple implementation of a gather operations that uses SAMFileReaders and Writers in order to concatenate
-     * multiple BAM files.
+     * multiple BAM files.  With more than one thread, up to numThreads inputs are decoded ahead of the writer on
+     * background threads and the output is compressed on its own thread.
      */
     private static void gatherNormally(final List<File> inputs, final File output, final boolean createIndex, final boolean createMd5,
-                                       final File referenceFasta) {
+                                       final File referenceFasta, final int numThreads) {
         final SAMFileHeader header;
         {
             header = SamReaderFactory.makeDefault().referenceSequence(referenceFasta).getFileHeader(inputs.get(0));
         }
 
-        final SAMFileWriter out = new SAMFileWriterFactory().setCreateIndex(createIndex).setCreateMd5File(createMd5).makeSAMOrBAMWriter(header, true, output);
+        final SAMFileWriter out = new SAMFileWriterFactory().setCreateIndex(createIndex).setCreateMd5File(createMd5)
+                .setUseAsyncIo(numThreads > 1).makeSAMOrBAMWriter(header, true, output);
 
-        for (final File f : inputs) {
-            log.info("Gathering " + f.getAbsolutePath());
-            final SamReader in = SamReaderFactory.makeDefault().referenceSequence(referenceFasta).open(f);
-            for (final SAMRecord rec : in) out.addAlignment(rec);
-            CloserUtil.close(in);
+        if (numThreads > 1) {
+            final Deque<SamReader> readers = new ArrayDeque<>(numThreads);
+            final Deque<PrefetchingIterator<SAMRecord>> iterators = new ArrayDeque<>(numThreads);
+            int nextInput = 0;
+            for (final File f : inputs) {
+                while (nextInput < inputs.size() && iterators.size() < numThreads) {
+                    final File next = inputs.get(nextInput++);
+                    final SamReader in = SamReaderFactory.makeDefault().referenceSequence(referenceFasta).open(next);
+                    readers.add(in);
+                    iterators.add(new PrefetchingIterator<>(in.iterator(), PREFETCH_BATCH_SIZE, PREFETCH_BATCHES, "GatherBamFiles-" + next.getName()));
+                }
+
+                log.info("Gathering " + f.getAbsolutePath());
+                final PrefetchingIterator<SAMRecord> iterator = iterators.removeFirst();
+                while (iterator.hasNext()) out.addAlignment(iterator.next());
+                iterator.close();
+                CloserUtil.close(readers.removeFirst());
+            }
+        } else {
+            for (final File f : inputs) {
+                log.info("Gathering " + f.getAbsolutePath());
+                final SamReader in = SamReaderFactory.makeDefault().referenceSequence(referenceFasta).open(f);
+                for (final SAMRecord rec : in) out.addAlignment(rec);
+                CloserUtil.close(in);
+            }
         }
 
         out.close();
@@ -1,16 +1,20 @@
 package org.broadinstitute.hellbender.tools.picard.sam;
 
 import htsjdk.samtools.*;
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.ProgressLogger;
 import org.broadinstitute.hellbender.cmdline.*;
 import org.broadinstitute.hellbender.cmdline.programgroups.ReadProgramGroup;
+import org.broadinstitute.hellbender.utils.iterators.PrefetchingIterator;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Reads a SAM or BAM file and combines the output to one file
@@ -46,11 +50,19 @@ public class MergeSamFiles extends PicardCommandLineProgram {
             "runtime by ~20% when writing out a compressed BAM file.")
     public boolean USE_THREADING = false;
 
+    @Argument(doc = "Option to read, decompress and decode each input file on its own background thread, so that merging " +
+            "many BAM files is not limited by decompressing them one record at a time on a single thread.  Up to " +
+            "MAX_RECORDS_IN_RAM records, split evenly between the inputs, are read ahead of the merge.", optional = true)
+    public boolean PREFETCH_INPUTS = false;
+
     @Argument(doc = "Comment(s) to include in the merged output file's header.", optional = true, shortName = "CO")
     public List<String> COMMENT = new ArrayList<String>();
 
     private static final int PROGRESS_INTERVAL = 1000000;
 
+    /** The number of records handed from each prefetching thread to the merge at a time. */
+    private static final int MAX_PREFETCH_BATCH_SIZE = 1000;
+
     /** Combines multiple SAM/BAM files into one. */
     @Override
     protected Object doWork() {
@@ -100,7 +112,12 @@ public class MergeSamFiles extends PicardCommandLineProgram {
             presorted = false;
         }
         final SamFileHeaderMerger headerMerger = new SamFileHeaderMerger(headerMergerSortOrder, headers, MERGE_SEQUENCE_DICTIONARIES);
-        final MergingSamRecordIterator iterator = new MergingSamRecordIterator(headerMerger, readers, mergingSamRecordIteratorAssumeSorted);
+        final MergingSamRecordIterator iterator;
+        if (PREFETCH_INPUTS) {
+            iterator = new MergingSamRecordIterator(headerMerger, openPrefetchingIterators(readers), mergingSamRecordIteratorAssumeSorted);
+        } else {
+            iterator = new MergingSamRecordIterator(headerMerger, readers, mergingSamRecordIteratorAssumeSorted);
+        }
         final SAMFileHeader header = headerMerger.getMergedHeader();
         for (final String comment : COMMENT) {
             header.addComment(comment);
@@ -121,11 +138,31 @@ public class MergeSamFiles extends PicardCommandLineProgram {
         }
 
         log.info("Finished reading inputs.");
+        iterator.close();
         CloserUtil.close(readers);
         out.close();
         return null;
     }
 
+    /**
+     * Starts reading each input on its own background thread.  The returned map keeps the order of the readers, so that
+     * records are merged exactly as they are without prefetching.
+     */
+    private Map<SamReader, CloseableIterator<SAMRecord>> openPrefetchingIterators(final List<SamReader> readers) {
+        final int recordsPerInput = Math.max(1, MAX_RECORDS_IN_RAM / readers.size());
+        final int batchSize = Math.min(MAX_PREFETCH_BATCH_SIZE, recordsPerInput);
+        final int numBatches = Math.max(1, recordsPerInput / batchSize);
+        log.info("Reading ahead up to " + (batchSize * numBatches) + " records on each of " + readers.size() + " input threads.");
+
+        final Map<SamReader, CloseableIterator<SAMRecord>> iterators = new LinkedHashMap<SamReader, CloseableIterator<SAMRecord>>();
+        for (int i = 0; i < readers.size(); i++) {
+            final SamReader reader = readers.get(i);
+            iterators.put(reader, new PrefetchingIterator<SAMRecord>(reader.iterator(), batchSize, numBatches,
+                    "MergeSamFiles prefetch " + INPUT.get(i).getName()));
+        }
+        return iterators;
+    }
+
     @Override
     protected String[] customCommandLineValidation() {
         if (CREATE_INDEX && SORT_ORDER != SAMFileHeader.SortOrder.coordinate) {
@@ -14,9 +14,12 @@ import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.utils.read.markduplicates.DuplicationMetrics;
 import org.broadinstitute.hellbender.utils.read.markduplicates.AbstractOpticalDuplicateFinderCommandLineProgram;
 import org.broadinstitute.hellbender.utils.read.markduplicates.OpticalDuplicateFinder;
+import org.broadinstitute.hellbender.utils.runtime.RuntimeUtils;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import static java.lang.Math.pow;
 
@@ -85,6 +88,19 @@ public class EstimateLibraryComplexity extends AbstractOpticalDuplicateFinderCom
             "group size would be approximately 10 reads.")
     public int MAX_GROUP_RATIO = 500;
 
+    @Argument(shortName = "NP", doc = "The number of threads used to compare read pairs for duplicates. Groups of " +
+            "read pairs sharing the same prefix are independent of one another and are processed in parallel, " +
+            "giving the same metrics as a single thread. " +
+            RuntimeUtils.NUM_PROCESSORS_DOC,
+            optional = true)
+    public int NUM_PROCESSORS = 1;
+
+    /** The number of read pairs handed to the processing threads at a time, which bounds the extra memory needed. */
+    private static final int READ_PAIRS_PER_BATCH = 100000;
+
+    /** Batches are split into sub-tasks until they hold no more than this many read pairs. */
+    private static final int READ_PAIRS_PER_TASK = 1000;
+
     private final Log log = Log.getInstance(EstimateLibraryComplexity.class);
 
     /**
@@ -100,6 +116,11 @@ public class EstimateLibraryComplexity extends AbstractOpticalDuplicateFinderCom
         byte[] read2;
         short libraryId;
 
+        // 2-bit packed copies of the reads, or null if a read contains a base other than A, C, G or T.
+        // These are not written out by the codec, and are filled in just before the reads are compared.
+        long[] packedRead1;
+        long[] packedRead2;
+
         public short getReadGroup() { return this.readGroup; }
 
         public void setReadGroup(final short readGroup) { this.readGroup = readGroup; }
@@ -292,80 +313,62 @@ public class EstimateLibraryComplexity extends AbstractOpticalDuplicateFinderCom
         // Now go through the sorted reads and attempt to find duplicates
         final PeekableIterator<PairedReadSequence> iterator = new PeekableIterator<PairedReadSequence>(sorter.iterator());
 
-        final Map<String, Histogram<Integer>> duplicationHistosByLibrary = new HashMap<String, Histogram<Integer>>();
-        final Map<String, Histogram<Integer>> opticalHistosByLibrary = new HashMap<String, Histogram<Integer>>();
+        final LibraryHistograms histograms = new LibraryHistograms();
 
         int groupsProcessed = 0;
         long lastLogTime = System.currentTimeMillis();
         final int meanGroupSize = Math.max(1, (recordsRead / 2) / (int) pow(4, MIN_IDENTICAL_BASES * 2));
 
-        while (iterator.hasNext()) {
-            // Get the next group and split it apart by library
-            final List<PairedReadSequence> group = getNextGroup(iterator);
-
-            if (group.size() > meanGroupSize * MAX_GROUP_RATIO) {
-                final PairedReadSequence prs = group.get(0);
-                log.warn("Omitting group with over " + MAX_GROUP_RATIO + " times the expected mean number of read pairs. " +
-                        "Mean=" + meanGroupSize + ", Actual=" + group.size() + ". Prefixes: " +
-                        StringUtil.bytesToString(prs.read1, 0, MIN_IDENTICAL_BASES) +
-                        " / " +
-                        StringUtil.bytesToString(prs.read1, 0, MIN_IDENTICAL_BASES));
-            } else {
-                final Map<String, List<PairedReadSequence>> sequencesByLibrary = splitByLibrary(group, readGroups);
-
-                // Now process the reads by library
-                for (final Map.Entry<String, List<PairedReadSequence>> entry : sequencesByLibrary.entrySet()) {
-                    final String library = entry.getKey();
-                    final List<PairedReadSequence> seqs = entry.getValue();
-
-                    Histogram<Integer> duplicationHisto = duplicationHistosByLibrary.get(library);
-                    Histogram<Integer> opticalHisto = opticalHistosByLibrary.get(library);
-                    if (duplicationHisto == null) {
-                        duplicationHisto = new Histogram<Integer>("duplication_group_count", library);
-                        opticalHisto = new Histogram<Integer>("duplication_group_count", "optical_duplicates");
-                        duplicationHistosByLibrary.put(library, duplicationHisto);
-                        opticalHistosByLibrary.put(library, opticalHisto);
-                    }
-
-                    // Figure out if any reads within this group are duplicates of one another
-                    for (int i = 0; i < seqs.size(); ++i) {
-                        final PairedReadSequence lhs = seqs.get(i);
-                        if (lhs == null) continue;
-                        final List<PairedReadSequence> dupes = new ArrayList<PairedReadSequence>();
-
-                        for (int j = i + 1; j < seqs.size(); ++j) {
-                            final PairedReadSequence rhs = seqs.get(j);
-                            if (rhs == null) continue;
-
-                            if (matches(lhs, rhs, MAX_DIFF_RATE)) {
-                                dupes.add(rhs);
-                                seqs.set(j, null);
-                            }
+        final int numProcessors = RuntimeUtils.getNumProcessors(NUM_PROCESSORS);
+        final ForkJoinPool pool = numProcessors > 1 ? new ForkJoinPool(numProcessors) : null;
+        log.info("Comparing read pairs with " + numProcessors + " thread(s).");
+
+        final List<List<PairedReadSequence>> batch = new ArrayList<List<PairedReadSequence>>();
+        int readPairsInBatch = 0;
+
+        try {
+            while (iterator.hasNext()) {
+                // Get the next group and split it apart by library
+                final List<PairedReadSequence> group = getNextGroup(iterator);
+
+                if (group.size() > meanGroupSize * MAX_GROUP_RATIO) {
+                    final PairedReadSequence prs = group.get(0);
+                    log.warn("Omitting group with over " + MAX_GROUP_RATIO + " times the expected mean number of read pairs. " +
+                            "Mean=" + meanGroupSize + ", Actual=" + group.size() + ". Prefixes: " +
+                            StringUtil.bytesToString(prs.read1, 0, MIN_IDENTICAL_BASES) +
+                            " / " +
+                            StringUtil.bytesToString(prs.read1, 0, MIN_IDENTICAL_BASES));
+                } else {
+                    if (pool == null) {
+                        processGroup(group, readGroups, histograms);
+                    } else {
+                        batch.add(group);
+                        readPairsInBatch += group.size();
+                        if (readPairsInBatch >= READ_PAIRS_PER_BATCH) {
+                            histograms.merge(pool.invoke(new GroupProcessingTask(batch, 0, batch.size(), readGroups)));
+                            batch.clear();
+                            readPairsInBatch = 0;
                         }
+                    }
 
-                        if (dupes.size() > 0) {
-                            dupes.add(lhs);
-                            final int duplicateCount = dupes.size();
-                            duplicationHisto.increment(duplicateCount);
-
-                            final boolean[] flags = opticalDuplicateFinder.findOpticalDuplicates(dupes);
-                            for (final boolean b : flags) {
-                                if (b) opticalHisto.increment(duplicateCount);
-                            }
-                        } else {
-                            duplicationHisto.increment(1);
-                        }
+                    ++groupsProcessed;
+                    if (lastLogTime < System.currentTimeMillis() - 60000) {
+                        log.info("Processed " + groupsProcessed + " groups.");
+                        lastLogTime = System.currentTimeMillis();
                     }
                 }
+            }
 
-                ++groupsProcessed;
-                if (lastLogTime < System.currentTimeMillis() - 60000) {
-                    log.info("Processed " + groupsProcessed + " groups.");
-                    lastLogTime = System.currentTimeMillis();
-                }
+            if (!batch.isEmpty()) {
+                histograms.merge(pool.invoke(new GroupProcessingTask(batch, 0, batch.size(), readGroups)));
             }
+        } finally {
+            if (pool != null) pool.shutdownNow();
         }
 
+        final Map<String, Histogram<Integer>> duplicationHistosByLibrary = histograms.duplicationHistosByLibrary;
+        final Map<String, Histogram<Integer>> opticalHistosByLibrary = histograms.opticalHistosByLibrary;
+
         iterator.close();
         sorter.cleanup();
 
@@ -399,6 +402,130 @@ public class EstimateLibraryComplexity extends AbstractOpticalDuplicateFinderCom
         return null;
     }
 
+    /**
+     * Duplication and optical duplication histograms, keyed by library.  Groups of read pairs are independent
+     * of one another, so the histograms of groups processed separately can simply be added together.
+     */
+    static class LibraryHistograms {
+        final Map<String, Histogram<Integer>> duplicationHistosByLibrary = new HashMap<String, Histogram<Integer>>();
+        final Map<String, Histogram<Integer>> opticalHistosByLibrary = new HashMap<String, Histogram<Integer>>();
+
+        Histogram<Integer> getDuplicationHisto(final String library) {
+            Histogram<Integer> duplicationHisto = duplicationHistosByLibrary.get(library);
+            if (duplicationHisto == null) {
+                duplicationHisto = new Histogram<Integer>("duplication_group_count", library);
+                duplicationHistosByLibrary.put(library, duplicationHisto);
+                opticalHistosByLibrary.put(library, new Histogram<Integer>("duplication_group_count", "optical_duplicates"));
+            }
+            return duplicationHisto;
+        }
+
+        Histogram<Integer> getOpticalHisto(final String library) {
+            getDuplicationHisto(library);
+            return opticalHistosByLibrary.get(library);
+        }
+
+        void merge(final LibraryHistograms other) {
+            for (final String library : other.duplicationHistosByLibrary.keySet()) {
+                getDuplicationHisto(library).addHistogram(other.duplicationHistosByLibrary.get(library));
+                getOpticalHisto(library).addHistogram(other.opticalHistosByLibrary.get(library));
+            }
+        }
+    }
+
+    /**
+     * Fork-join task that finds the duplicates within a range of groups, splitting the range in half until
+     * each task has only a small number of read pairs to compare.
+     */
+    private class GroupProcessingTask extends RecursiveTask<LibraryHistograms> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<PairedReadSequence>> groups;
+        private final int start;
+        private final int end;
+        private final List<SAMReadGroupRecord> readGroups;
+
+        GroupProcessingTask(final List<List<PairedReadSequence>> groups, final int start, final int end,
+                            final List<SAMReadGroupRecord> readGroups) {
+            this.groups = groups;
+            this.start = start;
+            this.end = end;
+            this.readGroups = readGroups;
+        }
+
+        @Override
+        protected LibraryHistograms compute() {
+            int readPairs = 0;
+            for (int i = start; i < end; ++i) readPairs += groups.get(i).size();
+
+            if (end - start > 1 && readPairs > READ_PAIRS_PER_TASK) {
+                final int middle = (start + end) >>> 1;
+                final GroupProcessingTask left = new GroupProcessingTask(groups, start, middle, readGroups);
+                left.fork();
+                final LibraryHistograms histograms = new GroupProcessingTask(groups, middle, end, readGroups).compute();
+                histograms.merge(left.join());
+                return histograms;
+            } else {
+                final LibraryHistograms histograms = new LibraryHistograms();
+                for (int i = start; i < end; ++i) processGroup(groups.get(i), readGroups, histograms);
+                return histograms;
+            }
+        }
+    }
+
+    /**
+     * Finds the duplicates within a group of read pairs sharing the same prefix and records them, by library,
+     * in the given histograms.
+     */
+    void processGroup(final List<PairedReadSequence> group, final List<SAMReadGroupRecord> readGroups,
+                      final LibraryHistograms histograms) {
+        final Map<String, List<PairedReadSequence>> sequencesByLibrary = splitByLibrary(group, readGroups);
+
+        // Now process the reads by library
+        for (final Map.Entry<String, List<PairedReadSequence>> entry : sequencesByLibrary.entrySet()) {
+            final String library = entry.getKey();
+            final List<PairedReadSequence> seqs = entry.getValue();
+
+            final Histogram<Integer> duplicationHisto = histograms.getDuplicationHisto(library);
+            final Histogram<Integer> opticalHisto = histograms.getOpticalHisto(library);
+
+            for (final PairedReadSequence seq : seqs) {
+                seq.packedRead1 = packBases(seq.read1);
+                seq.packedRead2 = packBases(seq.read2);
+            }
+
+            // Figure out if any reads within this group are duplicates of one another
+            for (int i = 0; i < seqs.size(); ++i) {
+                final PairedReadSequence lhs = seqs.get(i);
+                if (lhs == null) continue;
+                final List<PairedReadSequence> dupes = new ArrayList<PairedReadSequence>();
+
+                for (int j = i + 1; j < seqs.size(); ++j) {
+                    final PairedReadSequence rhs = seqs.get(j);
+                    if (rhs == null) continue;
+
+                    if (matches(lhs, rhs, MAX_DIFF_RATE)) {
+                        dupes.add(rhs);
+                        seqs.set(j, null);
+                    }
+                }
+
+                if (dupes.size() > 0) {
+                    dupes.add(lhs);
+                    final int duplicateCount = dupes.size();
+                    duplicationHisto.increment(duplicateCount);
+
+                    final boolean[] flags = opticalDuplicateFinder.findOpticalDuplicates(dupes);
+                    for (final boolean b : flags) {
+                        if (b) opticalHisto.increment(duplicateCount);
+                    }
+                } else {
+                    duplicationHisto.increment(1);
+                }
+            }
+        }
+    }
+
     /**
      * Checks to see if two reads pairs have sequence that are the same, give or take a few
      * errors/diffs as dictated by the maxDiffRate.
@@ -407,6 +534,15 @@ public class EstimateLibraryComplexity extends AbstractOpticalDuplicateFinderCom
         final int read1Length = Math.min(lhs.read1.length, rhs.read1.length);
         final int read2Length = Math.min(lhs.read2.length, rhs.read2.length);
         final int maxErrors = (int) Math.floor((read1Length + read2Length) * maxDiffRate);
+
+        // Compare 32 bases at a time when both reads of both pairs could be packed
+        if (lhs.packedRead1 != null && lhs.packedRead2 != null && rhs.packedRead1 != null && rhs.packedRead2 != null) {
+            int errors = countMismatches(lhs.packedRead1, rhs.packedRead1, MIN_IDENTICAL_BASES, read1Length);
+            if (errors > maxErrors) return false;
+            errors += countMismatches(lhs.packedRead2, rhs.packedRead2, MIN_IDENTICAL_BASES, read2Length);
+            return errors <= maxErrors;
+        }
+
         int errors = 0;
 
         // The loop can start from MIN_IDENTICAL_BASES because we've already confirmed that
@@ -426,6 +562,50 @@ public class EstimateLibraryComplexity extends AbstractOpticalDuplicateFinderCom
         return true;
     }
 
+    /** The low bit of each 2-bit base in a packed word. */
+    private static final long LOW_BITS_OF_BASES = 0x5555555555555555L;
+
+    /**
+     * Packs the bases of a read two bits per base, 32 bases per long, with base i stored in bits 2*(i%32) and
+     * 2*(i%32)+1 of word i/32.  Returns null if the read contains anything other than upper case A, C, G or T,
+     * in which case the read must be compared base by base.
+     */
+    static long[] packBases(final byte[] bases) {
+        final long[] packed = new long[(bases.length + 31) >>> 5];
+        for (int i = 0; i < bases.length; ++i) {
+            final long code;
+            switch (bases[i]) {
+                case 'A': code = 0; break;
+                case 'C': code = 1; break;
+                case 'G': code = 2; break;
+                case 'T': code = 3; break;
+                default: return null;
+            }
+            packed[i >>> 5] |= code << ((i & 31) << 1);
+        }
+        return packed;
+    }
+
+    /**
+     * Counts the bases in [start, end) that differ between two reads packed by {@link #packBases(byte[])}, by
+     * folding each 2-bit lane of the XOR of the words onto its low bit and counting the bits that are set.
+     */
+    static int countMismatches(final long[] lhs, final long[] rhs, final int start, final int end) {
+        int mismatches = 0;
+        for (int word = start >>> 5; start < end && word <= (end - 1) >>> 5; ++word) {
+            final long diff = lhs[word] ^ rhs[word];
+            long lanes = (diff | (diff >>> 1)) & LOW_BITS_OF_BASES;
+
+            final int firstBase = Math.max(start - (word << 5), 0);
+            final int lastBase = Math.min(end - (word << 5), 32);
+            lanes &= -1L << (firstBase << 1);
+            if (lastBase < 32) lanes &= (1L << (lastBase << 1)) - 1;
+
+            mismatches += Long.bitCount(lanes);
+        }
+        return mismatches;
+    }
+
     /**
      * Pulls out of the iterator the next group of reads that can be compared to each other to
      * identify duplicates.
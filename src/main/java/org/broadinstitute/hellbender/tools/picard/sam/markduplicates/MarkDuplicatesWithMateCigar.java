@@ -50,6 +50,11 @@ public class MarkDuplicatesWithMateCigar extends AbstractMarkDuplicatesCommandLi
     @Argument(doc = "The block size for use in the coordinate-sorted record buffer.", optional = true)
     public int BLOCK_SIZE = 100000;
 
+    @Argument(doc = "The maximum number of records waiting for duplicate marking to keep in memory.  Beyond this, only the " +
+            "fields needed for duplicate marking are kept for the oldest waiting records, and the records themselves are " +
+            "left to the coordinate-sorted record buffer, which spills to disk according to MAX_RECORDS_IN_RAM.", optional = true)
+    public int MAX_RECORDS_IN_MARK_QUEUE = 500000;
+
     /** Warnings that will only be emitted once */
     private boolean warnedNullProgramRecords = false;
     private boolean warnedMissingProgramRecords = false;
@@ -92,6 +97,7 @@ public class MarkDuplicatesWithMateCigar extends AbstractMarkDuplicatesCommandLi
                 this.REMOVE_DUPLICATES,
                 this.SKIP_PAIRS_WITH_NO_MATE_CIGAR,
                 this.MAX_RECORDS_IN_RAM,
+                this.MAX_RECORDS_IN_MARK_QUEUE,
                 this.BLOCK_SIZE,
                 this.TMP_DIR);
 
@@ -124,6 +130,9 @@ public class MarkDuplicatesWithMateCigar extends AbstractMarkDuplicatesCommandLi
         log.info("Found " + iterator.getNumRecordsWithNoMateCigar() + " records with no mate cigar optional tag.");
         log.info("Marking " + iterator.getNumDuplicates() + " records as duplicates.");
         log.info("Found " + ((long) opticalDupesByLibraryId.getSumOfValues()) + " optical duplicate clusters."); // cast as long due to returning a double
+        log.info("At most " + iterator.getMaxMarkQueueSize() + " records were waiting for duplicate marking at once; " +
+                iterator.getNumRecordsReleasedFromMarkQueue() + " waiting records were released from memory.");
+        log.info(String.format("Processed %.1f records per second.", iterator.getRecordsPerSecond()));
 
         // Write out the metrics
         finalizeAndWriteMetrics(iterator.getLibraryIdGenerator());
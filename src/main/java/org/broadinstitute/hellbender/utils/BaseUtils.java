@@ -213,6 +213,51 @@ public class BaseUtils {
         return rcbases;
     }
 
+    /**
+     * The largest number of bases that {@link #packBases} can pack into an int.
+     */
+    public static final int MAX_PACKED_BASES = 15;
+
+    /**
+     * Packs a run of simple bases into an int, two bits per base as given by {@link #simpleBaseToBaseIndex}, with the
+     * first base in the most significant position.  Runs of the same length pack into distinct values in [0, 4^length),
+     * so the packed value can index a flat table directly.
+     *
+     * @param bases the byte array holding the bases [AaCcGgTt]
+     * @param start the index of the first base to pack
+     * @param length the number of bases to pack, at most {@link #MAX_PACKED_BASES}
+     * @return the packed bases, or -1 if any of them can't be understood
+     */
+    static public int packBases(final byte[] bases, final int start, final int length) {
+        if ( length < 0 || length > MAX_PACKED_BASES )
+            throw new IllegalArgumentException("Cannot pack " + length + " bases into an int");
+        int packed = 0;
+        for (int i = start; i < start + length; i++) {
+            final int baseIndex = simpleBaseToBaseIndex(bases[i]);
+            if ( baseIndex == -1 )
+                return -1;
+            packed = (packed << 2) | baseIndex;
+        }
+        return packed;
+    }
+
+    /**
+     * Reverse complements bases packed by {@link #packBases}.
+     *
+     * @param packed the packed bases
+     * @param length the number of packed bases
+     * @return the packed reverse complement of the bases
+     */
+    static public int reverseComplementPackedBases(final int packed, final int length) {
+        int remaining = packed;
+        int rcpacked = 0;
+        for (int i = 0; i < length; i++) {
+            rcpacked = (rcpacked << 2) | (3 - (remaining & 3));
+            remaining >>>= 2;
+        }
+        return rcpacked;
+    }
+
     // --------------------------------------------------------------------------------
     //
     // random bases
@@ -0,0 +1,227 @@
+package org.broadinstitute.hellbender.utils.fasta;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.reference.ReferenceSequenceFileWalker;
+import htsjdk.samtools.util.CloserUtil;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+import org.broadinstitute.hellbender.exceptions.UserException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Hands out the sequences of a reference by index, like htsjdk's {@link ReferenceSequenceFileWalker}, while the
+ * sequence after the one last handed out is read on a background thread.  Programs that walk the reference in order,
+ * such as the metrics programs that follow coordinate sorted reads, then rarely wait for the next contig to be read.
+ * <p/>
+ * When the fasta has an index the bases are copied straight out of a memory map of the file, a line at a time, and
+ * sequences may be requested in any order.  Otherwise the sequences are read in order by a
+ * {@link ReferenceSequenceFileWalker}, without reading ahead.
+ * <p/>
+ * Every request for the sequence last handed out returns the same {@link ReferenceSequence}, so one walker can be
+ * shared by any number of consumers without copying the bases, as long as none of them modifies them.  At most two
+ * sequences are held at a time: the one last handed out and the one being read ahead.
+ */
+public final class PrefetchingReferenceWalker implements Closeable {
+
+    /** The largest region of the fasta that is mapped at once. */
+    private static final long MAX_MAP_SIZE = 1L << 30;
+
+    private final File reference;
+    private final ReferenceSequenceFile referenceFile;
+
+    // Only used when the fasta is not indexed
+    private final ReferenceSequenceFileWalker sequentialWalker;
+
+    // Only used when the fasta is indexed
+    private final List<IndexEntry> indexEntries;
+    private final FileChannel channel;
+    private final ExecutorService prefetcher;
+
+    private ReferenceSequence current = null;
+    private Future<ReferenceSequence> prefetched = null;
+    private int prefetchedIndex = -1;
+
+    public PrefetchingReferenceWalker(final File reference) {
+        this.reference = reference;
+        this.referenceFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(reference);
+
+        final File index = new File(reference.getPath() + ".fai");
+        if (!referenceFile.isIndexed() || !index.isFile()) {
+            this.sequentialWalker = new ReferenceSequenceFileWalker(referenceFile);
+            this.indexEntries = null;
+            this.channel = null;
+            this.prefetcher = null;
+            return;
+        }
+
+        this.sequentialWalker = null;
+        this.indexEntries = readIndex(index);
+        try {
+            this.channel = FileChannel.open(reference.toPath(), StandardOpenOption.READ);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(reference, e);
+        }
+        this.prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "PrefetchingReferenceWalker-" + reference.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the sequence with the given index, and starts reading the one after it.
+     */
+    public ReferenceSequence get(final int sequenceIndex) {
+        if (sequentialWalker != null) {
+            return sequentialWalker.get(sequenceIndex);
+        }
+        if (current != null && current.getContigIndex() == sequenceIndex) {
+            return current;
+        }
+        if (sequenceIndex < 0 || sequenceIndex >= indexEntries.size()) {
+            throw new GATKException("Reference sequence " + sequenceIndex + " not found in " + reference.getAbsolutePath());
+        }
+
+        // drop the current sequence before reading the next, so that no more than two are ever held
+        current = null;
+        if (prefetched != null && prefetchedIndex == sequenceIndex) {
+            current = waitFor(prefetched);
+        } else {
+            if (prefetched != null) prefetched.cancel(false);
+            current = read(sequenceIndex);
+        }
+
+        prefetched = null;
+        prefetchedIndex = sequenceIndex + 1;
+        if (prefetchedIndex < indexEntries.size()) {
+            final int nextIndex = prefetchedIndex;
+            prefetched = prefetcher.submit(() -> read(nextIndex));
+        }
+        return current;
+    }
+
+    /**
+     * Returns the sequence with the given index, checking that it has the expected name and length.
+     */
+    public ReferenceSequence get(final int sequenceIndex, final String sequenceName, final int length) {
+        final ReferenceSequence sequence = get(sequenceIndex);
+        if (!sequence.getName().equals(sequenceName) || sequence.length() != length) {
+            throw new UserException.MalformedFile(reference, "Reference sequence " + sequenceIndex + " is " +
+                    sequence.getName() + " of length " + sequence.length() + ", not " + sequenceName + " of length " + length);
+        }
+        return sequence;
+    }
+
+    public SAMSequenceDictionary getSequenceDictionary() {
+        return referenceFile.getSequenceDictionary();
+    }
+
+    @Override
+    public void close() {
+        if (prefetcher != null) {
+            prefetcher.shutdownNow();
+        }
+        CloserUtil.close(channel);
+        CloserUtil.close(sequentialWalker);
+        CloserUtil.close(referenceFile);
+        current = null;
+        prefetched = null;
+    }
+
+    private ReferenceSequence waitFor(final Future<ReferenceSequence> sequence) {
+        try {
+            return sequence.get();
+        } catch (final InterruptedException e) {
+            throw new GATKException("Interrupted while reading ahead in " + reference.getAbsolutePath(), e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new GATKException("Error while reading ahead in " + reference.getAbsolutePath() + ": " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Reads the bases of a sequence out of memory maps of the fasta, skipping the line terminators.
+     */
+    private ReferenceSequence read(final int sequenceIndex) {
+        final IndexEntry entry = indexEntries.get(sequenceIndex);
+        final byte[] bases = new byte[entry.length];
+        try {
+            int copied = 0;
+            while (copied < bases.length) {
+                final long linesPerMap = Math.max(1, MAX_MAP_SIZE / entry.bytesPerLine);
+                final long firstLine = copied / entry.basesPerLine;
+                final int basesInMap = (int) Math.min(bases.length - copied, linesPerMap * entry.basesPerLine);
+                final long mapStart = entry.offset + firstLine * entry.bytesPerLine;
+                final long mapSize = (basesInMap - 1) / entry.basesPerLine * (long) entry.bytesPerLine + (basesInMap - 1) % entry.basesPerLine + 1;
+                if (mapStart + mapSize > channel.size()) {
+                    throw new UserException.MalformedFile(reference, "Sequence " + entry.name + " extends past the end of the file, " +
+                            "so its index is out of date");
+                }
+
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapSize);
+                for (int inMap = 0; inMap < basesInMap; inMap += entry.basesPerLine) {
+                    buffer.position(inMap / entry.basesPerLine * entry.bytesPerLine);
+                    buffer.get(bases, copied + inMap, Math.min(entry.basesPerLine, basesInMap - inMap));
+                }
+                copied += basesInMap;
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(reference, e);
+        }
+        return new ReferenceSequence(entry.name, sequenceIndex, bases);
+    }
+
+    private static List<IndexEntry> readIndex(final File index) {
+        final List<IndexEntry> entries = new ArrayList<>();
+        try {
+            for (final String line : Files.readAllLines(index.toPath())) {
+                if (line.isEmpty()) continue;
+                final String[] fields = line.split("\t");
+                if (fields.length < 5) {
+                    throw new UserException.MalformedFile(index, "Expected 5 tab separated fields but found " + fields.length + ": " + line);
+                }
+                try {
+                    entries.add(new IndexEntry(fields[0], Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+                            Integer.parseInt(fields[3]), Integer.parseInt(fields[4])));
+                } catch (final NumberFormatException e) {
+                    throw new UserException.MalformedFile(index, "Malformed line: " + line, e);
+                }
+            }
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(index, e);
+        }
+        return entries;
+    }
+
+    /** A line of a fasta index. */
+    private static final class IndexEntry {
+        final String name;
+        final int length;
+        final long offset;
+        final int basesPerLine;
+        final int bytesPerLine;
+
+        IndexEntry(final String name, final int length, final long offset, final int basesPerLine, final int bytesPerLine) {
+            this.name = name;
+            this.length = length;
+            this.offset = offset;
+            this.basesPerLine = basesPerLine;
+            this.bytesPerLine = bytesPerLine;
+        }
+    }
+}
@@ -123,15 +123,24 @@ public class Gene extends Interval implements Iterable<Gene.Transcript> {
         }
 
         /**
+         * Adds one to the coverage of each base of the transcript from genomeStart up to, but not including, genomeEnd.
+         * Walks the exons once rather than looking up the transcript coordinate of every base, so the exons must be
+         * in order and not overlap, as they are in a refFlat file.
          *
-         * @param genomeStart
-         * @param genomeEnd
-         * @param coverage
+         * @param genomeStart 1-based genomic coordinate of the first base to count
+         * @param genomeEnd 1-based genomic coordinate just past the last base to count
+         * @param coverage the coverage of each base of the transcript, in transcript coordinates
          */
         public void addCoverageCounts(final int genomeStart, final int genomeEnd, final int[] coverage) {
-            for (int i=genomeStart; i<genomeEnd; ++i) {
-                final int txBase = getTranscriptCoordinate(i);
-                if (txBase > 0) coverage[txBase-1]++;
+            int exonOffset = 0;
+            for (final Exon e : exons) {
+                if (e.start >= genomeEnd) break;
+                final int first = Math.max(e.start, genomeStart);
+                final int last = Math.min(e.end, genomeEnd - 1);
+                for (int i = first; i <= last; ++i) {
+                    coverage[exonOffset + i - e.start]++;
+                }
+                exonOffset += CoordMath.getLength(e.start, e.end);
             }
         }
 
@@ -0,0 +1,166 @@
+package org.broadinstitute.hellbender.utils.gene;
+
+import java.util.*;
+
+/**
+ * The {@link LocusFunction} of every locus of a set of genes, flattened into runs of loci with the same function.
+ * The function of a locus is the strongest it has in any transcript: CODING or UTR in an exon, INTRONIC elsewhere
+ * between the transcription start and end, and INTERGENIC outside all transcripts, just as
+ * {@link Gene.Transcript#assignLocusFunctionForRange} would assign it over all the transcripts overlapping the locus.
+ * <p/>
+ * The runs of each contig are held in a pair of sorted primitive arrays, so finding the functions of a range of loci
+ * is a binary search followed by a walk over the runs it spans, however many transcripts overlap it.
+ */
+public final class LocusFunctionIndex {
+
+    private static final LocusFunction[] FUNCTIONS = LocusFunction.values();
+
+    private final Map<String, Runs> runsByContig = new HashMap<>();
+
+    /**
+     * Flattens the transcripts of the given genes.
+     */
+    public LocusFunctionIndex(final Collection<Gene> genes) {
+        final Map<String, List<Segment>> segmentsByContig = new HashMap<>();
+        for (final Gene gene : genes) {
+            List<Segment> segments = segmentsByContig.get(gene.getContig());
+            if (segments == null) {
+                segments = new ArrayList<>();
+                segmentsByContig.put(gene.getContig(), segments);
+            }
+            for (final Gene.Transcript transcript : gene) {
+                addSegments(transcript, segments);
+            }
+        }
+        for (final Map.Entry<String, List<Segment>> entry : segmentsByContig.entrySet()) {
+            runsByContig.put(entry.getKey(), flatten(entry.getValue()));
+        }
+    }
+
+    /**
+     * Adds the number of loci from start to end, inclusive, that have each function to counts, indexed by the
+     * ordinal of the {@link LocusFunction}.
+     */
+    public void addFunctionCounts(final String contig, final int start, final int end, final long[] counts) {
+        final Runs runs = runsByContig.get(contig);
+        if (runs == null) {
+            counts[LocusFunction.INTERGENIC.ordinal()] += end - start + 1;
+            return;
+        }
+
+        // the last run starting at or before start, or -1 if start precedes all of them
+        int run = Arrays.binarySearch(runs.starts, start);
+        if (run < 0) run = -run - 2;
+
+        int locus = start;
+        while (locus <= end) {
+            final int runEnd = run + 1 < runs.starts.length ? runs.starts[run + 1] - 1 : Integer.MAX_VALUE;
+            final int function = run < 0 ? LocusFunction.INTERGENIC.ordinal() : runs.functions[run];
+            final int last = Math.min(end, runEnd);
+            counts[function] += last - locus + 1;
+            locus = last + 1;
+            ++run;
+        }
+    }
+
+    /**
+     * Returns the function of a single locus.
+     */
+    public LocusFunction getFunction(final String contig, final int locus) {
+        final Runs runs = runsByContig.get(contig);
+        if (runs == null) return LocusFunction.INTERGENIC;
+        final int run = Arrays.binarySearch(runs.starts, locus);
+        final int containing = run < 0 ? -run - 2 : run;
+        return containing < 0 ? LocusFunction.INTERGENIC : FUNCTIONS[runs.functions[containing]];
+    }
+
+    /** Breaks a transcript into the stretches of loci it gives each function. */
+    private static void addSegments(final Gene.Transcript transcript, final List<Segment> segments) {
+        final int txStart = transcript.transcriptionStart;
+        final int txEnd = transcript.transcriptionEnd;
+        if (txStart > txEnd) return;
+        segments.add(new Segment(txStart, txEnd, LocusFunction.INTRONIC));
+        for (final Gene.Transcript.Exon exon : transcript.exons) {
+            final int exonStart = Math.max(exon.start, txStart);
+            final int exonEnd = Math.min(exon.end, txEnd);
+            if (exonStart > exonEnd) continue;
+            segments.add(new Segment(exonStart, exonEnd, LocusFunction.UTR));
+            final int codingStart = Math.max(exonStart, transcript.codingStart);
+            final int codingEnd = Math.min(exonEnd, transcript.codingEnd);
+            if (codingStart <= codingEnd) {
+                segments.add(new Segment(codingStart, codingEnd, LocusFunction.CODING));
+            }
+        }
+    }
+
+    /**
+     * Sweeps over the starts and ends of the segments of a contig, keeping a count of the open segments of each
+     * function, and starts a new run wherever the strongest function with an open segment changes.
+     */
+    private static Runs flatten(final List<Segment> segments) {
+        // each event is a locus and a function, opening a segment at the locus or closing one just before it
+        final long[] events = new long[segments.size() * 2];
+        int i = 0;
+        for (final Segment segment : segments) {
+            events[i++] = encodeEvent(segment.start, segment.function, true);
+            events[i++] = encodeEvent(segment.end + 1, segment.function, false);
+        }
+        Arrays.sort(events);
+
+        final int[] open = new int[FUNCTIONS.length];
+        final int[] starts = new int[events.length];
+        final byte[] functions = new byte[events.length];
+        int numRuns = 0;
+        int current = LocusFunction.INTERGENIC.ordinal();
+        for (int e = 0; e < events.length; ) {
+            final int locus = (int) (events[e] >>> 32);
+            // apply every event at this locus before deciding the function from it on
+            for (; e < events.length && (int) (events[e] >>> 32) == locus; ++e) {
+                final int function = (int) (events[e] >>> 1) & 0xff;
+                open[function] += (events[e] & 1) == 1 ? 1 : -1;
+            }
+            int strongest = LocusFunction.INTERGENIC.ordinal();
+            for (int f = open.length - 1; f > strongest; --f) {
+                if (open[f] > 0) {
+                    strongest = f;
+                    break;
+                }
+            }
+            if (strongest != current) {
+                starts[numRuns] = locus;
+                functions[numRuns] = (byte) strongest;
+                ++numRuns;
+                current = strongest;
+            }
+        }
+        return new Runs(Arrays.copyOf(starts, numRuns), Arrays.copyOf(functions, numRuns));
+    }
+
+    private static long encodeEvent(final int locus, final LocusFunction function, final boolean opening) {
+        return ((long) locus << 32) | ((long) function.ordinal() << 1) | (opening ? 1 : 0);
+    }
+
+    /** A stretch of loci that a transcript gives the same function. */
+    private static final class Segment {
+        final int start;
+        final int end;
+        final LocusFunction function;
+
+        Segment(final int start, final int end, final LocusFunction function) {
+            this.start = start;
+            this.end = end;
+            this.function = function;
+        }
+    }
+
+    /** The runs of a contig: run i has functions[i] from starts[i] up to the start of the next run. */
+    private static final class Runs {
+        final int[] starts;
+        final byte[] functions;
+
+        Runs(final int[] starts, final byte[] functions) {
+            this.starts = starts;
+            this.functions = functions;
+        }
+    }
+}
@@ -14,6 +14,8 @@ import java.util.concurrent.atomic.AtomicReference;
  * - Adapter sequences are truncated, and then any adapter pairs that become identical after truncation are collapsed into a single pair.
  * - After a specified number of reads with adapter sequence has been seen, prune the list of adapter pairs to include only the most
  *   frequently seen adapters.  For a flowcell, there should only be a single adapter pair found.
+ * In addition, the k-mers of each truncated adapter sequence are indexed, so that it is only compared to a read where
+ * it could match (see AdapterSeedIndex).
  *
  * Note that the AdapterPair object returned by all the adapterTrim* methods will not be one of the original AdapterPairs
  * passed to the ctor, but rather will be one of the truncated copies.
@@ -251,10 +253,14 @@ public class AdapterMarker {
         }
     }
 
-    private static class TruncatedAdapterPair implements AdapterPair {
+    /**
+     * A truncated AdapterPair, with the seeds used by ClippingUtil to find its sequences in reads.
+     */
+    static class TruncatedAdapterPair implements AdapterPair {
         String name;
         final String fivePrime, threePrime, fivePrimeReadOrder;
         final byte[]  fivePrimeBytes, threePrimeBytes, fivePrimeReadOrderBytes;
+        final AdapterSeedIndex threePrimeSeedIndex, fivePrimeReadOrderSeedIndex;
 
         private TruncatedAdapterPair(final String name, final String threePrimeReadOrder, final String fivePrimeReadOrder) {
             this.name = name;
@@ -264,6 +270,8 @@ public class AdapterMarker {
             this.fivePrimeReadOrderBytes = StringUtil.stringToBytes(fivePrimeReadOrder);
             this.fivePrime = SequenceUtil.reverseComplement(fivePrimeReadOrder);
             this.fivePrimeBytes = StringUtil.stringToBytes(this.fivePrime);
+            this.threePrimeSeedIndex = new AdapterSeedIndex(threePrimeBytes);
+            this.fivePrimeReadOrderSeedIndex = new AdapterSeedIndex(fivePrimeReadOrderBytes);
         }
 
         public String get3PrimeAdapter(){ return threePrime; }
@@ -274,6 +282,8 @@ public class AdapterMarker {
         public byte[] get5PrimeAdapterBytes() { return fivePrimeBytes; }
         public byte[] get3PrimeAdapterBytesInReadOrder() { return threePrimeBytes; }
         public byte[] get5PrimeAdapterBytesInReadOrder()  { return fivePrimeReadOrderBytes; }
+        AdapterSeedIndex get3PrimeAdapterSeedIndex() { return threePrimeSeedIndex; }
+        AdapterSeedIndex get5PrimeAdapterInReadOrderSeedIndex() { return fivePrimeReadOrderSeedIndex; }
 
         public String getName() { return this.name; }
 
@@ -0,0 +1,174 @@
+package org.broadinstitute.hellbender.utils.illumina;
+
+import java.util.Arrays;
+
+import static org.broadinstitute.hellbender.utils.illumina.ClippingUtil.NO_MATCH;
+
+/**
+ * Finds an adapter sequence in reads as {@link ClippingUtil#findIndexOfClipSequence} does, but rather than comparing
+ * the adapter at every position of the read, only compares it at the positions where one of its k-mers (seeds) occurs
+ * in the read in the right place.
+ * <p/>
+ * The seeds find every match: an alignment of L bases with no more than M mismatches has an exact run of at least
+ * L / (M + 1) bases (rounded down), so as long as that is at least SEED_LENGTH for every length of alignment that can
+ * match, one of the seeds is in the read wherever the adapter matches.  When it is not, or when the adapter
+ * has bases other than ACGT, which match in ways the seeds don't model, every position is compared instead.
+ * SEED_LENGTH is the shortest such run for the default single-end and paired-end parameters (the 10 and 11 base
+ * alignments of the paired-end defaults allow a mismatch, leaving a run of 5), so that both are seeded.  Whether a
+ * minimum match and error rate are seeded is worked out once for each pair of them.
+ * <p/>
+ * This class is thread-safe.
+ */
+final class AdapterSeedIndex {
+    static final int SEED_LENGTH = 5;
+
+    // the most pairs of minimum match and error rate to remember whether they are seeded
+    private static final int MAX_SEEDING_DECISIONS = 8;
+    private static final int SEED_MASK = (1 << (2 * SEED_LENGTH)) - 1;
+
+    // the 2 bit code of each base, ignoring case, or -1 if the base is not one of ACGT
+    private static final byte[] BASE_CODES = new byte[256];
+    static {
+        Arrays.fill(BASE_CODES, (byte) -1);
+        BASE_CODES['A'] = BASE_CODES['a'] = 0;
+        BASE_CODES['C'] = BASE_CODES['c'] = 1;
+        BASE_CODES['G'] = BASE_CODES['g'] = 2;
+        BASE_CODES['T'] = BASE_CODES['t'] = 3;
+    }
+
+    private final byte[] adapterSequence;
+
+    // The offsets in the adapter of each seed are seedOffsets[seedStarts[seed]] to seedOffsets[seedStarts[seed + 1] - 1],
+    // or both are null if the adapter can't be seeded.
+    private final int[] seedStarts;
+    private final int[] seedOffsets;
+
+    // whether the pairs of minimum match and error rate seen so far are seeded, replaced as a whole when one is added
+    private volatile SeedingDecision[] seedingDecisions = new SeedingDecision[0];
+
+    AdapterSeedIndex(final byte[] adapterSequence) {
+        this.adapterSequence = adapterSequence;
+
+        boolean seedable = adapterSequence.length >= SEED_LENGTH;
+        for (final byte base : adapterSequence) {
+            seedable &= BASE_CODES[base & 0xFF] >= 0;
+        }
+        if (!seedable) {
+            seedStarts = null;
+            seedOffsets = null;
+            return;
+        }
+
+        final int numSeeds = adapterSequence.length - SEED_LENGTH + 1;
+        final int[] seeds = new int[numSeeds];
+        int code = 0;
+        for (int i = 0; i < adapterSequence.length; i++) {
+            code = ((code << 2) | BASE_CODES[adapterSequence[i] & 0xFF]) & SEED_MASK;
+            if (i >= SEED_LENGTH - 1) {
+                seeds[i - SEED_LENGTH + 1] = code;
+            }
+        }
+
+        seedStarts = new int[SEED_MASK + 2];
+        for (final int seed : seeds) {
+            seedStarts[seed + 1]++;
+        }
+        for (int seed = 0; seed <= SEED_MASK; seed++) {
+            seedStarts[seed + 1] += seedStarts[seed];
+        }
+        seedOffsets = new int[numSeeds];
+        final int[] next = seedStarts.clone();
+        for (int offset = 0; offset < numSeeds; offset++) {
+            seedOffsets[next[seeds[offset]]++] = offset;
+        }
+    }
+
+    /**
+     * Returns the same as {@link ClippingUtil#findIndexOfClipSequence} with this adapter.
+     */
+    int findIndexOfClipSequence(final byte[] read, final int minMatch, final double maxErrorRate) {
+        if (read == null || read.length < minMatch) return NO_MATCH;
+        if (!isSeeded(minMatch, maxErrorRate)) {
+            return ClippingUtil.findIndexOfClipSequence(read, adapterSequence, minMatch, maxErrorRate);
+        }
+
+        // Mark the starts of the adapter that put one of its seeds on the same bases in the read
+        final int lastStart = read.length - minMatch;
+        final boolean[] candidateStarts = new boolean[lastStart + 1];
+        int code = 0;
+        int validBases = 0;
+        for (int i = 0; i < read.length; i++) {
+            final int base = BASE_CODES[read[i] & 0xFF];
+            if (base < 0) {
+                validBases = 0;
+                continue;
+            }
+            code = ((code << 2) | base) & SEED_MASK;
+            if (++validBases >= SEED_LENGTH) {
+                final int seedStartInRead = i - SEED_LENGTH + 1;
+                for (int s = seedStarts[code]; s < seedStarts[code + 1]; s++) {
+                    final int start = seedStartInRead - seedOffsets[s];
+                    if (start >= 0 && start <= lastStart) {
+                        candidateStarts[start] = true;
+                    }
+                }
+            }
+        }
+
+        // Walk backwards down the read as the exhaustive search does, so that the same match is found
+        for (int start = lastStart; start >= 0; --start) {
+            if (candidateStarts[start] && ClippingUtil.adapterMatchesAt(read, adapterSequence, start, maxErrorRate)) {
+                return start;
+            }
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * Whether the adapter is found through its seeds with this minimum match and error rate, rather than by comparing
+     * it at every position.
+     */
+    boolean isSeeded(final int minMatch, final double maxErrorRate) {
+        final SeedingDecision[] decisions = seedingDecisions;
+        for (final SeedingDecision decision : decisions) {
+            if (decision.minMatch == minMatch && decision.maxErrorRate == maxErrorRate) {
+                return decision.seeded;
+            }
+        }
+
+        final boolean seeded = seedsFindEveryMatch(minMatch, maxErrorRate);
+        // a decision added concurrently by another thread may be lost, and is then just worked out again
+        if (decisions.length < MAX_SEEDING_DECISIONS) {
+            final SeedingDecision[] added = Arrays.copyOf(decisions, decisions.length + 1);
+            added[decisions.length] = new SeedingDecision(minMatch, maxErrorRate, seeded);
+            seedingDecisions = added;
+        }
+        return seeded;
+    }
+
+    /**
+     * Whether every alignment of the adapter to a read that could match has an exact run of at least SEED_LENGTH bases.
+     */
+    private boolean seedsFindEveryMatch(final int minMatch, final double maxErrorRate) {
+        if (seedStarts == null) return false;
+        for (int length = Math.min(Math.max(minMatch, 1), adapterSequence.length); length <= adapterSequence.length; length++) {
+            final int mismatchesAllowed = Math.max(0, (int) (length * maxErrorRate));
+            if (length / (mismatchesAllowed + 1) < SEED_LENGTH) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class SeedingDecision {
+        final int minMatch;
+        final double maxErrorRate;
+        final boolean seeded;
+
+        SeedingDecision(final int minMatch, final double maxErrorRate, final boolean seeded) {
+            this.minMatch = minMatch;
+            this.maxErrorRate = maxErrorRate;
+            this.seeded = seeded;
+        }
+    }
+}
@@ -66,8 +66,8 @@ public class ClippingUtil {
     public static AdapterPair adapterTrimIlluminaSingleRead(final SAMRecord read, final int minMatchBases,
                                                      final double maxErrorRate, final AdapterPair ... adapters) {
         for (AdapterPair adapter : adapters) {
-            final int indexOfAdapterSequence = findIndexOfClipSequence(
-                    getReadBases(read), adapter.get3PrimeAdapterBytes(), minMatchBases, maxErrorRate);
+            final int indexOfAdapterSequence = findIndexOf3PrimeAdapter(
+                    getReadBases(read), adapter, minMatchBases, maxErrorRate);
             if (indexOfAdapterSequence != NO_MATCH) {
                 // Convert to a one-based index for storage on the record.
                 read.setAttribute(ReservedTagConstants.XT, indexOfAdapterSequence + 1);
@@ -110,10 +110,10 @@ public class ClippingUtil {
         AdapterPair matched = null;
 
         for (final AdapterPair adapterPair : adapters) {
-            final int index1 = findIndexOfClipSequence(
-                    getReadBases(read1), adapterPair.get3PrimeAdapterBytes(), minMatchBases, maxErrorRate);
-            final int index2 = findIndexOfClipSequence(
-                    getReadBases(read2), adapterPair.get5PrimeAdapterBytesInReadOrder(), minMatchBases, maxErrorRate);
+            final int index1 = findIndexOf3PrimeAdapter(
+                    getReadBases(read1), adapterPair, minMatchBases, maxErrorRate);
+            final int index2 = findIndexOf5PrimeAdapterInReadOrder(
+                    getReadBases(read2), adapterPair, minMatchBases, maxErrorRate);
 
             if (index1 == index2) {
                 if (index1 != NO_MATCH) {
@@ -189,6 +189,26 @@ public class ClippingUtil {
         }
     }
 
+    /**
+     * Finds the 3' adapter in the read bases, using the seeds of the adapter if it has them.
+     */
+    private static int findIndexOf3PrimeAdapter(final byte[] read, final AdapterPair adapter, final int minMatch, final double maxErrorRate) {
+        if (adapter instanceof AdapterMarker.TruncatedAdapterPair) {
+            return ((AdapterMarker.TruncatedAdapterPair) adapter).get3PrimeAdapterSeedIndex().findIndexOfClipSequence(read, minMatch, maxErrorRate);
+        }
+        return findIndexOfClipSequence(read, adapter.get3PrimeAdapterBytes(), minMatch, maxErrorRate);
+    }
+
+    /**
+     * Finds the 5' adapter, in read order, in the read bases, using the seeds of the adapter if it has them.
+     */
+    private static int findIndexOf5PrimeAdapterInReadOrder(final byte[] read, final AdapterPair adapter, final int minMatch, final double maxErrorRate) {
+        if (adapter instanceof AdapterMarker.TruncatedAdapterPair) {
+            return ((AdapterMarker.TruncatedAdapterPair) adapter).get5PrimeAdapterInReadOrderSeedIndex().findIndexOfClipSequence(read, minMatch, maxErrorRate);
+        }
+        return findIndexOfClipSequence(read, adapter.get5PrimeAdapterBytesInReadOrder(), minMatch, maxErrorRate);
+    }
+
     /**
      * Finds the first index of the adapterSequence sequence in the read sequence requiring at least minMatch
      * bases of pairwise alignment with a maximum number of errors dictated by maxErrorRate.
@@ -201,22 +221,31 @@ public class ClippingUtil {
         final int minClipPosition = 0;
 
         // Walk backwards down the read looking for the sequence
-        READ_LOOP:
         for (int start = read.length - minMatch; start > minClipPosition -1; --start) {
-            final int length = Math.min(read.length - start, adapterSequence.length);
-            final int mismatchesAllowed = (int) (length * maxErrorRate);
-            int mismatches = 0;
-
-            for (int i = 0; i < length; ++i) {
-                if (!SequenceUtil.isNoCall(adapterSequence[i]) && !SequenceUtil.basesEqual(adapterSequence[i], read[start + i])) {
-                    if (++mismatches > mismatchesAllowed) continue READ_LOOP;
-                }
+            if (adapterMatchesAt(read, adapterSequence, start, maxErrorRate)) {
+                return start;
             }
-
-            // If we got this far without breaking out, then it matches
-            return start;
         }
 
         return NO_MATCH;
     }
+
+    /**
+     * Whether the adapterSequence, aligned to the read from the given start to the end of either, has no more errors
+     * than maxErrorRate allows.
+     */
+    static boolean adapterMatchesAt(final byte[] read, final byte[] adapterSequence, final int start, final double maxErrorRate) {
+        final int length = Math.min(read.length - start, adapterSequence.length);
+        final int mismatchesAllowed = (int) (length * maxErrorRate);
+        int mismatches = 0;
+
+        for (int i = 0; i < length; ++i) {
+            if (!SequenceUtil.isNoCall(adapterSequence[i]) && !SequenceUtil.basesEqual(adapterSequence[i], read[start + i])) {
+                if (++mismatches > mismatchesAllowed) return false;
+            }
+        }
+
+        // If we got this far without breaking out, then it matches
+        return true;
+    }
 }
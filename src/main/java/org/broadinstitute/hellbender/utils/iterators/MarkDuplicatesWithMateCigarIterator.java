@@ -72,6 +72,9 @@ public class MarkDuplicatesWithMateCigarIterator implements SAMRecordIterator {
 
     boolean isClosed = false;
 
+    /** The time at which iteration started, used to report throughput */
+    private final long startTimeMillis = System.currentTimeMillis();
+
     /**
      * Initializes the mark duplicates iterator.
      *
@@ -82,6 +85,8 @@ public class MarkDuplicatesWithMateCigarIterator implements SAMRecordIterator {
      * @param toMarkQueueMinimumDistance minimum distance for which to buffer
      * @param removeDuplicates           true to remove duplicates, false to mark duplicates
      * @param skipPairsWithNoMateCigar   true to not return mapped pairs with no mate cigar, false otherwise
+     * @param maxRecordsInRam            the maximum number of records to keep in memory in the underlying buffer
+     * @param maxRecordsInMarkQueue      the maximum number of records pending duplicate marking that keep their SAMRecord in memory
      * @param blockSize                  the size of the blocks in the underlying buffer/queue
      * @param tmpDirs                    the temporary directories to use if we spill records to disk
      * @throws UserException if the inputs are not in coordinate sort order
@@ -94,6 +99,7 @@ public class MarkDuplicatesWithMateCigarIterator implements SAMRecordIterator {
                                                final boolean removeDuplicates,
                                                final boolean skipPairsWithNoMateCigar,
                                                final int maxRecordsInRam,
+                                               final int maxRecordsInMarkQueue,
                                                final int blockSize,
                                                final List<File> tmpDirs) throws UserException {
         if (header.getSortOrder() != SAMFileHeader.SortOrder.coordinate) {
@@ -108,6 +114,7 @@ public class MarkDuplicatesWithMateCigarIterator implements SAMRecordIterator {
         this.skipPairsWithNoMateCigar = skipPairsWithNoMateCigar;
         this.opticalDuplicateFinder = opticalDuplicateFinder;
         toMarkQueue = new MarkQueue(duplicateScoringStrategy);
+        toMarkQueue.setMaxRecordsInRam(maxRecordsInMarkQueue);
         libraryIdGenerator = new LibraryIdGenerator(header);
 
         // Check for supported scoring strategies
@@ -139,7 +146,10 @@ public class MarkDuplicatesWithMateCigarIterator implements SAMRecordIterator {
                         "; totalMemory: " + runtime.totalMemory() +
                         "; maxMemory: " + runtime.maxMemory() +
                         "; output buffer size: " + outputBuffer.size() +
-                        "; duplicate queue size: " + toMarkQueue.size()
+                        "; duplicate queue size: " + toMarkQueue.size() +
+                        "; max duplicate queue size: " + toMarkQueue.getMaxSize() +
+                        "; records released from duplicate queue: " + toMarkQueue.getNumRecordsReleased() +
+                        "; records per second: " + getRecordsPerSecond()
         );
     }
 
@@ -285,21 +295,22 @@ public class MarkDuplicatesWithMateCigarIterator implements SAMRecordIterator {
         if (!toMarkQueue.isEmpty()) {
             final ReadEndsForMateCigar other = toMarkQueue.peek();
             if (other.read1ReferenceIndex == current.read1ReferenceIndex && toMarkQueue.getToMarkQueueMinimumDistance() <= other.read1Coordinate - current.read1Coordinate) {
-                if (checkCigarForSkips(other.getRecord().getCigar())) {
+                final String otherRecordString = other.hasRecord() ? other.getRecord().getSAMString() : other.getRecordReadName() + "\n";
+                if (checkCigarForSkips(other.getCigar())) {
                     throw new GATKException("Found a samRecordWithOrdinal with sufficiently large code length that we may have\n"
                             + " missed including it in an early duplicate marking iteration.  Alignment contains skipped"
                             + " reference bases (N's). If this is an\n RNAseq aligned bam, please use MarkDuplicates instead,"
                             + " as this tool does not work well with spliced reads.\n Minimum distance set to "
                             + toMarkQueue.getToMarkQueueMinimumDistance() + " but " + (other.read1Coordinate - current.read1Coordinate - 1)
-                            + " would be required.\n" + "Record was: " + other.getRecord().getSAMString());
+                            + " would be required.\n" + "Record was: " + otherRecordString);
                 } else {
-                    System.err.print("record #1: " + other.getRecord().getSAMString());
+                    System.err.print("record #1: " + otherRecordString);
                     System.err.print("record #2: " + current.getRecord().getSAMString());
                     throw new GATKException("Found a samRecordWithOrdinal with sufficiently large clipping that we may have\n"
                             + " missed including it in an early duplicate marking iteration.  Please increase the"
                             + " minimum distance to at least " + (other.read1Coordinate - current.read1Coordinate - 1)
                             + "bp\nto ensure it is considered (was " + toMarkQueue.getToMarkQueueMinimumDistance() + ").\n"
-                            + "Record was: " + other.getRecord().getSAMString());
+                            + "Record was: " + otherRecordString);
                 }
             }
         }
@@ -418,7 +429,7 @@ public class MarkDuplicatesWithMateCigarIterator implements SAMRecordIterator {
                 }
 
                 // Add the record for duplicate marking, which may in fact cause it to be duplicate marked or stored for later
-                toMarkQueue.add(readEnds, outputBuffer, getMetrics(readEnds.getRecord()));
+                toMarkQueue.add(readEnds, outputBuffer, getMetrics(readEnds.getRecord()), header);
             }
 
             // Check if there are any we can flush, which happens if we just performed duplicate marking
@@ -484,6 +495,22 @@ public class MarkDuplicatesWithMateCigarIterator implements SAMRecordIterator {
         return libraryIdGenerator.getOpticalDuplicatesByLibraryIdMap();
     }
 
+    /** The largest number of read ends pending duplicate marking at any one time. */
+    public int getMaxMarkQueueSize() {
+        return toMarkQueue.getMaxSize();
+    }
+
+    /** The number of records pending duplicate marking that were released from memory to the (disk-backed) output buffer. */
+    public long getNumRecordsReleasedFromMarkQueue() {
+        return toMarkQueue.getNumRecordsReleased();
+    }
+
+    /** The number of records read from the input per second since this iterator was created. */
+    public double getRecordsPerSecond() {
+        final long elapsedMillis = Math.max(1, System.currentTimeMillis() - startTimeMillis);
+        return backingIteratorRecordIndex * 1000.0 / elapsedMillis;
+    }
+
     /**
      * Gets a SAMRecord if one is available after marking.  This enforces that we return records in the original
      * coordinate sort order in a stable fashion.
@@ -559,7 +586,7 @@ public class MarkDuplicatesWithMateCigarIterator implements SAMRecordIterator {
             performedChunkAndMarkTheDuplicates = true;
 
             // track optical duplicates using only those reads that are the first end...
-            if (toMarkQueue.shouldBeInLocations(next) && next.getRecord().getFirstOfPairFlag()) {
+            if (toMarkQueue.shouldBeInLocations(next) && next.isFirstOfPair()) {
                 final Set<ReadEnds> locations = toMarkQueue.getLocations(next);
 
                 if (!locations.isEmpty()) {
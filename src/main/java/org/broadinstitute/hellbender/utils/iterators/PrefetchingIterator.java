@@ -0,0 +1,139 @@
+package org.broadinstitute.hellbender.utils.iterators;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import org.broadinstitute.hellbender.exceptions.GATKException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Wraps an iterator so that its elements are read ahead on a dedicated background thread.  The elements are handed
+ * to the consuming thread in batches through a bounded queue, so that the reading thread blocks once it gets
+ * numBatches * batchSize elements ahead of the consumer.
+ * <p/>
+ * This is useful when producing each element is expensive (for example decompressing and decoding BAM records), since
+ * the work then overlaps with whatever the consumer does with the elements.  Any exception thrown by the wrapped
+ * iterator is rethrown unchanged to the consumer once it has received all the elements read before the failure.
+ */
+public class PrefetchingIterator<T> implements CloseableIterator<T> {
+
+    private final CloseableIterator<T> iterator;
+    private final int batchSize;
+    private final BlockingQueue<List<T>> queue;
+    private final Thread readerThread;
+
+    /** Put on the queue after the last batch, compared by identity. */
+    private final List<T> endOfIteration = new ArrayList<>(0);
+
+    private volatile boolean closed = false;
+    private volatile Throwable readerError = null;
+
+    private Iterator<T> currentBatch = Collections.emptyIterator();
+    private boolean exhausted = false;
+
+    /**
+     * @param iterator   the iterator to read ahead, which is only accessed from the background thread until this is closed
+     * @param batchSize  the number of elements handed to the consumer at a time
+     * @param numBatches the number of batches that may be waiting for the consumer
+     * @param threadName the name of the background thread
+     */
+    public PrefetchingIterator(final CloseableIterator<T> iterator, final int batchSize, final int numBatches, final String threadName) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        if (numBatches < 1) throw new IllegalArgumentException("numBatches must be positive: " + numBatches);
+        this.iterator = iterator;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(numBatches + 1); // leave room for the end of iteration marker
+
+        this.readerThread = new Thread(this::readAhead, threadName);
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    /** Body of the background thread. */
+    private void readAhead() {
+        List<T> batch = null;
+        try {
+            while (!closed && iterator.hasNext()) {
+                batch = new ArrayList<>(batchSize);
+                while (batch.size() < batchSize && iterator.hasNext()) {
+                    batch.add(iterator.next());
+                }
+                queue.put(batch);
+                batch = null;
+            }
+        } catch (final InterruptedException e) {
+            // only happens when this iterator is closed
+            return;
+        } catch (final Throwable t) {
+            readerError = t;
+        }
+
+        try {
+            // hand over the elements read before a failure
+            if (batch != null && !batch.isEmpty()) queue.put(batch);
+            queue.put(endOfIteration);
+        } catch (final InterruptedException e) {
+            // closed while waiting for space, so nobody is waiting for the end of iteration
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) return false;
+        while (!currentBatch.hasNext()) {
+            if (exhausted) return false;
+
+            final List<T> batch;
+            try {
+                batch = queue.take();
+            } catch (final InterruptedException e) {
+                throw new GATKException("Interrupted while waiting for " + readerThread.getName(), e);
+            }
+
+            if (batch == endOfIteration) {
+                exhausted = true;
+                if (readerError instanceof RuntimeException) throw (RuntimeException) readerError;
+                if (readerError instanceof Error) throw (Error) readerError;
+                if (readerError != null) {
+                    throw new GATKException("Error while reading ahead in " + readerThread.getName() + ": " + readerError.getMessage(), readerError);
+                }
+                return false;
+            }
+            currentBatch = batch.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return currentBatch.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Stops the background thread, waiting for it to finish, and then closes the wrapped iterator. */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        readerThread.interrupt();
+        try {
+            readerThread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.clear();
+        currentBatch = Collections.emptyIterator();
+        CloserUtil.close(iterator);
+    }
+}
@@ -0,0 +1,204 @@
+package org.broadinstitute.hellbender.utils.read;
+
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.GenomicIndexUtil;
+import htsjdk.samtools.util.BinaryCodec;
+import org.broadinstitute.hellbender.exceptions.UserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Builds the BAI index of a BAM file that was made by concatenating the bodies of other BAM files, by merging the
+ * indexes of those files instead of reading the alignment records again.
+ * <p/>
+ * The indexes must be merged in the order in which the files appear in the concatenated BAM.  Since the records of each
+ * file end up at a different place in the output, every virtual file offset in an index is passed through a translator
+ * supplied by the caller, which knows where the blocks of the input were written.  Chunks are appended to their bins,
+ * each linear index window keeps the smallest offset seen, and the per-reference metadata and the count of records
+ * without coordinates are summed.
+ * <p/>
+ * All inputs must have been aligned against the same sequence dictionary.
+ */
+public final class BAMIndexMerger {
+
+    private static final byte[] BAI_MAGIC = {'B', 'A', 'I', 1};
+
+    /** The pseudo-bin htsjdk and samtools use to store the per-reference metadata. */
+    private static final int METADATA_BIN = GenomicIndexUtil.MAX_BINS;
+
+    private final ReferenceIndex[] references;
+    private long noCoordinateCount = 0;
+
+    /**
+     * @param numReferences the number of sequences in the dictionary of the concatenated BAM
+     */
+    public BAMIndexMerger(final int numReferences) {
+        this.references = new ReferenceIndex[numReferences];
+        for (int i = 0; i < numReferences; ++i) {
+            references[i] = new ReferenceIndex();
+        }
+    }
+
+    /**
+     * Adds the content of an index to the merged index.
+     *
+     * @param index            a BAI file
+     * @param offsetTranslator maps the virtual file offsets of the indexed BAM to those in the concatenated BAM
+     */
+    public void mergeIndex(final File index, final LongUnaryOperator offsetTranslator) {
+        final ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(index.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (final IOException e) {
+            throw new UserException.CouldNotReadInputFile(index, e);
+        }
+
+        try {
+            final byte[] magic = new byte[BAI_MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, BAI_MAGIC)) {
+                throw new UserException.MalformedFile(index, "not a BAI index");
+            }
+
+            final int numReferences = buffer.getInt();
+            if (numReferences != references.length) {
+                throw new UserException.MalformedFile(index, "the index has " + numReferences + " references but " +
+                        references.length + " were expected");
+            }
+
+            for (final ReferenceIndex reference : references) {
+                reference.merge(buffer, offsetTranslator);
+            }
+
+            // the count of unplaced unmapped records is optional
+            if (buffer.remaining() >= Long.BYTES) {
+                noCoordinateCount += buffer.getLong();
+            }
+        } catch (final BufferUnderflowException e) {
+            throw new UserException.MalformedFile(index, "the index is truncated", e);
+        }
+    }
+
+    /** Writes the merged index. */
+    public void writeIndex(final File output) {
+        final BinaryCodec codec = new BinaryCodec(output, true);
+        try {
+            codec.writeBytes(BAI_MAGIC);
+            codec.writeInt(references.length);
+            for (final ReferenceIndex reference : references) {
+                reference.write(codec);
+            }
+            codec.writeLong(noCoordinateCount);
+        } finally {
+            codec.close();
+        }
+    }
+
+    /** The bins, linear index and metadata of a single reference sequence. */
+    private static final class ReferenceIndex {
+        private final SortedMap<Integer, List<Chunk>> bins = new TreeMap<>();
+        private long[] linearIndex = new long[0];
+
+        private boolean hasMetadata = false;
+        private long firstOffset;
+        private long lastOffset;
+        private long alignedRecords;
+        private long unalignedRecords;
+
+        void merge(final ByteBuffer buffer, final LongUnaryOperator offsetTranslator) {
+            final int numBins = buffer.getInt();
+            for (int i = 0; i < numBins; ++i) {
+                final int bin = buffer.getInt();
+                final int numChunks = buffer.getInt();
+                if (bin == METADATA_BIN) {
+                    mergeMetadata(offsetTranslator.applyAsLong(buffer.getLong()), offsetTranslator.applyAsLong(buffer.getLong()),
+                            buffer.getLong(), buffer.getLong());
+                    continue;
+                }
+
+                final List<Chunk> chunks = bins.computeIfAbsent(bin, b -> new ArrayList<>());
+                for (int j = 0; j < numChunks; ++j) {
+                    addChunk(chunks, offsetTranslator.applyAsLong(buffer.getLong()), offsetTranslator.applyAsLong(buffer.getLong()));
+                }
+            }
+
+            final int numWindows = buffer.getInt();
+            if (numWindows > linearIndex.length) {
+                linearIndex = Arrays.copyOf(linearIndex, numWindows);
+            }
+            for (int i = 0; i < numWindows; ++i) {
+                final long offset = buffer.getLong();
+                if (offset == 0) continue;
+                final long translated = offsetTranslator.applyAsLong(offset);
+                if (linearIndex[i] == 0 || translated < linearIndex[i]) {
+                    linearIndex[i] = translated;
+                }
+            }
+        }
+
+        private void mergeMetadata(final long first, final long last, final long aligned, final long unaligned) {
+            if (!hasMetadata) {
+                hasMetadata = true;
+                firstOffset = first;
+                lastOffset = last;
+            } else {
+                firstOffset = Math.min(firstOffset, first);
+                lastOffset = Math.max(lastOffset, last);
+            }
+            alignedRecords += aligned;
+            unalignedRecords += unaligned;
+        }
+
+        /** Chunks arrive in file order, so a chunk that starts where the previous one ends just extends it. */
+        private static void addChunk(final List<Chunk> chunks, final long start, final long end) {
+            if (!chunks.isEmpty()) {
+                final Chunk previous = chunks.get(chunks.size() - 1);
+                if (start <= previous.getChunkEnd()) {
+                    chunks.set(chunks.size() - 1, new Chunk(previous.getChunkStart(), Math.max(end, previous.getChunkEnd())));
+                    return;
+                }
+            }
+            chunks.add(new Chunk(start, end));
+        }
+
+        void write(final BinaryCodec codec) {
+            codec.writeInt(bins.size() + (hasMetadata ? 1 : 0));
+            for (final Map.Entry<Integer, List<Chunk>> entry : bins.entrySet()) {
+                codec.writeInt(entry.getKey());
+                codec.writeInt(entry.getValue().size());
+                for (final Chunk chunk : entry.getValue()) {
+                    codec.writeLong(chunk.getChunkStart());
+                    codec.writeLong(chunk.getChunkEnd());
+                }
+            }
+            if (hasMetadata) {
+                codec.writeInt(METADATA_BIN);
+                codec.writeInt(2);
+                codec.writeLong(firstOffset);
+                codec.writeLong(lastOffset);
+                codec.writeLong(alignedRecords);
+                codec.writeLong(unalignedRecords);
+            }
+
+            // windows without any records start at the same place as the closest preceding window
+            codec.writeInt(linearIndex.length);
+            long previous = 0;
+            for (final long offset : linearIndex) {
+                previous = offset == 0 ? previous : offset;
+                codec.writeLong(previous);
+            }
+        }
+    }
+}
@@ -4,11 +4,12 @@ import htsjdk.samtools.DuplicateScoringStrategy;
 import htsjdk.samtools.DuplicateScoringStrategy.ScoringStrategy;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
-import htsjdk.samtools.SAMUtils;
 import htsjdk.samtools.util.SamRecordTrackingBuffer;
 import org.broadinstitute.hellbender.exceptions.GATKException;
 
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -19,6 +20,11 @@ import java.util.TreeSet;
  * This stores a current nonDuplicateReadEndsSet of read ends that need to be duplicate marked.  It only stores internally the "best" read end for a given
  * possible duplicate location, preferring to perform duplicate marking as read ends come in, rather than wait for all "comparable"
  * read ends to arrive.  This reduces the memory footprint of this data structure.
+ * <p/>
+ * To bound memory further, only the most recently added read ends that are still pending keep their SAMRecord (see
+ * {@link #setMaxRecordsInRam(int)}).  A read end is pending while it is in this queue, or in the location set of a read end
+ * in this queue.  The records of older pending read ends are released, and are then only held by the output buffer, which
+ * spills to disk.
  */
 public class MarkQueue {
 
@@ -58,21 +64,30 @@ public class MarkQueue {
             if (retval == 0) retval = lhs.hasUnmapped - rhs.hasUnmapped;
             if (retval == 0) retval = lhs.read2ReferenceIndex - rhs.read2ReferenceIndex;
             if (retval == 0) retval = lhs.read2Coordinate - rhs.read2Coordinate;
-            // TODO: cache the scores?
-            if (retval == 0)
-                retval = DuplicateScoringStrategy.compare(lhs.getRecord(), rhs.getRecord(), this.duplicateScoringStrategy, true);
+            if (retval == 0) retval = compareDuplicateScores(lhs, rhs);
             if (retval == 0) retval = lhs.getRecordReadName().compareTo(rhs.getRecordReadName());
             /**
              * If both reads are paired and both ends mapped, always prefer the first end over the second end.  This is needed to
              * properly choose the first end for optical duplicate identification when both ends are mapped to the same position etc.
              */
             if (retval == 0 && lhs.isPaired() && rhs.isPaired() && null != lhs.getSamRecordIndex()) {
-                if (lhs.getRecord().getFirstOfPairFlag()) retval = -1;
+                if (lhs.isFirstOfPair()) retval = -1;
                 else retval = 1;
             }
 
             return retval;
         }
+
+        /**
+         * Equivalent to {@link DuplicateScoringStrategy#compare(SAMRecord, SAMRecord, ScoringStrategy, boolean)} with the mate cigar
+         * assumed present, but using the scores and names cached on the read ends so that the records may have been released.
+         */
+        private int compareDuplicateScores(final ReadEndsForMateCigar lhs, final ReadEndsForMateCigar rhs) {
+            if (lhs.isPaired() != rhs.isPaired()) return lhs.isPaired() ? 1 : -1;
+            int retval = rhs.getDuplicateScore(this.duplicateScoringStrategy) - lhs.getDuplicateScore(this.duplicateScoringStrategy);
+            if (retval == 0) retval = lhs.getCanonicalRecordName().compareTo(rhs.getCanonicalRecordName());
+            return retval;
+        }
     }
 
     /** The genomic distance needed to assure that we have considered all reads for duplicate marking. */
@@ -100,10 +115,40 @@ public class MarkQueue {
     /** temporary so we do not need to create many objects */
     private ReadEndsForMateCigar tmpReadEnds = null;
 
+    private final ScoringStrategy duplicateScoringStrategy;
+
+    /** The maximum number of read ends that may keep their SAMRecord in memory. */
+    private int maxRecordsInRam = Integer.MAX_VALUE;
+
+    /** The pending read ends that still hold their SAMRecord, oldest first.  ReadEnds use identity equality. */
+    private final Set<ReadEndsForMateCigar> readEndsWithRecords = new LinkedHashSet<ReadEndsForMateCigar>();
+
+    /** The total number of read ends whose record was released */
+    private long numRecordsReleased = 0;
+
+    /** The largest number of read ends held in this queue at any one time */
+    private int maxSize = 0;
+
     public MarkQueue(final ScoringStrategy duplicateScoringStrategy) {
+        this.duplicateScoringStrategy = duplicateScoringStrategy;
         comparator = new ReadEndsMCComparator(duplicateScoringStrategy);
     }
 
+    /** Sets the maximum number of read ends that may keep their SAMRecord in memory before the oldest are released. */
+    public void setMaxRecordsInRam(final int maxRecordsInRam) {
+        if (maxRecordsInRam < 0) throw new IllegalArgumentException("maxRecordsInRam must be non-negative: " + maxRecordsInRam);
+        this.maxRecordsInRam = maxRecordsInRam;
+    }
+
+    /** Returns the total number of read ends whose record was released to bound memory */
+    public long getNumRecordsReleased() { return this.numRecordsReleased; }
+
+    /** The number of pending read ends that still hold their SAMRecord */
+    public int getNumRecordsInRam() { return this.readEndsWithRecords.size(); }
+
+    /** Returns the largest number of read ends held in this queue at any one time */
+    public int getMaxSize() { return this.maxSize; }
+
     /** Returns the number of duplicates detected */
     public int getNumDuplicates() { return this.numDuplicates; }
 
@@ -146,7 +191,7 @@ public class MarkQueue {
     /** Updates the duplication metrics given the provided duplicate */
     private void updateDuplicationMetrics(final ReadEndsForMateCigar duplicate, final DuplicationMetrics metrics) {
         // Update the duplication metrics
-        if (!duplicate.getRecord().getReadPairedFlag() || duplicate.getRecord().getMateUnmappedFlag()) {
+        if (!duplicate.isPaired() || duplicate.isMateUnmapped()) {
             ++metrics.UNPAIRED_READ_DUPLICATES;
         } else {
             ++metrics.READ_PAIR_DUPLICATES;// will need to be divided by 2 at the end
@@ -169,6 +214,11 @@ public class MarkQueue {
          */
 
         final ReadEndsForMateCigar current = this.nonDuplicateReadEndsSet.pollFirst();
+        this.readEndsWithRecords.remove(current);
+        // the read ends in its location set are only needed for optical duplicate detection by the caller
+        if (null != current.getLocationSet()) {
+            this.readEndsWithRecords.removeAll(current.getLocationSet().getReadEnds());
+        }
 
         // If we are a paired read end, we need to make sure we remove unpaired (if we are not also unpaired), as
         // well as fragments from the nonDuplicateReadEndsSet, as they should all be duplicates.
@@ -179,14 +229,14 @@ public class MarkQueue {
                 final ReadEndsForMateCigar pair = this.otherEndOfNonDuplicateReadEndsSet.subSet(current, true, current, true).first();
                 outputBuffer.setResultState(pair.getSamRecordIndex(), false); // you are not a duplicate!
                 this.otherEndOfNonDuplicateReadEndsSet.remove(current);
+                this.readEndsWithRecords.remove(pair);
                 // NB: do not need to update metrics since this record is not a duplicate
             }
 
             // NB: only care about read1ReferenceIndex, read1Coordinate, and orientation in the nonDuplicateReadEndsSet
             if (null == this.tmpReadEnds) { // initialize
-                this.tmpReadEnds = new ReadEndsForMateCigar(header, current.getSamRecordIndex(), opticalDuplicateFinder, current.libraryId);
+                this.tmpReadEnds = new ReadEndsForMateCigar(current, null); // do not hold onto the record forever
                 this.tmpReadEnds.read2ReferenceIndex = this.tmpReadEnds.read2Coordinate = -1;
-                this.tmpReadEnds.samRecordWithOrdinal = null; // nullify so we do not hold onto it forever
             } else {
                 this.tmpReadEnds.read1ReferenceIndex = current.read1ReferenceIndex;
                 this.tmpReadEnds.read1Coordinate = current.read1Coordinate;
@@ -213,9 +263,10 @@ public class MarkQueue {
 
                 // remove from the nonDuplicateReadEndsSet
                 this.nonDuplicateReadEndsSet.remove(this.tmpReadEnds);
+                this.readEndsWithRecords.remove(duplicate);
 
                 // update the metrics
-                updateDuplicationMetrics(duplicate, libraryIdGenerator.getMetricsByLibrary(LibraryIdGenerator.getLibraryName(header, duplicate.getRecord())));
+                updateDuplicationMetrics(duplicate, libraryIdGenerator.getMetricsByLibrary(duplicate.getLibraryName(header)));
             }
         }
 
@@ -230,13 +281,15 @@ public class MarkQueue {
      */
     public void add(final ReadEndsForMateCigar other,
                     final SamRecordTrackingBuffer<?> outputBuffer,
-                    final DuplicationMetrics metrics) {
+                    final DuplicationMetrics metrics,
+                    final SAMFileHeader header) {
         /**
          * OK this is the most complicated function in this class.  Please pay attention.
          */
         PhysicalLocationForMateCigarSet locationSet = null;
         boolean addToLocationSet = true; // only false if we have mates mapped to the same position
         ReadEndsForMateCigar duplicate = null;
+        ReadEndsForMateCigar duplicatePair = null;
 
         // 1. check the queue to see if there exists a comparable record at the location, if so compare and keep the best.
         // 2. add physical location info if paired
@@ -254,8 +307,8 @@ public class MarkQueue {
             final SortedSet<ReadEndsForMateCigar> sortedSet = this.nonDuplicateReadEndsSet.subSet(other, true, other, true);
             if (1 != sortedSet.size()) throw new GATKException("SortedSet should have size one (has size " + sortedSet.size() + " )");
             final ReadEndsForMateCigar current = sortedSet.first();
-            final String otherName = SAMUtils.getCanonicalRecordName(other.getRecord());
-            final String currentName = SAMUtils.getCanonicalRecordName(current.getRecord());
+            final String otherName = other.getCanonicalRecordName();
+            final String currentName = current.getCanonicalRecordName();
 
             final int comparison = this.comparator.compare(current, other);
 
@@ -306,6 +359,7 @@ public class MarkQueue {
                         this.otherEndOfNonDuplicateReadEndsSet.remove(current);
                         outputBuffer.setResultState(pair.getSamRecordIndex(), true); // track that this samRecordWithOrdinal has been through duplicate marking
                         updateDuplicationMetrics(pair, metrics);
+                        duplicatePair = pair;
                     }
 
                     // current is now a duplicate
@@ -342,5 +396,31 @@ public class MarkQueue {
             // count the duplicate metrics
             updateDuplicationMetrics(duplicate, metrics);
         }
+
+        // track "other" while it is pending, and stop tracking the duplicates that are no longer pending
+        this.readEndsWithRecords.add(other);
+        if (null != duplicate && !isInLocationSet(duplicate, locationSet)) this.readEndsWithRecords.remove(duplicate);
+        if (null != duplicatePair && !isInLocationSet(duplicatePair, locationSet)) this.readEndsWithRecords.remove(duplicatePair);
+
+        this.maxSize = Math.max(this.maxSize, size());
+        releaseOldestRecords(header);
+    }
+
+    private static boolean isInLocationSet(final ReadEndsForMateCigar end, final PhysicalLocationForMateCigarSet locationSet) {
+        return null != locationSet && locationSet.getReadEnds().contains(end);
+    }
+
+    /**
+     * Releases the records of the oldest pending read ends beyond the maximum number of records in memory.  These may still
+     * be in this queue, or only be held in the location set of a read end in this queue.
+     */
+    private void releaseOldestRecords(final SAMFileHeader header) {
+        final Iterator<ReadEndsForMateCigar> iterator = this.readEndsWithRecords.iterator();
+        while (this.readEndsWithRecords.size() > this.maxRecordsInRam) {
+            final ReadEndsForMateCigar oldest = iterator.next();
+            iterator.remove();
+            oldest.releaseRecord(this.duplicateScoringStrategy, header);
+            this.numRecordsReleased++;
+        }
     }
 }
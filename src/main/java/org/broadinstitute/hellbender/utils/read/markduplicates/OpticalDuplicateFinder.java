@@ -5,6 +5,7 @@ import htsjdk.samtools.util.Log;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -20,6 +21,9 @@ public class OpticalDuplicateFinder {
 
     public static final int DEFAULT_OPTICAL_DUPLICATE_DISTANCE = 100;
 
+    /** Duplicate sets no larger than this are compared pairwise, larger ones through the indexed search. */
+    static final int PAIRWISE_COMPARISON_THRESHOLD = 100;
+
     public String readNameRegex;
 
     public int opticalDuplicatePixelDistance;
@@ -191,14 +195,24 @@ public class OpticalDuplicateFinder {
      * <p/>
      * Note: this method will perform a sort() of the list; if it is imperative that the list be
      * unmodified a copy of the list should be passed to this method.
+     * <p/>
+     * Small lists are compared pairwise; larger lists (e.g. PCR jackpots) use a sweep over x with an ordered
+     * index of y coordinates per read group and tile, which gives identical results in O(n log n).
      *
      * @param list a list of reads that are determined to be duplicates of one another
      * @return a boolean[] of the same length as the incoming list marking which reads are optical duplicates
      */
     public boolean[] findOpticalDuplicates(final List<? extends PhysicalLocation> list) {
-        final int length = list.size();
-        final boolean[] opticalDuplicateFlags = new boolean[length];
+        sortByLocation(list);
+        if (list.size() <= PAIRWISE_COMPARISON_THRESHOLD) {
+            return findOpticalDuplicatesPairwise(list);
+        } else {
+            return findOpticalDuplicatesIndexed(list);
+        }
+    }
 
+    /** Sorts the list by read group, tile, x and then y, which both search strategies rely upon. */
+    static void sortByLocation(final List<? extends PhysicalLocation> list) {
         Collections.sort(list, new Comparator<PhysicalLocation>() {
             public int compare(final PhysicalLocation lhs, final PhysicalLocation rhs) {
                 int retval = lhs.getReadGroup() - rhs.getReadGroup();
@@ -208,6 +222,15 @@ public class OpticalDuplicateFinder {
                 return retval;
             }
         });
+    }
+
+    /**
+     * Compares every read to the reads that follow it in the (sorted) list, until the x coordinate is out of range.
+     * A read is marked as an optical duplicate if any read before it in the list is within the pixel distance.
+     */
+    boolean[] findOpticalDuplicatesPairwise(final List<? extends PhysicalLocation> list) {
+        final int length = list.size();
+        final boolean[] opticalDuplicateFlags = new boolean[length];
 
         outer:
         for (int i = 0; i < length; ++i) {
@@ -229,4 +252,54 @@ public class OpticalDuplicateFinder {
         }
         return opticalDuplicateFlags;
     }
+
+    /**
+     * Sweeps the (sorted) list once per read group and tile, keeping the y coordinates of the reads whose x
+     * coordinate is within the pixel distance of the current read in an ordered multiset.  A read is an optical
+     * duplicate if that window holds any y within the pixel distance of its own, which is exactly the condition
+     * tested by {@link #findOpticalDuplicatesPairwise(List)}.
+     */
+    boolean[] findOpticalDuplicatesIndexed(final List<? extends PhysicalLocation> list) {
+        final int length = list.size();
+        final boolean[] opticalDuplicateFlags = new boolean[length];
+        final TreeMap<Integer, Integer> yWindow = new TreeMap<>();
+
+        int groupStart = 0;
+        while (groupStart < length) {
+            final PhysicalLocation first = list.get(groupStart);
+            int groupEnd = groupStart + 1;
+            while (groupEnd < length && list.get(groupEnd).getReadGroup() == first.getReadGroup()
+                    && list.get(groupEnd).getTile() == first.getTile()) {
+                ++groupEnd;
+            }
+
+            // reads without a valid tile are never optical duplicates of one another
+            if (first.getTile() >= 0) {
+                yWindow.clear();
+                int windowStart = groupStart;
+                for (int j = groupStart; j < groupEnd; ++j) {
+                    final PhysicalLocation rhs = list.get(j);
+
+                    // drop reads that are too far to the left of this one in x
+                    for (; list.get(windowStart).getX() + this.opticalDuplicatePixelDistance < rhs.getX(); ++windowStart) {
+                        final Integer y = (int) list.get(windowStart).getY();
+                        final int count = yWindow.get(y);
+                        if (count == 1) yWindow.remove(y);
+                        else yWindow.put(y, count - 1);
+                    }
+
+                    final Integer nearestY = yWindow.ceilingKey(rhs.getY() - this.opticalDuplicatePixelDistance);
+                    if (nearestY != null && nearestY <= rhs.getY() + this.opticalDuplicatePixelDistance) {
+                        opticalDuplicateFlags[j] = true;
+                    }
+
+                    final Integer y = (int) rhs.getY();
+                    final Integer count = yWindow.get(y);
+                    yWindow.put(y, count == null ? 1 : count + 1);
+                }
+            }
+            groupStart = groupEnd;
+        }
+        return opticalDuplicateFlags;
+    }
 }
@@ -1,5 +1,8 @@
 package org.broadinstitute.hellbender.utils.read.markduplicates;
 
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.DuplicateScoringStrategy;
+import htsjdk.samtools.DuplicateScoringStrategy.ScoringStrategy;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMReadGroupRecord;
 import htsjdk.samtools.SAMRecord;
@@ -15,6 +18,9 @@ import java.util.Set;
  * A class to store individual records for MarkDuplicatesWithMateCigar.  This aids in comparing records to determine which need to
  * be compared when we mark duplicates.  We also store the original SAMRecord and its ordinal in the input file (in SamRecordWithOrdinal) to
  * access optional tags (mate cigar) and other information.
+ * <p/>
+ * While waiting in the {@link MarkQueue}, the record may be released (see {@link #releaseRecord(ScoringStrategy, SAMFileHeader)}),
+ * after which only the attributes of the record needed for duplicate marking are kept.
  */
 public class ReadEndsForMateCigar extends ReadEnds {
     // to see if either end is unmapped
@@ -29,6 +35,20 @@ public class ReadEndsForMateCigar extends ReadEnds {
      */
     private PhysicalLocationForMateCigarSet locationSet = null;
 
+    /** The duplicate score of the record, computed on first use. */
+    private short duplicateScore = -1;
+    private ScoringStrategy duplicateScoringStrategy = null;
+
+    /** Attributes of the record kept once the record has been released. */
+    private boolean recordReleased = false;
+    private boolean readPaired;
+    private boolean firstOfPair;
+    private boolean mateUnmapped;
+    private String readName;
+    private String canonicalRecordName;
+    private String libraryName;
+    private Cigar cigar;
+
     /** Builds a read ends object that represents a single read. */
     public ReadEndsForMateCigar(final SAMFileHeader header, final SamRecordWithOrdinal samRecordWithOrdinal,
                                 final OpticalDuplicateFinder opticalDuplicateFinder, final short libraryId) {
@@ -112,12 +132,61 @@ public class ReadEndsForMateCigar extends ReadEnds {
     /** A number of convenience functions */
     public SamRecordWithOrdinal getSamRecordIndex() { return this.samRecordWithOrdinal; }
 
-    public SAMRecord getRecord() { return this.samRecordWithOrdinal.getRecord(); }
+    /** Returns true if the record is still held by this read end, false if it has been released. */
+    public boolean hasRecord() { return !this.recordReleased; }
+
+    public SAMRecord getRecord() {
+        if (this.recordReleased) throw new GATKException("The record for " + this.readName + " has already been released");
+        return this.samRecordWithOrdinal.getRecord();
+    }
+
+    public String getRecordReadName() { return this.recordReleased ? this.readName : getRecord().getReadName(); }
+
+    public String getCanonicalRecordName() {
+        return this.recordReleased ? this.canonicalRecordName : SAMUtils.getCanonicalRecordName(getRecord());
+    }
+
+    public boolean isFirstOfPair() { return this.recordReleased ? this.firstOfPair : getRecord().getFirstOfPairFlag(); }
+
+    public boolean isMateUnmapped() { return this.recordReleased ? this.mateUnmapped : getRecord().getMateUnmappedFlag(); }
 
-    public String getRecordReadName() { return this.samRecordWithOrdinal.getRecord().getReadName(); }
+    public Cigar getCigar() { return this.recordReleased ? this.cigar : getRecord().getCigar(); }
+
+    public String getLibraryName(final SAMFileHeader header) {
+        return this.recordReleased ? this.libraryName : LibraryIdGenerator.getLibraryName(header, getRecord());
+    }
 
     @Override
-    public boolean isPaired() { return this.getRecord().getReadPairedFlag(); }
+    public boolean isPaired() { return this.recordReleased ? this.readPaired : getRecord().getReadPairedFlag(); }
+
+    /** Gets the duplicate score of the record, assuming the mate cigar is present, which is cached after the first call. */
+    public short getDuplicateScore(final ScoringStrategy duplicateScoringStrategy) {
+        if (this.duplicateScoringStrategy != duplicateScoringStrategy) {
+            if (this.recordReleased) throw new GATKException("Cannot compute a new duplicate score for a released record");
+            this.duplicateScore = DuplicateScoringStrategy.computeDuplicateScore(getRecord(), duplicateScoringStrategy, true);
+            this.duplicateScoringStrategy = duplicateScoringStrategy;
+        }
+        return this.duplicateScore;
+    }
+
+    /**
+     * Stores the attributes of the record needed for duplicate marking and drops the reference to the record itself, so that
+     * it is only held by the output buffer, which may spill it to disk.  The ordinal of the record is kept.
+     */
+    public void releaseRecord(final ScoringStrategy duplicateScoringStrategy, final SAMFileHeader header) {
+        if (this.recordReleased) return;
+        final SAMRecord record = getRecord();
+        getDuplicateScore(duplicateScoringStrategy);
+        this.readPaired = record.getReadPairedFlag();
+        this.firstOfPair = this.readPaired && record.getFirstOfPairFlag();
+        this.mateUnmapped = this.readPaired && record.getMateUnmappedFlag();
+        this.readName = record.getReadName();
+        this.canonicalRecordName = SAMUtils.getCanonicalRecordName(record);
+        this.libraryName = LibraryIdGenerator.getLibraryName(header, record);
+        this.cigar = record.getCigar();
+        this.samRecordWithOrdinal.setRecord(null);
+        this.recordReleased = true;
+    }
 
     /** Gets the read ends for optical duplicate tracking */
     public Set<ReadEnds> getReadEndSetForOpticalDuplicates() {
@@ -7,6 +7,13 @@ import java.io.File;
 public class RuntimeUtils {
     public static final String[] PATHS;
 
+    /**
+     * The part of the doc of a NUM_PROCESSORS argument that explains how {@link #getNumProcessors(int)} resolves it.
+     */
+    public static final String NUM_PROCESSORS_DOC = "If NUM_PROCESSORS = 0, number of cores is automatically set to " +
+            "the number of cores available on the machine. If NUM_PROCESSORS < 0 then the number of cores used will be " +
+            "the number available on the machine less NUM_PROCESSORS.";
+
     static {
         String path = System.getenv("PATH");
         if (path == null)
@@ -31,4 +38,18 @@ public class RuntimeUtils {
         }
         return null;
     }
+
+    /**
+     * Resolves the value of a NUM_PROCESSORS argument into a number of threads: all the cores of the machine if it is 0,
+     * that many fewer than all of them (but at least 1) if it is negative, and the value itself otherwise.
+     */
+    public static int getNumProcessors(final int numProcessors) {
+        if (numProcessors == 0) {
+            return Runtime.getRuntime().availableProcessors();
+        } else if (numProcessors < 0) {
+            return Math.max(1, Runtime.getRuntime().availableProcessors() + numProcessors);
+        } else {
+            return numProcessors;
+        }
+    }
 }
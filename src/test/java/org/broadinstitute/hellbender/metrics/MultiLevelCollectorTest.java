@@ -112,6 +112,11 @@ public class MultiLevelCollectorTest {
                 metric.FINISHED = true;
             }
 
+            @Override
+            public void merge(final PerUnitMetricCollector<TotalNumberMetric, Integer, TestArg> other) {
+                metric.TALLY += ((RecordCountPerUnitCollector) other).metric.TALLY;
+            }
+
             @Override
             public void addMetricsToFile(final MetricsFile<TotalNumberMetric, Integer> totalNumberMetricIntegerMetricsFile) {
                 totalNumberMetricIntegerMetricsFile.addMetric(metric);
@@ -185,4 +190,32 @@ public class MultiLevelCollectorTest {
         Assert.assertEquals(totalProcessed, collector.getNumProcessed());
         CloserUtil.close(in);
     }
+
+    @Test(dataProvider = "variedAccumulationLevels")
+    public void mergedCollectorsTest(final Set<MetricAccumulationLevel> accumulationLevels) {
+        final SamReader in = SamReaderFactory.makeDefault().open(TESTFILE);
+        final List<RecordCountMultiLevelCollector> shards = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            shards.add(new RecordCountMultiLevelCollector(accumulationLevels, in.getFileHeader().getReadGroups()));
+        }
+
+        int recordIndex = 0;
+        for (final SAMRecord rec : in) {
+            shards.get(recordIndex++ % shards.size()).acceptRecord(rec, null);
+        }
+
+        final RecordCountMultiLevelCollector collector = shards.get(0);
+        collector.merge(shards.get(1));
+        collector.merge(shards.get(2));
+        collector.finish();
+
+        for(final MetricAccumulationLevel level : accumulationLevels) {
+            for(final Map.Entry<String, Integer> entry : accumulationLevelToPerUnitReads.get(level).entrySet()) {
+                final TotalNumberMetric metric = collector.getUnitsToMetrics().get(entry.getKey());
+                Assert.assertEquals(entry.getValue(), metric.TALLY);
+                Assert.assertTrue(metric.FINISHED);
+            }
+        }
+        CloserUtil.close(in);
+    }
 }
@@ -1,7 +1,15 @@
 package org.broadinstitute.hellbender.tools.picard.analysis;
 
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.metrics.MetricsFile;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFileWalker;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.metrics.MetricAccumulationLevel;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -9,6 +17,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.*;
 
 /**
  * Tests CollectAlignmentSummaryStatistics
@@ -482,4 +491,112 @@ public class CollectAlignmentSummaryMetricsTest extends CommandLineProgramTest {
 
     }
 
+    @Test
+    public void testThreaded() throws IOException {
+        final File input = new File(TEST_DATA_DIR, "summary_alignment_stats_test.sam");
+        final File reference = new File(TEST_DATA_DIR, "summary_alignment_stats_test.fasta");
+
+        final List<List<AlignmentSummaryMetrics>> outputs = new ArrayList<>();
+        for (final boolean useThreading : new boolean[]{false, true}) {
+            final File outfile = File.createTempFile("alignmentMetrics", ".txt");
+            outfile.deleteOnExit();
+            final String[] args = new String[] {
+                    "--INPUT", input.getAbsolutePath(),
+                    "--OUTPUT", outfile.getAbsolutePath(),
+                    "--REFERENCE_SEQUENCE", reference.getAbsolutePath(),
+                    "--USE_THREADING", Boolean.toString(useThreading)
+            };
+            runCommandLine(args);
+
+            final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> output = new MetricsFile<AlignmentSummaryMetrics, Comparable<?>>();
+            output.read(new FileReader(outfile));
+            outputs.add(output.getMetrics());
+        }
+        Assert.assertFalse(outputs.get(0).isEmpty());
+        Assert.assertEquals(outputs.get(1), outputs.get(0));
+    }
+
+    @Test
+    public void testMergedCollectors() throws IOException {
+        final File input = new File(TEST_DATA_DIR, "summary_alignment_stats_test.sam");
+        final File reference = new File(TEST_DATA_DIR, "summary_alignment_stats_test.fasta");
+        final Set<MetricAccumulationLevel> levels = EnumSet.allOf(MetricAccumulationLevel.class);
+        final List<String> adapters = new CollectAlignmentSummaryMetrics().ADAPTER_SEQUENCE;
+
+        try (final SamReader in = SamReaderFactory.makeDefault().open(input)) {
+            final ReferenceSequenceFileWalker walker = new ReferenceSequenceFileWalker(reference);
+            final List<SAMReadGroupRecord> readGroups = in.getFileHeader().getReadGroups();
+            final AlignmentSummaryMetricsCollector whole = new AlignmentSummaryMetricsCollector(levels, readGroups, true, adapters, 100000, false);
+            final List<AlignmentSummaryMetricsCollector> shards = new ArrayList<>();
+            for (int i = 0; i < 3; ++i) {
+                shards.add(new AlignmentSummaryMetricsCollector(levels, readGroups, true, adapters, 100000, false));
+            }
+
+            int recordIndex = 0;
+            for (final SAMRecord rec : in) {
+                final ReferenceSequence ref = rec.getReadUnmappedFlag() ? null : walker.get(rec.getReferenceIndex());
+                whole.acceptRecord(rec, ref);
+                shards.get(recordIndex++ % shards.size()).acceptRecord(rec, ref);
+            }
+
+            final AlignmentSummaryMetricsCollector merged = shards.get(0);
+            merged.merge(shards.get(1));
+            merged.merge(shards.get(2));
+
+            whole.finish();
+            merged.finish();
+            final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> expected = new MetricsFile<>();
+            whole.addAllLevelsToFile(expected);
+            final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> actual = new MetricsFile<>();
+            merged.addAllLevelsToFile(actual);
+            Assert.assertEquals(actual.getMetrics(), expected.getMetrics());
+        }
+    }
+
+    @Test
+    public void testSampled() throws IOException {
+        final File input = new File(getTestDataDir(), "BQSR/HiSeq.1mb.1RG.2k_lines.bam");
+        final File outfile = File.createTempFile("alignmentMetrics", ".txt");
+        outfile.deleteOnExit();
+        final File estimatesFile = new File(outfile.getPath() + SinglePassSamProgram.SAMPLED_ESTIMATES_EXTENSION);
+        estimatesFile.deleteOnExit();
+        final String[] args = new String[] {
+                "--INPUT", input.getAbsolutePath(),
+                "--OUTPUT", outfile.getAbsolutePath(),
+                "--SAMPLE_SIZE", "200",
+                "--SAMPLE_REGIONS", "20"
+        };
+        runCommandLine(args);
+
+        final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> output = new MetricsFile<AlignmentSummaryMetrics, Comparable<?>>();
+        output.read(new FileReader(outfile));
+        long totalReads = 0;
+        for (final AlignmentSummaryMetrics metrics : output.getMetrics()) {
+            if (metrics.CATEGORY == AlignmentSummaryMetrics.Category.PAIR || metrics.CATEGORY == AlignmentSummaryMetrics.Category.UNPAIRED) {
+                totalReads += metrics.TOTAL_READS;
+            }
+        }
+        Assert.assertTrue(totalReads > 0 && totalReads <= 200, "sampled " + totalReads + " reads");
+
+        final MetricsFile<MetricEstimate, Comparable<?>> estimates = new MetricsFile<MetricEstimate, Comparable<?>>();
+        estimates.read(new FileReader(estimatesFile));
+        Assert.assertFalse(estimates.getMetrics().isEmpty());
+        for (final MetricEstimate estimate : estimates.getMetrics()) {
+            Assert.assertTrue(estimate.OBSERVATIONS <= totalReads, estimate.METRIC);
+            Assert.assertTrue(estimate.LOWER_BOUND <= estimate.ESTIMATE && estimate.ESTIMATE <= estimate.UPPER_BOUND, estimate.METRIC);
+        }
+    }
+
+    @Test(expectedExceptions = UserException.class)
+    public void testSampledWithoutIndex() throws IOException {
+        final File input = new File(TEST_DATA_DIR, "summary_alignment_stats_test.sam");
+        final File outfile = File.createTempFile("alignmentMetrics", ".txt");
+        outfile.deleteOnExit();
+        final String[] args = new String[] {
+                "--INPUT", input.getAbsolutePath(),
+                "--OUTPUT", outfile.getAbsolutePath(),
+                "--SAMPLE_SIZE", "10"
+        };
+        runCommandLine(args);
+    }
 }
@@ -0,0 +1,164 @@
+package org.broadinstitute.hellbender.tools.picard.analysis;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSetBuilder;
+import htsjdk.samtools.metrics.MetricsFile;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.reference.ReferenceSequenceFileWalker;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.StringUtil;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests CollectGcBiasMetrics against the GC of the windows of the reference computed directly
+ */
+public final class CollectGcBiasMetricsTest extends CommandLineProgramTest {
+
+    private static final int WINDOW_SIZE = 100;
+    private static final int NUM_PAIRS = 2000;
+
+    /** The directories the reference has been copied to, along with the GC profiles written next to it */
+    private final List<File> referenceDirs = new ArrayList<>();
+
+    public String getCommandLineProgramName() {
+        return CollectGcBiasMetrics.class.getSimpleName();
+    }
+
+    @AfterClass
+    public void deleteReferenceDirs() {
+        for (final File dir : referenceDirs) IOUtil.deleteDirectoryTree(dir);
+    }
+
+    /** Copies the reference to a temporary directory, so that the GC profile is written there. */
+    private File copyReference() throws IOException {
+        final File dir = Files.createTempDirectory("collectGcBiasMetrics").toFile();
+        referenceDirs.add(dir);
+        for (final String extension : new String[]{".fasta", ".fasta.fai", ".dict"}) {
+            final File source = new File(hg19MiniReference.replace(".fasta", extension));
+            IOUtil.copyFile(source, new File(dir, source.getName()));
+        }
+        return new File(dir, new File(hg19MiniReference).getName());
+    }
+
+    /** Pairs on every sequence of the reference, on both strands */
+    private static SAMRecordSetBuilder makeRecords(final File reference) {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        final ReferenceSequenceFile ref = ReferenceSequenceFileFactory.getReferenceSequenceFile(reference);
+        builder.getHeader().setSequenceDictionary(ref.getSequenceDictionary());
+        final int numSequences = ref.getSequenceDictionary().size();
+        builder.setRandomSeed(0);
+        for (int i = 0; i < NUM_PAIRS; i++) {
+            final int start = 1 + (i * 97) % 15000;
+            builder.addPair("pair" + i, i % numSequences, start, start + 50 + i % 500);
+        }
+        builder.addUnmappedPair("unmapped");
+        return builder;
+    }
+
+    private static File writeSam(final SAMRecordSetBuilder builder) throws IOException {
+        final File sam = createTempFile("collectGcBiasMetrics.", ".sam");
+        final SAMFileWriter writer = new SAMFileWriterFactory().makeSAMWriter(builder.getHeader(), false, sam);
+        for (final SAMRecord rec : builder) writer.addAlignment(rec);
+        writer.close();
+        return sam;
+    }
+
+    private File runCollectGcBiasMetrics(final File input, final File reference, final int numProcessors) throws IOException {
+        final File output = createTempFile("collectGcBiasMetrics.", ".gc_bias_metrics");
+        final File summary = createTempFile("collectGcBiasMetrics.", ".gc_bias_summary_metrics");
+        final File chart = createTempFile("collectGcBiasMetrics.", ".pdf");
+        final String[] args = new String[]{
+                "--INPUT", input.getAbsolutePath(),
+                "--OUTPUT", output.getAbsolutePath(),
+                "--SUMMARY_OUTPUT", summary.getAbsolutePath(),
+                "--CHART_OUTPUT", chart.getAbsolutePath(),
+                "--REFERENCE_SEQUENCE", reference.getAbsolutePath(),
+                "--WINDOW_SIZE", Integer.toString(WINDOW_SIZE),
+                "--NUM_PROCESSORS", Integer.toString(numProcessors)
+        };
+        Assert.assertEquals(runCommandLine(args), null);
+        return output;
+    }
+
+    private static List<GcBiasDetailMetrics> readMetrics(final File output) throws IOException {
+        final MetricsFile<GcBiasDetailMetrics, Comparable<?>> metrics = new MetricsFile<>();
+        try (final FileReader reader = new FileReader(output)) {
+            metrics.read(reader);
+        }
+        return metrics.getMetrics();
+    }
+
+    @DataProvider(name = "numProcessors")
+    public Object[][] numProcessors() {
+        return new Object[][]{{1}, {3}};
+    }
+
+    @Test(dataProvider = "numProcessors")
+    public void testMetricsMatchReference(final int numProcessors) throws IOException {
+        final File reference = copyReference();
+        final SAMRecordSetBuilder builder = makeRecords(reference);
+        final List<GcBiasDetailMetrics> metrics = readMetrics(runCollectGcBiasMetrics(writeSam(builder), reference, numProcessors));
+
+        // count the windows and read starts at each GC from the bases of the reference
+        final int[] windowsByGc = new int[ReferenceGcProfile.GC_BINS];
+        final long[] readsByGc = new long[ReferenceGcProfile.GC_BINS];
+        final ReferenceSequenceFileWalker walker = new ReferenceSequenceFileWalker(reference);
+        final Map<Integer, byte[]> gcsBySequence = new HashMap<>();
+        for (int i = 0; i < walker.getSequenceDictionary().size(); i++) {
+            final byte[] bases = walker.get(i).getBases();
+            StringUtil.toUpperCase(bases);
+            gcsBySequence.put(i, ReferenceGcProfile.calculateAllGcs(bases, WINDOW_SIZE, windowsByGc));
+        }
+        walker.close();
+        for (final SAMRecord rec : builder) {
+            if (rec.getReadUnmappedFlag()) continue;
+            final int pos = rec.getReadNegativeStrandFlag() ? rec.getAlignmentEnd() - WINDOW_SIZE : rec.getAlignmentStart();
+            if (pos <= 0) continue;
+            final int gc = gcsBySequence.get(rec.getReferenceIndex())[pos];
+            if (gc >= 0) ++readsByGc[gc];
+        }
+
+        int numBins = 0;
+        for (int gc = 0; gc < ReferenceGcProfile.GC_BINS; gc++) {
+            if (windowsByGc[gc] > 0) ++numBins;
+        }
+        Assert.assertEquals(metrics.size(), numBins);
+        long totalReadStarts = 0;
+        for (final GcBiasDetailMetrics metric : metrics) {
+            Assert.assertEquals(metric.WINDOWS, windowsByGc[metric.GC], "windows at GC " + metric.GC);
+            Assert.assertEquals(metric.READ_STARTS, readsByGc[metric.GC], "read starts at GC " + metric.GC);
+            totalReadStarts += metric.READ_STARTS;
+        }
+        Assert.assertTrue(totalReadStarts > NUM_PAIRS / 4, "only " + totalReadStarts + " read starts");
+    }
+
+    @Test
+    public void testSavedProfileGivesTheSameMetrics() throws IOException {
+        final File reference = copyReference();
+        final File input = writeSam(makeRecords(reference));
+        final List<GcBiasDetailMetrics> expected = readMetrics(runCollectGcBiasMetrics(input, reference, 2));
+        final File sidecar = ReferenceGcProfile.getSidecarFile(reference, WINDOW_SIZE);
+        Assert.assertTrue(sidecar.exists());
+        final long lastModified = sidecar.lastModified();
+
+        Assert.assertEquals(readMetrics(runCollectGcBiasMetrics(input, reference, 1)), expected);
+        Assert.assertEquals(sidecar.lastModified(), lastModified);
+    }
+}
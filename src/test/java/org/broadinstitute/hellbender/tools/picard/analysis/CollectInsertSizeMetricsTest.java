@@ -1,13 +1,19 @@
 package org.broadinstitute.hellbender.tools.picard.analysis;
 
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.metrics.MetricsFile;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.metrics.MetricAccumulationLevel;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.*;
 
 /**
  * Tests multi-level CollectInsertSizeMetrics
@@ -174,4 +180,38 @@ public class CollectInsertSizeMetricsTest extends CommandLineProgramTest {
             }
         }
     }
+
+    @Test
+    public void testMergedCollectors() throws IOException {
+        final File input = new File(TEST_DATA_DIR, "insert_size_metrics_test.sam");
+        final Set<MetricAccumulationLevel> levels = EnumSet.allOf(MetricAccumulationLevel.class);
+
+        try (final SamReader in = SamReaderFactory.makeDefault().open(input)) {
+            final List<SAMReadGroupRecord> readGroups = in.getFileHeader().getReadGroups();
+            final InsertSizeMetricsCollector whole = new InsertSizeMetricsCollector(levels, readGroups, 0.05, null, 10);
+            final List<InsertSizeMetricsCollector> shards = new ArrayList<>();
+            for (int i = 0; i < 3; ++i) {
+                shards.add(new InsertSizeMetricsCollector(levels, readGroups, 0.05, null, 10));
+            }
+
+            int recordIndex = 0;
+            for (final SAMRecord rec : in) {
+                whole.acceptRecord(rec, null);
+                shards.get(recordIndex++ % shards.size()).acceptRecord(rec, null);
+            }
+
+            final InsertSizeMetricsCollector merged = shards.get(0);
+            merged.merge(shards.get(1));
+            merged.merge(shards.get(2));
+
+            whole.finish();
+            merged.finish();
+            final MetricsFile<InsertSizeMetrics, Integer> expected = new MetricsFile<>();
+            whole.addAllLevelsToFile(expected);
+            final MetricsFile<InsertSizeMetrics, Integer> actual = new MetricsFile<>();
+            merged.addAllLevelsToFile(actual);
+            Assert.assertEquals(actual.getMetrics(), expected.getMetrics());
+            Assert.assertFalse(actual.getMetrics().isEmpty());
+        }
+    }
 }
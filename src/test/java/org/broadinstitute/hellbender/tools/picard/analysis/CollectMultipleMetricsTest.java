@@ -0,0 +1,104 @@
+package org.broadinstitute.hellbender.tools.picard.analysis;
+
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSetBuilder;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests running the metrics programs of CollectMultipleMetrics on their own threads
+ */
+public class CollectMultipleMetricsTest extends CommandLineProgramTest {
+
+    /** Enough records for several of the batches handed to the program threads */
+    private static final int NUM_PAIRS = 5000;
+
+    private static final String[] EXTENSIONS = {".alignment_summary_metrics", ".insert_size_metrics",
+            ".quality_distribution_metrics", ".quality_by_cycle_metrics", ".base_distribution_by_cycle_metrics"};
+
+    public String getCommandLineProgramName() {
+        return CollectMultipleMetrics.class.getSimpleName();
+    }
+
+    private static File writeSam() throws IOException {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        builder.setRandomSeed(0);
+        for (int i = 0; i < NUM_PAIRS; i++) {
+            builder.addPair("pair" + i, i % 3, 1 + (i * 37) % 10000, 1 + (i * 37) % 10000 + 100 + i % 200);
+        }
+        builder.addUnmappedPair("unmapped");
+
+        final File sam = createTempFile("collectMultipleMetrics.", ".sam");
+        final SAMFileWriter writer = new SAMFileWriterFactory().makeSAMWriter(builder.getHeader(), false, sam);
+        for (final SAMRecord rec : builder) writer.addAlignment(rec);
+        writer.close();
+        return sam;
+    }
+
+    private String runCollectMultipleMetrics(final File input, final boolean useThreading) throws IOException {
+        final File outputDir = Files.createTempDirectory("collectMultipleMetrics.").toFile();
+        outputDir.deleteOnExit();
+        final String output = new File(outputDir, "metrics").getAbsolutePath();
+        final List<String> args = new ArrayList<>();
+        args.add("--INPUT");
+        args.add(input.getAbsolutePath());
+        args.add("--OUTPUT");
+        args.add(output);
+        args.add("--USE_THREADING");
+        args.add(Boolean.toString(useThreading));
+        runCommandLine(args);
+        for (final File file : outputDir.listFiles()) file.deleteOnExit();
+        return output;
+    }
+
+    /** The metric lines of a metrics file, without the header lines that hold the command line and date */
+    private static List<String> readMetrics(final File file) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        for (final String line : Files.readAllLines(file.toPath())) {
+            if (!line.startsWith("#")) lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test
+    public void testThreadedMatchesSerial() throws IOException {
+        final File input = writeSam();
+        final String serial = runCollectMultipleMetrics(input, false);
+        final String threaded = runCollectMultipleMetrics(input, true);
+        for (final String extension : EXTENSIONS) {
+            final List<String> expected = readMetrics(new File(serial + extension));
+            Assert.assertFalse(expected.isEmpty(), extension);
+            Assert.assertEquals(readMetrics(new File(threaded + extension)), expected, extension);
+        }
+    }
+
+    @Test
+    public void testThreadsStopWhenReadingFails() throws IOException {
+        final File input = writeSam();
+        try (final PrintWriter writer = new PrintWriter(new FileWriter(input, true))) {
+            writer.println("malformed\trecord");
+        }
+        try {
+            runCollectMultipleMetrics(input, true);
+            Assert.fail("expected the malformed record to fail");
+        } catch (final SAMException e) {
+            // expected
+        }
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            Assert.assertFalse(thread.getName().startsWith("SinglePassSamProgram-"), thread.getName() + " is still running");
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package org.broadinstitute.hellbender.tools.picard.analysis;
+
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.filter.DuplicateReadFilter;
+import htsjdk.samtools.filter.NotPrimaryAlignmentFilter;
+import htsjdk.samtools.filter.SamRecordFilter;
+import htsjdk.samtools.metrics.MetricsFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileWalker;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.IntervalList;
+import htsjdk.samtools.util.SamLocusIterator;
+import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.samtools.util.StringUtil;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.tools.picard.analysis.CollectOxoGMetrics.CpcgMetrics;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+
+import static htsjdk.samtools.util.CodeUtil.getOrElse;
+import static java.lang.Math.log10;
+
+/**
+ * Tests CollectOxoGMetrics against the metrics of the original per-library, per-context calculation, both when
+ * the input is read in a single pass and when each contig is accumulated on its own thread.
+ */
+public class CollectOxoGMetricsTest extends CommandLineProgramTest {
+    private static final File TEST_DATA_DIR = new File(getTestDataDir(), "picard/analysis/CollectOxoGMetrics");
+    private static final File REFERENCE = new File(TEST_DATA_DIR, "test.fasta");
+    private static final File TEST_SAM = new File(TEST_DATA_DIR, "test.sam");
+    private static final File INTERVALS = new File(TEST_DATA_DIR, "test.interval_list");
+
+    private static final int MINIMUM_QUALITY_SCORE = 20;
+    private static final int MINIMUM_MAPPING_QUALITY = 30;
+
+    public String getCommandLineProgramName() {
+        return CollectOxoGMetrics.class.getSimpleName();
+    }
+
+    @DataProvider(name = "data")
+    public Object[][] testData() {
+        // the reference has C/G bases within CONTEXT_SIZE of both ends of each contig, and an N in chr2
+        return new Object[][]{
+                {1, false, Collections.<String>emptyList()},
+                {1, true, Collections.<String>emptyList()},
+                {1, false, Arrays.asList("ACG", "CCG", "GCA", "TCG")},
+                {1, true, Arrays.asList("ACG", "CCG", "GCA", "TCG")},
+                {3, false, Collections.<String>emptyList()},
+                {3, true, Collections.<String>emptyList()},
+                {3, false, Arrays.asList("AACCGGT", "ATCCGGC", "ATGCCGG")},
+                {3, true, Arrays.asList("AACCGGT", "ATCCGGC", "ATGCCGG")},
+        };
+    }
+
+    @Test(dataProvider = "data")
+    public void testAgainstBaseline(final int contextSize, final boolean useIntervals, final List<String> contexts) throws IOException {
+        final File bam = makeIndexedBam(TEST_SAM);
+
+        final List<CpcgMetrics> sequential = runOxoG(bam, 1, contextSize, useIntervals, contexts);
+        final List<CpcgMetrics> byContig = runOxoG(bam, 4, contextSize, useIntervals, contexts);
+        Assert.assertEquals(byContig, sequential);
+
+        final Map<String, CpcgMetrics> expected = byContextAndLibrary(roundTrip(
+                baselineMetrics(bam, contextSize, useIntervals ? INTERVALS : null, contexts)));
+        Assert.assertEquals(byContextAndLibrary(sequential), expected);
+
+        // make sure that the test is not vacuous
+        int sites = 0;
+        for (final CpcgMetrics m : sequential) {
+            sites += m.TOTAL_SITES;
+        }
+        Assert.assertTrue(sites > 0);
+    }
+
+    @Test
+    public void testUnindexedInput() throws IOException {
+        // an unindexed input is read in a single pass even when NUM_PROCESSORS > 1
+        final List<CpcgMetrics> sequential = runOxoG(TEST_SAM, 1, 1, false, Collections.<String>emptyList());
+        final List<CpcgMetrics> parallel = runOxoG(TEST_SAM, 4, 1, false, Collections.<String>emptyList());
+        Assert.assertEquals(parallel, sequential);
+    }
+
+    private List<CpcgMetrics> runOxoG(final File input, final int numProcessors, final int contextSize,
+                                      final boolean useIntervals, final List<String> contexts) throws IOException {
+        final File outfile = File.createTempFile("oxoG", ".txt");
+        outfile.deleteOnExit();
+        final List<String> args = new ArrayList<>();
+        args.add("--INPUT");
+        args.add(input.getAbsolutePath());
+        args.add("--OUTPUT");
+        args.add(outfile.getAbsolutePath());
+        args.add("--REFERENCE_SEQUENCE");
+        args.add(REFERENCE.getAbsolutePath());
+        args.add("--MINIMUM_INSERT_SIZE");
+        args.add("0");
+        args.add("--MAXIMUM_INSERT_SIZE");
+        args.add("0");
+        args.add("--CONTEXT_SIZE");
+        args.add(Integer.toString(contextSize));
+        args.add("--NUM_PROCESSORS");
+        args.add(Integer.toString(numProcessors));
+        if (useIntervals) {
+            args.add("--INTERVALS");
+            args.add(INTERVALS.getAbsolutePath());
+        }
+        for (final String context : contexts) {
+            args.add("--CONTEXTS");
+            args.add(context);
+        }
+        runCommandLine(args);
+
+        final MetricsFile<CpcgMetrics, Comparable<?>> output = new MetricsFile<CpcgMetrics, Comparable<?>>();
+        output.read(new FileReader(outfile));
+        return output.getMetrics();
+    }
+
+    private static File makeIndexedBam(final File sam) throws IOException {
+        final File bam = File.createTempFile("CollectOxoGMetrics.", ".bam");
+        bam.deleteOnExit();
+        new File(bam.getParent(), IOUtil.basename(bam) + BAMIndex.BAMIndexSuffix).deleteOnExit();
+        try (final SamReader in = SamReaderFactory.makeDefault().open(sam)) {
+            final SAMFileWriter out = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(in.getFileHeader(), true, bam);
+            for (final SAMRecord rec : in) {
+                out.addAlignment(rec);
+            }
+            out.close();
+        }
+        return bam;
+    }
+
+    /** Writes and reads back metrics, so that their doubles are formatted as they are in the output of the tool. */
+    private static List<CpcgMetrics> roundTrip(final List<CpcgMetrics> metrics) throws IOException {
+        final File file = File.createTempFile("oxoG", ".baseline.txt");
+        file.deleteOnExit();
+        final MetricsFile<CpcgMetrics, Comparable<?>> out = new MetricsFile<CpcgMetrics, Comparable<?>>();
+        for (final CpcgMetrics m : metrics) {
+            out.addMetric(m);
+        }
+        out.write(file);
+        final MetricsFile<CpcgMetrics, Comparable<?>> in = new MetricsFile<CpcgMetrics, Comparable<?>>();
+        in.read(new FileReader(file));
+        return in.getMetrics();
+    }
+
+    private static Map<String, CpcgMetrics> byContextAndLibrary(final List<CpcgMetrics> metrics) {
+        final Map<String, CpcgMetrics> map = new HashMap<>();
+        for (final CpcgMetrics m : metrics) {
+            Assert.assertNull(map.put(m.CONTEXT + "\t" + m.LIBRARY, m), "duplicate metrics for " + m.CONTEXT + " " + m.LIBRARY);
+        }
+        return map;
+    }
+
+    /**
+     * Computes the metrics as the tool did before its counts were packed, one calculator per context and library,
+     * using string contexts. Sites too close to the ends of a contig to have a full context are skipped.
+     */
+    private static List<CpcgMetrics> baselineMetrics(final File input, final int contextSize, final File intervals,
+                                                     final List<String> requestedContexts) throws IOException {
+        final Set<String> contexts = new HashSet<>(requestedContexts);
+        if (contexts.isEmpty()) {
+            for (final byte[] kmer : SequenceUtil.generateAllKmers(2 * contextSize + 1)) {
+                if (kmer[contextSize] == 'C') contexts.add(StringUtil.bytesToString(kmer));
+            }
+        }
+
+        try (final SamReader in = SamReaderFactory.makeDefault().open(input)) {
+            final Set<String> samples = new HashSet<>();
+            final Set<String> libraries = new HashSet<>();
+            for (final SAMReadGroupRecord rec : in.getFileHeader().getReadGroups()) {
+                samples.add(getOrElse(rec.getSample(), "UnknownSample"));
+                libraries.add(getOrElse(rec.getLibrary(), "UnknownLibrary"));
+            }
+
+            final Map<String, BaselineCalculator> calculators = new LinkedHashMap<>();
+            for (final String context : contexts) {
+                for (final String library : libraries) {
+                    calculators.put(context + "\t" + library, new BaselineCalculator(library, context));
+                }
+            }
+
+            final ReferenceSequenceFileWalker refWalker = new ReferenceSequenceFileWalker(REFERENCE);
+            final SamLocusIterator iterator = (intervals == null) ? new SamLocusIterator(in)
+                    : new SamLocusIterator(in, IntervalList.fromFile(intervals).uniqued(), false);
+            iterator.setEmitUncoveredLoci(false);
+            iterator.setMappingQualityScoreCutoff(MINIMUM_MAPPING_QUALITY);
+            iterator.setSamFilters(Arrays.<SamRecordFilter>asList(new NotPrimaryAlignmentFilter(), new DuplicateReadFilter()));
+
+            for (final SamLocusIterator.LocusInfo info : iterator) {
+                final int pos = info.getPosition();
+                final int index = pos - 1;
+                final byte[] bases = refWalker.get(info.getSequenceIndex()).getBases();
+                if (pos < 3 || pos > bases.length - 3) continue;
+                if (index < contextSize || index + contextSize >= bases.length) continue;
+
+                final byte base = StringUtil.toUpperCase(bases[index]);
+                if (base != 'C' && base != 'G') continue;
+
+                final String tmp = StringUtil.bytesToString(bases, index - contextSize, 1 + (2 * contextSize)).toUpperCase();
+                final String context = (base == 'C') ? tmp : SequenceUtil.reverseComplement(tmp);
+                for (final String library : libraries) {
+                    final BaselineCalculator calc = calculators.get(context + "\t" + library);
+                    if (calc != null) calc.accept(info, base);
+                }
+            }
+            iterator.close();
+
+            final List<CpcgMetrics> metrics = new ArrayList<>();
+            for (final BaselineCalculator calc : calculators.values()) {
+                final CpcgMetrics m = calc.finish();
+                m.SAMPLE_ALIAS = StringUtil.join(",", new ArrayList<String>(samples));
+                metrics.add(m);
+            }
+            return metrics;
+        }
+    }
+
+    private static final class BaselineCalculator {
+        private final String library;
+        private final String context;
+
+        int sites = 0;
+        long refCcontrolA = 0;
+        long refCoxidatedA = 0;
+        long refCcontrolC = 0;
+        long refCoxidatedC = 0;
+        long refGcontrolA = 0;
+        long refGoxidatedA = 0;
+        long refGcontrolC = 0;
+        long refGoxidatedC = 0;
+
+        BaselineCalculator(final String library, final String context) {
+            this.library = library;
+            this.context = context;
+        }
+
+        void accept(final SamLocusIterator.LocusInfo info, final byte refBase) {
+            int controlA = 0, oxidatedA = 0, controlC = 0, oxidatedC = 0;
+            final byte altBase = (refBase == 'C') ? (byte) 'A' : (byte) 'T';
+
+            for (final SamLocusIterator.RecordAndOffset rec : info.getRecordAndPositions()) {
+                final SAMRecord samrec = rec.getRecord();
+                final byte[] oqs = samrec.getOriginalBaseQualities();
+                final byte qual = (oqs != null) ? oqs[rec.getOffset()] : rec.getBaseQuality();
+                if (qual < MINIMUM_QUALITY_SCORE) continue;
+                if (!library.equals(getOrElse(samrec.getReadGroup().getLibrary(), "UnknownLibrary"))) continue;
+
+                final byte base = rec.getReadBase();
+                final byte baseAsRead = samrec.getReadNegativeStrandFlag() ? SequenceUtil.complement(base) : base;
+                final int read = samrec.getReadPairedFlag() && samrec.getSecondOfPairFlag() ? 2 : 1;
+
+                if (base == refBase) {
+                    if (baseAsRead == 'G' && read == 1) ++oxidatedC;
+                    else if (baseAsRead == 'G' && read == 2) ++controlC;
+                    else if (baseAsRead == 'C' && read == 1) ++controlC;
+                    else if (baseAsRead == 'C' && read == 2) ++oxidatedC;
+                } else if (base == altBase) {
+                    if (baseAsRead == 'T' && read == 1) ++oxidatedA;
+                    else if (baseAsRead == 'T' && read == 2) ++controlA;
+                    else if (baseAsRead == 'A' && read == 1) ++controlA;
+                    else if (baseAsRead == 'A' && read == 2) ++oxidatedA;
+                }
+            }
+
+            if (controlA + oxidatedA + controlC + oxidatedC > 0) {
+                this.sites++;
+                if (refBase == 'C') {
+                    this.refCcontrolA += controlA;
+                    this.refCoxidatedA += oxidatedA;
+                    this.refCcontrolC += controlC;
+                    this.refCoxidatedC += oxidatedC;
+                } else {
+                    this.refGcontrolA += controlA;
+                    this.refGoxidatedA += oxidatedA;
+                    this.refGcontrolC += controlC;
+                    this.refGoxidatedC += oxidatedC;
+                }
+            }
+        }
+
+        CpcgMetrics finish() {
+            final CpcgMetrics m = new CpcgMetrics();
+            m.LIBRARY = this.library;
+            m.CONTEXT = this.context;
+            m.TOTAL_SITES = this.sites;
+            m.TOTAL_BASES = this.refCcontrolC + this.refCoxidatedC + this.refCcontrolA + this.refCoxidatedA +
+                    this.refGcontrolC + this.refGoxidatedC + this.refGcontrolA + this.refGoxidatedA;
+            m.REF_OXO_BASES = this.refCoxidatedC + refGoxidatedC;
+            m.REF_NONOXO_BASES = this.refCcontrolC + this.refGcontrolC;
+            m.REF_TOTAL_BASES = m.REF_OXO_BASES + m.REF_NONOXO_BASES;
+            m.ALT_NONOXO_BASES = this.refCcontrolA + this.refGcontrolA;
+            m.ALT_OXO_BASES = this.refCoxidatedA + this.refGoxidatedA;
+            m.OXIDATION_ERROR_RATE = Math.max(m.ALT_OXO_BASES - m.ALT_NONOXO_BASES, 1) / (double) m.TOTAL_BASES;
+            m.OXIDATION_Q = -10 * log10(m.OXIDATION_ERROR_RATE);
+
+            m.C_REF_REF_BASES = this.refCcontrolC + this.refCoxidatedC;
+            m.G_REF_REF_BASES = this.refGcontrolC + this.refGoxidatedC;
+            m.C_REF_ALT_BASES = this.refCcontrolA + this.refCoxidatedA;
+            m.G_REF_ALT_BASES = this.refGcontrolA + this.refGoxidatedA;
+
+            final double cRefErrorRate = m.C_REF_ALT_BASES / (double) (m.C_REF_ALT_BASES + m.C_REF_REF_BASES);
+            final double gRefErrorRate = m.G_REF_ALT_BASES / (double) (m.G_REF_ALT_BASES + m.G_REF_REF_BASES);
+
+            m.C_REF_OXO_ERROR_RATE = Math.max(cRefErrorRate - gRefErrorRate, 1e-10);
+            m.G_REF_OXO_ERROR_RATE = Math.max(gRefErrorRate - cRefErrorRate, 1e-10);
+            m.C_REF_OXO_Q = -10 * log10(m.C_REF_OXO_ERROR_RATE);
+            m.G_REF_OXO_Q = -10 * log10(m.G_REF_OXO_ERROR_RATE);
+            return m;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.broadinstitute.hellbender.tools.picard.analysis;
+
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.StringUtil;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ReferenceGcProfileTest extends BaseTest {
+
+    private static final File REFERENCE = new File(hg19MiniReference);
+
+    /** The directories the reference has been copied to, along with the sidecar files written next to it */
+    private final List<File> referenceDirs = new ArrayList<>();
+
+    @AfterClass
+    public void deleteReferenceDirs() {
+        for (final File dir : referenceDirs) IOUtil.deleteDirectoryTree(dir);
+    }
+
+    @DataProvider(name = "profiles")
+    public Object[][] profiles() {
+        return new Object[][]{
+                {100, 1},
+                {100, 3},
+                {50, 2},
+                {20000, 1}, // longer than the sequences
+        };
+    }
+
+    @Test(dataProvider = "profiles")
+    public void testProfileMatchesReference(final int windowSize, final int numThreads) throws IOException {
+        final File reference = copyReference();
+        final ReferenceGcProfile profile = ReferenceGcProfile.load(reference, windowSize, numThreads);
+        Assert.assertTrue(ReferenceGcProfile.getSidecarFile(reference, windowSize).exists());
+        assertProfileMatchesReference(profile, reference, windowSize);
+    }
+
+    @Test
+    public void testSidecarIsReused() throws IOException {
+        final File reference = copyReference();
+        final File sidecar = ReferenceGcProfile.getSidecarFile(reference, 100);
+        ReferenceGcProfile.load(reference, 100, 1);
+        Assert.assertTrue(sidecar.setLastModified(reference.lastModified() + 10000));
+        final long lastModified = sidecar.lastModified();
+
+        final ReferenceGcProfile profile = ReferenceGcProfile.load(reference, 100, 1);
+        Assert.assertEquals(sidecar.lastModified(), lastModified);
+        assertProfileMatchesReference(profile, reference, 100);
+
+        // a sidecar that is older than the reference is computed again
+        Assert.assertTrue(reference.setLastModified(lastModified + 10000));
+        ReferenceGcProfile.load(reference, 100, 1);
+        Assert.assertNotEquals(sidecar.lastModified(), lastModified);
+    }
+
+    @Test
+    public void testNoTemporaryFilesAreLeft() throws IOException {
+        final File reference = copyReference();
+        ReferenceGcProfile.load(reference, 100, 2);
+        final String[] files = reference.getParentFile().list();
+        Assert.assertEquals(files.length, 4, String.join(", ", files));
+    }
+
+    @Test(expectedExceptions = UserException.MalformedFile.class)
+    public void testUnknownSequence() throws IOException {
+        ReferenceGcProfile.load(copyReference(), 100, 1).getGcs("chr1");
+    }
+
+    private static void assertProfileMatchesReference(final ReferenceGcProfile profile, final File reference, final int windowSize) {
+        final ReferenceSequenceFile ref = ReferenceSequenceFileFactory.getReferenceSequenceFile(reference);
+        int numSequences = 0;
+        for (ReferenceSequence sequence = ref.nextSequence(); sequence != null; sequence = ref.nextSequence()) {
+            final byte[] bases = sequence.getBases();
+            StringUtil.toUpperCase(bases);
+            final int[] windowsByGc = new int[ReferenceGcProfile.GC_BINS];
+            final byte[] gcs = ReferenceGcProfile.calculateAllGcs(bases, windowSize, windowsByGc);
+
+            Assert.assertEquals(profile.getGcs(sequence.getName()), gcs, sequence.getName());
+            Assert.assertEquals(profile.getWindowsByGc(sequence.getName()), windowsByGc, sequence.getName());
+            ++numSequences;
+        }
+        Assert.assertEquals(numSequences, 4);
+    }
+
+    /** Copies the reference to a temporary directory, so that the sidecar files are written there. */
+    private File copyReference() throws IOException {
+        final File dir = Files.createTempDirectory("referenceGcProfile").toFile();
+        referenceDirs.add(dir);
+        for (final String extension : new String[]{".fasta", ".fasta.fai", ".dict"}) {
+            final File source = new File(hg19MiniReference.replace(".fasta", extension));
+            IOUtil.copyFile(source, new File(dir, source.getName()));
+        }
+        return new File(dir, REFERENCE.getName());
+    }
+}
@@ -61,6 +61,19 @@ public class CollectSequencingArtifactMetricsTest extends CommandLineProgramTest
         assertAllFilesEqual(expected, actual);
     }
 
+    // the sampling arguments of SinglePassSamProgram are validated along with this program's own
+    @Test
+    public void testInvalidSampleRegions() {
+        final File actual = new File(globalTempOutputDir, "invalid_sample_regions");
+        runCommandLine(new String[]{
+                "--INPUT", TEST_SAM.getAbsolutePath(),
+                "--OUTPUT", actual.getAbsolutePath(),
+                "--REFERENCE_SEQUENCE", REFERENCE.getAbsolutePath(),
+                "--SAMPLE_SIZE", "10",
+                "--SAMPLE_REGIONS", "0"});
+        Assert.assertFalse(new File(actual + SequencingArtifactMetrics.PRE_ADAPTER_SUMMARY_EXT).exists());
+    }
+
     private void assertAllFilesEqual(final File expectedBase, final File actualBase) {
         boolean equal = areMetricsEqual(expectedBase, actualBase, SequencingArtifactMetrics.PRE_ADAPTER_SUMMARY_EXT);
         equal = equal && areMetricsEqual(expectedBase, actualBase, SequencingArtifactMetrics.PRE_ADAPTER_DETAILS_EXT);
@@ -83,6 +96,8 @@ public class CollectSequencingArtifactMetricsTest extends CommandLineProgramTest
                 {"no_bq_cutoff",   "--MIN_INS 30 --MAX_INS 30 --CONTEXT_SIZE 0 --MINIMUM_QUALITY_SCORE 0"},
                 {"no_mq_cutoff",   "--MIN_INS 30 --MAX_INS 30 --CONTEXT_SIZE 0 --MINIMUM_MAPPING_QUALITY 0"},
                 {"unmapped_mate",  "--MIN_INS 0  --MAX_INS 0  --CONTEXT_SIZE 0 --MINIMUM_MAPPING_QUALITY 0"},
+                {"with_context",   "--MIN_INS 30 --MAX_INS 30 --CONTEXT_SIZE 1 --NUM_PROCESSORS 3"},
+                {"with_intervals", "--MIN_INS 30 --MAX_INS 30 --CONTEXT_SIZE 0 --INTERVALS " + INTERVALS + " --NUM_PROCESSORS 3"},
         };
     }
 }
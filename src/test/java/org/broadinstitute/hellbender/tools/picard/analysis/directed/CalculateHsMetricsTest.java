@@ -0,0 +1,95 @@
+package org.broadinstitute.hellbender.tools.picard.analysis.directed;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.metrics.MetricsFile;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.CollectionUtil;
+import htsjdk.samtools.util.IntervalList;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.metrics.MetricAccumulationLevel;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+
+public final class CalculateHsMetricsTest extends CommandLineProgramTest {
+
+    private static final File TEST_DIR = new File(getTestDataDir(), "picard/analysis/directed/CalculateHsMetrics");
+    private static final File INPUT = new File(getTestDataDir(), "BQSR/NA12878.chr17_69k_70k.dictFix.bam");
+    // Has the same bases as the reference of the reads, but not the same MD5s, so it is only used for the GC of the targets
+    private static final File REFERENCE = new File(publicTestDir, "human_g1k_v37.chr17_1Mb.fasta");
+    private static final Set<MetricAccumulationLevel> LEVELS = CollectionUtil.makeSet(MetricAccumulationLevel.ALL_READS, MetricAccumulationLevel.SAMPLE);
+
+    @Test
+    public void testHsMetrics() throws IOException {
+        final File perTargetCoverage = createTempFile("hsMetrics", ".per_target_coverage");
+        final HsMetricCollector collector = makeCollector(perTargetCoverage);
+        try (final SamReader reader = openInput()) {
+            for (final SAMRecord record : reader) {
+                collector.acceptRecord(record, null);
+            }
+        }
+
+        assertMetricsAsExpected(collector);
+        Assert.assertEquals(Files.readAllLines(perTargetCoverage.toPath()),
+                Files.readAllLines(new File(TEST_DIR, "expected.per_target_coverage").toPath()));
+    }
+
+    @Test
+    public void testMergedCollectors() throws IOException {
+        final HsMetricCollector collector = makeCollector(null);
+        final HsMetricCollector other = makeCollector(null);
+        try (final SamReader reader = openInput()) {
+            int i = 0;
+            for (final SAMRecord record : reader) {
+                (i++ % 2 == 0 ? collector : other).acceptRecord(record, null);
+            }
+        }
+
+        collector.merge(other);
+        assertMetricsAsExpected(collector);
+    }
+
+    private static HsMetricCollector makeCollector(final File perTargetCoverage) throws IOException {
+        final IntervalList targets = IntervalList.fromFile(new File(TEST_DIR, "targets.interval_list"));
+        final IntervalList baits = IntervalList.fromFile(new File(TEST_DIR, "baits.interval_list"));
+        final ReferenceSequenceFile reference = ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE);
+        try (final SamReader reader = openInput()) {
+            return new HsMetricCollector(LEVELS, reader.getFileHeader().getReadGroups(), reference, perTargetCoverage, targets, baits, "baits");
+        }
+    }
+
+    private static SamReader openInput() {
+        // the NA12878 reads have mate fields that fail strict validation
+        return SamReaderFactory.makeDefault().validationStringency(ValidationStringency.LENIENT).open(INPUT);
+    }
+
+    private static void assertMetricsAsExpected(final HsMetricCollector collector) throws IOException {
+        collector.finish();
+        final MetricsFile<HsMetrics, Integer> collected = new MetricsFile<>();
+        collector.addAllLevelsToFile(collected);
+
+        // compare the metrics as written, since that is how the expected values were rounded
+        final File output = createTempFile("hsMetrics", ".txt");
+        collected.write(output);
+        final MetricsFile<HsMetrics, Integer> actual = new MetricsFile<>();
+        try (final FileReader reader = new FileReader(output)) {
+            actual.read(reader);
+        }
+
+        final MetricsFile<HsMetrics, Integer> expected = new MetricsFile<>();
+        try (final FileReader reader = new FileReader(new File(TEST_DIR, "expected.hs_metrics"))) {
+            expected.read(reader);
+        }
+        Assert.assertEquals(actual.getMetrics().size(), 2);
+        Assert.assertTrue(expected.areMetricsEqual(actual));
+    }
+}
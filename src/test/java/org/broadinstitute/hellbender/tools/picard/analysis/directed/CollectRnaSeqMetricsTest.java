@@ -9,14 +9,23 @@ import htsjdk.samtools.SAMRecordSetBuilder;
 import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.util.Interval;
 import htsjdk.samtools.util.IntervalList;
+import htsjdk.samtools.util.OverlapDetector;
 import htsjdk.samtools.util.StringUtil;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.metrics.MetricAccumulationLevel;
+import org.broadinstitute.hellbender.utils.gene.Gene;
+import org.broadinstitute.hellbender.utils.gene.GeneAnnotationReader;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.broadinstitute.hellbender.utils.gene.RefFlatReader.RefFlatColumns;
 
@@ -190,6 +199,66 @@ public class CollectRnaSeqMetricsTest extends CommandLineProgramTest {
         }
     }
 
+    @Test
+    public void testMergedCollectors() throws Exception {
+        final String sequence = "chr1";
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate, false);
+        builder.setRandomSeed(0);
+        final int sequenceIndex = builder.getHeader().getSequenceIndex(sequence);
+        final SAMReadGroupRecord rg1 = new SAMReadGroupRecord("2");
+        rg1.setSample("Sample");
+        rg1.setLibrary("foo");
+        builder.setReadGroup(rg1);
+        builder.addPair("pair1", sequenceIndex, 45, 475);
+        builder.addPair("pair2", sequenceIndex, 90, 225);
+        builder.addFrag("frag1", sequenceIndex, 150, true);
+        builder.addFrag("frag2", sequenceIndex, 450, true);
+        final SAMReadGroupRecord rg2 = new SAMReadGroupRecord("3");
+        rg2.setSample("Sample");
+        rg2.setLibrary("bar");
+        builder.setReadGroup(rg2);
+        builder.addPair("pair3", sequenceIndex, 120, 600);
+        builder.addFrag("frag3", sequenceIndex, 225, false);
+        builder.addPair("rrnaPair", sequenceIndex, 400, 500);
+
+        final SAMFileHeader header = builder.getHeader();
+        final IntervalList rRnaIntervalList = new IntervalList(header);
+        rRnaIntervalList.add(new Interval(sequence, 300, 520, true, "rRNA"));
+        final File rRnaIntervalsFile = File.createTempFile("tmp.rRna.", ".interval_list");
+        rRnaIntervalsFile.deleteOnExit();
+        rRnaIntervalList.write(rRnaIntervalsFile);
+
+        final Set<MetricAccumulationLevel> levels = EnumSet.allOf(MetricAccumulationLevel.class);
+        final OverlapDetector<Gene> genes = GeneAnnotationReader.loadRefFlat(getRefFlatFile(sequence), header.getSequenceDictionary());
+        final OverlapDetector<Interval> ribosomalIntervals = RnaSeqMetricsCollector.makeOverlapDetector(null, header, rRnaIntervalsFile);
+        final HashSet<Integer> ignoredSequences = new HashSet<>();
+        final List<RnaSeqMetricsCollector> collectors = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            collectors.add(new RnaSeqMetricsCollector(levels, header.getReadGroups(), 0L, genes, ribosomalIntervals, ignoredSequences,
+                    100, RnaSeqMetricsCollector.StrandSpecificity.SECOND_READ_TRANSCRIPTION_STRAND, 0.8, true));
+        }
+        final RnaSeqMetricsCollector whole = collectors.get(0);
+        int recordIndex = 0;
+        for (final SAMRecord rec : builder.getRecords()) {
+            whole.acceptRecord(rec, null);
+            collectors.get(1 + recordIndex++ % 3).acceptRecord(rec, null);
+        }
+
+        final RnaSeqMetricsCollector merged = collectors.get(1);
+        merged.merge(collectors.get(2));
+        merged.merge(collectors.get(3));
+
+        whole.finish();
+        merged.finish();
+        final MetricsFile<RnaSeqMetrics, Integer> expected = new MetricsFile<>();
+        whole.addAllLevelsToFile(expected);
+        final MetricsFile<RnaSeqMetrics, Integer> actual = new MetricsFile<>();
+        merged.addAllLevelsToFile(actual);
+        Assert.assertFalse(actual.getMetrics().isEmpty());
+        Assert.assertEquals(actual.getMetrics(), expected.getMetrics());
+        Assert.assertTrue(actual.areHistogramsEqual(expected));
+    }
+
     public File getRefFlatFile(String sequence) throws Exception {
         // Create a refFlat file with a single gene containing two exons, one of which is overlapped by the
         // ribosomal interval.
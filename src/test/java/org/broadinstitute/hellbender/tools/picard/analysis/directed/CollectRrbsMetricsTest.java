@@ -1,8 +1,16 @@
 package org.broadinstitute.hellbender.tools.picard.analysis.directed;
 
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.metrics.MetricsFile;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFileWalker;
+import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.metrics.MetricAccumulationLevel;
 import org.testng.Assert;
 import org.testng.annotations.AfterTest;
 import org.testng.annotations.BeforeTest;
@@ -53,6 +61,47 @@ public class CollectRrbsMetricsTest extends CommandLineProgramTest {
 		Assert.assertEquals(metrics.READS_IGNORED_MISMATCHES.intValue(), 1);
 	}
 
+	@Test
+	public void testMergedCollectors() throws Exception {
+		final CollectRrbsMetrics defaults = new CollectRrbsMetrics();
+		final Set<MetricAccumulationLevel> levels = EnumSet.allOf(MetricAccumulationLevel.class);
+		try (final SamReader in = SamReaderFactory.makeDefault().open(CHR_M_SAM)) {
+			final List<SAMReadGroupRecord> readGroups = in.getFileHeader().getReadGroups();
+			final List<RrbsMetricsCollector> collectors = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				collectors.add(new RrbsMetricsCollector(levels, readGroups, defaults.C_QUALITY_THRESHOLD,
+						defaults.NEXT_BASE_QUALITY_THRESHOLD, defaults.MINIMUM_READ_LENGTH, defaults.MAX_MISMATCH_RATE));
+			}
+			final RrbsMetricsCollector whole = collectors.get(0);
+			final ReferenceSequenceFileWalker reference = new ReferenceSequenceFileWalker(CHR_M_REFERENCE);
+			int recordIndex = 0;
+			for (final SAMRecord rec : in) {
+				if (rec.getReadUnmappedFlag()) continue;
+				final ReferenceSequence referenceSequence = reference.get(rec.getReferenceIndex());
+				whole.acceptRecord(rec, referenceSequence);
+				collectors.get(1 + recordIndex++ % 3).acceptRecord(rec, referenceSequence);
+			}
+			CloserUtil.close(reference);
+
+			final RrbsMetricsCollector merged = collectors.get(1);
+			merged.merge(collectors.get(2));
+			merged.merge(collectors.get(3));
+
+			whole.finish();
+			merged.finish();
+			final MetricsFile<RrbsMetrics, Comparable<?>> expected = new MetricsFile<>();
+			whole.addAllLevelsToFile(expected);
+			final MetricsFile<RrbsMetrics, Comparable<?>> actual = new MetricsFile<>();
+			merged.addAllLevelsToFile(actual);
+			Assert.assertFalse(actual.getMetrics().isEmpty());
+			Assert.assertEquals(actual.getMetrics().size(), expected.getMetrics().size());
+			for (int i = 0; i < actual.getMetrics().size(); i++) {
+				Assert.assertEquals(actual.getMetrics().get(i).getSummaryMetrics(), expected.getMetrics().get(i).getSummaryMetrics());
+				Assert.assertEquals(actual.getMetrics().get(i).getDetailMetrics(), expected.getMetrics().get(i).getDetailMetrics());
+			}
+		}
+	}
+
 	private MetricsFile<RrbsSummaryMetrics, ?> getSummaryFile(final String input, final String reference, final String prefix,
 															  final List<String> sequences) throws Exception {
 		final List<String> argList = new ArrayList<String>();
@@ -0,0 +1,74 @@
+package org.broadinstitute.hellbender.tools.picard.analysis.directed;
+
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.metrics.MetricsFile;
+import htsjdk.samtools.util.Histogram;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+public final class CollectWgsMetricsTest extends CommandLineProgramTest {
+
+    private static final File NA12878_BAM = new File(publicTestDir, "org/broadinstitute/hellbender/tools/BQSR/NA12878.chr17_69k_70k.dictFix.bam");
+    private static final File NA12878_REFERENCE = new File(publicTestDir, "human_g1k_v37.chr17_1Mb.fasta");
+    private static final File FLAG_STAT_BAM = new File(publicTestDir, "org/broadinstitute/hellbender/tools/flag_stat.bam");
+    private static final File FLAG_STAT_REFERENCE = new File(publicTestDir, "org/broadinstitute/hellbender/tools/flag_stat.fasta");
+
+    @DataProvider(name = "fastAlgorithm")
+    public Object[][] fastAlgorithm() {
+        return new Object[][]{
+                {NA12878_BAM, NA12878_REFERENCE, 1, 250},
+                {NA12878_BAM, NA12878_REFERENCE, 4, 250},
+                {NA12878_BAM, NA12878_REFERENCE, 1, 100},
+                {FLAG_STAT_BAM, FLAG_STAT_REFERENCE, 1, 250},
+                {FLAG_STAT_BAM, FLAG_STAT_REFERENCE, 4, 250},
+        };
+    }
+
+    @Test(dataProvider = "fastAlgorithm")
+    public void testFastAlgorithmMatchesPileup(final File input, final File reference, final int numProcessors, final int coverageCap) throws IOException {
+        final MetricsFile<CollectWgsMetrics.WgsMetrics, Integer> expected = collect(input, reference, coverageCap, false, 1);
+        final MetricsFile<CollectWgsMetrics.WgsMetrics, Integer> actual = collect(input, reference, coverageCap, true, numProcessors);
+
+        Assert.assertTrue(expected.getMetrics().get(0).GENOME_TERRITORY > 0);
+        Assert.assertTrue(expected.areMetricsEqual(actual));
+        Assert.assertEquals(actual.getAllHistograms().size(), expected.getAllHistograms().size());
+        for (int i = 0; i < expected.getAllHistograms().size(); ++i) {
+            assertHistogramsEqual(actual.getAllHistograms().get(i), expected.getAllHistograms().get(i));
+        }
+    }
+
+    private MetricsFile<CollectWgsMetrics.WgsMetrics, Integer> collect(final File input, final File reference, final int coverageCap,
+                                                                       final boolean useFastAlgorithm, final int numProcessors) throws IOException {
+        final File output = createTempFile("wgsMetrics", ".txt");
+        final CollectWgsMetrics program = new CollectWgsMetrics();
+        program.INPUT = input;
+        program.OUTPUT = output;
+        program.REFERENCE_SEQUENCE = reference;
+        program.COVERAGE_CAP = coverageCap;
+        program.INCLUDE_BQ_HISTOGRAM = true;
+        program.USE_FAST_ALGORITHM = useFastAlgorithm;
+        program.NUM_PROCESSORS = numProcessors;
+        // the NA12878 reads have mate fields that fail strict validation
+        program.VALIDATION_STRINGENCY = ValidationStringency.LENIENT;
+        program.doWork();
+
+        final MetricsFile<CollectWgsMetrics.WgsMetrics, Integer> metrics = new MetricsFile<>();
+        try (final FileReader reader = new FileReader(output)) {
+            metrics.read(reader);
+        }
+        return metrics;
+    }
+
+    private static void assertHistogramsEqual(final Histogram<Integer> actual, final Histogram<Integer> expected) {
+        Assert.assertEquals(actual.keySet(), expected.keySet());
+        for (final Integer key : expected.keySet()) {
+            Assert.assertEquals(actual.get(key).getValue(), expected.get(key).getValue(), "bin " + key);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.broadinstitute.hellbender.tools.picard.illumina;
+
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static htsjdk.samtools.util.SequenceUtil.basesEqual;
+import static htsjdk.samtools.util.SequenceUtil.isNoCall;
+import static org.testng.Assert.assertEquals;
+
+public final class BarcodeMatcherUnitTest extends BaseTest {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+    private static final int MINIMUM_BASE_QUALITY = 10;
+
+    @DataProvider(name = "barcodes")
+    public Object[][] barcodes() {
+        return new Object[][]{
+                // segment lengths, number of barcodes, max mismatches
+                {new int[]{8}, 20, 1},
+                {new int[]{8}, 400, 2},
+                {new int[]{6}, 10, 6},
+                {new int[]{8, 8}, 50, 2},
+                {new int[]{16, 16}, 20, 3},   // too many neighbours to index
+                {new int[]{20, 20}, 20, 1},   // too long to pack
+        };
+    }
+
+    @Test(dataProvider = "barcodes")
+    public void testMatchesComparingEveryBarcode(final int[] segmentLengths, final int numBarcodes, final int maxMismatches) {
+        final Random random = new Random(numBarcodes);
+        final List<byte[][]> barcodes = new ArrayList<>();
+        for (int b = 0; b < numBarcodes; ++b) {
+            barcodes.add(randomSegments(segmentLengths, random, BASES));
+        }
+        final BarcodeMatcher matcher = new BarcodeMatcher(barcodes, maxMismatches, MINIMUM_BASE_QUALITY);
+        final BarcodeMatcher.Match match = new BarcodeMatcher.Match();
+        final byte[] readBases = {'A', 'C', 'G', 'T', 'a', 'c', 'g', 't', 'N', '.', 'R'};
+
+        for (int i = 0; i < 20000; ++i) {
+            // mostly reads a few mismatches away from a barcode, with some no-calls, odd bases and shorter segments
+            final byte[][] read = copy(barcodes.get(random.nextInt(numBarcodes)));
+            final int changes = random.nextInt(maxMismatches + 3);
+            for (int c = 0; c < changes; ++c) {
+                final byte[] segment = read[random.nextInt(read.length)];
+                segment[random.nextInt(segment.length)] = random.nextInt(4) == 0 ?
+                        readBases[random.nextInt(readBases.length)] : BASES[random.nextInt(BASES.length)];
+            }
+            if (random.nextInt(20) == 0) {
+                final int j = random.nextInt(read.length);
+                final byte[] shorter = new byte[read[j].length - 1];
+                System.arraycopy(read[j], 0, shorter, 0, shorter.length);
+                read[j] = shorter;
+            }
+            final byte[][] qualities = random.nextBoolean() ? null : randomQualities(read, random);
+
+            matcher.findBestBarcode(read, qualities, 100, match);
+            final int[] expected = findBestBarcodeByComparingEveryBarcode(barcodes, read, qualities, 100);
+            assertEquals(match.barcode, expected[0]);
+            assertEquals(match.mismatches, expected[1]);
+            assertEquals(match.mismatchesToSecondBest, expected[2]);
+        }
+    }
+
+    @Test
+    public void testFirstOfEquallyGoodBarcodesIsBest() {
+        final List<byte[][]> barcodes = new ArrayList<>();
+        barcodes.add(new byte[][]{"AAAA".getBytes()});
+        barcodes.add(new byte[][]{"AAAC".getBytes()});
+        barcodes.add(new byte[][]{"CAAA".getBytes()});
+        final BarcodeMatcher matcher = new BarcodeMatcher(barcodes, 1, 0);
+        final BarcodeMatcher.Match match = new BarcodeMatcher.Match();
+
+        matcher.findBestBarcode(new byte[][]{"CAAC".getBytes()}, null, 5, match);
+        assertEquals(match.barcode, 1);
+        assertEquals(match.mismatches, 1);
+        assertEquals(match.mismatchesToSecondBest, 1);
+
+        matcher.findBestBarcode(new byte[][]{"aaac".getBytes()}, null, 5, match);
+        assertEquals(match.barcode, 1);
+        assertEquals(match.mismatches, 0);
+        assertEquals(match.mismatchesToSecondBest, 1);
+    }
+
+    @Test
+    public void testNoBarcodes() {
+        final BarcodeMatcher matcher = new BarcodeMatcher(new ArrayList<>(), 1, 0);
+        final BarcodeMatcher.Match match = new BarcodeMatcher.Match();
+        matcher.findBestBarcode(new byte[][]{"ACGT".getBytes()}, null, 5, match);
+        assertEquals(match.barcode, -1);
+        assertEquals(match.mismatches, 5);
+        assertEquals(match.mismatchesToSecondBest, 5);
+    }
+
+    /** Returns the best barcode and the mismatches of the best and second best, as ExtractIlluminaBarcodes used to find them. */
+    private static int[] findBestBarcodeByComparingEveryBarcode(final List<byte[][]> barcodes, final byte[][] read,
+                                                                final byte[][] qualities, final int initialMismatches) {
+        int best = -1;
+        int bestMismatches = initialMismatches;
+        int secondBestMismatches = initialMismatches;
+        for (int b = 0; b < barcodes.size(); ++b) {
+            int numMismatches = 0;
+            for (int j = 0; j < read.length; j++) {
+                for (int i = 0; i < Math.min(barcodes.get(b)[j].length, read[j].length); ++i) {
+                    if (!isNoCall(read[j][i]) && (!basesEqual(barcodes.get(b)[j][i], read[j][i]) ||
+                            (qualities != null && qualities[j][i] < MINIMUM_BASE_QUALITY))) {
+                        ++numMismatches;
+                    }
+                }
+            }
+            if (numMismatches < bestMismatches) {
+                if (best != -1) {
+                    secondBestMismatches = bestMismatches;
+                }
+                bestMismatches = numMismatches;
+                best = b;
+            } else if (numMismatches < secondBestMismatches) {
+                secondBestMismatches = numMismatches;
+            }
+        }
+        return new int[]{best, bestMismatches, secondBestMismatches};
+    }
+
+    private static byte[][] randomSegments(final int[] lengths, final Random random, final byte[] bases) {
+        final byte[][] segments = new byte[lengths.length][];
+        for (int j = 0; j < lengths.length; j++) {
+            segments[j] = new byte[lengths[j]];
+            for (int i = 0; i < lengths[j]; ++i) {
+                segments[j][i] = bases[random.nextInt(bases.length)];
+            }
+        }
+        return segments;
+    }
+
+    private static byte[][] randomQualities(final byte[][] read, final Random random) {
+        final byte[][] qualities = new byte[read.length][];
+        for (int j = 0; j < read.length; j++) {
+            qualities[j] = new byte[read[j].length];
+            for (int i = 0; i < read[j].length; ++i) {
+                qualities[j][i] = (byte) (random.nextInt(10) == 0 ? 2 : 30);
+            }
+        }
+        return qualities;
+    }
+
+    private static byte[][] copy(final byte[][] segments) {
+        final byte[][] copy = new byte[segments.length][];
+        for (int j = 0; j < segments.length; j++) {
+            copy[j] = segments[j].clone();
+        }
+        return copy;
+    }
+}
@@ -227,6 +227,9 @@ public class CheckIlluminaDirectoryTest extends CommandLineProgramTest {
 
         final List<String> args = makeCheckerArgs(basecallDir, lane, readStructure, dataTypes, filterTiles, false, false);
         Assert.assertEquals(runCommandLine(args), 0); // assert that the number of found errors is zero
+
+        args.addAll(makeList("--NP", "4", "--CH", "true"));
+        Assert.assertEquals(runCommandLine(args), 0);
     }
 
     @DataProvider(name = "negativeTestData")
@@ -295,6 +298,30 @@ public class CheckIlluminaDirectoryTest extends CommandLineProgramTest {
         if (makeFakeFiles) Assert.assertEquals(runCommandLine(args), 0);
     }
 
+    @Test(dataProvider = "negativeTestData")
+    public void negativeTestsInParallel(final IlluminaFileUtil.SupportedIlluminaFormat[] formats,
+                                        final IlluminaDataType[] dataTypes,
+                                        final List<String> filesToDelete,
+                                        final List<String> filesToEmpty,
+                                        final int lane,
+                                        final List<Integer> tiles,
+                                        final int[] cycles,
+                                        final String readStructure,
+                                        final int expectedNumErrors,
+                                        final List<Integer> filterTiles,
+                                        final boolean makeFakeFiles) {
+        makeFiles(formats, lane, tiles, cycles);
+        IlluminaFileUtilTest.deleteRelativeFiles(intensityDir, filesToDelete);
+        IlluminaFileUtilTest.emptyRelativeFiles(intensityDir, filesToEmpty);
+        writeTileMetricsOutFile(makeMap(makeList(lane - 1, lane + 1, lane), makeList(makeList(1, 2, 3), tiles, tiles)));
+
+        final List<String> args = makeCheckerArgs(basecallDir, lane, readStructure, dataTypes, filterTiles, makeFakeFiles, false);
+        args.addAll(makeList("--NP", "4"));
+        Assert.assertEquals(runCommandLine(args), expectedNumErrors);
+
+        if (makeFakeFiles) Assert.assertEquals(runCommandLine(args), 0);
+    }
+
     public void writeFileOfSize(final File file, final int size) {
         try {
             final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
@@ -332,6 +359,41 @@ public class CheckIlluminaDirectoryTest extends CommandLineProgramTest {
         Assert.assertEquals(runCommandLine(args), 1);
     }
 
+    @Test
+    public void differentClusterCountBclTest() throws IOException {
+        final int lane = 5;
+        final List<Integer> tiles = makeList(1, 2, 3, 4);
+        final int[] cycles = IlluminaFileUtilTest.cycleRange(1, 50);
+        final IlluminaDataType[] dataTypes = new IlluminaDataType[]{BaseCalls, IlluminaDataType.QualityScores};
+
+        makeFiles(new SupportedIlluminaFormat[]{Bcl, Filter}, lane, tiles, cycles);
+        writeTileMetricsOutFile(makeMap(makeList(lane - 1, lane + 1, lane),
+                makeList(makeList(1, 2, 3), tiles, tiles)));
+
+        // the same length as the other cycles of the tile, but with a header giving one cluster more
+        final File cycleDir = new File(basecallDir, "L005/C9.1");
+        writeBclFile(new File(cycleDir, "s_5_3.bcl"), 11, 10);
+        // every cycle of the tile agrees, but the files are a cluster short of their headers
+        for (final int cycle : cycles) {
+            writeBclFile(new File(basecallDir, "L005/C" + cycle + ".1/s_5_4.bcl"), 11, 10);
+        }
+
+        final List<String> args = makeCheckerArgs(basecallDir, lane, "50T", dataTypes, new ArrayList<Integer>(), false, false);
+        args.addAll(makeList("--NP", "2"));
+        Assert.assertEquals(runCommandLine(args), 0);
+
+        args.addAll(makeList("--CH", "true"));
+        Assert.assertEquals(runCommandLine(args), 1 + cycles.length);
+    }
+
+    private static void writeBclFile(final File file, final int headerClusters, final int actualClusters) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.writeInt(Integer.reverseBytes(headerClusters));
+            raf.write(new byte[actualClusters]);
+        }
+    }
+
     @Test(expectedExceptions = SAMException.class)
     public void basedirDoesntExistTest() {
         final List<String> args = makeCheckerArgs(new File("a_made_up_file/in_some_weird_location"), 1, "76T76T",
@@ -0,0 +1,247 @@
+package org.broadinstitute.hellbender.tools.picard.illumina;
+
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SortingCollection;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.broadinstitute.hellbender.tools.picard.illumina.IlluminaBasecallsConverter.AsyncClusterDataWriter;
+import static org.broadinstitute.hellbender.tools.picard.illumina.IlluminaBasecallsConverter.ConvertedClusterDataWriter;
+import static org.broadinstitute.hellbender.tools.picard.illumina.IlluminaBasecallsConverter.TileBarcodeRecords;
+import static org.broadinstitute.hellbender.tools.picard.illumina.IlluminaBasecallsConverter.TileRecords;
+
+public class IlluminaBasecallsConverterTest {
+
+    /** Collects the records written to it. */
+    private static class ListWriter implements ConvertedClusterDataWriter<Integer> {
+        final List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+        volatile boolean closed = false;
+
+        @Override
+        public void write(final Integer rec) {
+            written.add(rec);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /** Fails to write any record after the first few. */
+    private static class FailingWriter extends ListWriter {
+        @Override
+        public void write(final Integer rec) {
+            if (written.size() == 10) throw new IllegalStateException("Cannot write record " + rec);
+            super.write(rec);
+        }
+    }
+
+    /** Also fails to close, after recording that close was called. */
+    private static class FailingToCloseWriter extends FailingWriter {
+        @Override
+        public void close() {
+            super.close();
+            throw new IllegalStateException("Cannot close");
+        }
+    }
+
+    @Test
+    public void testManyWritersOnFewThreads() throws Exception {
+        final ExecutorService writerPool = IlluminaBasecallsConverter.newWriterPool(3);
+        try {
+            final List<ListWriter> writers = new ArrayList<ListWriter>();
+            final List<AsyncClusterDataWriter<Integer>> asyncWriters = new ArrayList<AsyncClusterDataWriter<Integer>>();
+            for (int i = 0; i < 50; ++i) {
+                writers.add(new ListWriter());
+                asyncWriters.add(new AsyncClusterDataWriter<Integer>(writers.get(i), writerPool));
+            }
+            // hand records to all of the writers in turn, more of them than are batched or queued
+            for (int rec = 0; rec < 12345; ++rec) {
+                for (final AsyncClusterDataWriter<Integer> writer : asyncWriters) {
+                    writer.write(rec);
+                }
+            }
+            for (final AsyncClusterDataWriter<Integer> writer : asyncWriters) {
+                writer.close();
+            }
+
+            for (final ListWriter writer : writers) {
+                Assert.assertTrue(writer.closed);
+                Assert.assertEquals(writer.written.size(), 12345);
+                for (int rec = 0; rec < 12345; ++rec) {
+                    Assert.assertEquals(writer.written.get(rec).intValue(), rec);
+                }
+            }
+        } finally {
+            writerPool.shutdownNow();
+        }
+        Assert.assertTrue(writerPool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWriteFailureReachesCaller() throws Exception {
+        final ExecutorService writerPool = IlluminaBasecallsConverter.newWriterPool(2);
+        final ListWriter goodWriter = new ListWriter();
+        final FailingWriter failingWriter = new FailingWriter();
+        final AsyncClusterDataWriter<Integer> asyncGoodWriter = new AsyncClusterDataWriter<Integer>(goodWriter, writerPool);
+        final AsyncClusterDataWriter<Integer> asyncFailingWriter = new AsyncClusterDataWriter<Integer>(failingWriter, writerPool);
+
+        // the failure is thrown from a later write, or at the latest from close
+        IllegalStateException failure = null;
+        try {
+            for (int rec = 0; rec < 10000; ++rec) {
+                asyncGoodWriter.write(rec);
+                asyncFailingWriter.write(rec);
+            }
+            asyncFailingWriter.close();
+        } catch (final IllegalStateException e) {
+            failure = e;
+        }
+        Assert.assertNotNull(failure);
+        Assert.assertEquals(failure.getMessage(), "Cannot write record 10");
+        // the writer keeps failing once it has failed, but the underlying writer is closed all the same
+        try {
+            asyncFailingWriter.close();
+            Assert.fail("close of a failed writer succeeded");
+        } catch (final IllegalStateException e) {
+            Assert.assertSame(e, failure);
+        }
+        Assert.assertTrue(failingWriter.closed);
+        Assert.assertEquals(failingWriter.written.size(), 10);
+
+        // the other writers are not held up by the failure
+        asyncGoodWriter.close();
+        Assert.assertTrue(goodWriter.closed);
+        Assert.assertEquals(goodWriter.written.size(), 10000);
+
+        writerPool.shutdownNow();
+        Assert.assertTrue(writerPool.awaitTermination(10, TimeUnit.SECONDS));
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            Assert.assertFalse(thread.isAlive() && thread.getName().startsWith(IlluminaBasecallsConverter.WRITER_THREAD_NAME),
+                    "writer thread still running: " + thread.getName());
+        }
+    }
+
+    @Test
+    public void testWriteFailureIsReportedRatherThanCloseFailure() throws Exception {
+        final ExecutorService writerPool = IlluminaBasecallsConverter.newWriterPool(1);
+        final FailingToCloseWriter failingWriter = new FailingToCloseWriter();
+        final AsyncClusterDataWriter<Integer> asyncFailingWriter = new AsyncClusterDataWriter<Integer>(failingWriter, writerPool);
+        try {
+            for (int rec = 0; rec < 100; ++rec) {
+                asyncFailingWriter.write(rec);
+            }
+            asyncFailingWriter.close();
+            Assert.fail("close of a failed writer succeeded");
+        } catch (final IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "Cannot write record 10");
+        } finally {
+            writerPool.shutdownNow();
+        }
+        Assert.assertTrue(failingWriter.closed);
+    }
+
+    /** Spills Integers to disk for a SortingCollection. */
+    private static class IntegerCodec implements SortingCollection.Codec<Integer> {
+        private DataOutputStream out;
+        private DataInputStream in;
+
+        @Override
+        public void setOutputStream(final OutputStream os) {
+            out = new DataOutputStream(os);
+        }
+
+        @Override
+        public void setInputStream(final InputStream is) {
+            in = new DataInputStream(is);
+        }
+
+        @Override
+        public void encode(final Integer val) {
+            try {
+                out.writeInt(val);
+            } catch (final IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        }
+
+        @Override
+        public Integer decode() {
+            try {
+                return in.readInt();
+            } catch (final EOFException e) {
+                return null;
+            } catch (final IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        }
+
+        @Override
+        public IntegerCodec clone() {
+            return new IntegerCodec();
+        }
+    }
+
+    @Test
+    public void testTileRecordsSpillToDisk() throws Exception {
+        final File tmpDir = IOUtil.createTempDir("tileRecords.", ".tmp");
+        try {
+            final Comparator<Integer> comparator = Comparator.naturalOrder();
+            final TileRecords<Integer> tileRecords = new TileRecords<Integer>(comparator, 60, 5,
+                    () -> SortingCollection.newInstance(Integer.class, new IntegerCodec(), comparator, 5, tmpDir));
+
+            // some barcodes have too many records to stay in memory, and the records arrive out of order
+            final String[] barcodes = {"AAAA", "CCCC", "GGGG", "TTTT", null};
+            final int[] recordCounts = {150, 80, 40, 10, 5};
+            final List<String> barcodeOfRecord = new ArrayList<String>();
+            for (int i = 0; i < barcodes.length; ++i) {
+                for (int j = 0; j < recordCounts[i]; ++j) {
+                    barcodeOfRecord.add(barcodes[i]);
+                }
+            }
+            Collections.shuffle(barcodeOfRecord, new Random(1));
+            final List<Integer> records = new ArrayList<Integer>();
+            for (int rec = 0; rec < barcodeOfRecord.size(); ++rec) {
+                records.add(rec);
+            }
+            Collections.shuffle(records, new Random(2));
+
+            final Map<String, List<Integer>> expected = new HashMap<String, List<Integer>>();
+            for (int i = 0; i < records.size(); ++i) {
+                final String barcode = barcodeOfRecord.get(i);
+                tileRecords.add(barcode, records.get(i));
+                if (!expected.containsKey(barcode)) expected.put(barcode, new ArrayList<Integer>());
+                expected.get(barcode).add(records.get(i));
+                Assert.assertTrue(tileRecords.sizeInRam() <= 60);
+            }
+
+            final Map<String, TileBarcodeRecords<Integer>> barcodeRecords = tileRecords.getBarcodeRecords();
+            Assert.assertEquals(barcodeRecords.keySet(), expected.keySet());
+            Assert.assertTrue(barcodeRecords.get("AAAA").isSpilled());
+            Assert.assertFalse(barcodeRecords.get(null).isSpilled());
+
+            for (final Map.Entry<String, TileBarcodeRecords<Integer>> entry : barcodeRecords.entrySet()) {
+                final TileBarcodeRecords<Integer> barcodeRecord = entry.getValue();
+                barcodeRecord.doneAdding();
+                final List<Integer> actual = new ArrayList<Integer>();
+                for (final Iterator<Integer> it = barcodeRecord.iterator(); it.hasNext(); ) {
+                    actual.add(it.next());
+                }
+                barcodeRecord.cleanup();
+
+                final List<Integer> sorted = expected.get(entry.getKey());
+                Collections.sort(sorted);
+                Assert.assertEquals(actual, sorted, "barcode " + entry.getKey());
+            }
+        } finally {
+            IOUtil.deleteDirectoryTree(tmpDir);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.broadinstitute.hellbender.tools.picard.illumina;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.samtools.util.StringUtil;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.illumina.IlluminaUtil.IlluminaAdapterPair;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Compares marking adapters on several threads with marking them on one, on reads spanning several batches.
+ */
+public class MarkIlluminaAdaptersTest extends CommandLineProgramTest {
+
+    private static final int READ_LENGTH = 101;
+
+    public String getCommandLineProgramName() {
+        return MarkIlluminaAdapters.class.getSimpleName();
+    }
+
+    // the reads fill several batches, the last of them partially or exactly
+    @DataProvider(name = "manyReads")
+    public Object[][] manyReads() {
+        return new Object[][] {
+                {2500, true},
+                {2000, true},
+                {2345, false},
+                {3000, false},
+        };
+    }
+
+    @Test(dataProvider = "manyReads")
+    public void testMarkInParallel(final int numReads, final boolean paired) throws IOException {
+        final File input = writeReads(numReads, paired, SAMFileHeader.SortOrder.queryname, -1);
+        final File expectedOutput = createTempFile("markIlluminaAdapters.1.", ".sam");
+        final File expectedMetrics = createTempFile("markIlluminaAdapters.1.", ".metrics");
+        final File actualOutput = createTempFile("markIlluminaAdapters.4.", ".sam");
+        final File actualMetrics = createTempFile("markIlluminaAdapters.4.", ".metrics");
+        markAdapters(input, expectedOutput, expectedMetrics, 1);
+        markAdapters(input, actualOutput, actualMetrics, 4);
+
+        final List<String> expectedRecords = readRecords(expectedOutput);
+        Assert.assertEquals(expectedRecords.size(), paired ? 2 * numReads : numReads);
+        Assert.assertTrue(expectedRecords.stream().anyMatch(rec -> rec.contains("XT:i:")), "no adapters were marked");
+        Assert.assertEquals(readRecords(actualOutput), expectedRecords);
+        Assert.assertEquals(readMetrics(actualMetrics), readMetrics(expectedMetrics));
+    }
+
+    @Test(expectedExceptions = UserException.class)
+    public void testUnsortedInParallel() throws IOException {
+        final File input = writeReads(2500, true, SAMFileHeader.SortOrder.unsorted, -1);
+        markAdapters(input, createTempFile("markIlluminaAdapters.", ".sam"), createTempFile("markIlluminaAdapters.", ".metrics"), 4);
+    }
+
+    @Test(expectedExceptions = UserException.class)
+    public void testMismatchedMateInParallel() throws IOException {
+        // the mates differ well past the first batch
+        final File input = writeReads(2500, true, SAMFileHeader.SortOrder.queryname, 1500);
+        markAdapters(input, createTempFile("markIlluminaAdapters.", ".sam"), createTempFile("markIlluminaAdapters.", ".metrics"), 4);
+    }
+
+    private void markAdapters(final File input, final File output, final File metrics, final int numProcessors) {
+        final List<String> args = new ArrayList<>();
+        args.add("--INPUT");
+        args.add(input.getAbsolutePath());
+        args.add("--OUTPUT");
+        args.add(output.getAbsolutePath());
+        args.add("--METRICS");
+        args.add(metrics.getAbsolutePath());
+        // never prune, so that which reads are marked before pruning does not depend on the threads
+        args.add("--PRUNE_ADAPTER_LIST_AFTER_THIS_MANY_ADAPTERS_SEEN");
+        args.add("1000000");
+        args.add("--NUM_PROCESSORS");
+        args.add(Integer.toString(numProcessors));
+        Assert.assertEquals(runCommandLine(args), 0);
+    }
+
+    /**
+     * Writes unmapped reads, or pairs of reads, of random inserts of which the shorter ones read into the paired-end
+     * adapters.  The second read of the pair at index misnamed (if any) is named differently from the first.
+     */
+    private static File writeReads(final int numReads, final boolean paired, final SAMFileHeader.SortOrder sortOrder,
+                                   final int misnamed) {
+        final File file = createTempFile("markIlluminaAdapters.input.", ".sam");
+        final SAMFileHeader header = new SAMFileHeader();
+        header.setSortOrder(sortOrder);
+        final Random random = new Random(numReads);
+        final String threePrimeAdapter = IlluminaAdapterPair.PAIRED_END.get3PrimeAdapterInReadOrder();
+        final String fivePrimeAdapter = IlluminaAdapterPair.PAIRED_END.get5PrimeAdapterInReadOrder();
+
+        final SAMFileWriter writer = new SAMFileWriterFactory().makeSAMWriter(header, true, file);
+        for (int i = 0; i < numReads; i++) {
+            final String insert = randomBases(random, 50 + random.nextInt(2 * READ_LENGTH));
+            final String name = String.format("read%06d", i);
+            if (!paired) {
+                writer.addAlignment(newRead(header, name, insert + threePrimeAdapter, random));
+                continue;
+            }
+            final SAMRecord first = newRead(header, name, insert + threePrimeAdapter, random);
+            final SAMRecord second = newRead(header, i == misnamed ? name + "x" : name,
+                    SequenceUtil.reverseComplement(insert) + fivePrimeAdapter, random);
+            for (final SAMRecord rec : new SAMRecord[]{first, second}) {
+                rec.setReadPairedFlag(true);
+                rec.setMateUnmappedFlag(true);
+            }
+            first.setFirstOfPairFlag(true);
+            second.setSecondOfPairFlag(true);
+            writer.addAlignment(first);
+            writer.addAlignment(second);
+        }
+        writer.close();
+        return file;
+    }
+
+    private static SAMRecord newRead(final SAMFileHeader header, final String name, final String bases, final Random random) {
+        final SAMRecord rec = new SAMRecord(header);
+        rec.setReadName(name);
+        rec.setReadUnmappedFlag(true);
+        rec.setReadBases(StringUtil.stringToBytes(bases.substring(0, READ_LENGTH)));
+        final byte[] quals = new byte[READ_LENGTH];
+        for (int i = 0; i < READ_LENGTH; i++) {
+            quals[i] = (byte) (10 + random.nextInt(31));
+        }
+        rec.setBaseQualities(quals);
+        return rec;
+    }
+
+    private static String randomBases(final Random random, final int length) {
+        final StringBuilder bases = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            bases.append("ACGT".charAt(random.nextInt(4)));
+        }
+        return bases.toString();
+    }
+
+    private static List<String> readRecords(final File sam) throws IOException {
+        final List<String> records = new ArrayList<>();
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(sam)) {
+            for (final SAMRecord rec : reader) {
+                records.add(rec.getSAMString());
+            }
+        }
+        return records;
+    }
+
+    /** The metrics and histogram, without the header, which holds the command line. */
+    private static List<String> readMetrics(final File metrics) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        for (final String line : Files.readAllLines(metrics.toPath())) {
+            if (!line.startsWith("#")) lines.add(line);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,57 @@
+package org.broadinstitute.hellbender.tools.picard.illumina.parser;
+
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public final class IlluminaReadNameEncoderTest extends BaseTest {
+
+    @Test
+    public void testReadNamesAcrossTiles() {
+        final IlluminaReadNameEncoder encoder = new IlluminaReadNameEncoder("RUN1");
+        Assert.assertEquals(encoder.generateReadName(cluster(1, 1101, 12, 3456), null), "RUN1:1:1101:12:3456");
+        Assert.assertEquals(encoder.generateReadName(cluster(1, 1101, 7, 8), 1), "RUN1:1:1101:7:8/1");
+        Assert.assertEquals(encoder.generateReadName(cluster(1, 1101, 7, 8), 2), "RUN1:1:1101:7:8/2");
+        Assert.assertEquals(encoder.generateReadName(cluster(1, 1102, 7, 8), null), "RUN1:1:1102:7:8");
+        Assert.assertEquals(encoder.generateReadName(cluster(2, 1102, 7, 8), null), "RUN1:2:1102:7:8");
+        Assert.assertEquals(encoder.generateReadName(cluster(1, 1101, 12, 3456), null), "RUN1:1:1101:12:3456");
+    }
+
+    @Test
+    public void testReadNamesOnSeveralThreads() throws Exception {
+        final IlluminaReadNameEncoder encoder = new IlluminaReadNameEncoder("RUN1");
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int tile = 1101; tile < 1117; ++tile) {
+                final int thisTile = tile;
+                futures.add(executor.submit(() -> {
+                    for (int x = 0; x < 1000; ++x) {
+                        Assert.assertEquals(encoder.generateReadName(cluster(3, thisTile, x, x + 1), null),
+                                "RUN1:3:" + thisTile + ":" + x + ":" + (x + 1));
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static ClusterData cluster(final int lane, final int tile, final int x, final int y) {
+        final ClusterData cluster = new ClusterData();
+        cluster.setLane(lane);
+        cluster.setTile(tile);
+        cluster.setX(x);
+        cluster.setY(y);
+        return cluster;
+    }
+}
@@ -0,0 +1,100 @@
+package org.broadinstitute.hellbender.tools.picard.illumina.parser;
+
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+import static org.broadinstitute.hellbender.tools.picard.illumina.parser.IlluminaMetricsCode.*;
+
+public final class TileMetricsUtilTest extends BaseTest {
+
+    private static final ReadStructure READ_STRUCTURE = new ReadStructure("25T8B25T");
+
+    @Test
+    public void testParseTileMetrics() throws IOException {
+        final List<float[]> records = new ArrayList<float[]>();
+        // two lanes with the same tile numbers, one of them too large for a signed short
+        for (final int lane : new int[]{1, 2}) {
+            for (final int tile : new int[]{1101, 40000}) {
+                addTileRecords(records, lane, tile, lane * 100000 + tile, true, true);
+            }
+        }
+        final File tileMetricsOut = writeTileMetricsOut(records);
+
+        final Collection<Tile> tiles = TileMetricsUtil.parseTileMetrics(tileMetricsOut, READ_STRUCTURE);
+        Assert.assertEquals(tiles.size(), 4);
+        final Set<String> seen = new HashSet<String>();
+        for (final Tile tile : tiles) {
+            Assert.assertTrue(seen.add(tile.getLaneNumber() + ":" + tile.getTileNumber()));
+            final float density = tile.getLaneNumber() * 100000 + tile.getTileNumber();
+            Assert.assertEquals(tile.getClusterDensity(), density, 0f);
+            Assert.assertEquals(tile.getClusterCount(), density + 1, 0f);
+            Assert.assertEquals(tile.getPhasingMap().get(TileTemplateRead.FIRST).floatValue(), 0.1f, 0f);
+            Assert.assertEquals(tile.getPrePhasingMap().get(TileTemplateRead.SECOND).floatValue(), 0.4f, 0f);
+        }
+        Assert.assertEquals(seen, new HashSet<String>(Arrays.asList("1:1101", "1:40000", "2:1101", "2:40000")));
+    }
+
+    @Test
+    public void testTileMissingClusterRecord() throws IOException {
+        assertMissingRecordMessage(true, false);
+    }
+
+    @Test
+    public void testTileMissingDensityRecord() throws IOException {
+        assertMissingRecordMessage(false, true);
+    }
+
+    private void assertMissingRecordMessage(final boolean withDensity, final boolean withClusters) throws IOException {
+        final List<float[]> records = new ArrayList<float[]>();
+        addTileRecords(records, 1, 1101, 1.0f, true, true);
+        addTileRecords(records, 3, 2105, 1.0f, withDensity, withClusters);
+        final File tileMetricsOut = writeTileMetricsOut(records);
+
+        try {
+            TileMetricsUtil.parseTileMetrics(tileMetricsOut, READ_STRUCTURE);
+            Assert.fail("Expected a tile missing a record to fail");
+        } catch (final IlluminaParserException e) {
+            Assert.assertTrue(e.getMessage().contains("tile location 3:2105 (lane:tile)"), e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the density, cluster and phasing records of a tile for READ_STRUCTURE, whose templates are its first and
+     * third descriptors.
+     */
+    private static void addTileRecords(final List<float[]> records, final int lane, final int tile, final float density,
+                                       final boolean withDensity, final boolean withClusters) {
+        if (withDensity) records.add(new float[]{lane, tile, DENSITY_ID.getMetricsCode(), density});
+        if (withClusters) records.add(new float[]{lane, tile, CLUSTER_ID.getMetricsCode(), density + 1});
+        records.add(new float[]{lane, tile, getPhasingCode(0, PHASING_BASE), 0.1f});
+        records.add(new float[]{lane, tile, getPhasingCode(0, PREPHASING_BASE), 0.2f});
+        records.add(new float[]{lane, tile, getPhasingCode(2, PHASING_BASE), 0.3f});
+        records.add(new float[]{lane, tile, getPhasingCode(2, PREPHASING_BASE), 0.4f});
+    }
+
+    /** Writes records of lane, tile, code and value in the format of a version 2 TileMetricsOut.bin. */
+    private File writeTileMetricsOut(final List<float[]> records) throws IOException {
+        final File file = createTempFile("TileMetricsOut", ".bin");
+        final ByteBuffer buf = ByteBuffer.allocate(2 + 10 * records.size()).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put((byte) 2);
+        buf.put((byte) 10);
+        for (final float[] record : records) {
+            buf.putShort((short) record[0]);
+            buf.putShort((short) record[1]);
+            buf.putShort((short) record[2]);
+            buf.putFloat(record[3]);
+        }
+        try (final FileOutputStream out = new FileOutputStream(file)) {
+            out.write(buf.array());
+        }
+        return file;
+    }
+}
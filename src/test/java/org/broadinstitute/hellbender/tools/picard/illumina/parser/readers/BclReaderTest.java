@@ -1,17 +1,25 @@
 package org.broadinstitute.hellbender.tools.picard.illumina.parser.readers;
 
+import htsjdk.samtools.util.BlockCompressedOutputStream;
 import org.broadinstitute.hellbender.tools.picard.illumina.parser.BclData;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
 public class BclReaderTest {
 
@@ -167,4 +175,69 @@ public class BclReaderTest {
         Assert.assertEquals((int) bclQualityEvaluationStrategy.getPoorQualityFrequencies().get((byte) 1), 25);
         bclQualityEvaluationStrategy.assertMinimumQualities();
     }
+
+    @DataProvider(name = "cycleFileExtensions")
+    public Object[][] cycleFileExtensions() {
+        return new Object[][]{{".bcl"}, {".bcl.gz"}, {".bcl.bgzf"}};
+    }
+
+    /**
+     * Reads clusters over several cycles and more than one batch of clusters, checking each base and quality against
+     * the byte it came from, and that the low qualities are counted once each.
+     */
+    @Test(dataProvider = "cycleFileExtensions")
+    public void readManyCyclesAndClusters(final String extension) throws IOException {
+        final int[] outputLengths = {3, 2};
+        final int numClusters = 10000;
+        final Random random = new Random(11);
+        final byte[][] cycleBytes = new byte[5][numClusters];
+        final List<File> files = new ArrayList<File>();
+        for (int cycle = 0; cycle < cycleBytes.length; ++cycle) {
+            random.nextBytes(cycleBytes[cycle]);
+            final File file = BaseTest.createTempFile("BclReaderTest." + cycle + ".", extension);
+            writeBcl(file, cycleBytes[cycle]);
+            files.add(file);
+        }
+
+        final BclQualityEvaluationStrategy bclQualityEvaluationStrategy = new BclQualityEvaluationStrategy(1);
+        final BclReader reader = new BclReader(files, outputLengths, bclQualityEvaluationStrategy, false);
+        int expectedLowQualities = 0;
+        for (int cluster = 0; cluster < numClusters; ++cluster) {
+            Assert.assertTrue(reader.hasNext());
+            final BclData data = reader.next();
+            int cycle = 0;
+            for (int read = 0; read < outputLengths.length; ++read) {
+                for (int i = 0; i < outputLengths[read]; ++i, ++cycle) {
+                    final int readByte = cycleBytes[cycle][cluster] & 0xFF;
+                    if (readByte == 0) {
+                        Assert.assertEquals(data.bases[read][i], (byte) '.');
+                        Assert.assertEquals(data.qualities[read][i], (byte) 2);
+                    } else {
+                        Assert.assertEquals(data.bases[read][i], (byte) "ACGT".charAt(readByte & 3));
+                        Assert.assertEquals(data.qualities[read][i], (byte) Math.max(readByte >>> 2, 1));
+                        if (readByte >>> 2 < 2) ++expectedLowQualities;
+                    }
+                }
+            }
+        }
+        Assert.assertFalse(reader.hasNext());
+        reader.close();
+
+        int lowQualities = 0;
+        for (final int count : bclQualityEvaluationStrategy.getPoorQualityFrequencies().values()) {
+            lowQualities += count;
+        }
+        Assert.assertEquals(lowQualities, expectedLowQualities);
+    }
+
+    private static void writeBcl(final File file, final byte[] clusters) throws IOException {
+        final OutputStream outputStream;
+        if (BclReader.isGzipped(file)) outputStream = new GZIPOutputStream(new FileOutputStream(file));
+        else if (BclReader.isBlockGzipped(file)) outputStream = new BlockCompressedOutputStream(file);
+        else outputStream = new FileOutputStream(file);
+        final ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(clusters.length);
+        outputStream.write(header.array());
+        outputStream.write(clusters);
+        outputStream.close();
+    }
 }
@@ -0,0 +1,97 @@
+package org.broadinstitute.hellbender.tools.picard.illumina.parser.readers;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public final class MappedFileStoreTest extends BaseTest {
+
+    @Test
+    public void testViewsAreIndependent() {
+        final ByteBuffer first = MappedFileStore.getBuffer(MMapBackedIteratorFactoryTest.BinFile);
+        final ByteBuffer second = MappedFileStore.getBuffer(MMapBackedIteratorFactoryTest.BinFile);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(first.order(), ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals(first.limit(), MMapBackedIteratorFactoryTest.FileLength);
+
+        first.position(10);
+        Assert.assertEquals(second.position(), 0);
+        Assert.assertEquals(second.get(), (byte) 0x31);
+        Assert.assertEquals(first.get(), (byte) 0x65);
+    }
+
+    @Test
+    public void testChangedFileIsMappedAgain() throws IOException {
+        final File file = createTempFile("MappedFileStoreTest", ".bin");
+        write(file, new byte[]{1, 2, 3, 4});
+        Assert.assertEquals(MappedFileStore.getBuffer(file).getInt(), 0x04030201);
+
+        // the modification time may only be kept to the second, so the rewrite also changes the length
+        write(file, new byte[]{5, 6, 7, 8, 9});
+        final ByteBuffer buffer = MappedFileStore.getBuffer(file);
+        Assert.assertEquals(buffer.limit(), 5);
+        Assert.assertEquals(buffer.getInt(), 0x08070605);
+    }
+
+    @Test
+    public void testReleasedMappingsAreRemoved() throws IOException, InterruptedException {
+        final int sizeBefore = MappedFileStore.size();
+        for (int i = 0; i < 10; ++i) {
+            final File file = createTempFile("MappedFileStoreTest", ".bin");
+            write(file, new byte[]{1, 2, 3, 4});
+            Assert.assertEquals(MappedFileStore.getBuffer(file).getInt(), 0x04030201);
+        }
+
+        // none of the buffers is referenced any more, so once they are collected their entries go
+        for (int attempt = 0; attempt < 50 && MappedFileStore.size() > sizeBefore; ++attempt) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(MappedFileStore.size() <= sizeBefore, "entries left: " + MappedFileStore.size());
+    }
+
+    @Test
+    public void testSeekableStreamOverBlockCompressedFile() throws IOException {
+        final File file = createTempFile("MappedFileStoreTest", ".bgzf");
+        final byte[] bytes = new byte[200000];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) (i % 251);
+        }
+        final long secondHalf;
+        try (final BlockCompressedOutputStream out = new BlockCompressedOutputStream(file)) {
+            out.write(bytes, 0, bytes.length / 2);
+            out.flush();
+            secondHalf = out.getFilePointer();
+            out.write(bytes, bytes.length / 2, bytes.length / 2);
+        }
+
+        try (final SeekableStream stream = MappedFileStore.openSeekableStream(file)) {
+            Assert.assertEquals(stream.length(), file.length());
+            final BlockCompressedInputStream in = new BlockCompressedInputStream(stream);
+            in.seek(secondHalf);
+            final byte[] read = new byte[bytes.length / 2];
+            Assert.assertEquals(in.read(read), read.length);
+            for (int i = 0; i < read.length; ++i) {
+                Assert.assertEquals(read[i], bytes[bytes.length / 2 + i]);
+            }
+
+            in.seek(0);
+            Assert.assertEquals(in.read(), bytes[0] & 0xFF);
+        }
+    }
+
+    private static void write(final File file, final byte[] bytes) throws IOException {
+        try (final FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+    }
+}
@@ -1,17 +1,22 @@
 package org.broadinstitute.hellbender.tools.picard.sam;
 
 import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.fastq.FastqReader;
 import htsjdk.samtools.util.FastqQualityFormat;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
 import org.broadinstitute.hellbender.exceptions.GATKException;
 import org.broadinstitute.hellbender.exceptions.UserException;
+import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.*;
 
 /**
@@ -137,6 +142,101 @@ public class FastqToSamIntegrationTest extends CommandLineProgramTest {
         convertFile(filename1, filename2, version);
     }
 
+    @Test(dataProvider = "okPairedFiles")
+    public void testPairedInParallel(final String filename1, final String filename2, final FastqQualityFormat version) throws IOException {
+        assertSameRecords(convertFile(filename1, filename2, version, false, 1), convertFile(filename1, filename2, version, false, 4));
+    }
+
+    @Test(dataProvider = "okVersionFiles")
+    public void testUnpairedInParallel(final String fastqVersionFilename, final FastqQualityFormat version) throws IOException {
+        assertSameRecords(convertFile(fastqVersionFilename, null, version, false, 1), convertFile(fastqVersionFilename, null, version, false, 2));
+    }
+
+    @Test(dataProvider = "badPairedFiles", expectedExceptions = UserException.class)
+    public void testPairedBadInParallel(final String filename1, final String filename2) throws IOException {
+        convertFile(filename1, filename2, FastqQualityFormat.Standard, false, 4);
+    }
+
+    @Test(dataProvider = "badFormatFiles", expectedExceptions = SAMException.class)
+    public void testBadFileInParallel(final String filename) throws IOException {
+        convertFile(filename, null, FastqQualityFormat.Standard, false, 4);
+    }
+
+    // several batches of reads, the last of them partial
+    @DataProvider(name = "manyReads")
+    public Object[][] manyReads() {
+        return new Object[][] {
+                {4321, false},
+                {4321, true},
+                {3000, true},
+        };
+    }
+
+    @Test(dataProvider = "manyReads")
+    public void testManyReadsInParallel(final int numReads, final boolean paired) throws IOException {
+        final File fastq1 = writeFastq(numReads, paired ? 1 : 0, -1);
+        final File fastq2 = paired ? writeFastq(numReads, 2, -1) : null;
+        final File expected = convertFile(fastq1, fastq2, FastqQualityFormat.Standard, false, 1);
+        final File actual = convertFile(fastq1, fastq2, FastqQualityFormat.Standard, false, 4);
+        assertSameRecords(expected, actual);
+        try (final SamReader reader = SamReaderFactory.makeDefault().open(actual)) {
+            int count = 0;
+            for (final SAMRecord rec : reader) {
+                Assert.assertEquals(rec.getReadName(), "read" + (paired ? count / 2 : count));
+                count++;
+            }
+            Assert.assertEquals(count, paired ? 2 * numReads : numReads);
+        }
+    }
+
+    @Test(expectedExceptions = UserException.class)
+    public void testManyReadsMismatchedPairInParallel() throws IOException {
+        // a pair of reads with different names well past the first batch
+        convertFile(writeFastq(4321, 1, -1), writeFastq(4321, 2, 2500), FastqQualityFormat.Standard, false, 4);
+    }
+
+    @Test(expectedExceptions = UserException.class)
+    public void testManyReadsOneMoreRecordInParallel() throws IOException {
+        convertFile(writeFastq(3000, 1, -1), writeFastq(3001, 2, -1), FastqQualityFormat.Standard, false, 4);
+    }
+
+    /**
+     * Writes numReads reads named read0, read1, ..., suffixed by /end unless end is 0, and naming the read at index
+     * misnamed (if any) differently.
+     */
+    private static File writeFastq(final int numReads, final int end, final int misnamed) throws IOException {
+        final File fastq = newTempFile("many_reads_" + end);
+        final Random random = new Random(end);
+        final char[] bases = {'A', 'C', 'G', 'T', 'N'};
+        try (final PrintWriter out = new PrintWriter(fastq)) {
+            for (int i = 0; i < numReads; i++) {
+                final StringBuilder seq = new StringBuilder();
+                final StringBuilder qual = new StringBuilder();
+                for (int j = 0; j < 36; j++) {
+                    seq.append(bases[random.nextInt(bases.length)]);
+                    qual.append((char) ('!' + random.nextInt(41)));
+                }
+                out.println("@" + (i == misnamed ? "other" : "read") + i + (end == 0 ? "" : "/" + end));
+                out.println(seq);
+                out.println("+");
+                out.println(qual);
+            }
+        }
+        return fastq;
+    }
+
+    private static void assertSameRecords(final File expected, final File actual) throws IOException {
+        try (final SamReader expectedReader = SamReaderFactory.makeDefault().open(expected);
+             final SamReader actualReader = SamReaderFactory.makeDefault().open(actual)) {
+            final Iterator<SAMRecord> actualRecords = actualReader.iterator();
+            for (final SAMRecord expectedRecord : expectedReader) {
+                Assert.assertTrue(actualRecords.hasNext());
+                Assert.assertEquals(actualRecords.next().getSAMString(), expectedRecord.getSAMString());
+            }
+            Assert.assertFalse(actualRecords.hasNext());
+        }
+    }
+
     private File convertFile(final String filename, final FastqQualityFormat version) throws IOException {
         return convertFile(filename, null, version);
     }
@@ -146,15 +246,23 @@ public class FastqToSamIntegrationTest extends CommandLineProgramTest {
     }
 
     private File convertFile(final String fastqFilename1, final String fastqFilename2, final FastqQualityFormat version,final boolean permissiveFormat) throws IOException {
+        return convertFile(fastqFilename1, fastqFilename2, version, permissiveFormat, 1);
+    }
+
+    private File convertFile(final String fastqFilename1, final String fastqFilename2, final FastqQualityFormat version,final boolean permissiveFormat, final int numProcessors) throws IOException {
         final File fastq1 = new File(TEST_DATA_DIR, fastqFilename1);
         final File fastq2 = (fastqFilename2 != null) ? new File(TEST_DATA_DIR, fastqFilename2) : null;
+        return convertFile(fastq1, fastq2, version, permissiveFormat, numProcessors);
+    }
+
+    private File convertFile(final File fastq1, final File fastq2, final FastqQualityFormat version,final boolean permissiveFormat, final int numProcessors) throws IOException {
         final File samFile = newTempSamFile(fastq1.getName());
 
         final List<String> args = new ArrayList<>();
 
         args.add("--FASTQ");
         args.add(fastq1.getAbsolutePath());
-        if (fastqFilename2 != null) {
+        if (fastq2 != null) {
             args.add("--FASTQ2");
             args.add(fastq2.getAbsolutePath());
         }
@@ -170,6 +278,8 @@ public class FastqToSamIntegrationTest extends CommandLineProgramTest {
             args.add("--ALLOW_AND_IGNORE_EMPTY_LINES");
             args.add("true");
         }
+        args.add("--NUM_PROCESSORS");
+        args.add(Integer.toString(numProcessors));
 
         runCommandLine(args);
         return samFile;
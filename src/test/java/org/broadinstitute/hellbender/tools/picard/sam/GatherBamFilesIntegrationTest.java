@@ -1,11 +1,15 @@
 package org.broadinstitute.hellbender.tools.picard.sam;
 
-import htsjdk.samtools.BamFileIoUtils;
+import htsjdk.samtools.*;
+import htsjdk.samtools.util.IOUtil;
 import org.broadinstitute.hellbender.CommandLineProgramTest;
 import org.broadinstitute.hellbender.utils.read.SamAssertionUtils;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
 
 public class GatherBamFilesIntegrationTest extends CommandLineProgramTest {
@@ -23,6 +27,12 @@ public class GatherBamFilesIntegrationTest extends CommandLineProgramTest {
             new File(TEST_DATA_DIR, "indchr8.bam")
     );
 
+    /** The shards in the order a scatter over the sequence dictionary would produce them, which keeps the gathered file sorted. */
+    private static final List<File> SCATTER_ORDER = new ArrayList<>(SPLIT_BAMS.subList(1, SPLIT_BAMS.size()));
+    static {
+        SCATTER_ORDER.add(SPLIT_BAMS.get(0));
+    }
+
     public String getCommandLineProgramName() {
         return GatherBamFiles.class.getSimpleName();
     }
@@ -41,4 +51,89 @@ public class GatherBamFilesIntegrationTest extends CommandLineProgramTest {
         SamAssertionUtils.assertSamsEqual(ORIG_BAM, outputFile);
         SamAssertionUtils.assertSamsNonEqual(ORIG_BAM, SPLIT_BAMS.get(0)); // sanity check
     }
+
+    @Test
+    public void testGatheringWithIndexMerging() throws Exception {
+        final File shardDir = IOUtil.createTempDir("gatherBamFilesTest", ".shards");
+        final List<File> shards = new ArrayList<>();
+        for (final File splitBam : SCATTER_ORDER) {
+            final File shard = new File(shardDir, splitBam.getName());
+            Files.copy(splitBam.toPath(), shard.toPath());
+            index(shard, new File(shardDir, IOUtil.basename(shard) + BAMIndex.BAMIndexSuffix));
+            shards.add(shard);
+        }
+        final File outputFile = new File(shardDir, "gathered" + BamFileIoUtils.BAM_FILE_EXTENSION);
+        gather(shards, outputFile, "--CREATE_INDEX", "true");
+        final File expectedFile = new File(shardDir, "expected" + BamFileIoUtils.BAM_FILE_EXTENSION);
+        gather(SCATTER_ORDER, expectedFile);
+        SamAssertionUtils.assertSamsEqual(expectedFile, outputFile);
+
+        // an index made by reading the gathered file must answer every query the same way as the merged one
+        final File mergedIndex = new File(shardDir, "gathered" + BAMIndex.BAMIndexSuffix);
+        final File rebuiltIndex = new File(shardDir, "rebuilt" + BAMIndex.BAMIndexSuffix);
+        index(outputFile, rebuiltIndex);
+        try (final SamReader merged = SamReaderFactory.makeDefault().open(SamInputResource.of(outputFile).index(mergedIndex));
+             final SamReader rebuilt = SamReaderFactory.makeDefault().open(SamInputResource.of(outputFile).index(rebuiltIndex))) {
+            for (final SAMSequenceRecord sequence : merged.getFileHeader().getSequenceDictionary().getSequences()) {
+                final int length = sequence.getSequenceLength();
+                for (final int[] interval : new int[][]{{1, length}, {1, length / 3}, {length / 3, 2 * length / 3}, {2 * length / 3, length}}) {
+                    Assert.assertEquals(readNames(merged.queryOverlapping(sequence.getSequenceName(), interval[0], interval[1])),
+                            readNames(rebuilt.queryOverlapping(sequence.getSequenceName(), interval[0], interval[1])));
+                }
+                final BAMIndexMetaData mergedMetaData = merged.indexing().getIndex().getMetaData(sequence.getSequenceIndex());
+                final BAMIndexMetaData rebuiltMetaData = rebuilt.indexing().getIndex().getMetaData(sequence.getSequenceIndex());
+                Assert.assertEquals(mergedMetaData.getAlignedRecordCount(), rebuiltMetaData.getAlignedRecordCount());
+                Assert.assertEquals(mergedMetaData.getUnalignedRecordCount(), rebuiltMetaData.getUnalignedRecordCount());
+            }
+            Assert.assertEquals(readNames(merged.queryUnmapped()), readNames(rebuilt.queryUnmapped()));
+        }
+    }
+
+    @Test
+    public void testGatheringSamInputsInParallel() throws Exception {
+        final File samFile = File.createTempFile("gatherBamFilesTest.", ".sam");
+        samFile.deleteOnExit();
+        try (final SamReader in = SamReaderFactory.makeDefault().open(SCATTER_ORDER.get(1));
+             final SAMFileWriter out = new SAMFileWriterFactory().makeSAMWriter(in.getFileHeader(), true, samFile)) {
+            for (final SAMRecord rec : in) out.addAlignment(rec);
+        }
+        final List<File> inputs = new ArrayList<>(SCATTER_ORDER);
+        inputs.set(1, samFile);
+
+        final File outputFile = File.createTempFile("gatherBamFilesTest.samFile.", BamFileIoUtils.BAM_FILE_EXTENSION);
+        outputFile.deleteOnExit();
+        gather(inputs, outputFile, "--NUM_PROCESSORS", "4");
+        final File expectedFile = File.createTempFile("gatherBamFilesTest.expected.", BamFileIoUtils.BAM_FILE_EXTENSION);
+        expectedFile.deleteOnExit();
+        gather(inputs, expectedFile, "--NUM_PROCESSORS", "1");
+        SamAssertionUtils.assertSamsEqual(expectedFile, outputFile);
+    }
+
+    private void gather(final List<File> inputs, final File output, final String... extraArgs) {
+        final List<String> args = new ArrayList<>();
+        for (final File input : inputs) {
+            args.add("--INPUT");
+            args.add(input.getAbsolutePath());
+        }
+        args.add("--OUTPUT");
+        args.add(output.getAbsolutePath());
+        args.addAll(Arrays.asList(extraArgs));
+        runCommandLine(args);
+    }
+
+    private static void index(final File bam, final File index) throws IOException {
+        try (final SamReader reader = SamReaderFactory.makeDefault().enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(bam)) {
+            BAMIndexer.createIndex(reader, index);
+        }
+    }
+
+    private static List<String> readNames(final SAMRecordIterator iterator) {
+        final List<String> names = new ArrayList<>();
+        while (iterator.hasNext()) {
+            final SAMRecord rec = iterator.next();
+            names.add(rec.getReadName() + "/" + rec.getFlags() + "/" + rec.getAlignmentStart());
+        }
+        iterator.close();
+        return names;
+    }
 }
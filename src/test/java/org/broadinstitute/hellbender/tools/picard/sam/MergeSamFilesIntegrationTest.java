@@ -2,6 +2,7 @@ package org.broadinstitute.hellbender.tools.picard.sam;
 
 import htsjdk.samtools.BamFileIoUtils;
 import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.util.CloserUtil;
@@ -11,6 +12,7 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.util.Iterator;
 
 public class MergeSamFilesIntegrationTest extends CommandLineProgramTest {
     private static final File TEST_DATA_DIR = new File(getTestDataDir(), "picard/sam/MergeSamFiles");
@@ -42,4 +44,43 @@ public class MergeSamFilesIntegrationTest extends CommandLineProgramTest {
         SamAssertionUtils.assertSamValid(mergedOutput);
         CloserUtil.close(reader);
     }
+
+    /**
+     * Confirm that reading the inputs on background threads gives exactly the same records as merging them directly.
+     */
+    @Test
+    public void prefetchedInputsMatchDirectMergeTest() throws Exception {
+        final File unsortedInputTestDataDir = new File(TEST_DATA_DIR, "unsorted_input");
+        final File sam1 = new File(unsortedInputTestDataDir, "1.sam");
+        final File sam2 = new File(unsortedInputTestDataDir, "2.sam");
+        final File directOutput = File.createTempFile("prefetchedInputsMatchDirectMergeTest.direct.", BamFileIoUtils.BAM_FILE_EXTENSION);
+        final File prefetchedOutput = File.createTempFile("prefetchedInputsMatchDirectMergeTest.prefetched.", BamFileIoUtils.BAM_FILE_EXTENSION);
+        directOutput.deleteOnExit();
+        prefetchedOutput.deleteOnExit();
+
+        for (final File output : new File[]{directOutput, prefetchedOutput}) {
+            runCommandLine(new String[]{
+                    "--INPUT", sam1.getAbsolutePath(),
+                    "--INPUT", sam2.getAbsolutePath(),
+                    "--OUTPUT", output.getAbsolutePath(),
+                    "--SO", "coordinate",
+                    "--PREFETCH_INPUTS", Boolean.toString(output == prefetchedOutput),
+                    "--MAX_RECORDS_IN_RAM", "10"
+            });
+        }
+
+        final SamReader directReader = SamReaderFactory.makeDefault().open(directOutput);
+        final SamReader prefetchedReader = SamReaderFactory.makeDefault().open(prefetchedOutput);
+        final Iterator<SAMRecord> prefetchedIterator = prefetchedReader.iterator();
+        int count = 0;
+        for (final SAMRecord record : directReader) {
+            Assert.assertTrue(prefetchedIterator.hasNext());
+            Assert.assertEquals(prefetchedIterator.next().getSAMString(), record.getSAMString());
+            count++;
+        }
+        Assert.assertFalse(prefetchedIterator.hasNext());
+        Assert.assertTrue(count > 0);
+        CloserUtil.close(directReader);
+        CloserUtil.close(prefetchedReader);
+    }
 }
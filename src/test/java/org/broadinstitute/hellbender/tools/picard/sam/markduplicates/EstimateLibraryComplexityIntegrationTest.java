@@ -0,0 +1,116 @@
+package org.broadinstitute.hellbender.tools.picard.sam.markduplicates;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTag;
+import org.broadinstitute.hellbender.CommandLineProgramTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public final class EstimateLibraryComplexityIntegrationTest extends CommandLineProgramTest {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+    private static final int READ_LENGTH = 50;
+
+    @Test
+    public void testMultipleThreadsGiveTheSameMetrics() throws IOException {
+        final File input = createTempFile("EstimateLibraryComplexity", ".sam");
+        writeDuplicatedPairs(input, 3000);
+
+        final List<String> serial = runAndReadMetrics(input, 1);
+        final List<String> parallel = runAndReadMetrics(input, 4);
+        Assert.assertEquals(parallel, serial);
+        Assert.assertTrue(serial.stream().anyMatch(line -> line.startsWith("lib1\t")));
+        Assert.assertTrue(serial.stream().anyMatch(line -> line.startsWith("lib2\t")));
+    }
+
+    /**
+     * Runs the tool and returns the lines of its metrics, without the header that records the command line.
+     */
+    private List<String> runAndReadMetrics(final File input, final int numProcessors) throws IOException {
+        final File output = createTempFile("EstimateLibraryComplexity", ".metrics");
+        final String[] args = {
+                "--INPUT", input.getAbsolutePath(),
+                "--OUTPUT", output.getAbsolutePath(),
+                "--NUM_PROCESSORS", Integer.toString(numProcessors)
+        };
+        Assert.assertNull(runCommandLine(args));
+        return Files.readAllLines(output.toPath()).stream()
+                .filter(line -> !line.startsWith("#"))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Writes pairs of unmapped reads from two libraries, made up of molecules each read between one and five times,
+     * some of the copies with a mismatch and some of them close enough on the tile to be optical duplicates.
+     */
+    private static void writeDuplicatedPairs(final File file, final int numMolecules) {
+        final SAMFileHeader header = new SAMFileHeader();
+        header.setSortOrder(SAMFileHeader.SortOrder.unsorted);
+        for (final String id : Arrays.asList("1", "2")) {
+            final SAMReadGroupRecord readGroup = new SAMReadGroupRecord(id);
+            readGroup.setSample("sample");
+            readGroup.setLibrary("lib" + id);
+            header.addReadGroup(readGroup);
+        }
+
+        final Random random = new Random(42);
+        final byte[] qualities = new byte[READ_LENGTH];
+        Arrays.fill(qualities, (byte) 30);
+        try (final SAMFileWriter writer = new SAMFileWriterFactory().makeSAMWriter(header, false, file)) {
+            int pairs = 0;
+            for (int molecule = 0; molecule < numMolecules; ++molecule) {
+                final byte[] read1 = randomBases(random);
+                final byte[] read2 = randomBases(random);
+                final String readGroup = random.nextBoolean() ? "1" : "2";
+                final int x = random.nextInt(20000);
+                final int y = random.nextInt(20000);
+                final int copies = 1 + random.nextInt(5);
+                for (int copy = 0; copy < copies; ++copy) {
+                    final byte[] copy1 = read1.clone();
+                    if (random.nextInt(4) == 0) {
+                        copy1[10 + random.nextInt(READ_LENGTH - 10)] = BASES[random.nextInt(BASES.length)];
+                    }
+                    final boolean optical = random.nextBoolean();
+                    final String name = "RUN:1:" + (1101 + molecule % 3) + ":" + (optical ? x + copy : random.nextInt(20000))
+                            + ":" + (optical ? y + copy : random.nextInt(20000)) + ":" + pairs++;
+                    writer.addAlignment(makeRead(header, name, readGroup, copy1, qualities, true));
+                    writer.addAlignment(makeRead(header, name, readGroup, read2.clone(), qualities, false));
+                }
+            }
+        }
+    }
+
+    private static byte[] randomBases(final Random random) {
+        final byte[] bases = new byte[READ_LENGTH];
+        for (int i = 0; i < bases.length; ++i) {
+            bases[i] = BASES[random.nextInt(BASES.length)];
+        }
+        return bases;
+    }
+
+    private static SAMRecord makeRead(final SAMFileHeader header, final String name, final String readGroup,
+                                      final byte[] bases, final byte[] qualities, final boolean firstOfPair) {
+        final SAMRecord rec = new SAMRecord(header);
+        rec.setReadName(name);
+        rec.setReadPairedFlag(true);
+        rec.setReadUnmappedFlag(true);
+        rec.setMateUnmappedFlag(true);
+        rec.setFirstOfPairFlag(firstOfPair);
+        rec.setSecondOfPairFlag(!firstOfPair);
+        rec.setReadBases(bases);
+        rec.setBaseQualities(qualities);
+        rec.setAttribute(SAMTag.RG.name(), readGroup);
+        return rec;
+    }
+}
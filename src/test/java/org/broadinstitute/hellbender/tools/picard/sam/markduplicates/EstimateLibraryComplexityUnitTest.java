@@ -0,0 +1,71 @@
+package org.broadinstitute.hellbender.tools.picard.sam.markduplicates;
+
+import htsjdk.samtools.util.Histogram;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+public class EstimateLibraryComplexityUnitTest {
+
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    @DataProvider(name = "readLengths")
+    public Object[][] readLengths() {
+        return new Object[][]{{1}, {5}, {31}, {32}, {33}, {76}, {101}, {150}, {251}};
+    }
+
+    /** Tests that the packed comparison counts the same mismatches as a base by base comparison over any range */
+    @Test(dataProvider = "readLengths")
+    public void testCountMismatchesMatchesByteComparison(final int readLength) {
+        final Random random = new Random(readLength);
+        for (int trial = 0; trial < 100; ++trial) {
+            final byte[] lhs = new byte[readLength];
+            final byte[] rhs = new byte[readLength];
+            for (int i = 0; i < readLength; ++i) {
+                lhs[i] = BASES[random.nextInt(4)];
+                rhs[i] = random.nextInt(10) == 0 ? BASES[random.nextInt(4)] : lhs[i];
+            }
+
+            final long[] packedLhs = EstimateLibraryComplexity.packBases(lhs);
+            final long[] packedRhs = EstimateLibraryComplexity.packBases(rhs);
+            final int start = random.nextInt(readLength + 1);
+            final int end = start + random.nextInt(readLength - start + 1);
+
+            int expected = 0;
+            for (int i = start; i < end; ++i) {
+                if (lhs[i] != rhs[i]) ++expected;
+            }
+            Assert.assertEquals(EstimateLibraryComplexity.countMismatches(packedLhs, packedRhs, start, end), expected);
+        }
+    }
+
+    @Test
+    public void testPackBasesRejectsOtherBases() {
+        Assert.assertNotNull(EstimateLibraryComplexity.packBases("ACGTACGT".getBytes()));
+        Assert.assertNull(EstimateLibraryComplexity.packBases("ACGTNCGT".getBytes()));
+        Assert.assertNull(EstimateLibraryComplexity.packBases("acgtacgt".getBytes()));
+    }
+
+    @Test
+    public void testMergeLibraryHistograms() {
+        final EstimateLibraryComplexity.LibraryHistograms first = new EstimateLibraryComplexity.LibraryHistograms();
+        first.getDuplicationHisto("lib1").increment(1);
+        first.getDuplicationHisto("lib1").increment(2);
+        first.getOpticalHisto("lib1").increment(2);
+
+        final EstimateLibraryComplexity.LibraryHistograms second = new EstimateLibraryComplexity.LibraryHistograms();
+        second.getDuplicationHisto("lib1").increment(2);
+        second.getDuplicationHisto("lib2").increment(1);
+
+        first.merge(second);
+
+        final Histogram<Integer> lib1 = first.getDuplicationHisto("lib1");
+        Assert.assertEquals(lib1.get(1).getValue(), 1.0);
+        Assert.assertEquals(lib1.get(2).getValue(), 2.0);
+        Assert.assertEquals(first.getOpticalHisto("lib1").get(2).getValue(), 1.0);
+        Assert.assertEquals(first.getDuplicationHisto("lib2").get(1).getValue(), 1.0);
+        Assert.assertTrue(first.getOpticalHisto("lib2").isEmpty());
+    }
+}
@@ -5,6 +5,7 @@ import org.broadinstitute.hellbender.exceptions.UserException;
 import org.broadinstitute.hellbender.utils.read.markduplicates.AbstractMarkDuplicatesCommandLineProgramTest;
 import org.broadinstitute.hellbender.utils.read.markduplicates.AbstractMarkDuplicatesTester;
 import org.broadinstitute.hellbender.utils.read.markduplicates.MarkDuplicatesWithMateCigarTester;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 /**
@@ -84,4 +85,29 @@ public class MarkDuplicatesWithMateCigarIntegrationTest extends AbstractMarkDupl
 
         tester.runTest();
     }
+
+    @DataProvider(name = "maxRecordsInMarkQueue")
+    public Object[][] maxRecordsInMarkQueue() {
+        return new Object[][]{{0}, {1}, {2}};
+    }
+
+    /** Releasing the records of read ends pending in the mark queue must not change duplicate or optical duplicate marking. */
+    @Test(dataProvider = "maxRecordsInMarkQueue")
+    public void testReleasedRecordsInMarkQueue(final int maxRecordsInMarkQueue) {
+        final AbstractMarkDuplicatesTester tester = getTester();
+        tester.addArg("--MAX_RECORDS_IN_MARK_QUEUE", Integer.toString(maxRecordsInMarkQueue));
+        tester.setExpectedOpticalDuplicate(1);
+        tester.addMappedFragment(1, 1, true, DEFAULT_BASE_QUALITY); // duplicate of the pairs
+        tester.addMatePair("READ0:1:1:1:1", 1, 1, 100, false, false, false, false, "50M", "50M", false, true, false,
+                false, false, DEFAULT_BASE_QUALITY);
+        tester.addMatePair("READ1:1:1:1:300", 1, 1, 100, false, false, true, true, "50M", "50M", false, true, false,
+                false, false, DEFAULT_BASE_QUALITY);
+        tester.addMatePair("READ2:1:1:1:50", 1, 1, 100, false, false, true, true, "50M", "50M", false, true, false,
+                false, false, DEFAULT_BASE_QUALITY); // optical duplicate
+        tester.addMappedPair(1, 500, 650, false, false, DEFAULT_BASE_QUALITY);
+        tester.addMappedPair(1, 500, 650, true, true, DEFAULT_BASE_QUALITY);
+        tester.addMappedFragment(1, 1000, false, DEFAULT_BASE_QUALITY);
+        tester.addMappedFragment(1, 1000, true, DEFAULT_BASE_QUALITY);
+        tester.runTest();
+    }
 }
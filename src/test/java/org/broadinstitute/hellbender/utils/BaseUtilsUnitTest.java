@@ -65,6 +65,31 @@ public class BaseUtilsUnitTest extends BaseTest {
         Assert.assertTrue(rcObs.equals(rcExp));
     }
 
+    @Test
+    public void testPackBases() {
+        Assert.assertEquals(BaseUtils.packBases("A".getBytes(), 0, 1), 0);
+        Assert.assertEquals(BaseUtils.packBases("T".getBytes(), 0, 1), 3);
+        Assert.assertEquals(BaseUtils.packBases("ACGT".getBytes(), 0, 4), 0b00011011);
+        Assert.assertEquals(BaseUtils.packBases("NNacgtNN".getBytes(), 2, 4), 0b00011011);
+        Assert.assertEquals(BaseUtils.packBases("TTTTTTTTTTTTTTT".getBytes(), 0, 15), (1 << 30) - 1);
+        Assert.assertEquals(BaseUtils.packBases("ACNGT".getBytes(), 0, 5), -1);
+        Assert.assertEquals(BaseUtils.packBases("ACNGT".getBytes(), 3, 2), BaseUtils.packBases("GT".getBytes(), 0, 2));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testPackTooManyBases() {
+        BaseUtils.packBases("AAAAAAAAAAAAAAAA".getBytes(), 0, 16);
+    }
+
+    @Test
+    public void testReverseComplementPackedBases() {
+        for (final String fw : new String[]{"A", "ACGGT", "TCGTATATCTCGCTA", "CCA"}) {
+            final int packed = BaseUtils.packBases(fw.getBytes(), 0, fw.length());
+            final int rcPacked = BaseUtils.packBases(BaseUtils.simpleReverseComplement(fw.getBytes()), 0, fw.length());
+            Assert.assertEquals(BaseUtils.reverseComplementPackedBases(packed, fw.length()), rcPacked, fw);
+        }
+    }
+
 
     @Test
     public void testCaptureStdOut(){
@@ -0,0 +1,120 @@
+package org.broadinstitute.hellbender.utils.fasta;
+
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.IOUtil;
+import org.broadinstitute.hellbender.exceptions.UserException;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class PrefetchingReferenceWalkerUnitTest extends BaseTest {
+
+    @DataProvider(name = "references")
+    public Object[][] references() throws IOException {
+        return new Object[][]{
+                {new File(hg19MiniReference)},
+                {new File(publicTestDir, "exampleFASTA.fasta")},
+                {writeWindowsFasta(new File(hg19MiniReference), 7)},
+                {copyWithoutIndex(new File(hg19MiniReference))},
+        };
+    }
+
+    @Test(dataProvider = "references")
+    public void testSequencesInOrder(final File reference) {
+        final List<ReferenceSequence> expected = readAll(reference);
+        try (final PrefetchingReferenceWalker walker = new PrefetchingReferenceWalker(reference)) {
+            for (int i = 0; i < expected.size(); ++i) {
+                final ReferenceSequence sequence = walker.get(i);
+                assertSequencesEqual(sequence, expected.get(i));
+                Assert.assertSame(walker.get(i), sequence);
+            }
+        }
+    }
+
+    @Test(dataProvider = "references")
+    public void testSkippingSequences(final File reference) {
+        final List<ReferenceSequence> expected = readAll(reference);
+        try (final PrefetchingReferenceWalker walker = new PrefetchingReferenceWalker(reference)) {
+            for (int i = 0; i < expected.size(); i += 2) {
+                assertSequencesEqual(walker.get(i, expected.get(i).getName(), expected.get(i).length()), expected.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testSequencesOutOfOrder() throws IOException {
+        final File reference = writeWindowsFasta(new File(hg19MiniReference), 80);
+        final List<ReferenceSequence> expected = readAll(reference);
+        try (final PrefetchingReferenceWalker walker = new PrefetchingReferenceWalker(reference)) {
+            for (int i = expected.size() - 1; i >= 0; --i) {
+                assertSequencesEqual(walker.get(i), expected.get(i));
+            }
+            assertSequencesEqual(walker.get(2), expected.get(2));
+        }
+    }
+
+    @Test(expectedExceptions = UserException.MalformedFile.class)
+    public void testUnexpectedSequence() {
+        try (final PrefetchingReferenceWalker walker = new PrefetchingReferenceWalker(new File(hg19MiniReference))) {
+            walker.get(0, "2", 16000);
+        }
+    }
+
+    private static void assertSequencesEqual(final ReferenceSequence actual, final ReferenceSequence expected) {
+        Assert.assertEquals(actual.getName(), expected.getName());
+        Assert.assertEquals(actual.getContigIndex(), expected.getContigIndex());
+        Assert.assertEquals(actual.getBases(), expected.getBases(), expected.getName());
+    }
+
+    private static List<ReferenceSequence> readAll(final File reference) {
+        final ReferenceSequenceFile referenceFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(reference);
+        final List<ReferenceSequence> sequences = new ArrayList<>();
+        for (ReferenceSequence sequence = referenceFile.nextSequence(); sequence != null; sequence = referenceFile.nextSequence()) {
+            sequences.add(sequence);
+        }
+        return sequences;
+    }
+
+    /** Rewrites a fasta with the given number of bases per line and CRLF line terminators, along with its index. */
+    private static File writeWindowsFasta(final File reference, final int basesPerLine) throws IOException {
+        final File fasta = createTempFile("windows", ".fasta");
+        final File index = new File(fasta.getPath() + ".fai");
+        index.deleteOnExit();
+        try (final OutputStream out = new FileOutputStream(fasta);
+             final PrintWriter indexWriter = new PrintWriter(index)) {
+            long offset = 0;
+            for (final ReferenceSequence sequence : readAll(reference)) {
+                final byte[] header = (">" + sequence.getName() + " description\r\n").getBytes(StandardCharsets.US_ASCII);
+                out.write(header);
+                offset += header.length;
+                indexWriter.println(sequence.getName() + "\t" + sequence.length() + "\t" + offset + "\t" + basesPerLine + "\t" + (basesPerLine + 2));
+                for (int start = 0; start < sequence.length(); start += basesPerLine) {
+                    final int length = Math.min(basesPerLine, sequence.length() - start);
+                    out.write(sequence.getBases(), start, length);
+                    out.write('\r');
+                    out.write('\n');
+                    offset += length + 2;
+                }
+            }
+        }
+        return fasta;
+    }
+
+    private static File copyWithoutIndex(final File reference) throws IOException {
+        final File copy = createTempFile("unindexed", ".fasta");
+        IOUtil.copyFile(reference, copy);
+        return copy;
+    }
+}
@@ -0,0 +1,98 @@
+package org.broadinstitute.hellbender.utils.gene;
+
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+public final class LocusFunctionIndexUnitTest extends BaseTest {
+
+    @Test
+    public void testSingleTranscript() {
+        final Gene gene = new Gene("chr1", 100, 400, false, "gene");
+        final Gene.Transcript tx = gene.addTranscript("tx", 100, 400, 150, 350, 2);
+        tx.addExon(100, 200);
+        tx.addExon(300, 400);
+        final LocusFunctionIndex index = new LocusFunctionIndex(Collections.singletonList(gene));
+
+        Assert.assertEquals(index.getFunction("chr1", 99), LocusFunction.INTERGENIC);
+        Assert.assertEquals(index.getFunction("chr1", 100), LocusFunction.UTR);
+        Assert.assertEquals(index.getFunction("chr1", 150), LocusFunction.CODING);
+        Assert.assertEquals(index.getFunction("chr1", 201), LocusFunction.INTRONIC);
+        Assert.assertEquals(index.getFunction("chr1", 350), LocusFunction.CODING);
+        Assert.assertEquals(index.getFunction("chr1", 351), LocusFunction.UTR);
+        Assert.assertEquals(index.getFunction("chr1", 401), LocusFunction.INTERGENIC);
+        Assert.assertEquals(index.getFunction("chr2", 150), LocusFunction.INTERGENIC);
+
+        final long[] counts = new long[LocusFunction.values().length];
+        index.addFunctionCounts("chr1", 1, 500, counts);
+        Assert.assertEquals(counts, new long[]{199, 99, 100, 102, 0});
+    }
+
+    @Test
+    public void testMatchesTranscripts() {
+        final Random random = new Random(17);
+        final List<Gene> genes = new ArrayList<>();
+        for (int g = 0; g < 20; ++g) {
+            final String contig = random.nextBoolean() ? "chr1" : "chr2";
+            final int geneStart = 1 + random.nextInt(5000);
+            final Gene gene = new Gene(contig, geneStart, geneStart + 2000, random.nextBoolean(), "gene" + g);
+            for (int t = 0; t < 1 + random.nextInt(3); ++t) {
+                final int numExons = 1 + random.nextInt(5);
+                final int[] bounds = new int[numExons * 2];
+                for (int i = 0; i < bounds.length; ++i) bounds[i] = geneStart + random.nextInt(2000);
+                Arrays.sort(bounds);
+                for (int i = 1; i < bounds.length; ++i) bounds[i] = Math.max(bounds[i], bounds[i - 1] + 1);
+                final int codingStart = bounds[0] + random.nextInt(200);
+                final int codingEnd = random.nextInt(4) == 0 ? codingStart - 1 : bounds[bounds.length - 1] - random.nextInt(200);
+                final Gene.Transcript tx = gene.addTranscript("tx" + t, bounds[0], bounds[bounds.length - 1], codingStart, codingEnd, numExons);
+                for (int i = 0; i < numExons; ++i) tx.addExon(bounds[2 * i], bounds[2 * i + 1]);
+            }
+            genes.add(gene);
+        }
+        final LocusFunctionIndex index = new LocusFunctionIndex(genes);
+
+        for (final String contig : Arrays.asList("chr1", "chr2")) {
+            final LocusFunction[] expected = new LocusFunction[8000];
+            Arrays.fill(expected, LocusFunction.INTERGENIC);
+            for (final Gene gene : genes) {
+                if (!gene.getContig().equals(contig)) continue;
+                for (final Gene.Transcript tx : gene) tx.assignLocusFunctionForRange(1, expected);
+            }
+            for (int locus = 1; locus <= expected.length; ++locus) {
+                Assert.assertEquals(index.getFunction(contig, locus), expected[locus - 1], contig + ":" + locus);
+            }
+
+            for (int i = 0; i < 100; ++i) {
+                final int start = 1 + random.nextInt(7000);
+                final int end = start + random.nextInt(1000);
+                final long[] expectedCounts = new long[LocusFunction.values().length];
+                for (int locus = start; locus <= end; ++locus) expectedCounts[expected[locus - 1].ordinal()]++;
+                final long[] counts = new long[LocusFunction.values().length];
+                index.addFunctionCounts(contig, start, end, counts);
+                Assert.assertEquals(counts, expectedCounts, contig + ":" + start + "-" + end);
+            }
+        }
+    }
+
+    @Test
+    public void testCoverageCounts() {
+        final Gene gene = new Gene("chr1", 100, 400, false, "gene");
+        final Gene.Transcript tx = gene.addTranscript("tx", 100, 400, 150, 350, 3);
+        tx.addExon(100, 120);
+        tx.addExon(200, 210);
+        tx.addExon(300, 400);
+        for (int start = 90; start < 410; start += 7) {
+            final int end = start + 60;
+            final int[] expected = new int[tx.length()];
+            for (int i = start; i < end; ++i) {
+                final int txBase = tx.getTranscriptCoordinate(i);
+                if (txBase > 0) expected[txBase - 1]++;
+            }
+            final int[] coverage = new int[tx.length()];
+            tx.addCoverageCounts(start, end, coverage);
+            Assert.assertEquals(coverage, expected, start + "-" + end);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.broadinstitute.hellbender.utils.illumina;
+
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static htsjdk.samtools.util.StringUtil.stringToBytes;
+import static org.broadinstitute.hellbender.utils.illumina.ClippingUtil.findIndexOfClipSequence;
+
+public final class AdapterSeedIndexTest extends BaseTest {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    @DataProvider(name = "adapters")
+    public Object[][] adapters() {
+        return new Object[][]{
+                // adapter, min match, max error rate, seeded
+                {"AGATCGGAAGAGCACACGTCTGAACTCCAG", 12, 0.10, true},   // the single-end defaults
+                {"AGATCGGAAGAGCACACGTCTGAACTCCAG", 6, 0.10, true},    // the paired-end defaults
+                {"AGATCGGAAGAGCGTCGTGTAGGGAAAGAG", 6, 0.10, true},
+                {"AGATCGGAAGAGCACACGTC", 12, 0.10, true},
+                {"AGATCGGAAGAGCACACGTCTGAACTCCAG", 12, 0.20, false},  // too many mismatches to seed
+                {"AGATCGGAAGAGCACACGTCTGAACTCCAG", 4, 0.10, false},   // too short a match to seed
+                {"AGATCGGAAGNNNNNNNNTCTGAACTCCAG", 12, 0.10, false},  // no-calls can't be seeded
+                {"AGATC", 3, 0.0, false},                             // too short to seed
+        };
+    }
+
+    @Test(dataProvider = "adapters")
+    public void testFindsWhatTheExhaustiveSearchFinds(final String adapter, final int minMatch, final double maxErrorRate,
+                                                      final boolean seeded) {
+        final byte[] adapterBases = stringToBytes(adapter);
+        final AdapterSeedIndex index = new AdapterSeedIndex(adapterBases);
+        Assert.assertEquals(index.isSeeded(minMatch, maxErrorRate), seeded);
+        final Random random = new Random(minMatch);
+        final byte[] readBases = {'A', 'C', 'G', 'T', 'a', 'c', 'g', 't', 'N', '.'};
+
+        int matches = 0;
+        for (int i = 0; i < 20000; ++i) {
+            // random reads with some of the adapter at a random place, with a few changes
+            final byte[] read = new byte[1 + random.nextInt(150)];
+            for (int j = 0; j < read.length; ++j) {
+                read[j] = BASES[random.nextInt(BASES.length)];
+            }
+            final int start = random.nextInt(read.length);
+            for (int j = 0; j < adapterBases.length && start + j < read.length; ++j) {
+                read[start + j] = adapterBases[j];
+            }
+            final int changes = random.nextInt(5);
+            for (int c = 0; c < changes; ++c) {
+                read[random.nextInt(read.length)] = readBases[random.nextInt(readBases.length)];
+            }
+
+            final int expected = findIndexOfClipSequence(read, adapterBases, minMatch, maxErrorRate);
+            Assert.assertEquals(index.findIndexOfClipSequence(read, minMatch, maxErrorRate), expected);
+            if (expected != ClippingUtil.NO_MATCH) ++matches;
+        }
+        Assert.assertTrue(matches > 1000);
+        Assert.assertEquals(index.findIndexOfClipSequence(null, minMatch, maxErrorRate), ClippingUtil.NO_MATCH);
+        // the decision is remembered rather than changed by the searches
+        Assert.assertEquals(index.isSeeded(minMatch, maxErrorRate), seeded);
+    }
+
+    @Test
+    public void testDefaultsAreSeeded() {
+        final AdapterMarker adapterMarker = new AdapterMarker(IlluminaUtil.IlluminaAdapterPair.values());
+        for (final AdapterPair adapter : adapterMarker.getAdapters()) {
+            final AdapterMarker.TruncatedAdapterPair truncated = (AdapterMarker.TruncatedAdapterPair) adapter;
+            for (final AdapterSeedIndex index : new AdapterSeedIndex[]{truncated.get3PrimeAdapterSeedIndex(), truncated.get5PrimeAdapterInReadOrderSeedIndex()}) {
+                Assert.assertTrue(index.isSeeded(ClippingUtil.MIN_MATCH_BASES, ClippingUtil.MAX_ERROR_RATE), adapter.toString());
+                Assert.assertTrue(index.isSeeded(ClippingUtil.MIN_MATCH_PE_BASES, ClippingUtil.MAX_PE_ERROR_RATE), adapter.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.broadinstitute.hellbender.utils.iterators;
+
+import htsjdk.samtools.util.CloseableIterator;
+import org.broadinstitute.hellbender.utils.test.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class PrefetchingIteratorUnitTest extends BaseTest {
+
+    /** Iterates over the integers [0, n), optionally failing instead of returning failAt, and records whether it was closed */
+    private static class CountingIterator implements CloseableIterator<Integer> {
+        private final int n;
+        private final int failAt;
+        private int next = 0;
+        boolean closed = false;
+
+        CountingIterator(final int n, final int failAt) {
+            this.n = n;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public boolean hasNext() { return next < n; }
+
+        @Override
+        public Integer next() {
+            if (next == failAt) throw new IllegalStateException("failing at " + failAt);
+            return next++;
+        }
+
+        @Override
+        public void remove() { throw new UnsupportedOperationException(); }
+
+        @Override
+        public void close() { closed = true; }
+    }
+
+    @DataProvider(name = "sizes")
+    public Object[][] sizes() {
+        return new Object[][]{
+                // number of elements, batch size, number of batches
+                {0, 10, 2},
+                {1, 10, 2},
+                {10, 10, 1},
+                {1000, 1, 1},
+                {1000, 7, 3},
+                {100000, 1000, 4}
+        };
+    }
+
+    @Test(dataProvider = "sizes")
+    public void testReturnsAllElementsInOrder(final int n, final int batchSize, final int numBatches) {
+        final CountingIterator counting = new CountingIterator(n, -1);
+        final PrefetchingIterator<Integer> iterator = new PrefetchingIterator<>(counting, batchSize, numBatches, "test");
+        final List<Integer> actual = new ArrayList<>();
+        while (iterator.hasNext()) actual.add(iterator.next());
+        iterator.close();
+
+        Assert.assertEquals(actual.size(), n);
+        for (int i = 0; i < n; i++) Assert.assertEquals(actual.get(i).intValue(), i);
+        Assert.assertTrue(counting.closed);
+    }
+
+    @Test
+    public void testErrorIsRethrownAfterEarlierElements() {
+        final PrefetchingIterator<Integer> iterator = new PrefetchingIterator<>(new CountingIterator(100, 50), 8, 2, "test");
+        int seen = 0;
+        try {
+            while (iterator.hasNext()) {
+                Assert.assertEquals(iterator.next().intValue(), seen++);
+            }
+            Assert.fail("expected an exception");
+        } catch (final IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "failing at 50");
+        } finally {
+            iterator.close();
+        }
+        Assert.assertEquals(seen, 50); // including the partial batch read before the failure
+    }
+
+    @Test(timeOut = 10000)
+    public void testCloseBeforeExhaustedStopsReading() {
+        final CountingIterator counting = new CountingIterator(Integer.MAX_VALUE, -1);
+        final Iterator<Integer> iterator = new PrefetchingIterator<>(counting, 10, 2, "test");
+        Assert.assertEquals(iterator.next().intValue(), 0);
+        ((PrefetchingIterator<Integer>) iterator).close();
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertTrue(counting.closed);
+    }
+}
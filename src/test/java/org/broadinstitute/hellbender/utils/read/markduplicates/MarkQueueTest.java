@@ -0,0 +1,132 @@
+package org.broadinstitute.hellbender.utils.read.markduplicates;
+
+import htsjdk.samtools.DuplicateScoringStrategy.ScoringStrategy;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSetBuilder;
+import htsjdk.samtools.util.SamRecordTrackingBuffer;
+import htsjdk.samtools.util.SamRecordWithOrdinal;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the release of records held by the MarkQueue
+ */
+public class MarkQueueTest {
+
+    private static final int NUM_POSITIONS = 500;
+    private static final int PAIRS_PER_POSITION = 3;
+    private static final int MINIMUM_DISTANCE = 200;
+
+    /** Pairs and fragments where each position has duplicates, with the mates far enough away to leave the queue in between */
+    private SAMRecordSetBuilder makeRecords() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        builder.setReadLength(50);
+        int readIndex = 0;
+        for (int position = 0; position < NUM_POSITIONS; position++) {
+            final int start = 1 + 10 * position;
+            for (int i = 0; i < PAIRS_PER_POSITION; i++) {
+                readIndex++;
+                builder.addPair("RUN:1:1:" + readIndex + ":" + (i * 1000), 0, start, start + 300 + i);
+            }
+            readIndex++;
+            builder.addFrag("RUN:1:1:" + readIndex + ":0", 0, start, false);
+        }
+        return builder;
+    }
+
+    /**
+     * Adds the records to a MarkQueue the way MarkDuplicatesWithMateCigarIterator does, checking after each record that no more
+     * than maxRecordsInRam pending read ends hold their record.
+     *
+     * @return the read names and duplicate flags of the records, in input order, and the largest number of records held
+     */
+    private Object[] markDuplicates(final SAMRecordSetBuilder builder, final int maxRecordsInRam) {
+        final SAMFileHeader header = builder.getHeader();
+        final MarkQueue queue = new MarkQueue(ScoringStrategy.TOTAL_MAPPED_REFERENCE_LENGTH);
+        queue.setMaxRecordsInRam(maxRecordsInRam);
+        queue.setToMarkQueueMinimumDistance(MINIMUM_DISTANCE);
+        final OpticalDuplicateFinder opticalDuplicateFinder = new OpticalDuplicateFinder();
+        final LibraryIdGenerator libraryIdGenerator = new LibraryIdGenerator(header);
+        final DuplicationMetrics metrics = new DuplicationMetrics();
+        final SamRecordTrackingBuffer<SamRecordWithOrdinalAndSetDuplicateReadFlag> outputBuffer = new SamRecordTrackingBuffer<>(
+                Integer.MAX_VALUE, 1000, Collections.singletonList(new File(System.getProperty("java.io.tmpdir"))),
+                header, SamRecordWithOrdinalAndSetDuplicateReadFlag.class);
+
+        final List<String> flags = new ArrayList<>();
+        int maxNumRecordsInRam = 0;
+        long index = 0;
+        for (final SAMRecord record : builder) {
+            record.setDuplicateReadFlag(false);
+            libraryIdGenerator.addMetricsByLibrary(LibraryIdGenerator.getLibraryName(header, record), metrics);
+            final SamRecordWithOrdinal recordWithOrdinal = new SamRecordWithOrdinalAndSetDuplicateReadFlag(record, index++);
+            final ReadEndsForMateCigar readEnds = new ReadEndsForMateCigar(header, recordWithOrdinal, opticalDuplicateFinder,
+                    libraryIdGenerator.getLibraryId(record));
+            while (!queue.isEmpty() && MINIMUM_DISTANCE < readEnds.read1Coordinate - queue.peek().read1Coordinate) {
+                pollAndTrackOpticalDuplicates(queue, outputBuffer, header, opticalDuplicateFinder, libraryIdGenerator);
+            }
+            outputBuffer.add(recordWithOrdinal);
+            queue.add(readEnds, outputBuffer, metrics, header);
+
+            Assert.assertTrue(queue.getNumRecordsInRam() <= maxRecordsInRam);
+            maxNumRecordsInRam = Math.max(maxNumRecordsInRam, queue.getNumRecordsInRam());
+            while (outputBuffer.canEmit()) flags.add(toString(outputBuffer.next().getRecord()));
+        }
+        while (!queue.isEmpty()) {
+            pollAndTrackOpticalDuplicates(queue, outputBuffer, header, opticalDuplicateFinder, libraryIdGenerator);
+        }
+        Assert.assertEquals(queue.getNumRecordsInRam(), 0);
+        while (!outputBuffer.isEmpty()) flags.add(toString(outputBuffer.next().getRecord()));
+        outputBuffer.close();
+        return new Object[]{flags, maxNumRecordsInRam};
+    }
+
+    private static void pollAndTrackOpticalDuplicates(final MarkQueue queue,
+                                                      final SamRecordTrackingBuffer<?> outputBuffer,
+                                                      final SAMFileHeader header,
+                                                      final OpticalDuplicateFinder opticalDuplicateFinder,
+                                                      final LibraryIdGenerator libraryIdGenerator) {
+        final ReadEndsForMateCigar next = queue.poll(outputBuffer, header, opticalDuplicateFinder, libraryIdGenerator);
+        if (queue.shouldBeInLocations(next) && next.isFirstOfPair()) {
+            queue.getLocations(next);
+        }
+    }
+
+    private static String toString(final SAMRecord record) {
+        return record.getReadName() + "/" + record.getFlags() + "/" + record.getDuplicateReadFlag();
+    }
+
+    @DataProvider(name = "maxRecordsInRam")
+    public Object[][] maxRecordsInRam() {
+        return new Object[][]{{0}, {1}, {10}, {100}};
+    }
+
+    /** Releasing records must not change which records are marked as duplicates */
+    @Test(dataProvider = "maxRecordsInRam")
+    public void testReleasedRecordsAreMarkedTheSame(final int maxRecordsInRam) {
+        final SAMRecordSetBuilder builder = makeRecords();
+        @SuppressWarnings("unchecked")
+        final List<String> expected = (List<String>) markDuplicates(builder, Integer.MAX_VALUE)[0];
+        @SuppressWarnings("unchecked")
+        final List<String> actual = (List<String>) markDuplicates(builder, maxRecordsInRam)[0];
+        Assert.assertEquals(actual.size(), builder.size());
+        Assert.assertTrue(actual.stream().anyMatch(s -> s.endsWith("/true")));
+        Assert.assertTrue(actual.stream().anyMatch(s -> s.endsWith("/false")));
+        Assert.assertEquals(actual, expected);
+    }
+
+    /** Read ends that have been polled, or marked as duplicates, must not keep their record, even with no limit */
+    @Test
+    public void testRecordsInRamAreBoundedByThePendingReadEnds() {
+        final SAMRecordSetBuilder builder = makeRecords();
+        final int maxNumRecordsInRam = (Integer) markDuplicates(builder, Integer.MAX_VALUE)[1];
+        // only the read ends within the minimum distance, and their mates' ends, are pending at any one time
+        Assert.assertTrue(maxNumRecordsInRam < builder.size() / 10, "held " + maxNumRecordsInRam + " of " + builder.size() + " records");
+    }
+}
@@ -4,6 +4,10 @@ import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 /**
  * Tests for OpticalDuplicateFinder
  *
@@ -72,4 +76,40 @@ public class OpticalDuplicateFinderTest {
                 {"RUNID:7:1203:2884:16834", 1203, 2884, 16834}
         };
     }
+
+    @DataProvider(name = "testIndexedMatchesPairwiseDataProvider")
+    public Object[][] testIndexedMatchesPairwiseDataProvider() {
+        return new Object[][]{
+                // numReads, numReadGroups, numTiles, coordinate range, pixel distance
+                {50, 1, 1, 200, 100},
+                {500, 1, 1, 1000, 100},
+                {2000, 2, 3, 5000, 100},
+                {2000, 1, 2, 50, 10},
+                {5000, 3, 4, 30000, 100},
+                {1000, 1, 1, 500, 0}
+        };
+    }
+
+    /** Tests that the indexed neighbourhood search flags exactly the same reads as the pairwise comparison */
+    @Test(dataProvider = "testIndexedMatchesPairwiseDataProvider")
+    public void testIndexedMatchesPairwise(final int numReads, final int numReadGroups, final int numTiles,
+                                           final int coordinateRange, final int pixelDistance) {
+        final Random random = new Random(numReads + coordinateRange);
+        final List<ReadEndsForMarkDuplicates> list = new ArrayList<>();
+        for (int i = 0; i < numReads; i++) {
+            final ReadEndsForMarkDuplicates readEnds = new ReadEndsForMarkDuplicates();
+            readEnds.setReadGroup((short) random.nextInt(numReadGroups));
+            // include some reads without location information
+            readEnds.setTile((short) (random.nextInt(20) == 0 ? -1 : 1101 + random.nextInt(numTiles)));
+            readEnds.setX((short) random.nextInt(coordinateRange));
+            readEnds.setY((short) random.nextInt(coordinateRange));
+            list.add(readEnds);
+        }
+
+        final OpticalDuplicateFinder opticalDuplicateFinder = new OpticalDuplicateFinder(pixelDistance);
+        OpticalDuplicateFinder.sortByLocation(list);
+        final boolean[] expected = opticalDuplicateFinder.findOpticalDuplicatesPairwise(list);
+        final boolean[] actual = opticalDuplicateFinder.findOpticalDuplicatesIndexed(list);
+        Assert.assertEquals(actual, expected);
+    }
 }
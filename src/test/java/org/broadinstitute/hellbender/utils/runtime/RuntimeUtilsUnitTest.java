@@ -14,4 +14,13 @@ public class RuntimeUtilsUnitTest extends BaseTest {
     public void testWhichNotExists() {
         Assert.assertNull(RuntimeUtils.which("does_not_exist"), "Found nonexistent binary: does_not_exist");
     }
+
+    @Test
+    public void testGetNumProcessors() {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        Assert.assertEquals(RuntimeUtils.getNumProcessors(3), 3);
+        Assert.assertEquals(RuntimeUtils.getNumProcessors(0), cores);
+        Assert.assertEquals(RuntimeUtils.getNumProcessors(-1), Math.max(1, cores - 1));
+        Assert.assertEquals(RuntimeUtils.getNumProcessors(-cores - 5), 1);
+    }
 }